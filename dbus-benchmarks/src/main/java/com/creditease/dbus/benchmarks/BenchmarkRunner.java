@@ -0,0 +1,176 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.benchmarks;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 运行基准测试并输出稳定格式的结果文件,可以与之前保存的结果(baseline)对比:
+ * 每行一个结果, "benchmark(参数)\t模式\t分数\t误差\t单位", 按名称排序
+ *
+ * java -jar dbus-benchmarks.jar -o current.tsv -b baseline.tsv -t 10 [-i DbusMessage]
+ */
+public class BenchmarkRunner {
+    private static final String PACKAGE = BenchmarkRunner.class.getPackage().getName() + ".";
+
+    public static void main(String[] args) throws Exception {
+        Options options = new Options();
+        options.addOption("i", "include", true, "regexp of benchmarks to run, default all.");
+        options.addOption("o", "output", true, "result file, default benchmarks.tsv.");
+        options.addOption("b", "baseline", true, "baseline result file to compare with.");
+        options.addOption("t", "threshold", true, "percentage of throughput drop reported as regression, default 10.");
+        options.addOption("h", "help", false, "print usage().");
+
+        CommandLine line;
+        try {
+            line = new DefaultParser().parse(options, args);
+        } catch (ParseException e) {
+            System.err.println("Parsing failed.  Reason: " + e.getMessage());
+            return;
+        }
+        if (line.hasOption("help")) {
+            new HelpFormatter().printHelp("dbus-benchmarks.jar", options);
+            return;
+        }
+
+        ChainedOptionsBuilder builder = new OptionsBuilder().include(PACKAGE + line.getOptionValue("include", ".*Benchmark"));
+        Collection<RunResult> results = new Runner(builder.build()).run();
+
+        Map<String, Row> current = new TreeMap<>();
+        for (RunResult result : results) {
+            Row row = Row.of(result);
+            current.put(row.key, row);
+        }
+        File output = new File(line.getOptionValue("output", "benchmarks.tsv"));
+        write(output, current);
+        System.out.println("Results saved to " + output.getAbsolutePath());
+
+        if (line.hasOption("baseline")) {
+            double threshold = Double.parseDouble(line.getOptionValue("threshold", "10"));
+            int regressions = compare(read(new File(line.getOptionValue("baseline"))), current, threshold);
+            System.exit(regressions == 0 ? 0 : 1);
+        }
+    }
+
+    /**
+     * 输出每个基准测试相对baseline的变化,返回吞吐量下降超过阈值的个数
+     */
+    static int compare(Map<String, Row> baseline, Map<String, Row> current, double threshold) {
+        int regressions = 0;
+        System.out.println();
+        System.out.println(String.format("%-80s %14s %14s %9s", "Benchmark", "Baseline", "Current", "Change"));
+        for (Row row : current.values()) {
+            Row base = baseline.get(row.key);
+            if (base == null || !base.unit.equals(row.unit)) {
+                System.out.println(String.format("%-80s %14s %14.3f %9s", row.key, "-", row.score, "new"));
+                continue;
+            }
+            double change = (row.score - base.score) / base.score * 100;
+            // 平均时间模式下分数越小越好
+            boolean lowerIsBetter = !"thrpt".equals(row.mode);
+            boolean regression = (lowerIsBetter ? change : -change) > threshold;
+            if (regression) {
+                regressions++;
+            }
+            System.out.println(String.format("%-80s %14.3f %14.3f %+8.1f%%%s", row.key, base.score, row.score, change,
+                    regression ? "  REGRESSION" : ""));
+        }
+        System.out.println(String.format("%d regression(s), threshold %.1f%%", regressions, threshold));
+        return regressions;
+    }
+
+    static Map<String, Row> read(File file) throws IOException {
+        Map<String, Row> rows = new TreeMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\t");
+                rows.put(parts[0], new Row(parts[0], parts[1], Double.parseDouble(parts[2]), Double.parseDouble(parts[3]), parts[4]));
+            }
+        }
+        return rows;
+    }
+
+    static void write(File file, Map<String, Row> rows) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("# benchmark\tmode\tscore\terror\tunit\n");
+            for (Row row : rows.values()) {
+                writer.write(row.key + "\t" + row.mode + "\t" + row.score + "\t" + row.error + "\t" + row.unit + "\n");
+            }
+        }
+    }
+
+    static class Row {
+        final String key;
+        final String mode;
+        final double score;
+        final double error;
+        final String unit;
+
+        Row(String key, String mode, double score, double error, String unit) {
+            this.key = key;
+            this.mode = mode;
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+        }
+
+        static Row of(RunResult result) {
+            BenchmarkParams params = result.getParams();
+            StringBuilder key = new StringBuilder(params.getBenchmark().replace(PACKAGE, ""));
+            // 参数按名称排序,保证同一组参数在不同版本中的key相同
+            Map<String, String> sorted = new TreeMap<>();
+            for (String name : params.getParamsKeys()) {
+                sorted.put(name, params.getParam(name));
+            }
+            if (!sorted.isEmpty()) {
+                key.append(sorted.toString().replace(" ", "").replace('{', '(').replace('}', ')'));
+            }
+            Result primary = result.getPrimaryResult();
+            double error = Double.isNaN(primary.getScoreError()) ? 0 : primary.getScoreError();
+            return new Row(key.toString(), params.getMode().shortLabel(), primary.getScore(), error, primary.getScoreUnit());
+        }
+    }
+}
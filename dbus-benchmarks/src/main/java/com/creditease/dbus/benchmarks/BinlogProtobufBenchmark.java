@@ -0,0 +1,82 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.benchmarks;
+
+import com.creditease.dbus.stream.common.appender.utils.PairWrapper;
+import com.creditease.dbus.stream.mysql.appender.protobuf.convertor.Convertor;
+import com.creditease.dbus.stream.mysql.appender.protobuf.parser.BinlogProtobufParser;
+import com.creditease.dbus.stream.mysql.appender.protobuf.protocol.MessageEntry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * mysql增量: canal消息的解析(BinlogProtobufParser.getEntry)和行数据转换(Convertor.convertProtobufRecord)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinlogProtobufBenchmark {
+
+    @Param({"20", "120"})
+    private int width;
+
+    @Param({"100"})
+    private int rows;
+
+    private byte[] canalMessages;
+    private List<MessageEntry> entries;
+
+    @Setup
+    public void setup() throws Exception {
+        canalMessages = new Fixtures(width).canalMessages(rows);
+        entries = BinlogProtobufParser.getInstance().getEntry(canalMessages);
+    }
+
+    @Benchmark
+    public List<MessageEntry> getEntry() throws Exception {
+        return BinlogProtobufParser.getInstance().getEntry(canalMessages);
+    }
+
+    @Benchmark
+    public void convertProtobufRecord(Blackhole bh) {
+        for (MessageEntry entry : entries) {
+            PairWrapper<String, Object> wrapper = Convertor.convertProtobufRecord(entry.getEntryHeader(),
+                    entry.getMsgColumn().getRowDataLst().get(0));
+            bh.consume(wrapper);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.benchmarks;
+
+import com.creditease.dbus.stream.appender.utils.DbusGrouping;
+import com.creditease.dbus.stream.common.Constants;
+import org.apache.storm.generated.GlobalStreamId;
+import org.apache.storm.task.WorkerTopologyContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 表路由(DbusGrouping.chooseTasks): local为true时下游task都在当前worker中,使用可再平衡的共享路由表,
+ * 否则使用固定的一致性hash。基准测试中没有下游ack,测量的是路由和在途计数本身的开销
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DbusGroupingBenchmark {
+    private static final String COMPONENT = "bench-bolt";
+
+    @Param({"true", "false"})
+    private boolean local;
+
+    @Param({"4"})
+    private int tasks;
+
+    @Param({"200"})
+    private int tables;
+
+    private DbusGrouping grouping;
+    private List<List<Object>> values;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        List<Integer> targetTasks = new ArrayList<>();
+        Map<Integer, String> taskToComponent = new HashMap<>();
+        for (int i = 1; i <= tasks; i++) {
+            targetTasks.add(i);
+            taskToComponent.put(i, COMPONENT);
+        }
+        List<Integer> workerTasks = local ? targetTasks : Collections.singletonList(1);
+        WorkerTopologyContext context = new WorkerTopologyContext(null, new HashMap(), taskToComponent,
+                Collections.singletonMap(COMPONENT, targetTasks), new HashMap<>(), "bench", null, null, 6700,
+                workerTasks, new HashMap<>(), new HashMap<>());
+
+        grouping = new DbusGrouping();
+        grouping.prepare(context, new GlobalStreamId("upstream", "default"), targetTasks);
+
+        values = new ArrayList<>(tables);
+        for (int i = 0; i < tables; i++) {
+            values.add(Arrays.<Object>asList(Fixtures.SCHEMA + ".t_" + i, "data", Constants.EmitFields.EMIT_TO_BOLT));
+        }
+    }
+
+    @Benchmark
+    public List<Integer> chooseTasks() {
+        List<Object> tuple = values.get(next);
+        next = next + 1 == values.size() ? 0 : next + 1;
+        return grouping.chooseTasks(0, tuple);
+    }
+}
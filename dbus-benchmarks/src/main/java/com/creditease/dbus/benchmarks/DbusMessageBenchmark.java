@@ -0,0 +1,84 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.benchmarks;
+
+import com.creditease.dbus.commons.DbusMessage;
+import com.creditease.dbus.commons.DbusMessageBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UMS消息的构建(DbusMessageBuilder.appendPayload/validateAndConvert)和序列化(DbusMessage.toString)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DbusMessageBenchmark {
+
+    @Param({"20", "120"})
+    private int width;
+
+    @Param({"100"})
+    private int rows;
+
+    private Fixtures fixtures;
+    private List<Object[]> tuples;
+    private DbusMessage message;
+
+    @Setup
+    public void setup() {
+        fixtures = new Fixtures(width);
+        tuples = fixtures.tuples(rows);
+        message = fixtures.message(rows);
+    }
+
+    /**
+     * validateAndConvert会修改传入的数组,每次使用副本
+     */
+    @Benchmark
+    public DbusMessage appendPayload() {
+        DbusMessageBuilder builder = fixtures.builder();
+        for (Object[] tuple : tuples) {
+            builder.appendPayload(tuple.clone());
+        }
+        return builder.getMessage();
+    }
+
+    @Benchmark
+    public String messageToString() {
+        return message.toString();
+    }
+}
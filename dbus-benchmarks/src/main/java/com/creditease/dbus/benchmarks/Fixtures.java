@@ -0,0 +1,364 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.benchmarks;
+
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.alibaba.otter.canal.protocol.CanalPacket;
+import com.creditease.dbus.commons.DataType;
+import com.creditease.dbus.commons.DbusMessage;
+import com.creditease.dbus.commons.DbusMessageBuilder;
+import com.creditease.dbus.commons.msgencoder.EncodeColumn;
+import com.google.protobuf.ByteString;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 基准测试使用的宽表数据: 包含主键、字符串、decimal、datetime(3)、date、int、double、1K的BLOB和中文长文本,
+ * 同一个width和rows生成的数据完全相同,保证不同版本之间的结果可比
+ */
+public class Fixtures {
+    public static final String DS_TYPE = "mysql";
+    public static final String SCHEMA = "dbus_bench";
+    public static final String TABLE = "t_wide";
+    public static final String NAMESPACE = "mysql.bench." + SCHEMA + "." + TABLE + ".0.0.0";
+    public static final String UMS_TS = "2017-08-01 12:34:56.789";
+
+    private static final String TEXT_UNIT = "数据总线DBus实时数据采集";
+
+    /**
+     * 列的种类,按顺序循环使用,第0列固定为主键
+     */
+    public enum Kind {
+        LONG("BIGINT", Types.BIGINT, DataType.LONG, 20, 0),
+        STRING("VARCHAR", Types.VARCHAR, DataType.STRING, 64, 0),
+        DECIMAL("DECIMAL", Types.DECIMAL, DataType.DECIMAL, 12, 2),
+        DATETIME("DATETIME", Types.TIMESTAMP, DataType.DATETIME, 23, 0),
+        DATE("DATE", Types.DATE, DataType.DATE, 10, 0),
+        INT("INT", Types.INTEGER, DataType.INT, 11, 0),
+        DOUBLE("DOUBLE", Types.DOUBLE, DataType.DOUBLE, 22, 0),
+        BLOB("BLOB", Types.BLOB, DataType.BINARY, 65535, 0),
+        TEXT("TEXT", Types.LONGVARCHAR, DataType.STRING, 65535, 0);
+
+        final String mysqlType;
+        final int sqlType;
+        final DataType dataType;
+        final int precision;
+        final int scale;
+
+        Kind(String mysqlType, int sqlType, DataType dataType, int precision, int scale) {
+            this.mysqlType = mysqlType;
+            this.sqlType = sqlType;
+            this.dataType = dataType;
+            this.precision = precision;
+            this.scale = scale;
+        }
+    }
+
+    private final Kind[] kinds;
+    private final String[] names;
+    private final byte[] blob;
+    private final String text;
+
+    public Fixtures(int width) {
+        kinds = new Kind[width];
+        names = new String[width];
+        Kind[] cycle = Kind.values();
+        for (int i = 0; i < width; i++) {
+            kinds[i] = i == 0 ? Kind.LONG : cycle[1 + (i - 1) % (cycle.length - 1)];
+            names[i] = i == 0 ? "id" : kinds[i].name().toLowerCase() + "_" + i;
+        }
+        blob = new byte[1024];
+        new Random(20170801L).nextBytes(blob);
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 512) {
+            sb.append(TEXT_UNIT);
+        }
+        text = sb.toString();
+    }
+
+    public int width() {
+        return kinds.length;
+    }
+
+    public String name(int col) {
+        return names[col];
+    }
+
+    public Kind kind(int col) {
+        return kinds[col];
+    }
+
+    /**
+     * 增量/canal中的字符串表示,BLOB按canal的约定使用ISO-8859-1转换
+     */
+    public String textValue(int row, int col) {
+        switch (kinds[col]) {
+            case LONG:
+                return String.valueOf(row + 1);
+            case STRING:
+                return "name_" + row + "_" + col;
+            case DECIMAL:
+                return "12345.67";
+            case DATETIME:
+                return UMS_TS;
+            case DATE:
+                return "2017-08-01";
+            case INT:
+                return String.valueOf(row % 100);
+            case DOUBLE:
+                return "3.1415926";
+            case BLOB:
+                return new String(blob, StandardCharsets.ISO_8859_1);
+            default:
+                return text;
+        }
+    }
+
+    /**
+     * jdbc驱动返回的对象
+     */
+    public Object jdbcValue(int row, int col) {
+        switch (kinds[col]) {
+            case LONG:
+                return (long) row + 1;
+            case DECIMAL:
+                return new BigDecimal("12345.67");
+            case DATETIME:
+                return Timestamp.valueOf(UMS_TS);
+            case DATE:
+                return java.sql.Date.valueOf("2017-08-01");
+            case INT:
+                return row % 100;
+            case DOUBLE:
+                return 3.1415926;
+            case BLOB:
+                return blob.clone();
+            default:
+                return textValue(row, col);
+        }
+    }
+
+    /**
+     * appender输出的一行数据,前四列为ums_id_, ums_ts_, ums_op_, ums_uid_
+     */
+    public Object[] tuple(int row) {
+        Object[] tuple = new Object[width() + 4];
+        tuple[0] = String.valueOf(row + 1);
+        tuple[1] = UMS_TS;
+        tuple[2] = "i";
+        tuple[3] = String.valueOf(row + 1);
+        for (int col = 0; col < width(); col++) {
+            tuple[col + 4] = textValue(row, col);
+        }
+        return tuple;
+    }
+
+    public List<Object[]> tuples(int rows) {
+        List<Object[]> list = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            list.add(tuple(i));
+        }
+        return list;
+    }
+
+    public DbusMessageBuilder builder() {
+        DbusMessageBuilder builder = new DbusMessageBuilder();
+        builder.build(DbusMessage.ProtocolType.DATA_INCREMENT_DATA, NAMESPACE, 0);
+        for (int col = 0; col < width(); col++) {
+            builder.appendSchema(names[col], kinds[col].dataType, col != 0);
+        }
+        return builder;
+    }
+
+    public DbusMessage message(int rows) {
+        DbusMessageBuilder builder = builder();
+        for (int i = 0; i < rows; i++) {
+            builder.appendPayload(tuple(i));
+        }
+        return builder.getMessage();
+    }
+
+    /**
+     * 脱敏配置: 每种脱敏方式各选一个字符串列,加盐的列使用主键作为salt
+     */
+    public List<EncodeColumn> encodeColumns() {
+        String[] types = {"hash_md5", "hash_murmur", "hash_md5_field_salt", "hash_md5_fixed_salt", "replace"};
+        List<EncodeColumn> columns = new ArrayList<>();
+        int t = 0;
+        for (int col = 1; col < width() && t < types.length; col++) {
+            if (kinds[col] != Kind.STRING && kinds[col] != Kind.TEXT) {
+                continue;
+            }
+            EncodeColumn column = new EncodeColumn();
+            column.setFieldName(names[col]);
+            column.setEncodeType(types[t]);
+            column.setEncodeParam(types[t].equals("hash_md5_field_salt") ? names[0] : "dbus");
+            column.setLength(kinds[col].precision);
+            column.setTruncate(true);
+            columns.add(column);
+            t++;
+        }
+        return columns;
+    }
+
+    public CanalEntry.Entry insertEntry(int row) {
+        CanalEntry.RowData.Builder rowData = CanalEntry.RowData.newBuilder();
+        for (int col = 0; col < width(); col++) {
+            rowData.addAfterColumns(CanalEntry.Column.newBuilder()
+                    .setIndex(col)
+                    .setSqlType(kinds[col].sqlType)
+                    .setName(names[col])
+                    .setIsKey(col == 0)
+                    .setUpdated(true)
+                    .setIsNull(false)
+                    .setValue(textValue(row, col))
+                    .setMysqlType(kinds[col].mysqlType.toLowerCase())
+                    .build());
+        }
+        ByteString storeValue = CanalEntry.RowChange.newBuilder()
+                .setEventType(CanalEntry.EventType.INSERT)
+                .addRowDatas(rowData)
+                .build().toByteString();
+        CanalEntry.Header header = CanalEntry.Header.newBuilder()
+                .setVersion(1)
+                .setLogfileName("mysql-bin.000001")
+                .setLogfileOffset(4 + row * 1024L)
+                .setServerId(1)
+                .setServerenCode("UTF-8")
+                .setExecuteTime(Timestamp.valueOf(UMS_TS).getTime())
+                .setSourceType(CanalEntry.Type.MYSQL)
+                .setSchemaName(SCHEMA)
+                .setTableName(TABLE)
+                .setEventLength(storeValue.size())
+                .setEventType(CanalEntry.EventType.INSERT)
+                .build();
+        return CanalEntry.Entry.newBuilder()
+                .setHeader(header)
+                .setEntryType(CanalEntry.EntryType.ROWDATA)
+                .setStoreValue(storeValue)
+                .build();
+    }
+
+    /**
+     * extractor写入kafka的消息体
+     */
+    public byte[] canalMessages(int rows) {
+        CanalPacket.Messages.Builder builder = CanalPacket.Messages.newBuilder().setBatchId(1);
+        for (int i = 0; i < rows; i++) {
+            builder.addMessages(insertEntry(i).toByteString());
+        }
+        return builder.build().toByteArray();
+    }
+
+    /**
+     * 模拟mysql驱动返回的只读结果集,支持beforeFirst重复遍历
+     */
+    public ResultSet resultSet(int rows) {
+        Object[][] data = new Object[rows][];
+        for (int i = 0; i < rows; i++) {
+            data[i] = new Object[width()];
+            for (int col = 0; col < width(); col++) {
+                data[i][col] = jdbcValue(i, col);
+            }
+        }
+        ResultSetMetaData metaData = (ResultSetMetaData) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{ResultSetMetaData.class}, new MetaDataHandler());
+        return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{ResultSet.class}, new ResultSetHandler(data, metaData));
+    }
+
+    private class MetaDataHandler implements InvocationHandler {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "getColumnCount":
+                    return width();
+                case "getColumnName":
+                case "getColumnLabel":
+                    return names[(Integer) args[0] - 1];
+                case "getColumnTypeName":
+                    return kinds[(Integer) args[0] - 1].mysqlType;
+                case "getColumnType":
+                    return kinds[(Integer) args[0] - 1].sqlType;
+                case "getPrecision":
+                    return kinds[(Integer) args[0] - 1].precision;
+                case "getScale":
+                    return kinds[(Integer) args[0] - 1].scale;
+                case "isNullable":
+                    return (Integer) args[0] == 1 ? ResultSetMetaData.columnNoNulls : ResultSetMetaData.columnNullable;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+    }
+
+    private static class ResultSetHandler implements InvocationHandler {
+        private final Object[][] data;
+        private final ResultSetMetaData metaData;
+        private int row = -1;
+
+        ResultSetHandler(Object[][] data, ResultSetMetaData metaData) {
+            this.data = data;
+            this.metaData = metaData;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "next":
+                    return ++row < data.length;
+                case "beforeFirst":
+                    row = -1;
+                    return null;
+                case "getMetaData":
+                    return metaData;
+                case "close":
+                    return null;
+                case "getObject":
+                case "getBytes":
+                case "getTimestamp":
+                case "getDate":
+                    return data[row][(Integer) args[0] - 1];
+                case "getString":
+                    Object value = data[row][(Integer) args[0] - 1];
+                    return value == null ? null : value.toString();
+                case "getTime":
+                    Object date = data[row][(Integer) args[0] - 1];
+                    return date == null ? null : new Time(((java.util.Date) date).getTime());
+                default:
+                    throw new UnsupportedOperationException(method.getName() + Arrays.toString(method.getParameterTypes()));
+            }
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.benchmarks;
+
+import com.creditease.dbus.bolt.PagedBatchDataFetchingBolt;
+import com.creditease.dbus.commons.DataType;
+import com.creditease.dbus.commons.DbusMessage;
+import com.creditease.dbus.commons.DbusMessageBuilder;
+import com.creditease.dbus.commons.msgencoder.EncodeColumn;
+import com.creditease.dbus.commons.msgencoder.MessageEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 全量拉取: 结果集的逐列转换(PagedBatchDataFetchingBolt.columnValue)以及生成脱敏后的UMS消息,
+ * 结果集是内存中的模拟对象,不包含驱动的读取开销
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FullPullRowBenchmark {
+
+    @Param({"20", "120"})
+    private int width;
+
+    @Param({"1000"})
+    private int rows;
+
+    private ResultSet rs;
+    private ResultSetMetaData rsmd;
+    private List<EncodeColumn> encodeColumns;
+
+    @Setup
+    public void setup() throws Exception {
+        Fixtures fixtures = new Fixtures(width);
+        rs = fixtures.resultSet(rows);
+        rsmd = rs.getMetaData();
+        encodeColumns = fixtures.encodeColumns();
+    }
+
+    @Benchmark
+    public List<List<Object>> convertRows() throws Exception {
+        rs.beforeFirst();
+        int columnCount = rsmd.getColumnCount();
+        List<List<Object>> tuples = new ArrayList<>(rows);
+        while (rs.next()) {
+            List<Object> values = new ArrayList<>(columnCount + 4);
+            values.add("0");
+            values.add(Fixtures.UMS_TS);
+            values.add("i");
+            values.add("0");
+            for (int i = 1; i <= columnCount; i++) {
+                values.add(PagedBatchDataFetchingBolt.columnValue(rs, rsmd, i, Fixtures.DS_TYPE));
+            }
+            tuples.add(values);
+        }
+        return tuples;
+    }
+
+    /**
+     * 与PagedBatchDataFetchingBolt.buildResultMessage相同的构建和脱敏过程
+     */
+    @Benchmark
+    public DbusMessage convertAndBuild() throws Exception {
+        List<List<Object>> tuples = convertRows();
+        DbusMessageBuilder builder = new DbusMessageBuilder();
+        builder.build(DbusMessage.ProtocolType.DATA_INITIAL_DATA, Fixtures.NAMESPACE, 0);
+        int columnCount = rsmd.getColumnCount();
+        for (int i = 1; i <= columnCount; i++) {
+            builder.appendSchema(rsmd.getColumnName(i),
+                    DataType.convertDataType(Fixtures.DS_TYPE, rsmd.getColumnTypeName(i), rsmd.getPrecision(i), rsmd.getScale(i)),
+                    rsmd.isNullable(i) == 1);
+        }
+        for (List<Object> tuple : tuples) {
+            builder.appendPayload(tuple.toArray());
+        }
+        DbusMessage message = builder.getMessage();
+        new MessageEncoder().encode(message, encodeColumns);
+        return message;
+    }
+}
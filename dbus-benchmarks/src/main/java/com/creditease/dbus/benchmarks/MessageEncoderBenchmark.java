@@ -0,0 +1,87 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.benchmarks;
+
+import com.creditease.dbus.commons.DbusMessage;
+import com.creditease.dbus.commons.msgencoder.EncodeColumn;
+import com.creditease.dbus.commons.msgencoder.MessageEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 脱敏(MessageEncoder.encode): md5、murmur、字段加盐md5、固定加盐md5和替换各一列
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageEncoderBenchmark {
+
+    @Param({"20", "120"})
+    private int width;
+
+    @Param({"100"})
+    private int rows;
+
+    private DbusMessage message;
+    private List<EncodeColumn> columns;
+    private Object[][] original;
+
+    @Setup
+    public void setup() {
+        Fixtures fixtures = new Fixtures(width);
+        message = fixtures.message(rows);
+        columns = fixtures.encodeColumns();
+        original = new Object[columns.size()][rows];
+        for (int c = 0; c < columns.size(); c++) {
+            for (int r = 0; r < rows; r++) {
+                original[c][r] = message.messageValue(columns.get(c).getFieldName(), r);
+            }
+        }
+    }
+
+    @Benchmark
+    public DbusMessage encode() {
+        // 恢复脱敏前的值,否则后续迭代计算的是已脱敏的短字符串
+        for (int c = 0; c < columns.size(); c++) {
+            String name = columns.get(c).getFieldName();
+            for (int r = 0; r < rows; r++) {
+                message.setMessageValue(name, original[c][r], r);
+            }
+        }
+        new MessageEncoder().encode(message, columns);
+        return message;
+    }
+}
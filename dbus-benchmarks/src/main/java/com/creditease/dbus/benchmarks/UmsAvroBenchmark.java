@@ -0,0 +1,117 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+package com.creditease.dbus.benchmarks;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONObject;
+import com.creditease.dbus.commons.DbusMessage;
+import com.creditease.dbus.commons.avro.UmsAvroCodec;
+import com.creditease.dbus.commons.avro.UmsSchemaRegistry;
+import org.apache.avro.Schema;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * json UMS与二进制UMS(UmsAvroCodec)的序列化和反序列化,
+ * setup时校验二进制消息解码后与原消息的json相同,并输出两种格式每行的字节数
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UmsAvroBenchmark {
+
+    @Param({"20", "120"})
+    private int width;
+
+    @Param({"100"})
+    private int rows;
+
+    private DbusMessage message;
+    private UmsAvroCodec codec;
+    private String json;
+    private byte[] binary;
+
+    @Setup
+    public void setup() throws Exception {
+        message = new Fixtures(width).message(rows);
+        codec = new UmsAvroCodec(new MemorySchemaRegistry());
+        json = message.toString();
+        binary = codec.encode(message);
+        if (!codec.decode(binary).toString().equals(json)) {
+            throw new IllegalStateException("Decoded binary ums doesn't match the original message");
+        }
+        System.out.println(String.format("width %d: json %d bytes/row, avro %d bytes/row", width,
+                json.getBytes(StandardCharsets.UTF_8).length / rows, binary.length / rows));
+    }
+
+    @Benchmark
+    public byte[] jsonSerialize() {
+        return message.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] avroSerialize() throws Exception {
+        return codec.encode(message);
+    }
+
+    /**
+     * 下游读取json UMS的常见方式
+     */
+    @Benchmark
+    public JSONObject jsonDeserialize() {
+        return JSON.parseObject(json);
+    }
+
+    @Benchmark
+    public DbusMessage avroDeserialize() throws Exception {
+        return codec.decode(binary);
+    }
+
+    private static class MemorySchemaRegistry implements UmsSchemaRegistry {
+        private final Map<Long, Schema> schemas = new ConcurrentHashMap<>();
+
+        @Override
+        public void register(String namespace, long fingerprint, Schema schema) {
+            schemas.put(fingerprint, schema);
+        }
+
+        @Override
+        public Schema lookup(String namespace, long fingerprint) {
+            return schemas.get(fingerprint);
+        }
+    }
+}
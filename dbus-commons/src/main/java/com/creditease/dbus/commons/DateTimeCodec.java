@@ -0,0 +1,322 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.commons;
+
+import java.sql.Timestamp;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+
+/**
+ * 日期时间的编解码工具，用于替代热路径上的SimpleDateFormat、Timestamp字符串拼接等实现。
+ * 解析与格式化都直接按字符处理，除了返回的结果字符串外不产生临时对象，线程安全。
+ * 时区取类加载时的默认时区。原实现(SimpleDateFormat/Timestamp)每次调用都读取默认时区，
+ * 为避免每次调用复制TimeZone对象这里只读取一次，运行期间调用TimeZone.setDefault()后需要调用refreshZone()才会生效；
+ * 格里高利历切换日(1582-10-15)之前的时间、以及夏令时切换前后一天内的本地时间交给原实现处理，保证结果逐字节一致。
+ */
+public final class DateTimeCodec {
+    private static volatile TimeZone zone = TimeZone.getDefault();
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+    /** 1582-10-15 00:00:00 UTC，java.util.Date/GregorianCalendar 的默认切换点 */
+    private static final long GREGORIAN_CUTOVER = -12219292800000L;
+    private static final int MAX_LENGTH = 40;
+    private static final String ZEROS = "000000000";
+
+    private static final ThreadLocal<char[]> BUFFER = new ThreadLocal<char[]>() {
+        @Override
+        protected char[] initialValue() {
+            return new char[MAX_LENGTH];
+        }
+    };
+
+    private DateTimeCodec() {
+    }
+
+    /**
+     * 重新读取JVM的默认时区，修改默认时区后调用
+     */
+    public static void refreshZone() {
+        zone = TimeZone.getDefault();
+    }
+
+    /**
+     * 解析 "yyyy-MM-dd HH:mm:ss[.SSS...]" 格式的本地时间为毫秒数，毫秒之后的部分忽略
+     * @param text 时间字符串，长度至少为19
+     * @return 距离1970-01-01 00:00:00 UTC的毫秒数
+     * @throws ParseException 格式不正确时抛出
+     */
+    public static long parseMillis(CharSequence text) throws ParseException {
+        int len = text.length();
+        if (len < 19) {
+            throw new ParseException("Unparseable date: \"" + text + "\"", len);
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 2);
+        int day = digits(text, 8, 2);
+        int hour = digits(text, 11, 2);
+        int minute = digits(text, 14, 2);
+        int second = digits(text, 17, 2);
+        if (year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0
+                || text.charAt(4) != '-' || text.charAt(7) != '-' || text.charAt(10) != ' '
+                || text.charAt(13) != ':' || text.charAt(16) != ':') {
+            throw new ParseException("Unparseable date: \"" + text + "\"", 0);
+        }
+
+        int millis = 0;
+        if (len > 19) {
+            if (text.charAt(19) != '.') {
+                throw new ParseException("Unparseable date: \"" + text + "\"", 19);
+            }
+            // 与原实现 substring(0, 23) 一致，只取小数点后三位
+            int end = Math.min(len, 23);
+            for (int i = 20; i < 23; i++) {
+                int d = i < end ? text.charAt(i) - '0' : 0;
+                if (d < 0 || d > 9) {
+                    throw new ParseException("Unparseable date: \"" + text + "\"", i);
+                }
+                millis = millis * 10 + d;
+            }
+        }
+
+        if (year < 1583 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+                || hour > 23 || minute > 59 || second > 59) {
+            // 超出范围的值交给宽松模式的SimpleDateFormat处理，保持与原实现相同的进位行为
+            return legacyParse(text, zone);
+        }
+
+        TimeZone tz = zone;
+        long local = (daysFromCivil(year, month, day) * 86400L + hour * 3600 + minute * 60 + second) * 1000L + millis;
+        int offset = tz.getOffset(local - tz.getRawOffset());
+        long utc = local - offset;
+        if (tz.getOffset(utc) != offset
+                || tz.getOffset(utc - MILLIS_PER_DAY) != offset
+                || tz.getOffset(utc + MILLIS_PER_DAY) != offset) {
+            // 夏令时切换附近的本地时间可能不存在或存在两次，按原实现的规则处理
+            return legacyParse(text, tz);
+        }
+        return utc;
+    }
+
+    /**
+     * 将mysql的datetime/timestamp格式化为字符串，小数部分的位数由 precision - 20 决定
+     * @param ts 时间
+     * @param precision ResultSetMetaData.getPrecision()返回的精度
+     */
+    public static String formatMysqlTimestamp(Timestamp ts, int precision) {
+        // Mysql's metaData.getScale() always return 0. We use getPrecision() to estimate scale.
+        // the precision of datetime is 19, datetime(1) is 21, datetime(2) is 22, and so on.
+        int meta = precision - 20;
+        if (meta > 6) {
+            throw new RuntimeException("unknow useconds meta : " + meta);
+        }
+        char[] buf = BUFFER.get();
+        int pos = writeDateTime(buf, ts);
+        if (meta > 0) {
+            buf[pos++] = '.';
+            pos = writeNanos(buf, pos, ts.getNanos(), meta);
+        }
+        return new String(buf, 0, pos);
+    }
+
+    /**
+     * 将oracle的timestamp格式化为字符串，结果与 Timestamp.toString() 一致，
+     * 但小数部分会补零至scale位，例如 2016-11-28 11:33:33.123000
+     * @param ts 时间
+     * @param scale ResultSetMetaData.getScale()返回的小数位数
+     */
+    public static String formatOracleTimestamp(Timestamp ts, int scale) {
+        char[] buf = BUFFER.get();
+        int pos = writeDateTime(buf, ts);
+        buf[pos++] = '.';
+        int nanos = ts.getNanos();
+        int digits = 1;
+        if (nanos != 0) {
+            // Timestamp.toString() 去掉小数部分末尾的0
+            digits = 9;
+            while (nanos % 10 == 0) {
+                nanos /= 10;
+                digits--;
+            }
+            pos = writeNanos(buf, pos, ts.getNanos(), digits);
+        } else {
+            buf[pos++] = '0';
+        }
+        int pad = scale - digits;
+        if (pos + pad > MAX_LENGTH) {
+            StringBuilder sb = new StringBuilder(pos + pad).append(buf, 0, pos);
+            for (int i = 0; i < pad; i++) {
+                sb.append('0');
+            }
+            return sb.toString();
+        }
+        for (int i = 0; i < pad; i++) {
+            buf[pos++] = '0';
+        }
+        return new String(buf, 0, pos);
+    }
+
+    /**
+     * 规整日志中的日期时间字符串：没有空格时将第一个':'替换为空格(如 2012-12-12:12:12:12)，
+     * 超过26位(精确到微秒)的部分截断；不需要修改时直接返回原字符串
+     */
+    public static String normalizeDateTime(String text) {
+        int len = text.length();
+        int colon = text.indexOf(' ') == -1 ? text.indexOf(':') : -1;
+        if (colon == -1 && len <= 26) {
+            return text;
+        }
+        int end = Math.min(len, 26);
+        char[] buf = BUFFER.get();
+        text.getChars(0, end, buf, 0);
+        if (colon != -1 && colon < end) {
+            buf[colon] = ' ';
+        }
+        return new String(buf, 0, end);
+    }
+
+    private static int writeDateTime(char[] buf, Timestamp ts) {
+        // Timestamp 内部的毫秒数已包含 nanos 中的毫秒部分，这里只需要取到秒
+        long seconds = Math.floorDiv(ts.getTime(), 1000L);
+        long utc = seconds * 1000L;
+        if (utc < GREGORIAN_CUTOVER) {
+            return writeLegacyDateTime(buf, ts);
+        }
+        long local = seconds + zone.getOffset(utc) / 1000;
+        long days = Math.floorDiv(local, 86400L);
+        int secOfDay = (int) (local - days * 86400L);
+
+        // civil from days, 参考 http://howardhinnant.github.io/date_algorithms.html
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        int doe = (int) (z - era * 146097);
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        int day = doy - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        if (year > 9999) {
+            return writeLegacyDateTime(buf, ts);
+        }
+
+        int pos = write(buf, 0, (int) year, 4);
+        buf[pos++] = '-';
+        pos = write(buf, pos, month, 2);
+        buf[pos++] = '-';
+        pos = write(buf, pos, day, 2);
+        buf[pos++] = ' ';
+        pos = write(buf, pos, secOfDay / 3600, 2);
+        buf[pos++] = ':';
+        pos = write(buf, pos, secOfDay / 60 % 60, 2);
+        buf[pos++] = ':';
+        return write(buf, pos, secOfDay % 60, 2);
+    }
+
+    /**
+     * 切换日之前(儒略历)或超过4位年份的时间按原有方式计算
+     */
+    @SuppressWarnings("deprecation")
+    private static int writeLegacyDateTime(char[] buf, Timestamp ts) {
+        String year = Integer.toString(ts.getYear() + 1900);
+        String text = (year.length() < 4 ? ZEROS.substring(0, 4 - year.length()) : "") + year;
+        int pos = text.length();
+        text.getChars(0, pos, buf, 0);
+        buf[pos++] = '-';
+        pos = write(buf, pos, ts.getMonth() + 1, 2);
+        buf[pos++] = '-';
+        pos = write(buf, pos, ts.getDate(), 2);
+        buf[pos++] = ' ';
+        pos = write(buf, pos, ts.getHours(), 2);
+        buf[pos++] = ':';
+        pos = write(buf, pos, ts.getMinutes(), 2);
+        buf[pos++] = ':';
+        return write(buf, pos, ts.getSeconds(), 2);
+    }
+
+    /**
+     * 写入补零至9位的纳秒数的前digits位
+     */
+    private static int writeNanos(char[] buf, int pos, int nanos, int digits) {
+        int div = 100000000;
+        for (int i = 0; i < digits; i++) {
+            buf[pos++] = (char) ('0' + nanos / div % 10);
+            div /= 10;
+        }
+        return pos;
+    }
+
+    private static int write(char[] buf, int pos, int value, int width) {
+        for (int i = pos + width - 1; i >= pos; i--) {
+            buf[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + width;
+    }
+
+    private static int digits(CharSequence text, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            int d = text.charAt(i) - '0';
+            if (d < 0 || d > 9) {
+                return -1;
+            }
+            value = value * 10 + d;
+        }
+        return value;
+    }
+
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = y / 400;
+        int yoe = y - era * 400;
+        int mp = month > 2 ? month - 3 : month + 9;
+        int doy = (153 * mp + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097L + doe - 719468;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0 ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static long legacyParse(CharSequence text, TimeZone tz) throws ParseException {
+        String str = text.length() > 23 ? text.subSequence(0, 23).toString() : text.toString();
+        if (str.length() > 19) {
+            // 不足三位的毫秒按小数补零，与快速路径保持一致
+            str = (str + "000").substring(0, 23);
+        }
+        String ptn = str.length() == 19 ? "yyyy-MM-dd HH:mm:ss" : "yyyy-MM-dd HH:mm:ss.SSS";
+        SimpleDateFormat df = new SimpleDateFormat(ptn);
+        df.setTimeZone(tz);
+        return df.parse(str).getTime();
+    }
+}
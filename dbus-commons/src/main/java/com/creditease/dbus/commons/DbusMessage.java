@@ -212,7 +212,8 @@ public class DbusMessage {
         DATA_INITIAL_DATA,
         DATA_INCREMENT_DATA,
         DATA_INCREMENT_TERMINATION,
-        DATA_INCREMENT_HEARTBEAT;
+        DATA_INCREMENT_HEARTBEAT,
+        DATA_INITIAL_SNAPSHOT;
 
         private String value;
 
@@ -53,6 +53,7 @@ public class DbusMessageBuilder {
                 message.getSchema().addField(DbusMessage.Field._UMS_UID_, DataType.STRING, false);
                 break;
             case DATA_INCREMENT_TERMINATION:
+            case DATA_INITIAL_SNAPSHOT:
                 message.getSchema().addField(DbusMessage.Field._UMS_TS_, DataType.DATETIME, false);
                 break;
             case DATA_INCREMENT_HEARTBEAT:
@@ -164,17 +165,7 @@ public class DbusMessageBuilder {
     // yyyy-MM-dd:HH:mm:ss.SSSSSSSSS length = 29
     // yyyy-MM-dd:HH:mm:ss.SSSSSS length = 26
     private static String dateValue(String dateStr) {
-        StringBuilder buf = new StringBuilder(dateStr);
-        if(!dateStr.contains(" ")) {
-            int idx = dateStr.indexOf(":");
-            if(idx!=-1){
-                buf.replace(idx, idx + 1, " ");
-            }
-        }
-        if (dateStr.length() > 26) {
-            buf.delete(26, dateStr.length());
-        }
-        return buf.toString();
+        return DateTimeCodec.normalizeDateTime(dateStr);
     }
 
     private void validateState() {
@@ -0,0 +1,80 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.commons;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * 加载本地目录中的配置文件,目录结构与zookeeper配置中心保持一致,
+ * 如 /DBus/Commons/mysql 对应 baseDir/DBus/Commons/mysql.properties
+ */
+public class FilePropertiesProvider implements PropertiesProvider {
+    private Logger logger = LoggerFactory.getLogger(getClass());
+
+    private File baseDir;
+    private String path;
+
+    /**
+     * @param baseDir 本地根目录,对应zookeeper的根节点
+     * @param path 相对节点名称的父路径,与ZkPropertiesProvider中的path含义相同
+     */
+    public FilePropertiesProvider(File baseDir, String path) {
+        this.baseDir = baseDir;
+        this.path = path;
+    }
+
+    @Override
+    public Properties loadProperties(String node) throws Exception {
+        if (path == null) {
+            throw new IllegalArgumentException();
+        }
+        File file = new File(baseDir, buildPath(node));
+        Properties properties = new Properties();
+        if (file.isFile()) {
+            try (InputStream is = new FileInputStream(file)) {
+                properties.load(is);
+            }
+            logger.info("properties:{}, values:{}", file.getPath(), properties.toString());
+        } else {
+            logger.warn("properties file not found:{}", file.getPath());
+        }
+        return properties;
+    }
+
+    private String buildPath(String node) {
+        String nodePath;
+        if(node.startsWith("/")) {
+            nodePath = node;
+        } else {
+            nodePath = path + "/" + node;
+        }
+        if(!nodePath.endsWith(EXT_PATTERN)) {
+            nodePath += EXT_PATTERN;
+        }
+        return nodePath;
+    }
+}
@@ -24,7 +24,9 @@ import org.apache.zookeeper.Watcher;
 import org.apache.zookeeper.data.Stat;
 
 import java.io.Closeable;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 public interface IZkService extends Closeable {
@@ -57,4 +59,28 @@ public interface IZkService extends Closeable {
 
     byte[] registerWatcher(String node, Watcher watcher) throws Exception;
 
+    /**
+     * 并发读取一批节点的数据
+     * @return 节点路径到数据的映射,不存在的节点不包含在结果中
+     */
+    Map<String, byte[]> getDataInBatch(Collection<String> paths) throws Exception;
+
+    /**
+     * 并发读取一批节点的子节点名称
+     * @return 节点路径到子节点名称的映射,不存在的节点不包含在结果中
+     */
+    Map<String, List<String>> getChildrenInBatch(Collection<String> paths) throws Exception;
+
+    /**
+     * 在一个事务(multi)中创建节点和修改节点数据,要么全部成功要么全部失败
+     * @param creates 需要创建的节点,按迭代顺序创建,父节点需要排在子节点之前
+     * @param updates 需要修改数据的已存在节点
+     */
+    void commitTransaction(Map<String, byte[]> creates, Map<String, byte[]> updates) throws Exception;
+
+    /**
+     * 创建root子树的内存镜像,不再使用时需要关闭
+     */
+    ZkTreeCache mirrorTree(String root) throws Exception;
+
 }
@@ -20,6 +20,8 @@
 
 package com.creditease.dbus.commons;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -46,7 +48,37 @@ public class PropertiesHolder {
      * @throws Exception
      */
     public static void initialize(String zookeeper, String path) throws Exception {
-        innerHolder.set(new InnerHolder(zookeeper, path));
+        replace(new InnerHolder(zookeeper, path));
+    }
+
+    /**
+     * 使用指定的PropertiesProvider初始化,用于脱离zookeeper运行的场景(如离线回放工具)
+     * @param provider 配置文件提供者
+     */
+    public static void initialize(PropertiesProvider provider) {
+        replace(new InnerHolder(provider));
+    }
+
+    /**
+     * 释放当前线程的配置及其zookeeper会话,在组件的cleanup/close中调用
+     */
+    public static void close() {
+        InnerHolder holder = innerHolder.get();
+        innerHolder.remove();
+        if (holder != null) {
+            holder.close();
+        }
+    }
+
+    /**
+     * 重新初始化时先换上新的provider再关闭旧的,共用的zookeeper会话不会被关闭后重连
+     */
+    private static void replace(InnerHolder holder) {
+        InnerHolder old = innerHolder.get();
+        innerHolder.set(holder);
+        if (old != null) {
+            old.close();
+        }
     }
 
     /**
@@ -123,10 +155,25 @@ public class PropertiesHolder {
                 e.printStackTrace();
             }
         }
+
+        public InnerHolder(PropertiesProvider provider) {
+            propMap = new ConcurrentHashMap<>();
+            this.provider = provider;
+        }
         
         public void reload() {
             propMap.clear();
         }
+
+        public void close() {
+            if (provider instanceof Closeable) {
+                try {
+                    ((Closeable) provider).close();
+                } catch (IOException e) {
+                    logger.warn("Closing properties provider failed: {}", e.getMessage());
+                }
+            }
+        }
         
         /**
          * 获取指定配置文件的Properties对象
@@ -23,23 +23,75 @@ package com.creditease.dbus.commons;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 /**
  * 加载zookeeper配置中心中的配置文件
  * Created by Shrimp on 16/6/6.
  */
-public class ZkPropertiesProvider implements PropertiesProvider {
+public class ZkPropertiesProvider implements PropertiesProvider, Closeable {
     private Logger logger = LoggerFactory.getLogger(getClass());
 
+    /**
+     * 同一个进程中访问相同zookeeper的provider共用一个会话,
+     * 避免每个executor以及每个数据源的组件都建立自己的zookeeper连接。
+     * 会话按引用计数,最后一个使用它的provider close()时关闭
+     */
+    private static final Map<String, Session> sessions = new HashMap<>();
+
     private IZkService zookeeper;
     private String path;
     private String url;
+    private volatile boolean closed;
 
     public ZkPropertiesProvider(String url, String path) throws Exception {
         this.url = url;
         this.path = path;
-        zookeeper = new ZkService(url, 30000);
+        zookeeper = acquire(url);
+    }
+
+    private static IZkService acquire(String url) throws Exception {
+        synchronized (sessions) {
+            Session session = sessions.get(url);
+            if (session == null) {
+                session = new Session(new ZkService(url, 30000));
+                sessions.put(url, session);
+            }
+            session.refs++;
+            return session.zk;
+        }
+    }
+
+    private static void release(String url) throws IOException {
+        IZkService zk = null;
+        synchronized (sessions) {
+            Session session = sessions.get(url);
+            if (session != null && --session.refs == 0) {
+                sessions.remove(url);
+                zk = session.zk;
+            }
+        }
+        if (zk != null) {
+            zk.close();
+        }
+    }
+
+    /**
+     * 释放共用的会话,重复调用无影响
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        release(url);
     }
 
 
@@ -48,6 +100,9 @@ public class ZkPropertiesProvider implements PropertiesProvider {
         if (path == null) {
             throw new IllegalArgumentException();
         }
+        if (closed) {
+            throw new IllegalStateException("ZkPropertiesProvider of " + url + " has been closed");
+        }
         String nodePath = buildPath(node);
         if(zookeeper.isExists(nodePath)) {
             Properties properties = zookeeper.getProperties(nodePath);
@@ -78,4 +133,13 @@ public class ZkPropertiesProvider implements PropertiesProvider {
 //            logger.info(String.format("%s=%s", entry.getKey(), entry.getValue().toString()));
 //        }
     }
+
+    private static class Session {
+        final IZkService zk;
+        int refs;
+
+        Session(IZkService zk) {
+            this.zk = zk;
+        }
+    }
 }
@@ -23,6 +23,9 @@ package com.creditease.dbus.commons;
 import com.google.common.collect.Lists;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.transaction.CuratorTransaction;
+import org.apache.curator.framework.api.transaction.CuratorTransactionFinal;
 import org.apache.curator.framework.recipes.atomic.AtomicValue;
 import org.apache.curator.framework.recipes.atomic.DistributedAtomicLong;
 import org.apache.curator.retry.RetryNTimes;
@@ -37,14 +40,25 @@ import org.slf4j.LoggerFactory;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class ZkService implements IZkService {
     private static final String auth = "DBus:yvr5skHKWJOR0jiG";
+    /** 批量读取时同一时刻未完成的异步请求数上限 */
+    private static final int MAX_IN_FLIGHT = 64;
+    private static final long BATCH_TIMEOUT_SECONDS = 30;
     private Logger logger = LoggerFactory.getLogger(getClass());
     private CuratorFramework client;
 
@@ -159,6 +173,15 @@ public class ZkService implements IZkService {
         }
     }
 
+    /**
+     * 创建节点,父节点不存在时一并创建
+     * @param path 节点path
+     * @param payload 初始数据内容
+     */
+    public void createNodeWithParents(String path, byte[] payload) throws Exception {
+        client.create().creatingParentsIfNeeded().forPath(path, payload);
+    }
+
     /**
      * 删除指定节点
      * @param path 节点path
@@ -169,6 +192,15 @@ public class ZkService implements IZkService {
         logger.info("节点删除成功, Path: " + path );
     }
 
+    /**
+     * 删除指定节点及其所有子节点
+     * @param path 节点path
+     */
+    public void deleteNodeRecursively(String path) throws Exception {
+        client.delete().deletingChildrenIfNeeded().forPath(path);
+        logger.info("节点删除成功, Path: " + path );
+    }
+
     /**
      * 读取指定节点数据内容
      * @param path 节点path
@@ -465,6 +497,90 @@ public class ZkService implements IZkService {
         return client.getData().usingWatcher(watcher).forPath(path);
     }
 
+    @Override
+    public Map<String, byte[]> getDataInBatch(Collection<String> paths) throws Exception {
+        return fetch(paths, false);
+    }
+
+    @Override
+    public Map<String, List<String>> getChildrenInBatch(Collection<String> paths) throws Exception {
+        return fetch(paths, true);
+    }
+
+    /**
+     * 对每个节点发起异步请求,等待全部返回
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Map<String, T> fetch(Collection<String> paths, boolean children) throws Exception {
+        Map<String, Object> result = new ConcurrentHashMap<>();
+        if (paths.isEmpty()) {
+            return (Map<String, T>) result;
+        }
+        Semaphore permits = new Semaphore(MAX_IN_FLIGHT);
+        CountDownLatch latch = new CountDownLatch(paths.size());
+        AtomicReference<Exception> error = new AtomicReference<>();
+        BackgroundCallback callback = (c, event) -> {
+            try {
+                int rc = event.getResultCode();
+                if (rc == KeeperException.Code.OK.intValue()) {
+                    Object value = children ? event.getChildren() : event.getData();
+                    if (value == null) {
+                        value = children ? Collections.emptyList() : new byte[0];
+                    }
+                    result.put(event.getPath(), value);
+                } else if (rc != KeeperException.Code.NONODE.intValue()) {
+                    // 节点不存在不算错误,其他错误记录下来由调用线程抛出
+                    error.compareAndSet(null, KeeperException.create(KeeperException.Code.get(rc), event.getPath()));
+                }
+            } finally {
+                permits.release();
+                latch.countDown();
+            }
+        };
+
+        for (String path : paths) {
+            permits.acquire();
+            try {
+                if (children) {
+                    client.getChildren().inBackground(callback).forPath(path);
+                } else {
+                    client.getData().inBackground(callback).forPath(path);
+                }
+            } catch (Exception e) {
+                permits.release();
+                throw e;
+            }
+        }
+        if (!latch.await(BATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new TimeoutException("read " + paths.size() + " zookeeper nodes timeout");
+        }
+        if (error.get() != null) {
+            throw error.get();
+        }
+        return (Map<String, T>) result;
+    }
+
+    @Override
+    public void commitTransaction(Map<String, byte[]> creates, Map<String, byte[]> updates) throws Exception {
+        if (creates.isEmpty() && updates.isEmpty()) {
+            return;
+        }
+        CuratorTransaction transaction = client.inTransaction();
+        for (Map.Entry<String, byte[]> entry : creates.entrySet()) {
+            transaction = transaction.create().forPath(entry.getKey(), entry.getValue()).and();
+        }
+        for (Map.Entry<String, byte[]> entry : updates.entrySet()) {
+            transaction = transaction.setData().forPath(entry.getKey(), entry.getValue()).and();
+        }
+        ((CuratorTransactionFinal) transaction).commit();
+        logger.info("事务提交成功, 创建节点数: {}, 修改节点数: {}", creates.size(), updates.size());
+    }
+
+    @Override
+    public ZkTreeCache mirrorTree(String root) throws Exception {
+        return new ZkTreeCache(client, root);
+    }
+
     /**
      * 关闭ZK连接
      */
@@ -0,0 +1,99 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+package com.creditease.dbus.commons;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.apache.curator.framework.recipes.cache.TreeCacheEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * zookeeper子树的内存镜像,基于curator TreeCache实现,通过ZkService.mirrorTree创建。
+ * 初始化完成且连接正常时isReady返回true,否则调用方应直接访问zookeeper。
+ */
+public class ZkTreeCache implements Closeable {
+    private static Logger logger = LoggerFactory.getLogger(ZkTreeCache.class);
+
+    private final String root;
+    private final TreeCache cache;
+    private volatile boolean ready = false;
+
+    ZkTreeCache(CuratorFramework client, String root) throws Exception {
+        this.root = root;
+        this.cache = new TreeCache(client, root);
+        cache.getListenable().addListener((c, event) -> {
+            TreeCacheEvent.Type type = event.getType();
+            if (type == TreeCacheEvent.Type.INITIALIZED || type == TreeCacheEvent.Type.CONNECTION_RECONNECTED) {
+                ready = true;
+                logger.info("zookeeper tree mirror of {} is ready, event:{}", root, type);
+            } else if (type == TreeCacheEvent.Type.CONNECTION_SUSPENDED || type == TreeCacheEvent.Type.CONNECTION_LOST) {
+                ready = false;
+                logger.warn("zookeeper tree mirror of {} is unavailable, event:{}", root, type);
+            }
+        });
+        cache.start();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 判断给定路径是否在镜像的子树中
+     */
+    public boolean contains(String path) {
+        return path.equals(root) || path.startsWith(root + "/");
+    }
+
+    /**
+     * 获取子节点名称
+     * @return 节点不存在时返回null
+     */
+    public List<String> getChildren(String path) {
+        Map<String, ChildData> children = cache.getCurrentChildren(path);
+        return children == null ? null : new ArrayList<>(children.keySet());
+    }
+
+    /**
+     * 获取节点数据
+     * @return 节点不存在时返回null
+     */
+    public byte[] getData(String path) {
+        ChildData data = cache.getCurrentData(path);
+        if (data == null) {
+            return null;
+        }
+        return data.getData() == null ? new byte[0] : data.getData();
+    }
+
+    @Override
+    public void close() throws IOException {
+        ready = false;
+        cache.close();
+    }
+}
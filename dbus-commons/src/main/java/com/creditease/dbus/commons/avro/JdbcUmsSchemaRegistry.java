@@ -0,0 +1,122 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+package com.creditease.dbus.commons.avro;
+
+import org.apache.avro.Schema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 把二进制UMS的schema保存在dbus管理库的t_avro_schema表中:
+ * full_name为"{ums namespace}.{指纹的16进制}", namespace为ums namespace的前三段(类型.数据源.schema),
+ * schema_name为表名, schema_hash为指纹的低32位。注册和查询的结果都缓存在本地,每个schema只访问一次数据库。
+ * 多个worker可能同时注册同一个schema, full_name上有唯一索引, 插入时主键冲突说明已经被其他worker注册
+ */
+public class JdbcUmsSchemaRegistry implements UmsSchemaRegistry {
+    private Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final DataSource ds;
+    private final long dsId;
+    private final Map<String, Schema> cache = new ConcurrentHashMap<>();
+
+    /**
+     * @param ds dbus管理库
+     * @param dsId 注册时写入的数据源id,只读取时可以为0
+     */
+    public JdbcUmsSchemaRegistry(DataSource ds, long dsId) {
+        this.ds = ds;
+        this.dsId = dsId;
+    }
+
+    @Override
+    public void register(String namespace, long fingerprint, Schema schema) throws Exception {
+        String fullName = fullName(namespace, fingerprint);
+        if (cache.containsKey(fullName)) {
+            return;
+        }
+        String[] parts = namespace.split("\\.");
+        try (Connection conn = ds.getConnection()) {
+            try (PreparedStatement ps = conn.prepareStatement("select 1 from t_avro_schema t where t.full_name = ? limit 1")) {
+                ps.setString(1, fullName);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        cache.put(fullName, schema);
+                        return;
+                    }
+                }
+            }
+            String sql = "insert into t_avro_schema(namespace,schema_name,full_name,schema_hash,schema_text,create_time,ds_id) values(?,?,?,?,?,?,?)";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setString(1, parts.length > 3 ? parts[0] + "." + parts[1] + "." + parts[2] : namespace);
+                ps.setString(2, parts.length > 3 ? parts[3] : namespace);
+                ps.setString(3, fullName);
+                ps.setInt(4, (int) fingerprint);
+                ps.setString(5, schema.toString());
+                ps.setTimestamp(6, new Timestamp(System.currentTimeMillis()));
+                ps.setLong(7, dsId);
+                ps.executeUpdate();
+            } catch (SQLException e) {
+                // SQLState 23xxx: 违反唯一约束; 不用insert ignore, 以免schema_text被截断等错误也被忽略
+                if (e.getSQLState() == null || !e.getSQLState().startsWith("23")) {
+                    throw e;
+                }
+                logger.info("Avro schema {} has been registered by another worker", fullName);
+                cache.put(fullName, schema);
+                return;
+            }
+        }
+        cache.put(fullName, schema);
+        logger.info("Avro schema of ums {} registered as {}", namespace, fullName);
+    }
+
+    @Override
+    public Schema lookup(String namespace, long fingerprint) throws Exception {
+        String fullName = fullName(namespace, fingerprint);
+        Schema schema = cache.get(fullName);
+        if (schema != null) {
+            return schema;
+        }
+        try (Connection conn = ds.getConnection();
+             PreparedStatement ps = conn.prepareStatement("select schema_text from t_avro_schema t where t.full_name = ?")) {
+            ps.setString(1, fullName);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                schema = new Schema.Parser().parse(rs.getString("schema_text"));
+            }
+        }
+        cache.put(fullName, schema);
+        return schema;
+    }
+
+    public static String fullName(String namespace, long fingerprint) {
+        return namespace + "." + Long.toHexString(fingerprint);
+    }
+}
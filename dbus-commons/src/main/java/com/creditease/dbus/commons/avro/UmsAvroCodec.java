@@ -0,0 +1,214 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+package com.creditease.dbus.commons.avro;
+
+import com.creditease.dbus.commons.DbusMessage;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.BinaryDecoder;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DecoderFactory;
+import org.apache.avro.io.EncoderFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * UMS的二进制编码: 每个(namespace, 字段定义)对应一个avro record schema,在UmsSchemaRegistry中注册一次,
+ * 消息中只携带schema的指纹和按schema编码的行,不再重复列名、类型等信息。消息格式:
+ * <pre>
+ * 0xDB 0x55 | 8字节指纹(little endian) | protocol.type | protocol.version | schema.namespace | schema.batchId | 行数组
+ * </pre>
+ * 头部之后都是avro binary编码, 字符串和int为avro的string/int, 行数组为avro array。
+ * 第一个字节不可能是json的'{', 同一topic中的json消息(心跳等控制消息)可以用isBinary区分。
+ * 魔数与avro single object encoding(0xC3 0x01)、confluent wire format(0x00)都不同, 避免被误认为这两种格式。
+ * 线程安全,编码和解码都可以在多个线程中使用同一个实例
+ */
+public class UmsAvroCodec {
+    public static final byte MAGIC_0 = (byte) 0xDB;
+    public static final byte MAGIC_1 = (byte) 0x55;
+    private static final int HEADER_SIZE = 10;
+    private static final String RECORD_NAME = "ums_row";
+
+    private final UmsSchemaRegistry registry;
+    /** namespace -> 当前使用的schema, 字段定义变化时替换 */
+    private final Map<String, WriterEntry> writers = new ConcurrentHashMap<>();
+    /** 指纹 -> 解码使用的schema */
+    private final Map<Long, ReaderEntry> readers = new ConcurrentHashMap<>();
+
+    public UmsAvroCodec(UmsSchemaRegistry registry) {
+        this.registry = registry;
+    }
+
+    public static boolean isBinary(byte[] bytes) {
+        return bytes != null && bytes.length >= HEADER_SIZE && bytes[0] == MAGIC_0 && bytes[1] == MAGIC_1;
+    }
+
+    /**
+     * 对schema的完整json(含ums属性)计算64位Rabin指纹, UMS类型、脱敏标记不同的schema指纹也不同
+     */
+    public static long fingerprint(Schema schema) {
+        return SchemaNormalization.fingerprint64(schema.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public byte[] encode(DbusMessage message) throws Exception {
+        DbusMessage.Schema umsSchema = message.getSchema();
+        WriterEntry entry = writerOf(umsSchema);
+        List<DbusMessage.Field> fields = umsSchema.getFields();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256 + message.getPayload().size() * fields.size() * 8);
+        writeHeader(out, entry.fingerprint);
+        BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(out, null);
+        encoder.writeString(message.getProtocol().getType());
+        encoder.writeString(message.getProtocol().getVersion() == null ? "" : message.getProtocol().getVersion());
+        encoder.writeString(umsSchema.getNamespace());
+        encoder.writeInt(umsSchema.getBatchId());
+
+        List<DbusMessage.Payload> payloads = message.getPayload();
+        encoder.writeArrayStart();
+        encoder.setItemCount(payloads.size());
+        GenericData.Record record = new GenericData.Record(entry.schema);
+        for (DbusMessage.Payload payload : payloads) {
+            encoder.startItem();
+            List<Object> tuple = payload.getTuple();
+            for (int i = 0; i < fields.size(); i++) {
+                record.put(i, UmsAvroSchemas.toAvroValue(fields.get(i), tuple.get(i)));
+            }
+            entry.writer.write(record, encoder);
+        }
+        encoder.writeArrayEnd();
+        encoder.flush();
+        return out.toByteArray();
+    }
+
+    public DbusMessage decode(byte[] bytes) throws Exception {
+        if (!isBinary(bytes)) {
+            throw new IOException("Not a binary ums message");
+        }
+        long fingerprint = 0;
+        for (int i = HEADER_SIZE - 1; i >= 2; i--) {
+            fingerprint = (fingerprint << 8) | (bytes[i] & 0xFF);
+        }
+        BinaryDecoder decoder = DecoderFactory.get().binaryDecoder(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE, null);
+        String type = decoder.readString();
+        String version = decoder.readString();
+        String namespace = decoder.readString();
+        int batchId = decoder.readInt();
+
+        ReaderEntry entry = readerOf(namespace, fingerprint);
+        DbusMessage message = new DbusMessage(DbusMessage.ProtocolType.valueOf(type.toUpperCase()), namespace, batchId);
+        message.getProtocol().setVersion(version.isEmpty() ? null : version);
+        for (DbusMessage.Field field : entry.fields) {
+            message.getSchema().addField(field.getName(), field.dataType(), field.isNullable());
+            message.getSchema().field(field.getName()).setEncoded(field.isEncoded());
+        }
+
+        GenericRecord record = null;
+        for (long n = decoder.readArrayStart(); n > 0; n = decoder.arrayNext()) {
+            for (long i = 0; i < n; i++) {
+                record = entry.reader.read(record, decoder);
+                Object[] tuple = new Object[entry.fields.size()];
+                for (int j = 0; j < tuple.length; j++) {
+                    tuple[j] = UmsAvroSchemas.toUmsValue(entry.fields.get(j), record.get(j));
+                }
+                message.addTuple(tuple);
+            }
+        }
+        return message;
+    }
+
+    private WriterEntry writerOf(DbusMessage.Schema umsSchema) throws Exception {
+        String signature = signature(umsSchema.getFields());
+        WriterEntry entry = writers.get(umsSchema.getNamespace());
+        if (entry != null && entry.signature.equals(signature)) {
+            return entry;
+        }
+        // 新表、meta版本变化或脱敏配置变化,生成并注册新的schema
+        Schema schema = UmsAvroSchemas.toAvroSchema(RECORD_NAME, null, umsSchema.getFields());
+        long fingerprint = fingerprint(schema);
+        registry.register(umsSchema.getNamespace(), fingerprint, schema);
+        entry = new WriterEntry(signature, schema, fingerprint);
+        writers.put(umsSchema.getNamespace(), entry);
+        return entry;
+    }
+
+    private ReaderEntry readerOf(String namespace, long fingerprint) throws Exception {
+        ReaderEntry entry = readers.get(fingerprint);
+        if (entry == null) {
+            Schema schema = registry.lookup(namespace, fingerprint);
+            if (schema == null) {
+                throw new IOException("Avro schema of ums " + namespace + " with fingerprint "
+                        + Long.toHexString(fingerprint) + " not found");
+            }
+            entry = new ReaderEntry(schema);
+            readers.put(fingerprint, entry);
+        }
+        return entry;
+    }
+
+    private static void writeHeader(ByteArrayOutputStream out, long fingerprint) {
+        out.write(MAGIC_0);
+        out.write(MAGIC_1);
+        for (int i = 0; i < 8; i++) {
+            out.write((int) (fingerprint >>> (i * 8)) & 0xFF);
+        }
+    }
+
+    private static String signature(List<DbusMessage.Field> fields) {
+        StringBuilder sb = new StringBuilder(fields.size() * 24);
+        for (DbusMessage.Field field : fields) {
+            sb.append(field.getName()).append(':').append(field.getType()).append(':')
+                    .append(field.isNullable() ? 'n' : 'r').append(field.isEncoded() ? 'e' : '-').append(',');
+        }
+        return sb.toString();
+    }
+
+    private static class WriterEntry {
+        final String signature;
+        final Schema schema;
+        final long fingerprint;
+        final GenericDatumWriter<GenericRecord> writer;
+
+        WriterEntry(String signature, Schema schema, long fingerprint) {
+            this.signature = signature;
+            this.schema = schema;
+            this.fingerprint = fingerprint;
+            this.writer = new GenericDatumWriter<>(schema);
+        }
+    }
+
+    private static class ReaderEntry {
+        final List<DbusMessage.Field> fields;
+        final GenericDatumReader<GenericRecord> reader;
+
+        ReaderEntry(Schema schema) {
+            this.fields = UmsAvroSchemas.toUmsFields(schema);
+            this.reader = new GenericDatumReader<>(schema);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+package com.creditease.dbus.commons.avro;
+
+import com.creditease.dbus.commons.DataType;
+import com.creditease.dbus.commons.DbusMessage;
+import org.apache.avro.Schema;
+import org.codehaus.jackson.node.NullNode;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * UMS schema与avro record schema之间的转换,UMS二进制编码(UmsAvroCodec)和全量快照文件共用:
+ * INT/FLOAT/DOUBLE写为对应的avro类型; LONG写为long,超出long范围的取值(如BIGINT UNSIGNED)写为string;
+ * BINARY写为bytes; 其余类型(DECIMAL、DATE、DATETIME等)保持UMS中的字符串,保证精度、零日期等取值不变;
+ * 脱敏过的列一律写为可为空的string。可为空的列是null与该类型的union, 默认值为null。
+ * UMS类型保存在字段属性中,列名被替换过、脱敏列原本的是否可为空以及脱敏标记也保存在属性中,
+ * 解码时可以还原出完全相同的UMS schema。属性只在必要时写入,使宽表的schema文本尽量短
+ */
+public final class UmsAvroSchemas {
+    public static final String PROP_UMS_NAME = "ums_name";
+    public static final String PROP_UMS_TYPE = "ums_type";
+    public static final String PROP_UMS_NULLABLE = "ums_nullable";
+    public static final String PROP_UMS_ENCODED = "ums_encoded";
+
+    private UmsAvroSchemas() {
+    }
+
+    public static Schema toAvroSchema(String recordName, String namespace, List<DbusMessage.Field> fields) {
+        List<Schema.Field> avroFields = new ArrayList<>(fields.size());
+        for (DbusMessage.Field field : fields) {
+            Schema type = avroType(field);
+            boolean nullable = field.isNullable() || field.isEncoded();
+            if (nullable) {
+                List<Schema> types = new ArrayList<>();
+                types.add(Schema.create(Schema.Type.NULL));
+                if (type.getType() == Schema.Type.UNION) {
+                    types.addAll(type.getTypes());
+                } else {
+                    types.add(type);
+                }
+                type = Schema.createUnion(types);
+            }
+            // 列名不符合avro命名规则时替换非法字符
+            String name = avroName(field.getName());
+            Schema.Field avroField = new Schema.Field(name, type, null, nullable ? NullNode.getInstance() : null);
+            avroField.addProp(PROP_UMS_TYPE, field.getType());
+            if (!name.equals(field.getName())) {
+                avroField.addProp(PROP_UMS_NAME, field.getName());
+            }
+            if (field.isEncoded()) {
+                avroField.addProp(PROP_UMS_ENCODED, "true");
+                avroField.addProp(PROP_UMS_NULLABLE, String.valueOf(field.isNullable()));
+            }
+            avroFields.add(avroField);
+        }
+        Schema schema = Schema.createRecord(avroName(recordName), null, namespace, false);
+        schema.setFields(avroFields);
+        return schema;
+    }
+
+    /**
+     * 由avro schema还原UMS的字段定义
+     */
+    public static List<DbusMessage.Field> toUmsFields(Schema schema) {
+        List<DbusMessage.Field> fields = new ArrayList<>(schema.getFields().size());
+        for (Schema.Field avroField : schema.getFields()) {
+            String name = avroField.getProp(PROP_UMS_NAME);
+            String nullable = avroField.getProp(PROP_UMS_NULLABLE);
+            DbusMessage.Field field = new DbusMessage.Field(name != null ? name : avroField.name(),
+                    DataType.valueOf(avroField.getProp(PROP_UMS_TYPE).toUpperCase()),
+                    nullable != null ? Boolean.parseBoolean(nullable) : avroField.schema().getType() == Schema.Type.UNION
+                            && avroField.schema().getTypes().get(0).getType() == Schema.Type.NULL);
+            field.setEncoded(Boolean.parseBoolean(avroField.getProp(PROP_UMS_ENCODED)));
+            fields.add(field);
+        }
+        return fields;
+    }
+
+    /**
+     * UMS中的取值(DbusMessageBuilder转换之后的值)转换为avro取值
+     */
+    public static Object toAvroValue(DbusMessage.Field field, Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (field.isEncoded()) {
+            return value.toString();
+        }
+        switch (field.dataType()) {
+            case INT:
+                return ((Number) value).intValue();
+            case LONG:
+                String str = value.toString();
+                try {
+                    return Long.parseLong(str);
+                } catch (NumberFormatException e) {
+                    return str;
+                }
+            case FLOAT:
+                return ((Number) value).floatValue();
+            case DOUBLE:
+                return ((Number) value).doubleValue();
+            case BINARY:
+                return ByteBuffer.wrap(Base64.getDecoder().decode(value.toString()));
+            default:
+                return value.toString();
+        }
+    }
+
+    /**
+     * avro取值还原为UMS中的取值
+     */
+    public static Object toUmsValue(DbusMessage.Field field, Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (field.isEncoded()) {
+            return value.toString();
+        }
+        switch (field.dataType()) {
+            case INT:
+            case FLOAT:
+            case DOUBLE:
+                return value;
+            case BINARY:
+                ByteBuffer buffer = (ByteBuffer) value;
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.duplicate().get(bytes);
+                return Base64.getEncoder().encodeToString(bytes);
+            default:
+                // LONG在UMS中也是字符串, avro的string解码为Utf8
+                return value.toString();
+        }
+    }
+
+    private static Schema avroType(DbusMessage.Field field) {
+        if (field.isEncoded()) {
+            return Schema.create(Schema.Type.STRING);
+        }
+        switch (field.dataType()) {
+            case INT:
+                return Schema.create(Schema.Type.INT);
+            case LONG:
+                return Schema.createUnion(Arrays.asList(Schema.create(Schema.Type.LONG), Schema.create(Schema.Type.STRING)));
+            case FLOAT:
+                return Schema.create(Schema.Type.FLOAT);
+            case DOUBLE:
+                return Schema.create(Schema.Type.DOUBLE);
+            case BINARY:
+                return Schema.create(Schema.Type.BYTES);
+            default:
+                return Schema.create(Schema.Type.STRING);
+        }
+    }
+
+    public static String avroName(String name) {
+        String avroName = name.replaceAll("[^A-Za-z0-9_]", "_");
+        return avroName.isEmpty() || Character.isDigit(avroName.charAt(0)) ? "_" + avroName : avroName;
+    }
+}
@@ -0,0 +1,37 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+package com.creditease.dbus.commons.avro;
+
+import org.apache.avro.Schema;
+
+/**
+ * 二进制UMS的avro schema注册中心,每个(namespace, 指纹)只注册一次,消息中只携带指纹
+ */
+public interface UmsSchemaRegistry {
+    /**
+     * 注册schema,已经注册过时直接返回
+     */
+    void register(String namespace, long fingerprint, Schema schema) throws Exception;
+
+    /**
+     * 查询schema,不存在时返回null
+     */
+    Schema lookup(String namespace, long fingerprint) throws Exception;
+}
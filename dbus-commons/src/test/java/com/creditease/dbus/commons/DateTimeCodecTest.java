@@ -0,0 +1,160 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.commons;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 在多个时区下随机生成时间，与原实现(LegacyDateTime)的结果逐一比较
+ */
+public class DateTimeCodecTest {
+    private static final String[] ZONES = {
+            "UTC", "Asia/Shanghai", "America/New_York", "Europe/London", "Australia/Lord_Howe"
+    };
+    private static final int SAMPLES = 20000;
+    /** 1583-01-01 ~ 2100-01-01，覆盖格里高利历切换日之后的常见范围 */
+    private static final long MIN_MILLIS = -12212553600000L;
+    private static final long MAX_MILLIS = 4102444800000L;
+
+    private final TimeZone defaultZone = TimeZone.getDefault();
+    private final Random random = new Random(20171019L);
+
+    @After
+    public void restoreZone() {
+        TimeZone.setDefault(defaultZone);
+        DateTimeCodec.refreshZone();
+    }
+
+    @Test
+    public void formatMysqlTimestampMatchesLegacy() {
+        for (String zone : ZONES) {
+            useZone(zone);
+            for (int i = 0; i < SAMPLES; i++) {
+                Timestamp ts = randomTimestamp();
+                int precision = 19 + random.nextInt(8);
+                assertEquals(zone + " " + ts.getTime() + "/" + ts.getNanos() + " p=" + precision,
+                        LegacyDateTime.formatMysqlTimestamp(ts, precision),
+                        DateTimeCodec.formatMysqlTimestamp(ts, precision));
+            }
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void formatMysqlTimestampRejectsUnknownPrecision() {
+        DateTimeCodec.formatMysqlTimestamp(new Timestamp(0L), 27);
+    }
+
+    @Test
+    public void formatOracleTimestampMatchesLegacy() {
+        for (String zone : ZONES) {
+            useZone(zone);
+            for (int i = 0; i < SAMPLES; i++) {
+                Timestamp ts = randomTimestamp();
+                int scale = random.nextInt(10);
+                assertEquals(zone + " " + ts.getTime() + "/" + ts.getNanos() + " s=" + scale,
+                        LegacyDateTime.formatOracleTimestamp(ts, scale),
+                        DateTimeCodec.formatOracleTimestamp(ts, scale));
+            }
+        }
+    }
+
+    @Test
+    public void parseMillisMatchesLegacy() throws Exception {
+        for (String zone : ZONES) {
+            useZone(zone);
+            SimpleDateFormat seconds = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+            for (int i = 0; i < SAMPLES; i++) {
+                Timestamp ts = randomTimestamp();
+                String text = LegacyDateTime.formatMysqlTimestamp(ts, 23 + random.nextInt(4));
+                assertEquals(zone + " " + text, LegacyDateTime.getTimeMills(text), DateTimeCodec.parseMillis(text));
+
+                // 原实现不支持19位的输入(substring越界)，与SimpleDateFormat比较
+                String short19 = text.substring(0, 19);
+                assertEquals(zone + " " + short19, seconds.parse(short19).getTime(), DateTimeCodec.parseMillis(short19));
+            }
+        }
+    }
+
+    /**
+     * 以15分钟为步长遍历一整年，覆盖各时区夏令时切换当天的每个时刻
+     */
+    @Test
+    public void transitionDaysMatchLegacy() throws Exception {
+        long from = 1483228800000L; // 2017-01-01 UTC
+        long to = from + 366 * 86400000L;
+        for (String zone : ZONES) {
+            useZone(zone);
+            for (long millis = from; millis < to; millis += 15 * 60000L) {
+                Timestamp ts = new Timestamp(millis);
+                String text = LegacyDateTime.formatMysqlTimestamp(ts, 23);
+                assertEquals(zone + " " + text, text, DateTimeCodec.formatMysqlTimestamp(ts, 23));
+                assertEquals(zone + " " + text, LegacyDateTime.getTimeMills(text), DateTimeCodec.parseMillis(text));
+            }
+        }
+    }
+
+    @Test
+    public void normalizeDateTimeMatchesLegacy() {
+        for (int i = 0; i < SAMPLES; i++) {
+            String text = LegacyDateTime.formatMysqlTimestamp(randomTimestamp(), 19 + random.nextInt(8));
+            if (random.nextBoolean()) {
+                text = text.replaceFirst(" ", ":");
+            }
+            if (random.nextBoolean()) {
+                text = text + "000";
+            }
+            assertEquals(text, LegacyDateTime.normalizeDateTime(text), DateTimeCodec.normalizeDateTime(text));
+        }
+    }
+
+    private void useZone(String id) {
+        TimeZone.setDefault(TimeZone.getTimeZone(id));
+        DateTimeCodec.refreshZone();
+    }
+
+    private Timestamp randomTimestamp() {
+        long millis = MIN_MILLIS + (long) (random.nextDouble() * (MAX_MILLIS - MIN_MILLIS));
+        Timestamp ts = new Timestamp(millis - Math.floorMod(millis, 1000L));
+        switch (random.nextInt(4)) {
+            case 0:
+                ts.setNanos(0);
+                break;
+            case 1:
+                ts.setNanos(random.nextInt(1000) * 1000000);
+                break;
+            case 2:
+                ts.setNanos(random.nextInt(1000000) * 1000);
+                break;
+            default:
+                ts.setNanos(random.nextInt(1000000000));
+                break;
+        }
+        return ts;
+    }
+}
@@ -0,0 +1,178 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.commons;
+
+import java.sql.Timestamp;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
+/**
+ * DateTimeCodec替换之前的实现,原样保留用于对比测试
+ */
+@SuppressWarnings("deprecation")
+final class LegacyDateTime {
+
+    private LegacyDateTime() {
+    }
+
+    /**
+     * 原 Utils.getTimeMills
+     */
+    static long getTimeMills(String timeStr) throws ParseException {
+        String ptn = "yyyy-MM-dd HH:mm:ss.SSS";
+        timeStr = timeStr.substring(0, 23);
+        if (timeStr.length() == 19) {
+            ptn = "yyyy-MM-dd HH:mm:ss";
+        }
+
+        DateFormat df = new SimpleDateFormat(ptn);
+        return df.parse(timeStr).getTime();
+    }
+
+    /**
+     * 原 DbusMessageBuilder 中的日期规整
+     */
+    static String normalizeDateTime(String dateStr) {
+        StringBuilder buf = new StringBuilder(dateStr);
+        if(!dateStr.contains(" ")) {
+            int idx = dateStr.indexOf(":");
+            if(idx!=-1){
+                buf.replace(idx, idx + 1, " ");
+            }
+        }
+        if (dateStr.length() > 26) {
+            buf.delete(26, dateStr.length());
+        }
+        return buf.toString();
+    }
+
+    /**
+     * 原 PagedBatchDataFetchingBolt 中mysql timestamp的格式化
+     */
+    static String formatMysqlTimestamp(Timestamp ts, int precision) {
+        int meta = precision - 20;
+        if (meta > 6) {
+            throw new RuntimeException("unknow useconds meta : " + meta);
+        }
+
+        int year = ts.getYear() + 1900;
+        int month = ts.getMonth() + 1;
+        int day = ts.getDate();
+        int hour = ts.getHours();
+        int minute = ts.getMinutes();
+        int second = ts.getSeconds();
+        int nanos = ts.getNanos();
+        String yearString;
+        String monthString;
+        String dayString;
+        String hourString;
+        String minuteString;
+        String secondString;
+        String nanosString;
+        String zeros = "000000000";
+        String yearZeros = "0000";
+        StringBuffer timestampBuf;
+
+        if (year < 1000) {
+            // Add leading zeros
+            yearString = "" + year;
+            yearString = yearZeros.substring(0, (4-yearString.length())) +
+                    yearString;
+        } else {
+            yearString = "" + year;
+        }
+        if (month < 10) {
+            monthString = "0" + month;
+        } else {
+            monthString = Integer.toString(month);
+        }
+        if (day < 10) {
+            dayString = "0" + day;
+        } else {
+            dayString = Integer.toString(day);
+        }
+        if (hour < 10) {
+            hourString = "0" + hour;
+        } else {
+            hourString = Integer.toString(hour);
+        }
+        if (minute < 10) {
+            minuteString = "0" + minute;
+        } else {
+            minuteString = Integer.toString(minute);
+        }
+        if (second < 10) {
+            secondString = "0" + second;
+        } else {
+            secondString = Integer.toString(second);
+        }
+
+        //make nanoString length as 9.
+        if (nanos == 0) {
+            nanosString = zeros.substring(0, 9);
+        } else {
+            nanosString = Integer.toString(nanos);
+        }
+
+        // Add leading zeros
+        nanosString = zeros.substring(0, (9-nanosString.length())) +
+                nanosString;
+
+        if (meta <= 0) {
+            nanosString = "";
+        } else {
+            //truncate nanoString by meta
+            nanosString = "." + nanosString.substring(0, meta);
+        }
+
+        // do a string buffer here instead.
+        timestampBuf = new StringBuffer(20+nanosString.length());
+        timestampBuf.append(yearString);
+        timestampBuf.append("-");
+        timestampBuf.append(monthString);
+        timestampBuf.append("-");
+        timestampBuf.append(dayString);
+        timestampBuf.append(" ");
+        timestampBuf.append(hourString);
+        timestampBuf.append(":");
+        timestampBuf.append(minuteString);
+        timestampBuf.append(":");
+        timestampBuf.append(secondString);
+        timestampBuf.append(nanosString);
+
+        return (timestampBuf.toString());
+    }
+
+    /**
+     * 原 PagedBatchDataFetchingBolt 中oracle timestamp的格式化
+     */
+    static String formatOracleTimestamp(Timestamp ts, int scale) {
+        String timeStamp = ts.toString();
+        String timeStampLastPart = timeStamp.substring(timeStamp.lastIndexOf(".") + 1, timeStamp.length());
+        int needAdd = scale - timeStampLastPart.length();
+        while(needAdd > 0) {
+            timeStamp += "0";
+            needAdd--;
+        }
+        return timeStamp;
+    }
+}
@@ -0,0 +1,261 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+package com.creditease.dbus.commons.avro;
+
+import org.apache.avro.Schema;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.creditease.dbus.commons.DataType;
+import com.creditease.dbus.commons.DbusMessage;
+import com.creditease.dbus.commons.DbusMessageBuilder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 用内存中的schema注册中心编码再解码，核对还原出的UMS schema和取值与原消息一致
+ */
+public class UmsAvroCodecTest {
+    private static final String NAMESPACE = "mysql.db1.schema1.t1.5.0.0";
+    private static final String TS = "2017-10-19 12:00:00.000";
+    /** BIGINT UNSIGNED的最大值，超出java long的范围 */
+    private static final String UNSIGNED_MAX = "18446744073709551615";
+
+    private MemoryRegistry registry;
+    private UmsAvroCodec codec;
+
+    @Before
+    public void setUp() {
+        registry = new MemoryRegistry();
+        codec = new UmsAvroCodec(registry);
+    }
+
+    @Test
+    public void roundTripsValuesAndNulls() throws Exception {
+        DbusMessage message = message(false);
+        DbusMessage decoded = codec.decode(codec.encode(message));
+
+        assertSameMessage(message, decoded);
+        List<Object> row = decoded.getPayload().get(1).getTuple();
+        assertNull(row.get(5));
+        assertNull(row.get(7));
+        assertNull(row.get(8));
+        assertNull(row.get(9));
+    }
+
+    @Test
+    public void keepsUnsignedLongBeyondLongRange() throws Exception {
+        DbusMessage decoded = codec.decode(codec.encode(message(false)));
+
+        List<Object> row = decoded.getPayload().get(0).getTuple();
+        assertEquals(UNSIGNED_MAX, row.get(5));
+        // 在long范围内的LONG也还原为UMS中的字符串
+        assertEquals("1", row.get(0));
+        assertEquals("9223372036854775807", decoded.getPayload().get(2).getTuple().get(5));
+    }
+
+    @Test
+    public void roundTripsBinaryThroughBytes() throws Exception {
+        DbusMessage message = message(false);
+        DbusMessage.Field field = message.getSchema().field("data");
+        // UMS中BINARY为base64字符串，avro中为bytes
+        Object avroValue = UmsAvroSchemas.toAvroValue(field, message.getPayload().get(0).getTuple().get(9));
+        assertTrue(avroValue instanceof ByteBuffer);
+        assertEquals(4, ((ByteBuffer) avroValue).remaining());
+
+        DbusMessage decoded = codec.decode(codec.encode(message));
+        String base64 = (String) decoded.getPayload().get(0).getTuple().get(9);
+        assertEquals(message.getPayload().get(0).getTuple().get(9), base64);
+        byte[] bytes = Base64.getDecoder().decode(base64);
+        assertEquals(4, bytes.length);
+        assertEquals((byte) 0xFF, bytes[3]);
+    }
+
+    @Test
+    public void keepsEncodedFields() throws Exception {
+        DbusMessage message = message(true);
+        DbusMessage decoded = codec.decode(codec.encode(message));
+
+        assertSameMessage(message, decoded);
+        DbusMessage.Field phone = decoded.getSchema().field("phone");
+        assertTrue(phone.isEncoded());
+        assertFalse(phone.isNullable());
+        // 脱敏后INT列的取值是字符串
+        DbusMessage.Field salary = decoded.getSchema().field("salary");
+        assertTrue(salary.isEncoded());
+        assertEquals(DataType.INT, salary.dataType());
+        assertEquals("****", decoded.getPayload().get(0).getTuple().get(7));
+        assertFalse(decoded.getSchema().field("amount").isEncoded());
+        // 脱敏标记不同的schema指纹不同
+        assertEquals(1, registry.size());
+        codec.encode(message(false));
+        assertEquals(2, registry.size());
+    }
+
+    @Test
+    public void tellsBinaryFromJson() throws Exception {
+        DbusMessage message = message(false);
+        byte[] json = message.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] binary = codec.encode(message);
+
+        assertTrue(UmsAvroCodec.isBinary(binary));
+        assertFalse(UmsAvroCodec.isBinary(json));
+        assertFalse(UmsAvroCodec.isBinary(null));
+        assertFalse(UmsAvroCodec.isBinary(new byte[]{UmsAvroCodec.MAGIC_0, UmsAvroCodec.MAGIC_1}));
+        try {
+            codec.decode(json);
+            fail("json message is not binary");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void registersNewSchemaWhenFieldsChange() throws Exception {
+        DbusMessage before = message(false);
+        byte[] first = codec.encode(before);
+        codec.encode(message(false));
+        assertEquals("same fields register once", 1, registry.size());
+
+        // 同一namespace下加了一列
+        DbusMessage after = builder(false).appendSchema("remark", DataType.STRING, true)
+                .appendPayload(new Object[]{"4", TS, "i", "4", 4, "4", "d", null, "1.00", null, "r4"})
+                .getMessage();
+        byte[] second = codec.encode(after);
+        assertEquals(2, registry.size());
+        assertNotEquals(fingerprintOf(first), fingerprintOf(second));
+
+        // 新旧两个版本的消息都能解码，另一个实例只凭注册中心也能解码
+        UmsAvroCodec other = new UmsAvroCodec(registry);
+        for (UmsAvroCodec c : new UmsAvroCodec[]{codec, other}) {
+            assertSameMessage(before, c.decode(first));
+            DbusMessage decoded = c.decode(second);
+            assertSameMessage(after, decoded);
+            assertEquals("r4", decoded.getPayload().get(0).getTuple().get(10));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void failsWhenSchemaIsNotRegistered() throws Exception {
+        byte[] bytes = codec.encode(message(false));
+        new UmsAvroCodec(new MemoryRegistry()).decode(bytes);
+    }
+
+    /**
+     * 三行数据：第二行可为空的列都为null，第三行LONG为long的最大值。encoded为true时phone和salary列被脱敏
+     */
+    private static DbusMessage message(boolean encoded) {
+        DbusMessageBuilder builder = builder(encoded);
+        builder.appendPayload(new Object[]{"1", TS, "i", "1", 1, UNSIGNED_MAX, "13800000000", 8000, "1.50",
+                new String(new byte[]{0, 1, 'a', (byte) 0xFF}, StandardCharsets.ISO_8859_1)});
+        builder.appendPayload(new Object[]{"2", TS, "u", "2", 2, null, "13900000000", null, null, null});
+        builder.appendPayload(new Object[]{"3", TS, "d", "3", 3, Long.MAX_VALUE, "13700000000", 9000, "0.00", ""});
+        DbusMessage message = builder.getMessage();
+        if (encoded) {
+            message.getSchema().field("phone").setEncoded(true);
+            message.getSchema().field("salary").setEncoded(true);
+            for (int row = 0; row < message.getPayload().size(); row++) {
+                message.setMessageValue("phone", "138****0000", row);
+                if (message.messageValue("salary", row) != null) {
+                    message.setMessageValue("salary", "****", row);
+                }
+            }
+        }
+        return message;
+    }
+
+    private static DbusMessageBuilder builder(boolean encoded) {
+        DbusMessageBuilder builder = new DbusMessageBuilder();
+        builder.build(DbusMessage.ProtocolType.DATA_INCREMENT_DATA, NAMESPACE, 3);
+        builder.appendSchema("id", DataType.INT, false);
+        builder.appendSchema("big", DataType.LONG, true);
+        builder.appendSchema("phone", DataType.STRING, false);
+        builder.appendSchema("salary", DataType.INT, true);
+        builder.appendSchema("amount", DataType.DECIMAL, true);
+        builder.appendSchema("data", DataType.BINARY, true);
+        return builder;
+    }
+
+    private static void assertSameMessage(DbusMessage expected, DbusMessage actual) {
+        assertEquals(expected.getProtocol().getType(), actual.getProtocol().getType());
+        assertEquals(expected.getProtocol().getVersion(), actual.getProtocol().getVersion());
+        assertEquals(expected.getSchema().getNamespace(), actual.getSchema().getNamespace());
+        assertEquals(expected.getSchema().getBatchId(), actual.getSchema().getBatchId());
+        List<DbusMessage.Field> fields = expected.getSchema().getFields();
+        assertEquals(fields.size(), actual.getSchema().getFields().size());
+        for (int i = 0; i < fields.size(); i++) {
+            DbusMessage.Field e = fields.get(i);
+            DbusMessage.Field a = actual.getSchema().getFields().get(i);
+            assertEquals(e.getName(), a.getName());
+            assertEquals(e.getType(), a.getType());
+            assertEquals(e.getName(), e.isNullable(), a.isNullable());
+            assertEquals(e.getName(), e.isEncoded(), a.isEncoded());
+        }
+        assertEquals(expected.getPayload().size(), actual.getPayload().size());
+        for (int row = 0; row < expected.getPayload().size(); row++) {
+            assertEquals("row " + row, expected.getPayload().get(row).getTuple(), actual.getPayload().get(row).getTuple());
+        }
+    }
+
+    private static long fingerprintOf(byte[] bytes) {
+        long fingerprint = 0;
+        for (int i = 9; i >= 2; i--) {
+            fingerprint = (fingerprint << 8) | (bytes[i] & 0xFF);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * 内存中的注册中心，重复注册同一指纹时只保留第一次的schema
+     */
+    private static class MemoryRegistry implements UmsSchemaRegistry {
+        private final Map<String, Schema> schemas = new HashMap<>();
+
+        @Override
+        public void register(String namespace, long fingerprint, Schema schema) {
+            String key = namespace + "/" + fingerprint;
+            if (!schemas.containsKey(key)) {
+                schemas.put(key, schema);
+            }
+        }
+
+        @Override
+        public Schema lookup(String namespace, long fingerprint) {
+            return schemas.get(namespace + "/" + fingerprint);
+        }
+
+        int size() {
+            return schemas.size();
+        }
+    }
+}
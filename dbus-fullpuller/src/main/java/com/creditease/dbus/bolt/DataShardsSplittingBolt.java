@@ -37,6 +37,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.alibaba.fastjson.JSONObject;
+import com.creditease.dbus.common.ChecksumSyncPlanner;
 import com.creditease.dbus.common.CommandCtrl;
 import com.creditease.dbus.common.DBHelper;
 import com.creditease.dbus.common.DataPullConstants;
@@ -168,6 +169,8 @@ public class DataShardsSplittingBolt extends BaseRichBolt {
             //获取分片列
             String splitByCol = DBHelper.getSplitColumn(dbManager, dbConf);
             LOG.info("Will use col [{}] to split data.", splitByCol);
+            // 清理该表以前拉取遗留的分片断点
+            FullPullHelper.cleanShardCheckpoints(zkService, dataSourceInfo);
             // oracleManager.checkTableImportOptions();
             //根据分片列获取分片信息
             Map<String,Object> splitInfoMap = inputFormat.getSplits(splitByCol, dbManager, dataSourceInfo, zkService);
@@ -177,6 +180,14 @@ public class DataShardsSplittingBolt extends BaseRichBolt {
 
             //分片信息列表
             List<InputSplit> inputSplitList = (List<InputSplit>)splitInfoMap.get(Constants.TABLE_SPLITTED_SHARD_SPLITS_KEY);
+            ChecksumSyncPlanner checksumPlanner = null;
+            if (ChecksumSyncPlanner.isChecksumMode(dataSourceInfo)) {
+                //校验和同步，只拉取校验值发生变化的数据块
+                checksumPlanner = new ChecksumSyncPlanner(zkService, dbManager, dbConf, dataSourceInfo, commonProps);
+                checksumPlanner.plan(inputSplitList, splitByCol);
+                inputSplitList = checksumPlanner.getSyncSplits();
+                totalRows = (int) checksumPlanner.getSyncRows();
+            }
             //总共分为多少片
             int splitsCount = inputSplitList.size();
             //向monitor节点写分片信息
@@ -194,6 +205,9 @@ public class DataShardsSplittingBolt extends BaseRichBolt {
                 JSONObject inputSplitJsonObject = (JSONObject) JSONObject.toJSON(inputSplit);
                 wrapperObject.put(DataPullConstants.DATA_CHUNK_SPLIT, inputSplitJsonObject);
                 wrapperObject.put(DataPullConstants.DATA_CHUNK_SPLIT_INDEX, ++splitIndex);
+                if (checksumPlanner != null) {
+                    wrapperObject.put(DataPullConstants.DATA_CHUNK_CHECKSUMS, checksumPlanner.getChunkChecksums(inputSplit));
+                }
                 
                 String fullPullMediantTopic = commonProps.getProperty(Constants.ZkTopoConfForFullPull.FULL_PULL_MEDIANT_TOPIC);
                 ProducerRecord record = new ProducerRecord<>(fullPullMediantTopic, DataPullConstants.DATA_EVENT_FULL_PULL_REQ, wrapperObject.toString().getBytes());
@@ -201,6 +215,10 @@ public class DataShardsSplittingBolt extends BaseRichBolt {
                 producedRecord = future.get();
                 LOG.info("{}:完成分片，完成第{}片分片, 所属分区：{}", dsKey + "." + inputSplit.getTargetTableName(), splitIndex, inputSplit.getTablePartitionInfo());
             }
+            if (splitsCount == 0) {
+                //校验和同步没有发现变化，没有分片交给拉取进程，在这里结束拉取
+                finishWithoutShards(dataSourceInfo);
+            }
             collector.ack(input);
             LOG.info("{}:完成分片，总共分为{}片", dsKey, splitsCount);
             try {
@@ -228,6 +246,19 @@ public class DataShardsSplittingBolt extends BaseRichBolt {
         }
     }
     
+    private void finishWithoutShards(String dataSourceInfo) throws Exception {
+        String dbNameSpace = FullPullHelper.getDbNameSpace(dataSourceInfo);
+        String currentTimeStampString = FullPullHelper.getCurrentTimeStampString();
+        ProgressInfo progressObj = FullPullHelper.getMonitorInfoFromZk(zkService, dbNameSpace);
+        progressObj.setUpdateTime(currentTimeStampString);
+        progressObj.setFinishedCount("0");
+        progressObj.setFinishedRows("0");
+        progressObj.setEndTime(currentTimeStampString);
+        progressObj.setStatus(Constants.FULL_PULL_STATUS_ENDING);
+        FullPullHelper.updateMonitorFinishPartitionInfo(zkService, dbNameSpace, progressObj);
+        FullPullHelper.finishPullReport(zkService, dataSourceInfo, currentTimeStampString, Constants.DataTableStatus.DATA_STATUS_OK, null);
+    }
+
     public void stopTopo(Tuple input) {
         String data = (String) input.getValue(0);
         try {
@@ -20,6 +20,10 @@
 
 package com.creditease.dbus.bolt;
 
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -48,15 +52,21 @@ import org.apache.storm.tuple.Values;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 import com.creditease.dbus.common.DBHelper;
 import com.creditease.dbus.common.DataPullConstants;
 import com.creditease.dbus.common.FullPullHelper;
+import com.creditease.dbus.common.ShardCheckpoint;
+import com.creditease.dbus.common.SnapshotFileWriter;
+import com.creditease.dbus.common.SourceHealthProbe;
+import com.creditease.dbus.common.SourceLoadController;
 import com.creditease.dbus.common.utils.DBConfiguration;
 import com.creditease.dbus.common.utils.DBRecordReader;
 import com.creditease.dbus.common.utils.DataDrivenDBInputFormat;
 import com.creditease.dbus.commons.Constants;
 import com.creditease.dbus.commons.DataType;
+import com.creditease.dbus.commons.DateTimeCodec;
 import com.creditease.dbus.commons.DbusMessage;
 import com.creditease.dbus.commons.DbusMessageBuilder;
 import com.creditease.dbus.commons.ZkService;
@@ -82,12 +92,19 @@ public class PagedBatchDataFetchingBolt extends BaseRichBolt {
     private Producer stringProducer;
     private Map confMap;
     private String resultTopic;
+    /** 快照文件写在本worker的本地磁盘上，就绪消息中带上主机名供下游定位文件 */
+    private String hostName;
 
     public void prepare(Map conf, TopologyContext context, OutputCollector collector) {
         this.collector = collector;
         this.topologyId = (String) conf.get(Constants.StormConfigKey.FULL_PULLER_TOPOLOGY_ID);
         this.zkconnect = (String) conf.get(Constants.StormConfigKey.ZKCONNECT);
         this.zkTopoRoot = Constants.TOPOLOGY_ROOT + "/" + Constants.FULL_PULLING_PROPS_ROOT;
+        try {
+            this.hostName = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            LOG.warn("Can't resolve the host name of this worker, snapshot messages will carry no host.", e);
+        }
         loadRunningConf(null);
     }
 
@@ -95,9 +112,7 @@ public class PagedBatchDataFetchingBolt extends BaseRichBolt {
         String dsKey = null;
         JSONObject jsonObject = null;
         String dataSourceInfo = null;
-        ResultSet rs = null;
-        GenericJdbcManager dbManager = null;
-        DBRecordReader dbRecordReader = null;
+        ZkService localZkService = null;
         String msg = (String) input.getValue(0);
         try {
             jsonObject = JSONObject.parseObject(msg);
@@ -129,7 +144,7 @@ public class PagedBatchDataFetchingBolt extends BaseRichBolt {
              * 以保持UMS_UID的有序递增（不要求连续）
              */
 
-            ZkService localZkService = reloadZkServiceRunningConf();
+            localZkService = reloadZkServiceRunningConf();
             if(localZkService == null) {
                 LOG.error("generate new zkservice failed for ums_uid, stop pulling");
                 return;
@@ -148,43 +163,171 @@ public class PagedBatchDataFetchingBolt extends BaseRichBolt {
                 return;
             }
 
-            String splitIndex = dataSplitShard.getString(DataPullConstants.DATA_CHUNK_SPLIT_INDEX);
-            String totalRows = dataSplitShard.getString(DataPullConstants.ZkMonitoringJson.DB_NAMESPACE_NODE_TOTAL_ROWS);
-            String startSecs = dataSplitShard.getString(DataPullConstants.ZkMonitoringJson.DB_NAMESPACE_NODE_START_SECS);
-            String totalPartitions = dataSplitShard.getString(DataPullConstants.DATA_CHUNK_COUNT);
+            ShardContext ctx = new ShardContext();
+            ctx.dataSourceInfo = dataSourceInfo;
+            ctx.dbNameSpace = dbNameSpace;
+            ctx.batchNo = batchNo;
+            ctx.pos = payloadObject.getString(DataPullConstants.FULL_DATA_PULL_REQ_PAYLOAD_POS);
+            ctx.localZkService = localZkService;
+            ctx.splitIndex = dataSplitShard.getString(DataPullConstants.DATA_CHUNK_SPLIT_INDEX);
+            ctx.totalRows = dataSplitShard.getString(DataPullConstants.ZkMonitoringJson.DB_NAMESPACE_NODE_TOTAL_ROWS);
+            ctx.startSecs = dataSplitShard.getString(DataPullConstants.ZkMonitoringJson.DB_NAMESPACE_NODE_START_SECS);
+            ctx.totalPartitions = dataSplitShard.getString(DataPullConstants.DATA_CHUNK_COUNT);
 
             JSONObject inputSplitJsonObject = dataSplitShard.getJSONObject(DataPullConstants.DATA_CHUNK_SPLIT);
-            DataDrivenDBInputFormat.DataDrivenDBInputSplit inputSplit = inputSplitJsonObject
-                    .toJavaObject(DataDrivenDBInputFormat.DataDrivenDBInputSplit.class);
-            String tablePartition = inputSplit.getTablePartitionInfo();
+            ctx.inputSplit = inputSplitJsonObject.toJavaObject(DataDrivenDBInputFormat.DataDrivenDBInputSplit.class);
+            String tablePartition = ctx.inputSplit.getTablePartitionInfo();
             tablePartition = StringUtils.isNotBlank(tablePartition) ? tablePartition : "NONE";
 
-            DBConfiguration dbConf = FullPullHelper.getDbConfiguration(dataSourceInfo);
-            String logicalTableName = dbConf.getInputTableName();
-            String datasourceType = dbConf.getString(DBConfiguration.DataSourceInfo.DS_TYPE);
-            String targetTableName = inputSplit.getTargetTableName();
+            ctx.dbConf = FullPullHelper.getDbConfiguration(dataSourceInfo);
+            ctx.logicalTableName = ctx.dbConf.getInputTableName();
+            ctx.datasourceType = ctx.dbConf.getString(DBConfiguration.DataSourceInfo.DS_TYPE);
+            String targetTableName = ctx.inputSplit.getTargetTableName();
 
-            resultTopic = (String) dbConf.get(DBConfiguration.DataSourceInfo.OUTPUT_TOPIC);
+            resultTopic = (String) ctx.dbConf.get(DBConfiguration.DataSourceInfo.OUTPUT_TOPIC);
             //Oracle的情况，patition默认设为0.Mysql,有分表的，为分表名。无分表的，为0。
-            String splittedTableInfo = "0";
-            if(!targetTableName.equalsIgnoreCase(logicalTableName)) { //目标表名和逻辑表名不一致，表示是分表。
-                splittedTableInfo = targetTableName.indexOf(".") == -1
+            ctx.splittedTableInfo = "0";
+            if(!targetTableName.equalsIgnoreCase(ctx.logicalTableName)) { //目标表名和逻辑表名不一致，表示是分表。
+                ctx.splittedTableInfo = targetTableName.indexOf(".") == -1
                         ? targetTableName
                         : targetTableName.split("\\.")[1];//目标表名可能带schema。partion内容是不带schema的分表名
             }
 
-            String resultKey = dbConf.getKafkaKey(dataSourceInfo, splittedTableInfo);
-            dsKey = FullPullHelper.getDataSourceKey(dsObject) + "." + splittedTableInfo;
-            dbManager = FullPullHelper.getDbManager(dbConf, dbConf.getString(DBConfiguration.DataSourceInfo.URL_PROPERTY_READ_ONLY));
-            String opTs = dbConf.getString(DBConfiguration.DATA_IMPORT_OP_TS);
+            ctx.resultKey = ctx.dbConf.getKafkaKey(dataSourceInfo, ctx.splittedTableInfo);
+            dsKey = FullPullHelper.getDataSourceKey(dsObject) + "." + ctx.splittedTableInfo;
+            ctx.dsKey = dsKey;
+            ctx.opTs = ctx.dbConf.getString(DBConfiguration.DATA_IMPORT_OP_TS);
+
+            // 输出快照文件的表，分片数据写入 <snapshot.path>/<dbNameSpace>/s<seqno> 下的文件
+            if (isSnapshotTable(ctx.logicalTableName)) {
+                String seqNo = payloadObject.getString(DataPullConstants.FULL_DATA_PULL_REQ_PAYLOAD_SEQNO);
+                ctx.snapshotDir = new File(commonProps.getProperty(DataPullConstants.SNAPSHOT_PATH), dbNameSpace + "/s" + seqNo).getPath();
+            }
+
+            // 开启shard.resume.enabled、分片列是拉取的列且类型可续拉时，按分片列排序读取，失败后从断点继续；否则失败后整片重拉
+            // 快照文件每次尝试都重新生成，不续拉
+            ctx.keyIndex = ShardCheckpoint.isResumable(ctx.inputSplit)
+                    ? indexOfField(ctx.dbConf.getInputFieldNames(), ctx.inputSplit.getSplitCol()) : -1;
+            boolean resumable = isResumeEnabled() && ctx.keyIndex > 0 && ctx.snapshotDir == null;
+
+            // 断点只在worker重启等情况下分片被再次处理时才会存在
+            ShardCheckpoint checkpoint = FullPullHelper.getShardCheckpoint(zkService, dataSourceInfo, ctx.splitIndex);
+            if (checkpoint == null) {
+                checkpoint = new ShardCheckpoint();
+            } else {
+                LOG.info("{}:found checkpoint of split {}, last key {}, {} rows sent, {} rows reported.", dsKey,
+                        ctx.splitIndex, checkpoint.getLastKey(), checkpoint.getRows(), checkpoint.getReportedRows());
+            }
 
-            AtomicLong sendCnt = new AtomicLong(0);
-            AtomicLong recvCnt = new AtomicLong(0);
-            AtomicBoolean isError = new AtomicBoolean(false);
             long startTime = System.currentTimeMillis();
+            int retryTimes = getShardRetryTimes();
+            long shardRows;
+            for (int attempt = 0; ; attempt++) {
+                if (!resumable || checkpoint.getLastKey() == null) {
+                    checkpoint.restart();
+                }
+                // 源库负载高时限制同时读取的分片数
+                SourceLoadController throttle = SourceLoadController.of(dsName);
+                throttle.acquire();
+                try {
+                    shardRows = fetchShard(input, ctx, checkpoint, resumable, throttle);
+                    break;
+                } catch (Exception e) {
+                    if (attempt >= retryTimes) {
+                        throw e;
+                    }
+                    LOG.warn(dsKey + ":fetching split " + ctx.splitIndex + " failed, retry " + (attempt + 1) + "/" + retryTimes
+                            + (resumable ? " from key " + checkpoint.getLastKey() + " with " + checkpoint.getRows() + " rows sent." : " from the beginning."), e);
+                } finally {
+                    throttle.release();
+                }
+            }
+            if (shardRows < 0) {
+                // 其他分片已经出错，tuple已经fail
+                return;
+            }
+
+            // 最后一次汇报修正为分片的准确行数
+            emitMonitorState(input, dataSourceInfo, dbNameSpace, shardRows - checkpoint.getReportedRows(), ctx.startSecs, ctx.totalRows, ctx.totalPartitions, 1);//最后一个参数：完成一片，计数1
+            FullPullHelper.deleteShardCheckpoint(zkService, dataSourceInfo, ctx.splitIndex);
+            // 校验和同步的分片拉取成功后才保存数据块校验值
+            JSONArray chunkChecksums = jsonObject.getJSONArray(DataPullConstants.DATA_CHUNK_CHECKSUMS);
+            if (chunkChecksums != null) {
+                FullPullHelper.saveChunkChecksums(zkService, dataSourceInfo, chunkChecksums);
+            }
+            long endTime = (System.currentTimeMillis() - startTime) / 1000;
+            LOG.info("{}:the batchDataFetchBolt deal split {}, finished {} rows,consume time {}s.  Partition Info:{}", dsKey, ctx.splitIndex, shardRows, endTime, tablePartition);
+            collector.ack(input);
+        } catch (Exception e) {
+            String errorMsg = dsKey + ":Exception happened when fetching data of split: " + jsonObject.toJSONString() + "."
+                    + e.getMessage();
+            LOG.error(errorMsg, e);
+            FullPullHelper.finishPullReport(zkService,dataSourceInfo, FullPullHelper.getCurrentTimeStampString(),
+                        Constants.DataTableStatus.DATA_STATUS_ABORT, errorMsg);
+            collector.fail(input);
+        } finally {
+            /**
+             * 临时的UMS_UID的zkservice需要关闭
+             */
+            try {
+                if (localZkService != null) {
+                    localZkService.close();
+                }
+            } catch (Exception e) {
+                LOG.error(e.getMessage(), e);
+            }
+        }
+    }
 
-            dbRecordReader = DBHelper.getRecordReader(dbManager, dbConf, inputSplit, logicalTableName);
-            rs = dbRecordReader.queryData(datasourceType, splitIndex);
+    /**
+     * 从checkpoint记录的断点开始拉取一个分片，数据经kafka确认后推进断点，并按监控间隔将断点写入zk。
+     * 每页数据发送后把读取耗时汇报给throttle，并按其返回的时间停顿。
+     * 输出快照文件的分片数据写入文件后即推进断点，文件完成后向result topic发送一条data_initial_snapshot消息
+     * @return 分片的总行数(含断点之前已发送的行)；其他分片已出错时返回-1，此时tuple已经fail
+     */
+    private long fetchShard(Tuple input, ShardContext ctx, ShardCheckpoint checkpoint, boolean resumable,
+                            SourceLoadController throttle) throws Exception {
+        GenericJdbcManager dbManager = null;
+        DBRecordReader dbRecordReader = null;
+        ResultSet rs = null;
+        AtomicLong sendCnt = new AtomicLong(0);
+        AtomicLong recvCnt = new AtomicLong(0);
+        AtomicBoolean isError = new AtomicBoolean(false);
+        SnapshotFileWriter snapshotWriter = null;
+        checkpoint.resetBatches();
+        try {
+            DBConfiguration dbConf = ctx.dbConf;
+            if (ctx.snapshotDir != null) {
+                String tableName = ctx.logicalTableName.substring(ctx.logicalTableName.indexOf(".") + 1);
+                snapshotWriter = new SnapshotFileWriter(ctx.snapshotDir, ctx.splittedTableInfo + "_" + ctx.splitIndex,
+                        tableName, commonProps.getProperty(DataPullConstants.SNAPSHOT_FORMAT),
+                        commonProps.getProperty(DataPullConstants.SNAPSHOT_CODEC));
+            }
+            DataDrivenDBInputFormat.DataDrivenDBInputSplit inputSplit = ctx.inputSplit;
+            int keyType = inputSplit.getSqlType();
+            Comparable lastKey = null;
+            if (resumable && checkpoint.getLastKey() != null) {
+                lastKey = ShardCheckpoint.parseKey(checkpoint.getLastKey(), keyType);
+                inputSplit = checkpoint.continueSplit(inputSplit);
+                LOG.info("{}:split_index {} resumes from key {}, {} rows already sent.", ctx.dsKey, ctx.splitIndex,
+                        checkpoint.getLastKey(), checkpoint.getRows());
+            }
+
+            dbManager = FullPullHelper.getDbManager(dbConf, dbConf.getString(DBConfiguration.DataSourceInfo.URL_PROPERTY_READ_ONLY));
+            dbRecordReader = DBHelper.getRecordReader(dbManager, dbConf, inputSplit, ctx.logicalTableName);
+            if (resumable) {
+                // 按分片列排序，才能以分片列取值作为断点
+                dbRecordReader.setOrderBy(inputSplit.getSplitCol());
+            }
+            if (throttle.isHealthCheckDue()) {
+                throttle.onHealth(SourceHealthProbe.sample(dbConf));
+            }
+            long queryStart = System.nanoTime();
+            rs = dbRecordReader.queryData(ctx.datasourceType, ctx.splitIndex);
+            throttle.onQuery(System.nanoTime() - queryStart);
+            if (rs == null) {
+                throw new Exception("Query data of split " + ctx.splitIndex + " failed!");
+            }
             ResultSetMetaData rsmd = rs.getMetaData();
             int columnCount = rsmd.getColumnCount();
 
@@ -192,8 +335,12 @@ public class PagedBatchDataFetchingBolt extends BaseRichBolt {
             // rs.setFetchSize(fetchSize);
 
             long dealRowMemSize = 0;
-            long dealRowCnt = 0;
             long sendRowsCnt = 0;
+            long readRows = checkpoint.getRows();
+            // completedKey: 所有行都已读出的最后一个分片列取值，completedRows: 截止到completedKey(含)的行数
+            String completedKey = checkpoint.getLastKey();
+            long completedRows = readRows;
+            Comparable curKey = null;
             List<List<Object>> tuples = new ArrayList<>();
 
             long monitorTimeInterval = Constants.ZkTopoConfForFullPull.HEARTBEAT_MONITOR_TIME_INTERVAL_DEFAULT_VAL;
@@ -203,111 +350,36 @@ public class PagedBatchDataFetchingBolt extends BaseRichBolt {
             }
 
             long lastUpdatedMonitorTime = System.currentTimeMillis();
-            int counter = 0;
+            // 只统计rs.next()的耗时(含流式/游标读取的网络及源库时间)，不含组装消息和发送kafka
+            long pageRows = 0;
+            long pageNanos = 0;
+            long nextStart = System.nanoTime();
             while (rs.next()) {
-                counter++;
+                pageNanos += System.nanoTime() - nextStart;
+                pageRows++;
+                if (resumable) {
+                    Comparable key = ShardCheckpoint.readKey(rs, ctx.keyIndex, keyType);
+                    if (lastKey != null && key.compareTo(lastKey) <= 0) {
+                        // 断点及之前的行已经发送过
+                        nextStart = System.nanoTime();
+                        continue;
+                    }
+                    if (curKey != null && key.compareTo(curKey) != 0) {
+                        completedKey = ShardCheckpoint.formatKey(curKey);
+                        completedRows = readRows;
+                    }
+                    curKey = key;
+                }
+                readRows++;
                 List<Object> rowDataValues = new ArrayList<>();
-                long uniqId = localZkService.nextValue(dbConf.buildNameSpaceForZkUidFetch(dataSourceInfo));
-                String pos = payloadObject.getString(DataPullConstants.FULL_DATA_PULL_REQ_PAYLOAD_POS);
-                rowDataValues.add(pos);
-                rowDataValues.add(opTs);
+                long uniqId = ctx.localZkService.nextValue(dbConf.buildNameSpaceForZkUidFetch(ctx.dataSourceInfo));
+                rowDataValues.add(ctx.pos);
+                rowDataValues.add(ctx.opTs);
                 rowDataValues.add("i");
                 rowDataValues.add(String.valueOf(uniqId)); // 全局唯一 _ums_uid_。
-                dealRowCnt++;
                 sendRowsCnt++;
                 for (int i = 1; i <= columnCount; i++) {
-                    String columnTypeName = rsmd.getColumnTypeName(i);
-                    // 关于时间的值需要特别处理一下。否则，可能会导致DbusMessageBuilder private void validateAndConvert(Object[] tuple)方法抛异常
-                    // 例如 Year类型，库里值为2016，不做特别处理的话， 从rs读出来的值会被自动转成2016-01-01。按dbus映射规则，DbusMessageBuilder 将year按int处理时，会出错
-                    // TODO: timezone
-                    switch (columnTypeName) {
-                        case "DATE":
-                            if(rs.getObject(i) != null){
-                                rowDataValues.add(rs.getDate(i) + " " + rs.getTime(i));
-                            }else{
-                                rowDataValues.add(rs.getObject(i));
-                            }
-                            break;
-                        case "YEAR":
-                            if(rs.getObject(i) != null){
-                                Date date = (Date)(rs.getObject(i));
-                                Calendar cal = Calendar.getInstance();
-                                cal.setTime(date);
-                                rowDataValues.add(cal.get(Calendar.YEAR));
-                            }else{
-                                rowDataValues.add(rs.getObject(i));
-                            }
-                            break;
-                        case "TIME":
-                            if(rs.getTime(i) != null){
-                                rowDataValues.add(rs.getTime(i).toString());
-                            }else{
-                                rowDataValues.add(rs.getObject(i));
-                            }
-                            break;
-                        case "DATETIME":
-                        case "TIMESTAMP":
-                            if(rs.getTimestamp(i) != null){
-//                                  rowDataValues.add(rs.getTimestamp(i).toString());
-                                String timeStamp = "";
-                                if(datasourceType.toUpperCase().equals(DbusDatasourceType.MYSQL.name())){
-                                    timeStamp = toMysqlTimestampString(rs.getTimestamp(i), rsmd.getPrecision(i));
-                                }else if(datasourceType.toUpperCase().equals(DbusDatasourceType.ORACLE.name())){
-                                    timeStamp = toOracleTimestampString(rs.getTimestamp(i), rsmd.getScale(i));
-                                }else {
-                                    throw new RuntimeException("Wrong Database type.");
-                                }
-                                rowDataValues.add(timeStamp);
-                            }else{
-                                Object val = rs.getObject(i);
-                                if(datasourceType.toUpperCase().equals(DbusDatasourceType.MYSQL.name())&&rsmd.isNullable(i)!=1&&val==null){
-                                    // JAVA连接MySQL数据库，在操作值为0的timestamp类型时不能正确的处理，而是默认抛出一个异常，就是所见的：java.sql.SQLException: Cannot convert value '0000-00-00 00:00:00' from column 7 to TIMESTAMP。
-                                    // DBUS处理策略：在JDBC连接串配置属性：zeroDateTimeBehavior=convertToNull，来避免异常。
-                                    // 但当对应列约束为非空时，转换成null，后续逻辑校验通不过。所以对于mysql非空timestamp列，当得到值为null时，一定是发生了从 '0000-00-00 00:00:00'到null的转换。为了符合后续逻辑校验，此处强制将null置为'0000-00-00 00:00:00'。
-                                    val = "0000-00-00 00:00:00";
-                                }
-                                rowDataValues.add(val);
-                            }
-                            break;
-                        case "BINARY":
-                        case "VARBINARY":
-                        case "TINYBLOB":
-                        case "BLOB":
-                            if(rs.getObject(i) != null) {
-                                // 对于上述四种类型，根据canal文档https://github.com/alibaba/canal/issues/18描述，针对blob、binary类型的数据，使用"ISO-8859-1"编码转换为string
-                                // 为了和增量保持一致，对于这四种类型，全量也需做特殊处理：读取bytes并用ISO-8859-1编码转换成string。
-                                // 后续DbusMessageBuilder  void validateAndConvert(Object[] tuple)方法会统一按ISO-8859-1编码处理全量/增量数据。
-                                // 另，测试发现，这样的转换已“最大程度”和增量保持了一致。但对于BINARY类型，仍有一点差异。具体如下：
-                                // 设数据库有一列名为filed_binay，类型为binary(200)，插入数据为： "test_binary中文测试转换,，dbus将此类型转换为base64编码 "。
-                                // 在不加密的情况下，同样的数据，落到EDP mysql后，增量全量的数据能对上，如下：
-                                // 增量：test_binary中文测试转换,，dbus将此类型转换为base64编码
-                                // 全量：test_binary中文测试转换,，dbus将此类型转换为base64编码
-                                // 在hash_md5加密的情况下，增量全量的数据对不上。数据如下：
-                                // 增量：g6w
-                                // 全量：ߖսsvom_u
-                                // 原因：filed_binay 列类型为binary(200)，插入字符串长度没达到200，数据库将内容自动补齐至200。
-                                // 增量通过canal读取原始数据时，读到的数据忽略了补齐部分。
-                                // 全量通过JDBC读取原始数据时，读到的是包含补齐部分的数据，长度200。
-                                // 对于这种补齐的情况，不加密处理的话，肉眼观察，内容编码/解码没区别。
-                                // 用hd5加密的话，hd5加密结果会不同。
-                                // 对于这个情况，暂时忽略搁置。
-                                rowDataValues.add(new String(rs.getBytes(i),"ISO-8859-1"));
-                            }else{
-                                rowDataValues.add(rs.getObject(i));
-                            }
-                            break;
-                        //暂时只支持BIT(0)~BIT(8)，对于其它的(n>8) BIT(n)，需要增加具体的处理
-                        case "BIT" :
-                            byte[] value = rs.getBytes(i);
-                            if(value != null && value.length > 0)
-                                rowDataValues.add(value[0] & 0xFF);
-                            else
-                                rowDataValues.add(rs.getObject(i));
-                            break;
-                        default:
-                            rowDataValues.add(rs.getObject(i));
-                            break;
-                    }
+                    rowDataValues.add(columnValue(rs, rsmd, i, ctx.datasourceType));
                     dealRowMemSize += String.valueOf(rs.getObject(i)).getBytes().length;
                 }
 
@@ -315,11 +387,24 @@ public class PagedBatchDataFetchingBolt extends BaseRichBolt {
                 if (isKafkaSend(dealRowMemSize, sendRowsCnt)) {
                     dealRowMemSize = 0;
                     sendRowsCnt = 0;
-                    DbusMessage dbusMessage = buildResultMessage(tuples, dataSourceInfo, dbConf, rsmd, splittedTableInfo, batchNo);
-                    //将数据写入kafka
-                    sendMessageToKafka(resultKey, dbusMessage, sendCnt, recvCnt, isError);
+                    DbusMessage dbusMessage = buildResultMessage(tuples, ctx.dataSourceInfo, dbConf, rsmd, ctx.splittedTableInfo, ctx.batchNo);
+                    if (snapshotWriter != null) {
+                        snapshotWriter.append(dbusMessage);
+                        checkpoint.advance(null, readRows);
+                    } else {
+                        //将数据写入kafka，确认后以本批之前已完整的分片列取值为断点；不能续拉的分片只记录已确认的行数
+                        sendMessageToKafka(ctx.resultKey, dbusMessage, sendCnt, recvCnt, isError, checkpoint,
+                                resumable ? completedKey : null, resumable ? completedRows : readRows);
+                    }
                     tuples.clear();
                     tuples = new ArrayList<>();
+
+                    throttle.pause(throttle.onPage(pageRows, pageNanos));
+                    pageRows = 0;
+                    pageNanos = 0;
+                    if (throttle.isHealthCheckDue()) {
+                        throttle.onHealth(SourceHealthProbe.sample(dbConf));
+                    }
                 }
 
                 if(isError.get()) {
@@ -328,54 +413,73 @@ public class PagedBatchDataFetchingBolt extends BaseRichBolt {
 
                 long updatedMonitorInterval = (System.currentTimeMillis() - lastUpdatedMonitorTime) / 1000;
                 if(updatedMonitorInterval > monitorTimeInterval) {
-                    //1. 隔一段时间刷新monitor zk状态
-                    emitMonitorState(input, dataSourceInfo, dbNameSpace, dealRowCnt, startSecs, totalRows, totalPartitions, 0); //最后一个参数：一片尚未完成，计数0
+                    //1. 隔一段时间刷新monitor zk状态，只汇报已被kafka确认的行数，并记录断点
+                    reportCheckpoint(input, ctx, checkpoint);
                     lastUpdatedMonitorTime = System.currentTimeMillis();
-                    dealRowCnt = 0;
 
                     //2. 如果已经出现错误，跳过后来的tuple数据
-                    progressObj = FullPullHelper.getMonitorInfoFromZk(zkService, dbNameSpace);
+                    ProgressInfo progressObj = FullPullHelper.getMonitorInfoFromZk(zkService, ctx.dbNameSpace);
                     if (progressObj.getErrorMsg() != null) {
-                        LOG.error("Get process failed，skipped index:" + splitIndex);
+                        LOG.error("Get process failed，skipped index:" + ctx.splitIndex);
                         collector.fail(input);
-                        return;
+                        return -1;
                     }
                 }
+                nextStart = System.nanoTime();
             }
 
-            /**
-             * 临时的UMS_UID的zkservice需要关闭
-             */
-            localZkService.close();
-
-
-            LOG.info("Shard of split_index {} has {} records. Partition Info:{}", splitIndex, counter, tablePartition);
+            LOG.info("Shard of split_index {} has {} records. Partition Info:{}", ctx.splitIndex, readRows, ctx.inputSplit.getTablePartitionInfo());
             if(tuples.size() > 0) {
-                DbusMessage dbusMessage = buildResultMessage(tuples, dataSourceInfo, dbConf, rsmd, splittedTableInfo, batchNo);
+                DbusMessage dbusMessage = buildResultMessage(tuples, ctx.dataSourceInfo, dbConf, rsmd, ctx.splittedTableInfo, ctx.batchNo);
                 tuples.clear();
                 tuples = null;
 
-                //发送剩余的数据到 result topic
-                sendMessageToKafka(resultKey, dbusMessage, sendCnt, recvCnt, isError);
+                if (snapshotWriter != null) {
+                    snapshotWriter.append(dbusMessage);
+                    checkpoint.advance(null, readRows);
+                } else {
+                    //发送剩余的数据到 result topic，分片已读完，最后一个取值也是完整的
+                    sendMessageToKafka(ctx.resultKey, dbusMessage, sendCnt, recvCnt, isError, checkpoint,
+                            resumable && curKey != null ? ShardCheckpoint.formatKey(curKey) : null, readRows);
+                }
+            }
+            if (snapshotWriter != null) {
+                if (snapshotWriter.getRows() == 0) {
+                    // 空分片也按结果集的列生成文件
+                    snapshotWriter.append(buildResultMessage(new ArrayList<List<Object>>(), ctx.dataSourceInfo, dbConf, rsmd,
+                            ctx.splittedTableInfo, ctx.batchNo));
+                }
+                File snapshotFile = snapshotWriter.commit();
+                LOG.info("{}:split_index {} wrote {} rows to snapshot file {}.", ctx.dsKey, ctx.splitIndex, snapshotWriter.getRows(), snapshotFile.getPath());
+                // key的协议类型部分改为data_initial_snapshot，下游可按key区分
+                String snapshotKey = DbusMessage.ProtocolType.DATA_INITIAL_SNAPSHOT + ctx.resultKey.substring(ctx.resultKey.indexOf("."));
+                sendMessageToKafka(snapshotKey, buildSnapshotMessage(ctx, snapshotFile, snapshotWriter), sendCnt, recvCnt, isError,
+                        checkpoint, null, readRows);
             }
 
-            boolean isFinished = isSendFinished(sendCnt, recvCnt);
-            if(isFinished) {
-                emitMonitorState(input, dataSourceInfo, dbNameSpace, dealRowCnt, startSecs, totalRows, totalPartitions, 1);//最后一个参数：完成一片，计数1
-                long endTime = (System.currentTimeMillis() - startTime) / 1000;
-                LOG.info("{}:the batchDataFetchBolt deal split {}, finished {} rows,consume time {}s.  Partition Info:{}", dsKey, splitIndex, dealRowCnt, endTime, tablePartition);
-                collector.ack(input);
-            }else {
+            if (!isSendFinished(sendCnt, recvCnt)) {
                 throw new Exception("Waiting kafka ack timeout!");
             }
+            if (isError.get()) {
+                throw new Exception("kafka send exception!");
+            }
+            return readRows;
         } catch (Exception e) {
-            String errorMsg = dsKey + ":Exception happened when fetching data of split: " + jsonObject.toJSONString() + "."
-                    + e.getMessage();
-            LOG.error(errorMsg, e);
-            FullPullHelper.finishPullReport(zkService,dataSourceInfo, FullPullHelper.getCurrentTimeStampString(),
-                        Constants.DataTableStatus.DATA_STATUS_ABORT, errorMsg);
-            collector.fail(input);
+            // 等待已发出的数据确认完毕，使断点停在最终确认的位置
+            isSendFinished(sendCnt, recvCnt);
+            throw e;
         } finally {
+            if (snapshotWriter != null) {
+                snapshotWriter.close();
+            }
+            // 先由reader关闭结果集, 分片没有读完时mysql流式查询需要先取消, 否则关闭时会读完剩余的行
+            try {
+                if (dbRecordReader != null) {
+                    dbRecordReader.close();
+                }
+            } catch (Exception e) {
+                LOG.error(e.getMessage(), e);
+            }
             try {
                 if (rs != null) {
                     rs.close();
@@ -383,35 +487,115 @@ public class PagedBatchDataFetchingBolt extends BaseRichBolt {
                 if (dbManager != null) {
                     dbManager.close();
                 }
-                if (dbRecordReader != null) {
-                    dbRecordReader.close();
-                }
             } catch (Exception e) {
                 LOG.error(e.getMessage(), e);
             }
         }
     }
 
+    /**
+     * 汇报自上次汇报以来新确认的行数并把断点写入zk。重试使已确认行数回退时汇报负数，保证进度中的行数准确
+     */
+    private void reportCheckpoint(Tuple input, ShardContext ctx, ShardCheckpoint checkpoint) {
+        ShardCheckpoint snapshot = checkpoint.copy();
+        long dealRows = snapshot.getRows() - snapshot.getReportedRows();
+        emitMonitorState(input, ctx.dataSourceInfo, ctx.dbNameSpace, dealRows, ctx.startSecs, ctx.totalRows, ctx.totalPartitions, 0); //最后一个参数：一片尚未完成，计数0
+        checkpoint.setReportedRows(snapshot.getRows());
+        snapshot.setReportedRows(snapshot.getRows());
+        FullPullHelper.saveShardCheckpoint(zkService, ctx.dataSourceInfo, ctx.splitIndex, snapshot);
+    }
+
+    /**
+     * 分片列在拉取列中的位置(从1开始)，不在拉取列中时返回-1
+     */
+    private static int indexOfField(String[] fieldNames, String splitCol) {
+        if (fieldNames == null || splitCol == null) {
+            return -1;
+        }
+        String col = splitCol.replace("`", "").replace("\"", "");
+        for (int i = 0; i < fieldNames.length; i++) {
+            if (fieldNames[i].replace("`", "").replace("\"", "").equalsIgnoreCase(col)) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    private int getShardRetryTimes() {
+        String retryTimes = commonProps.getProperty(DataPullConstants.SHARD_RETRY_TIMES);
+        return StringUtils.isNotBlank(retryTimes) ? Integer.parseInt(retryTimes.trim()) : DataPullConstants.SHARD_RETRY_TIMES_DEFAULT;
+    }
+
+    private boolean isResumeEnabled() {
+        // 续拉需要按分片列排序，分片列没有索引时源库要对整个分片排序，默认关闭
+        String enabled = commonProps.getProperty(DataPullConstants.SHARD_RESUME_ENABLED);
+        return StringUtils.isNotBlank(enabled) && Boolean.parseBoolean(enabled.trim());
+    }
+
+    private boolean isSnapshotTable(String tableName) {
+        String tables = commonProps.getProperty(DataPullConstants.SNAPSHOT_TABLES);
+        if (StringUtils.isBlank(tables) || StringUtils.isBlank(commonProps.getProperty(DataPullConstants.SNAPSHOT_PATH))) {
+            return false;
+        }
+        for (String table : tables.split("\\|")) {
+            if (table.trim().equals("*") || table.trim().equalsIgnoreCase(tableName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 一个分片拉取过程中不变的信息
+     */
+    private static class ShardContext {
+        String dataSourceInfo;
+        String dbNameSpace;
+        String dsKey;
+        String splitIndex;
+        String totalRows;
+        String startSecs;
+        String totalPartitions;
+        DataDrivenDBInputFormat.DataDrivenDBInputSplit inputSplit;
+        DBConfiguration dbConf;
+        String logicalTableName;
+        String datasourceType;
+        String splittedTableInfo;
+        String resultKey;
+        String opTs;
+        String pos;
+        int batchNo;
+        int keyIndex;
+        ZkService localZkService;
+        // 不输出快照文件时为null
+        String snapshotDir;
+    }
+
     public void declareOutputFields(OutputFieldsDeclarer declarer) {
         declarer.declare(new Fields("progressInfo"));
     }
 
     @SuppressWarnings("unchecked")
-    private void sendMessageToKafka(String key, DbusMessage dbusMessage, AtomicLong sendCnt, AtomicLong recvCnt, AtomicBoolean isError) throws Exception{
+    private void sendMessageToKafka(String key, DbusMessage dbusMessage, AtomicLong sendCnt, AtomicLong recvCnt, AtomicBoolean isError,
+                                    ShardCheckpoint checkpoint, String checkpointKey, long checkpointRows) throws Exception{
         if(stringProducer == null) {
             throw new Exception("producer is null, can't send to kafka!");
         }
 
         ProducerRecord record = new ProducerRecord<>(resultTopic, key, dbusMessage.toString());
         sendCnt.getAndIncrement();
+        long batch = checkpoint.nextBatch();
         stringProducer.send(record, new Callback() {
             public void onCompletion(RecordMetadata metadata, Exception e) {
                 if (e != null) {
                     e.printStackTrace();
                     isError.set(true);
+                    checkpoint.halt();
                 }else{
-                    recvCnt.getAndIncrement();
+                    checkpoint.acked(batch, checkpointKey, checkpointRows);
                 }
+                // 出错也计入完成数，出错与否由isError判断
+                recvCnt.getAndIncrement();
             }
         });
     }
@@ -433,6 +617,97 @@ public class PagedBatchDataFetchingBolt extends BaseRichBolt {
         return true;
     }
 
+    /**
+     * 读取结果集当前行第i列的值并转换为与增量一致的表示
+     */
+    public static Object columnValue(ResultSet rs, ResultSetMetaData rsmd, int i, String datasourceType) throws SQLException, UnsupportedEncodingException {
+        String columnTypeName = rsmd.getColumnTypeName(i);
+        // 关于时间的值需要特别处理一下。否则，可能会导致DbusMessageBuilder private void validateAndConvert(Object[] tuple)方法抛异常
+        // 例如 Year类型，库里值为2016，不做特别处理的话， 从rs读出来的值会被自动转成2016-01-01。按dbus映射规则，DbusMessageBuilder 将year按int处理时，会出错
+        // TODO: timezone
+        switch (columnTypeName) {
+            case "DATE":
+                if(rs.getObject(i) != null){
+                    return rs.getDate(i) + " " + rs.getTime(i);
+                }else{
+                    return rs.getObject(i);
+                }
+            case "YEAR":
+                if(rs.getObject(i) != null){
+                    Date date = (Date)(rs.getObject(i));
+                    Calendar cal = Calendar.getInstance();
+                    cal.setTime(date);
+                    return cal.get(Calendar.YEAR);
+                }else{
+                    return rs.getObject(i);
+                }
+            case "TIME":
+                if(rs.getTime(i) != null){
+                    return rs.getTime(i).toString();
+                }else{
+                    return rs.getObject(i);
+                }
+            case "DATETIME":
+            case "TIMESTAMP":
+                if(rs.getTimestamp(i) != null){
+//                                  rowDataValues.add(rs.getTimestamp(i).toString());
+                    String timeStamp = "";
+                    if(datasourceType.toUpperCase().equals(DbusDatasourceType.MYSQL.name())){
+                        timeStamp = DateTimeCodec.formatMysqlTimestamp(rs.getTimestamp(i), rsmd.getPrecision(i));
+                    }else if(datasourceType.toUpperCase().equals(DbusDatasourceType.ORACLE.name())){
+                        timeStamp = DateTimeCodec.formatOracleTimestamp(rs.getTimestamp(i), rsmd.getScale(i));
+                    }else {
+                        throw new RuntimeException("Wrong Database type.");
+                    }
+                    return timeStamp;
+                }else{
+                    Object val = rs.getObject(i);
+                    if(datasourceType.toUpperCase().equals(DbusDatasourceType.MYSQL.name())&&rsmd.isNullable(i)!=1&&val==null){
+                        // JAVA连接MySQL数据库，在操作值为0的timestamp类型时不能正确的处理，而是默认抛出一个异常，就是所见的：java.sql.SQLException: Cannot convert value '0000-00-00 00:00:00' from column 7 to TIMESTAMP。
+                        // DBUS处理策略：在JDBC连接串配置属性：zeroDateTimeBehavior=convertToNull，来避免异常。
+                        // 但当对应列约束为非空时，转换成null，后续逻辑校验通不过。所以对于mysql非空timestamp列，当得到值为null时，一定是发生了从 '0000-00-00 00:00:00'到null的转换。为了符合后续逻辑校验，此处强制将null置为'0000-00-00 00:00:00'。
+                        val = "0000-00-00 00:00:00";
+                    }
+                    return val;
+                }
+            case "BINARY":
+            case "VARBINARY":
+            case "TINYBLOB":
+            case "BLOB":
+                if(rs.getObject(i) != null) {
+                    // 对于上述四种类型，根据canal文档https://github.com/alibaba/canal/issues/18描述，针对blob、binary类型的数据，使用"ISO-8859-1"编码转换为string
+                    // 为了和增量保持一致，对于这四种类型，全量也需做特殊处理：读取bytes并用ISO-8859-1编码转换成string。
+                    // 后续DbusMessageBuilder  void validateAndConvert(Object[] tuple)方法会统一按ISO-8859-1编码处理全量/增量数据。
+                    // 另，测试发现，这样的转换已“最大程度”和增量保持了一致。但对于BINARY类型，仍有一点差异。具体如下：
+                    // 设数据库有一列名为filed_binay，类型为binary(200)，插入数据为： "test_binary中文测试转换,，dbus将此类型转换为base64编码 "。
+                    // 在不加密的情况下，同样的数据，落到EDP mysql后，增量全量的数据能对上，如下：
+                    // 增量：test_binary中文测试转换,，dbus将此类型转换为base64编码
+                    // 全量：test_binary中文测试转换,，dbus将此类型转换为base64编码
+                    // 在hash_md5加密的情况下，增量全量的数据对不上。数据如下：
+                    // 增量：g6w
+                    // 全量：ߖսsvom_u
+                    // 原因：filed_binay 列类型为binary(200)，插入字符串长度没达到200，数据库将内容自动补齐至200。
+                    // 增量通过canal读取原始数据时，读到的数据忽略了补齐部分。
+                    // 全量通过JDBC读取原始数据时，读到的是包含补齐部分的数据，长度200。
+                    // 对于这种补齐的情况，不加密处理的话，肉眼观察，内容编码/解码没区别。
+                    // 用hd5加密的话，hd5加密结果会不同。
+                    // 对于这个情况，暂时忽略搁置。
+                    return new String(rs.getBytes(i),"ISO-8859-1");
+                }else{
+                    return rs.getObject(i);
+                }
+            //暂时只支持BIT(0)~BIT(8)，对于其它的(n>8) BIT(n)，需要增加具体的处理
+            case "BIT" :
+                byte[] value = rs.getBytes(i);
+                if(value != null && value.length > 0)
+                    return value[0] & 0xFF;
+                else
+                    return rs.getObject(i);
+            default:
+                return rs.getObject(i);
+        }
+    }
+
     private DbusMessage buildResultMessage(List<List<Object>> tuples, String dataSourceInfo,
                                            DBConfiguration dbConf, ResultSetMetaData rsmd, String tablePartition, int batchNo) throws SQLException {
         DbusMessageBuilder builder = new DbusMessageBuilder();
@@ -456,6 +731,24 @@ public class PagedBatchDataFetchingBolt extends BaseRichBolt {
         return message;
     }
 
+    /**
+     * 快照文件完成的通知：所在worker的主机名、文件路径、格式、行数及avro schema，下游按行数和schema核对文件
+     */
+    private DbusMessage buildSnapshotMessage(ShardContext ctx, File file, SnapshotFileWriter writer) {
+        DbusMessageBuilder builder = new DbusMessageBuilder();
+        builder.build(DbusMessage.ProtocolType.DATA_INITIAL_SNAPSHOT,
+                ctx.dbConf.getDbTypeAndNameSpace(ctx.dataSourceInfo, ctx.splittedTableInfo), ctx.batchNo);
+        builder.appendSchema("split_index", DataType.INT, false);
+        builder.appendSchema("host", DataType.STRING, true);
+        builder.appendSchema("path", DataType.STRING, false);
+        builder.appendSchema("format", DataType.STRING, false);
+        builder.appendSchema("rows", DataType.LONG, false);
+        builder.appendSchema("file_schema", DataType.STRING, false);
+        builder.appendPayload(new Object[]{ctx.opTs, ctx.splitIndex, hostName, file.getAbsolutePath(), writer.getFormat(),
+                writer.getRows(), writer.getSchema().toString()});
+        return builder.getMessage();
+    }
+
     private void emitMonitorState(Tuple input, String dataSourceInfo, String dbNameSpace, long dealRows, String startSecs, String totalRows, String totalPartitions, int finishedShardCount) {
         JSONObject jsonInfo = new JSONObject();
         jsonInfo.put(DataPullConstants.DATA_SOURCE_INFO, dataSourceInfo);
@@ -484,97 +777,7 @@ public class PagedBatchDataFetchingBolt extends BaseRichBolt {
         // the precision of datetime(1) is 21, which means the length "2010-01-02 10:12:23.1" is 21.
         // the precision of datetime(2) is 22, which means the length "2010-01-02 10:12:23.12" is 22. and so on.
         // So, we use 20 as key to distinguish datetime from datetime(x).
-        int meta = precision - 20;
-        if (meta > 6) {
-            throw new RuntimeException("unknow useconds meta : " + meta);
-        }
-
-        int year = ts.getYear() + 1900;
-        int month = ts.getMonth() + 1;
-        int day = ts.getDate();
-        int hour = ts.getHours();
-        int minute = ts.getMinutes();
-        int second = ts.getSeconds();
-        int nanos = ts.getNanos();
-        String yearString;
-        String monthString;
-        String dayString;
-        String hourString;
-        String minuteString;
-        String secondString;
-        String nanosString;
-        String zeros = "000000000";
-        String yearZeros = "0000";
-        StringBuffer timestampBuf;
-
-        if (year < 1000) {
-            // Add leading zeros
-            yearString = "" + year;
-            yearString = yearZeros.substring(0, (4-yearString.length())) +
-                    yearString;
-        } else {
-            yearString = "" + year;
-        }
-        if (month < 10) {
-            monthString = "0" + month;
-        } else {
-            monthString = Integer.toString(month);
-        }
-        if (day < 10) {
-            dayString = "0" + day;
-        } else {
-            dayString = Integer.toString(day);
-        }
-        if (hour < 10) {
-            hourString = "0" + hour;
-        } else {
-            hourString = Integer.toString(hour);
-        }
-        if (minute < 10) {
-            minuteString = "0" + minute;
-        } else {
-            minuteString = Integer.toString(minute);
-        }
-        if (second < 10) {
-            secondString = "0" + second;
-        } else {
-            secondString = Integer.toString(second);
-        }
-
-        //make nanoString length as 9.
-        if (nanos == 0) {
-            nanosString = zeros.substring(0, 9);
-        } else {
-            nanosString = Integer.toString(nanos);
-        }
-
-        // Add leading zeros
-        nanosString = zeros.substring(0, (9-nanosString.length())) +
-                nanosString;
-
-        if (meta <= 0) {
-            nanosString = "";
-        } else {
-            //truncate nanoString by meta
-            nanosString = "." + nanosString.substring(0, meta);
-        }
-
-        // do a string buffer here instead.
-        timestampBuf = new StringBuffer(20+nanosString.length());
-        timestampBuf.append(yearString);
-        timestampBuf.append("-");
-        timestampBuf.append(monthString);
-        timestampBuf.append("-");
-        timestampBuf.append(dayString);
-        timestampBuf.append(" ");
-        timestampBuf.append(hourString);
-        timestampBuf.append(":");
-        timestampBuf.append(minuteString);
-        timestampBuf.append(":");
-        timestampBuf.append(secondString);
-        timestampBuf.append(nanosString);
-
-        return (timestampBuf.toString());
+        return DateTimeCodec.formatMysqlTimestamp(ts, precision);
     }
 
 
@@ -583,14 +786,7 @@ public class PagedBatchDataFetchingBolt extends BaseRichBolt {
      * Below codes let the transformed result is equaled original data exactly.
      */
     public String toOracleTimestampString(java.sql.Timestamp ts, int scale) {
-        String timeStamp = ts.toString();
-        String timeStampLastPart = timeStamp.substring(timeStamp.lastIndexOf(".") + 1, timeStamp.length());
-        int needAdd = scale - timeStampLastPart.length();
-        while(needAdd > 0) {
-            timeStamp += "0";
-            needAdd--;
-        }
-        return timeStamp;
+        return DateTimeCodec.formatOracleTimestamp(ts, scale);
     }
 
     private void loadRunningConf(String reloadMsgJson) {
@@ -600,6 +796,7 @@ public class PagedBatchDataFetchingBolt extends BaseRichBolt {
             this.confMap = FullPullHelper.loadConfProps(zkconnect, topologyId, zkTopoRoot, null);
             this.commonProps = (Properties) confMap.get(FullPullHelper.RUNNING_CONF_KEY_COMMON);
             this.dsName = commonProps.getProperty(Constants.ZkTopoConfForFullPull.DATASOURCE_NAME);
+            SourceLoadController.of(dsName).configure(commonProps);
             this.stringProducer = (Producer) confMap.get(FullPullHelper.RUNNING_CONF_KEY_STRING_PRODUCER);
             this.zkService = (ZkService) confMap.get(FullPullHelper.RUNNING_CONF_KEY_ZK_SERVICE);
             this.stringProducerProps = (Properties) confMap.get(FullPullHelper.RUNNING_CONF_KEY_STRING_PRODUCER_PROPS);
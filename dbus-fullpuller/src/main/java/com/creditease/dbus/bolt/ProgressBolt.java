@@ -131,6 +131,7 @@ public class ProgressBolt extends BaseRichBolt {
                     //如果没有错误，就完成后续工作
                     objProgInfo.setEndTime(FullPullHelper.getCurrentTimeStampString());
                     objProgInfo.setStatus(Constants.FULL_PULL_STATUS_ENDING);
+                    objProgInfo.setEta("0s");
                     FullPullHelper.updateMonitorFinishPartitionInfo(zkService, dbNameSpace, objProgInfo);
 
                     FullPullHelper.finishPullReport(zkService, dataSourceInfo, objProgInfo.getEndTime(),
@@ -0,0 +1,430 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.common;
+
+import java.math.BigDecimal;
+import java.security.MessageDigest;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.creditease.dbus.common.utils.DBConfiguration;
+import com.creditease.dbus.common.utils.DBRecordReader;
+import com.creditease.dbus.common.utils.DataDrivenDBInputFormat.DataDrivenDBInputSplit;
+import com.creditease.dbus.common.utils.InputSplit;
+import com.creditease.dbus.commons.ZkService;
+import com.creditease.dbus.enums.DbusDatasourceType;
+import com.creditease.dbus.manager.GenericJdbcManager;
+
+/**
+ * 校验和同步: 只拉取与上一次拉取相比发生变化的数据块
+ *
+ * 按分片计划把表划分为数据块，在源库上计算每块的行数和校验和(mysql: SUM(CRC32(CONCAT_WS(...)))，oracle: SUM(ORA_HASH(各列ORA_HASH的拼接)))，
+ * 与zk中上次保存的校验值比较，一致的块跳过。不一致的块如果已有下一级子块的校验值，就逐级细分，只拉取真正变化的子块；
+ * 否则拉取整块，同时计算子块的校验值随分片一起下发，分片拉取成功后由PagedBatchDataFetchingBolt保存，供下次细分。
+ *
+ * 整数和时间类型的分片列按固定宽度的网格分块，宽度在第一次同步时确定并保存，表增长时已有数据块的边界保持不变；
+ * 其他分片列直接以计划的分片为数据块，不再细分。
+ * 行数和校验和对数据块可加，子块都一致而父块不一致时(子块已单独拉取过)直接更新父块的校验值。
+ * 删除的行会使数据块不一致并重新拉取，但全量数据中不包含删除操作。
+ */
+public class ChecksumSyncPlanner {
+    private static Logger LOG = LoggerFactory.getLogger(ChecksumSyncPlanner.class);
+
+    private static final String META_COLUMNS = "Columns";
+    private static final String META_SPLIT_COL = "SplitCol";
+    private static final String META_WIDTHS = "Widths";
+    // 网格块数超过计划分片数的倍数时重新确定宽度(如分片列取值范围剧烈变化)
+    private static final int MAX_GRID_EXPANSION = 10;
+
+    private final ZkService zkService;
+    private final GenericJdbcManager dbManager;
+    private final DBConfiguration dbConf;
+    private final String dataSourceInfo;
+    private final String dsType;
+    private final String logicalTableName;
+    private final String tablePath;
+    private final String[] checksumFields;
+    private final int maxDepth;
+    private final int fanout;
+    private final long minChunkRows;
+
+    private JSONObject tableMeta;
+    private final List<InputSplit> syncSplits = new ArrayList<>();
+    private final Map<InputSplit, JSONArray> chunkChecksums = new IdentityHashMap<>();
+    private long syncRows = 0;
+    private long totalChunks = 0;
+    private long checksumQueries = 0;
+
+    public ChecksumSyncPlanner(ZkService zkService, GenericJdbcManager dbManager, DBConfiguration dbConf,
+                               String dataSourceInfo, Properties commonProps) {
+        this.zkService = zkService;
+        this.dbManager = dbManager;
+        this.dbConf = dbConf;
+        this.dataSourceInfo = dataSourceInfo;
+        this.dsType = dbConf.getString(DBConfiguration.DataSourceInfo.DS_TYPE);
+        this.logicalTableName = dbConf.getInputTableName();
+        this.tablePath = FullPullHelper.getChecksumTablePath(dataSourceInfo);
+        this.checksumFields = buildChecksumFields(dbConf.getInputFieldNames());
+        this.maxDepth = getInt(commonProps, DataPullConstants.CHECKSUM_MAX_DEPTH, 3);
+        this.fanout = Math.max(getInt(commonProps, DataPullConstants.CHECKSUM_FANOUT, 4), 2);
+        this.minChunkRows = getInt(commonProps, DataPullConstants.CHECKSUM_MIN_CHUNK_ROWS, 1000);
+    }
+
+    public static boolean isChecksumMode(String dataSourceInfo) {
+        JSONObject payload = JSONObject.parseObject(dataSourceInfo).getJSONObject(DataPullConstants.FullPullInterfaceJson.PAYLOAD_KEY);
+        return DataPullConstants.PULL_MODE_CHECKSUM.equalsIgnoreCase(payload.getString(DataPullConstants.FULL_DATA_PULL_REQ_PAYLOAD_PULL_MODE));
+    }
+
+    /**
+     * 比较计划分片范围内各数据块的校验值，得到需要拉取的分片
+     */
+    public void plan(List<InputSplit> plannedSplits, String splitCol) throws Exception {
+        loadTableMeta(splitCol);
+        for (DataDrivenDBInputSplit chunk : toChunks(plannedSplits, tableMeta.getJSONObject(META_WIDTHS))) {
+            totalChunks++;
+            sync(chunk, queryChecksum(chunk), getStoredChecksum(chunk), 0);
+        }
+        FullPullHelper.saveChecksumNode(zkService, tablePath, tableMeta);
+        LOG.info("Checksum sync of {}: {} chunks compared with {} checksum queries, {} chunks with {} rows to pull.",
+                logicalTableName, totalChunks, checksumQueries, syncSplits.size(), syncRows);
+    }
+
+    public List<InputSplit> getSyncSplits() {
+        return syncSplits;
+    }
+
+    public JSONArray getChunkChecksums(InputSplit split) {
+        return chunkChecksums.get(split);
+    }
+
+    public long getSyncRows() {
+        return syncRows;
+    }
+
+    private void sync(DataDrivenDBInputSplit chunk, JSONObject source, JSONObject stored, int depth) throws Exception {
+        if (isSame(source, stored)) {
+            return;
+        }
+
+        List<DataDrivenDBInputSplit> children = depth < maxDepth && source.getLongValue("Rows") >= minChunkRows
+                ? narrow(chunk, fanout) : new ArrayList<DataDrivenDBInputSplit>();
+        List<JSONObject> storedChildren = new ArrayList<>();
+        boolean hasBaseline = false;
+        for (DataDrivenDBInputSplit child : children) {
+            JSONObject storedChild = getStoredChecksum(child);
+            storedChildren.add(storedChild);
+            hasBaseline |= storedChild != null;
+        }
+
+        if (hasBaseline) {
+            // 逐个比较子块，只拉取不一致的子块
+            boolean drifted = false;
+            for (int i = 0; i < children.size(); i++) {
+                JSONObject childSource = queryChecksum(children.get(i));
+                drifted |= !isSame(childSource, storedChildren.get(i));
+                sync(children.get(i), childSource, storedChildren.get(i), depth + 1);
+            }
+            if (!drifted) {
+                FullPullHelper.saveChecksumNode(zkService, tablePath + "/" + source.getString("Key"), source);
+            }
+            return;
+        }
+
+        // 没有子块的校验值，拉取整块，并带上子块的校验值供下次细分
+        JSONArray checksums = new JSONArray();
+        checksums.add(source);
+        for (DataDrivenDBInputSplit child : children) {
+            checksums.add(queryChecksum(child));
+        }
+        syncSplits.add(chunk);
+        chunkChecksums.put(chunk, checksums);
+        syncRows += source.getLongValue("Rows");
+        LOG.info("Chunk {} of {} changed: {} rows now, {} before.", source.getString("Id"), logicalTableName,
+                source.getLongValue("Rows"), stored == null ? "unknown" : stored.getLongValue("Rows"));
+    }
+
+    /**
+     * 可加的校验值只在行数和校验和都相同时才认为数据块没有变化
+     */
+    static boolean isSame(JSONObject source, JSONObject stored) {
+        return stored != null && source.getLongValue("Rows") == stored.getLongValue("Rows")
+                && StringUtils.equals(source.getString("Sum"), stored.getString("Sum"));
+    }
+
+    private JSONObject queryChecksum(DataDrivenDBInputSplit chunk) throws Exception {
+        checksumQueries++;
+        DBRecordReader reader = DBHelper.getRecordReader(dbManager, dbConf, chunk, logicalTableName, checksumFields);
+        if (reader == null) {
+            throw new Exception("Create record reader for checksum of " + logicalTableName + " failed!");
+        }
+        reader.setOrderBy("");
+        try {
+            ResultSet rs = reader.queryData(dsType, "-checksum");
+            if (rs == null || !rs.next()) {
+                throw new Exception("Query checksum of chunk " + chunkId(chunk) + " failed!");
+            }
+            JSONObject checksum = new JSONObject(true);
+            checksum.put("Key", chunkKey(chunk));
+            checksum.put("Id", chunkId(chunk));
+            checksum.put("Rows", rs.getLong(1));
+            BigDecimal sum = rs.getBigDecimal(2);
+            checksum.put("Sum", sum == null ? "0" : sum.toPlainString());
+            return checksum;
+        } finally {
+            reader.closeQuery();
+        }
+    }
+
+    private JSONObject getStoredChecksum(DataDrivenDBInputSplit chunk) {
+        return FullPullHelper.getChecksumNode(zkService, tablePath + "/" + chunkKey(chunk));
+    }
+
+    /**
+     * 拉取列或分片列变化后以前的校验值不可比，清空后重新建立
+     */
+    private void loadTableMeta(String splitCol) {
+        String columns = Arrays.toString(dbConf.getInputFieldNames());
+        tableMeta = FullPullHelper.getChecksumNode(zkService, tablePath);
+        if (tableMeta != null && (!columns.equals(tableMeta.getString(META_COLUMNS))
+                || !StringUtils.equals(splitCol, tableMeta.getString(META_SPLIT_COL)))) {
+            LOG.info("Columns or split column of {} changed, previous checksums are discarded.", logicalTableName);
+            FullPullHelper.cleanChunkChecksums(zkService, dataSourceInfo);
+            tableMeta = null;
+        }
+        if (tableMeta == null) {
+            tableMeta = new JSONObject(true);
+            tableMeta.put(META_COLUMNS, columns);
+            tableMeta.put(META_SPLIT_COL, splitCol);
+            tableMeta.put(META_WIDTHS, new JSONObject(true));
+        }
+    }
+
+    /**
+     * 按物理表和分区分组，整数和时间类型的分片按网格重新划分，其他分片保持不变
+     * @param widths 各分组的网格宽度，没有或者取值范围变化过大时重新确定并写回
+     */
+    static List<DataDrivenDBInputSplit> toChunks(List<InputSplit> plannedSplits, JSONObject widths) {
+        Map<String, List<DataDrivenDBInputSplit>> groups = new LinkedHashMap<>();
+        for (InputSplit split : plannedSplits) {
+            DataDrivenDBInputSplit dataSplit = (DataDrivenDBInputSplit) split;
+            String group = dataSplit.getTargetTableName() + "|" + StringUtils.defaultString(dataSplit.getTablePartitionInfo());
+            if (!groups.containsKey(group)) {
+                groups.put(group, new ArrayList<DataDrivenDBInputSplit>());
+            }
+            groups.get(group).add(dataSplit);
+        }
+
+        List<DataDrivenDBInputSplit> chunks = new ArrayList<>();
+        for (Map.Entry<String, List<DataDrivenDBInputSplit>> entry : groups.entrySet()) {
+            List<DataDrivenDBInputSplit> rangeSplits = new ArrayList<>();
+            boolean gridable = true;
+            for (DataDrivenDBInputSplit split : entry.getValue()) {
+                if (DataPullConstants.QUERY_COND_IS_NULL.equals(split.getLowerOperator())) {
+                    chunks.add(split);
+                } else {
+                    rangeSplits.add(split);
+                    gridable &= isGridable(split);
+                }
+            }
+            if (!gridable || rangeSplits.isEmpty()) {
+                chunks.addAll(rangeSplits);
+                continue;
+            }
+
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            for (DataDrivenDBInputSplit split : rangeSplits) {
+                min = Math.min(min, toLong(split.getLowerValue()));
+                max = Math.max(max, toLong(split.getUpperValue()));
+            }
+            long width = widths.getLongValue(entry.getKey());
+            if (width <= 0 || (max - min) / width > (long) MAX_GRID_EXPANSION * rangeSplits.size()) {
+                width = Math.max((max - min) / rangeSplits.size() + 1, 1);
+                widths.put(entry.getKey(), width);
+            }
+            DataDrivenDBInputSplit template = rangeSplits.get(0);
+            for (long k = floorDiv(min, width); k <= floorDiv(max, width); k++) {
+                chunks.add(newSplit(template, k * width, (k + 1) * width));
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * 把 [lower, upper) 的网格块等分为最多fanout个子块，块太小或者不是网格块时返回空列表
+     */
+    static List<DataDrivenDBInputSplit> narrow(DataDrivenDBInputSplit chunk, int fanout) {
+        List<DataDrivenDBInputSplit> children = new ArrayList<>();
+        if (!isGridable(chunk) || !" < ".equals(chunk.getUpperOperator())) {
+            return children;
+        }
+        long lower = toLong(chunk.getLowerValue());
+        long upper = toLong(chunk.getUpperValue());
+        if (upper - lower < fanout) {
+            return children;
+        }
+        long step = (upper - lower + fanout - 1) / fanout;
+        for (long start = lower; start < upper; start += step) {
+            children.add(newSplit(chunk, start, Math.min(start + step, upper)));
+        }
+        return children;
+    }
+
+    /**
+     * 整数和时间(毫秒值)类型的范围分片可以按网格划分和细分，NUMBER类型要求边界是整数
+     */
+    private static boolean isGridable(DataDrivenDBInputSplit split) {
+        if (!" >= ".equals(split.getLowerOperator())
+                || !(split.getLowerValue() instanceof Number) || !(split.getUpperValue() instanceof Number)) {
+            return false;
+        }
+        switch (split.getSqlType()) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.DATE:
+            case Types.TIME:
+            case Types.TIMESTAMP:
+                return true;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                return isIntegral(split.getLowerValue()) && isIntegral(split.getUpperValue());
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isIntegral(Object value) {
+        try {
+            new BigDecimal(value.toString()).longValueExact();
+            return true;
+        } catch (ArithmeticException e) {
+            return false;
+        }
+    }
+
+    private static long toLong(Object value) {
+        return new BigDecimal(value.toString()).longValue();
+    }
+
+    static long floorDiv(long x, long y) {
+        long r = x / y;
+        if ((x % y != 0) && ((x ^ y) < 0)) {
+            r--;
+        }
+        return r;
+    }
+
+    /**
+     * 以template的分片列和表信息生成 [lower, upper) 的分片，取值类型与template一致
+     */
+    private static DataDrivenDBInputSplit newSplit(DataDrivenDBInputSplit template, long lower, long upper) {
+        boolean decimal = template.getLowerValue() instanceof BigDecimal;
+        DataDrivenDBInputSplit split = new DataDrivenDBInputSplit(template.getSqlType(), template.getSplitCol(),
+                " >= ", decimal ? BigDecimal.valueOf(lower) : (Object) lower,
+                " < ", decimal ? BigDecimal.valueOf(upper) : (Object) upper);
+        split.setTargetTableName(template.getTargetTableName());
+        split.setTablePartitionInfo(template.getTablePartitionInfo());
+        split.setCollate(template.getCollate());
+        return split;
+    }
+
+    private static String chunkId(DataDrivenDBInputSplit chunk) {
+        StringBuilder id = new StringBuilder();
+        id.append(chunk.getTargetTableName());
+        if (StringUtils.isNotBlank(chunk.getTablePartitionInfo())) {
+            id.append(" PARTITION (").append(chunk.getTablePartitionInfo()).append(")");
+        }
+        id.append(": ").append(chunk.getSplitCol()).append(chunk.getLowerOperator());
+        if (chunk.getLowerValue() != null) {
+            id.append(chunk.getLowerValue());
+        }
+        id.append(" AND ").append(chunk.getSplitCol()).append(chunk.getUpperOperator());
+        if (chunk.getUpperValue() != null) {
+            id.append(chunk.getUpperValue());
+        }
+        return id.toString();
+    }
+
+    /**
+     * 数据块的zk节点名: chunkId的md5，chunkId中的字符不能直接用作节点名
+     */
+    private static String chunkKey(DataDrivenDBInputSplit chunk) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(chunkId(chunk).getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder();
+            for (byte b : digest) {
+                key.append(String.format("%02x", b & 0xff));
+            }
+            return key.toString();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 行数和整块数据的校验和，NULL值单独标记以区别于空串
+     */
+    private String[] buildChecksumFields(String[] fieldNames) {
+        StringBuilder sum = new StringBuilder();
+        if (dsType.toUpperCase().equals(DbusDatasourceType.ORACLE.name())) {
+            // 先对整行求hash再求和，不同行之间交换取值也能发现。各列先ORA_HASH成不超过10位的数字再拼接，
+            // 每列不超过11个字符，360列以内不会超过VARCHAR2的4000字节限制
+            sum.append("SUM(ORA_HASH(");
+            for (int i = 0; i < fieldNames.length; i++) {
+                if (i > 0) {
+                    sum.append(" || '#' || ");
+                }
+                sum.append("NVL(TO_CHAR(ORA_HASH(").append(fieldNames[i]).append(", 4294967295)), 'N')");
+            }
+            sum.append(", 4294967295))");
+        } else {
+            StringBuilder nullFlags = new StringBuilder("CONCAT(");
+            sum.append("SUM(CRC32(CONCAT_WS('#'");
+            for (int i = 0; i < fieldNames.length; i++) {
+                sum.append(", ").append(fieldNames[i]);
+                nullFlags.append(i > 0 ? ", " : "").append("ISNULL(").append(fieldNames[i]).append(")");
+            }
+            nullFlags.append(")");
+            sum.append(", ").append(nullFlags).append(")))");
+        }
+        return new String[]{"COUNT(*)", sum.toString()};
+    }
+
+    private static int getInt(Properties props, String key, int defaultVal) {
+        String val = props.getProperty(key);
+        return StringUtils.isNotBlank(val) ? Integer.parseInt(val.trim()) : defaultVal;
+    }
+}
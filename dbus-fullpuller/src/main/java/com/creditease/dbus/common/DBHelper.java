@@ -38,6 +38,7 @@ import com.alibaba.fastjson.JSONObject;
 import com.creditease.dbus.common.utils.DBConfiguration;
 import com.creditease.dbus.common.utils.DBRecordReader;
 import com.creditease.dbus.common.utils.DataDrivenDBInputFormat;
+import com.creditease.dbus.common.utils.MySQLDBRecordReader;
 import com.creditease.dbus.common.utils.OracleDBRecordReader;
 import com.creditease.dbus.commons.Constants;
 import com.creditease.dbus.commons.MetaWrapper;
@@ -102,6 +103,13 @@ public class DBHelper {
             if (dataPullingFetchSizeProperty != null) {
                 confProperties.put(DBConfiguration.SPLIT_SHARD_SIZE, Integer.parseInt((String) dataPullingFetchSizeProperty));
             }
+            //mysql分片读取方式，数据源级别的配置优先
+            String dsName = confProperties.getProperty(DBConfiguration.DataSourceInfo.DB_NAME);
+            String fetchMode = otherConfProperties.getProperty(DBConfiguration.MYSQL_FETCH_MODE + "." + dsName,
+                    otherConfProperties.getProperty(DBConfiguration.MYSQL_FETCH_MODE));
+            if (StringUtils.isNotBlank(fetchMode)) {
+                confProperties.put(DBConfiguration.MYSQL_FETCH_MODE, fetchMode.trim().toLowerCase());
+            }
         }
         catch (Exception e1) {
             e1.printStackTrace();
@@ -483,19 +491,30 @@ public class DBHelper {
                                                  DBConfiguration dbConf,
                                                  DataDrivenDBInputFormat.DataDrivenDBInputSplit inputSplit,
                                                  String logicalTableName) {
+        return getRecordReader(dbManager, dbConf, inputSplit, logicalTableName, dbConf.getInputFieldNames());
+    }
+
+    /**
+     * 按分片条件查询指定的列或表达式(如校验和聚合)
+     */
+    public static DBRecordReader getRecordReader(SqlManager dbManager,
+                                                 DBConfiguration dbConf,
+                                                 DataDrivenDBInputFormat.DataDrivenDBInputSplit inputSplit,
+                                                 String logicalTableName,
+                                                 String[] fieldNames) {
         try {
             String datasourceType = dbConf.getString(DBConfiguration.DataSourceInfo.DS_TYPE);
             DbusDatasourceType dataBaseType = DbusDatasourceType.valueOf(datasourceType.toUpperCase());
             switch (dataBaseType) {
                 case ORACLE:
                     return new OracleDBRecordReader(dbManager.getConnection(), dbConf,
-                                                    inputSplit, dbConf.getInputFieldNames(), logicalTableName);
+                                                    inputSplit, fieldNames, logicalTableName);
                 case MYSQL:
-                    return new DBRecordReader(dbManager.getConnection(), dbConf,
-                                              inputSplit, dbConf.getInputFieldNames(), logicalTableName);
+                    return new MySQLDBRecordReader(dbManager.getConnection(), dbConf,
+                                              inputSplit, fieldNames, logicalTableName);
                 default:
                     return new DBRecordReader(dbManager.getConnection(), dbConf,
-                                       inputSplit, dbConf.getInputFieldNames(), logicalTableName);
+                                       inputSplit, fieldNames, logicalTableName);
             }
         }
         catch (Exception e) {
@@ -20,6 +20,8 @@
 
 package com.creditease.dbus.common;
 
+import com.creditease.dbus.commons.Constants;
+
 public class DataPullConstants {
     public static final String ZK_NODE_NAME_ORACLE_CONF = "oracle-config";
 
@@ -38,6 +40,11 @@ public class DataPullConstants {
     public static final String PULL_COLLATE_KEY = "pull.collate";
     public static final String SPLITTER_STRING_STYLEGROUPS = "splitter.string.styleGroups";
     public static final String SPLITTER_STRING_STYLE_DEFAULT = "all";
+    // oracle分片策略,格式同splitter.string.styleGroups,如 "SCHEMA.T1:rowid|*:column"
+    public static final String ORACLE_SPLIT_STRATEGY_GROUPS = "oracle.split.strategy";
+    public static final String ORACLE_SPLIT_STRATEGY_COLUMN = "column"; // 按分片列的取值区间切分
+    public static final String ORACLE_SPLIT_STRATEGY_ROWID = "rowid"; // 按DBA_EXTENTS中的区按块数切分成ROWID区间
+    public static final String ORACLE_SPLIT_COL_ROWID = "ROWID";
     
     public static final String FULL_DATA_PULL_REQ_RESULT_TOPIC= "resultTopic";
     // public static final String FULL_DATA_PULL_REQ_INCREASE_VERSION= "INCREASE_VERSION";
@@ -55,10 +62,15 @@ public class DataPullConstants {
     public static final String FULL_DATA_PULL_REQ_PAYLOAD_INPUT_CONDITIONS ="INPUT_CONDITIONS";
     public static final String FULL_DATA_PULL_REQ_PAYLOAD_PULL_TARGET_COLS ="PULL_TARGET_COLS";    
     public static final String FULL_DATA_PULL_REQ_PAYLOAD_OP_TS = "OP_TS";
+    // 拉取方式，不指定时为普通全量拉取
+    public static final String FULL_DATA_PULL_REQ_PAYLOAD_PULL_MODE = "PULL_MODE";
+    public static final String PULL_MODE_CHECKSUM = "checksum";
     
     public static final String DATA_CHUNK_SPLIT = "dataChunkSplit";
     public static final String DATA_CHUNK_SPLIT_INDEX = "dataChunkSplitIndex";
     public static final String DATA_CHUNK_COUNT = "dataChunkCount";
+    // 校验和同步模式下分片拉取成功后要保存的数据块校验值
+    public static final String DATA_CHUNK_CHECKSUMS = "dataChunkChecksums";
     public static final String DATA_EVENT_FULL_PULL_REQ = "FULL_DATA_PULL_REQ";
     public static final String COMMAND_FULL_PULL_STOP = "FULL_DATA_PULL_STOP";
     public static final String COMMAND_FULL_PULL_RELOAD_CONF = "FULL_DATA_PULL_RELOAD_CONF";
@@ -91,6 +103,44 @@ public class DataPullConstants {
     
     public static final String KAFKA_SEND_BATCH_SIZE = "send.batch.size";
     public static final String KAFKA_SEND_ROWS = "send.rows";
+
+    // 分片拉取失败后的重试次数及是否从断点续拉(按分片列排序读取)
+    public static final String SHARD_RETRY_TIMES = "shard.retry.times";
+    public static final int SHARD_RETRY_TIMES_DEFAULT = 2;
+    public static final String SHARD_RESUME_ENABLED = "shard.resume.enabled";
+    // 分片断点的zk根节点，不放在FullPuller监控节点下，以免影响心跳对监控叶子节点的检查
+    public static final String FULL_PULL_CHECKPOINT_ROOT = Constants.DBUS_ROOT + "/FullPullerCheckpoint";
+
+    // 校验和同步: 数据块校验值的zk根节点，及逐级细分不一致数据块的层数、每次细分的块数和可细分的最小行数
+    public static final String FULL_PULL_CHECKSUM_ROOT = Constants.DBUS_ROOT + "/FullPullerChecksum";
+    public static final String CHECKSUM_MAX_DEPTH = "checksum.max.depth";
+    public static final String CHECKSUM_FANOUT = "checksum.fanout";
+    public static final String CHECKSUM_MIN_CHUNK_ROWS = "checksum.min.chunk.rows";
+
+    // 快照文件输出：匹配的表每个分片写一个本地parquet(或avro)文件，文件写好后向result topic发送data_initial_snapshot消息，见SnapshotFileWriter
+    public static final String SNAPSHOT_TABLES = "snapshot.tables";
+    public static final String SNAPSHOT_PATH = "snapshot.path";
+    public static final String SNAPSHOT_FORMAT = "snapshot.format";
+    public static final String SNAPSHOT_CODEC = "snapshot.codec";
+
+    // 按源库负载自适应限流：同时读取分片的reader数和每页之间的停顿，见SourceLoadController
+    public static final String THROTTLE_ENABLED = "throttle.enabled";
+    public static final String THROTTLE_MIN_READERS = "throttle.min.readers";
+    public static final String THROTTLE_MAX_READERS = "throttle.max.readers";
+    public static final String THROTTLE_MAX_PAUSE_MS = "throttle.max.pause.ms";
+    public static final String THROTTLE_LATENCY_TOLERANCE = "throttle.latency.tolerance";
+    public static final String THROTTLE_MAX_QUERY_SECS = "throttle.max.query.secs";
+    public static final String THROTTLE_CONTROL_INTERVAL_SECS = "throttle.control.interval.secs";
+    public static final String THROTTLE_HEALTH_INTERVAL_SECS = "throttle.health.interval.secs";
+    public static final String THROTTLE_MAX_REPLICA_LAG_SECS = "throttle.mysql.max.replica.lag.secs";
+    public static final String THROTTLE_MAX_THREADS_RUNNING = "throttle.mysql.max.threads.running";
+    public static final String THROTTLE_MAX_ACTIVE_SESSIONS = "throttle.oracle.max.active.sessions";
+
+    // DataPullingSpout分片调度，见FullPullScheduler
+    public static final String SCHEDULER_MAX_SHARDS_PER_SOURCE = "scheduler.max.shards.per.source";
+    public static final String SCHEDULER_RESERVED_SHARDS = "scheduler.reserved.shards";
+    public static final String SCHEDULER_MAX_BUFFERED_SHARDS = "scheduler.max.buffered.shards";
+    public static final String SCHEDULER_REQUEST_WEIGHT = "scheduler.request.weight";
     public static final String STORM_UI = "storm.ui";
     
     public static class ZkMonitoringJson {
@@ -149,5 +199,10 @@ public class DataPullConstants {
     
     public static final int DEFAULT_SPLIT_SHARD_SIZE = 50000;
     public static final int DEFAULT_PREPARE_STATEMENT_FETCH_RECORDS = 2500; // 默认每次fetch 2500行
+
+    // mysql拉取分片数据的方式
+    public static final String MYSQL_FETCH_MODE_BUFFERED = "buffered"; // 驱动默认行为,整个分片读入内存
+    public static final String MYSQL_FETCH_MODE_STREAM = "stream"; // 逐行流式读取,独占连接
+    public static final String MYSQL_FETCH_MODE_CURSOR = "cursor"; // 服务端游标,每次读取fetch size行
     private DataPullConstants () {}
 }
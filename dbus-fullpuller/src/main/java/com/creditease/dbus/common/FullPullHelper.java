@@ -38,6 +38,7 @@ import org.apache.kafka.clients.producer.RecordMetadata;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.alibaba.fastjson.JSONArray;
 import com.alibaba.fastjson.JSONObject;
 import com.creditease.dbus.common.utils.DBConfiguration;
 import com.creditease.dbus.common.utils.JsonUtil;
@@ -154,6 +155,31 @@ public class FullPullHelper {
         return true;
     }
 
+    /**
+     * 更新拉取的排队位置和预计剩余时间，与ProgressBolt的进度更新通过zk版本号避免互相覆盖
+     */
+    public static boolean updateMonitorQueueInfo(ZkService zkService, String dbNameSpace, int queuePosition, long etaSecs) {
+        String zkPath = FullPullHelper.buildZkPath(zkMonitorRootNodePath, dbNameSpace);
+        try {
+            for (int i = 0; i < 10; i++) {
+                ProgressInfo progressObj = FullPullHelper.getMonitorInfoFromZk(zkService, dbNameSpace);
+                if (progressObj.getZkVersion() == -1 || progressObj.getEndTime() != null) {
+                    // 节点不存在或者拉取已经结束
+                    return false;
+                }
+                progressObj.setQueuePosition(String.valueOf(queuePosition));
+                progressObj.setEta(etaSecs < 0 ? null : String.valueOf(etaSecs) + "s");
+                if (FullPullHelper.updateZkNodeInfoWithVersion(zkService, zkPath, progressObj) != -1) {
+                    return true;
+                }
+                Thread.sleep(200);
+            }
+        } catch (Exception e) {
+            LOG.error("updateMonitorQueueInfo Failed.", e);
+        }
+        return false;
+    }
+
     public static void updateMonitorSplitPartitionInfo(ZkService zkService, String dbNameSpace, int totalShardsCount, int totalRows) {
         try {
             String currentTimeStampString = FullPullHelper.getCurrentTimeStampString();
@@ -382,6 +408,137 @@ public class FullPullHelper {
         return monitorNodePath;
     }
 
+    /**
+     * 分片断点节点: /DBus/FullPullerCheckpoint/{dbNameSpace}/s{seqno}/{splitIndex}
+     */
+    public static String getShardCheckpointPath(String dataSourceInfo, String splitIndex) {
+        JSONObject payload = JSONObject.parseObject(dataSourceInfo).getJSONObject(DataPullConstants.FullPullInterfaceJson.PAYLOAD_KEY);
+        String seqNo = payload.getString(DataPullConstants.FULL_DATA_PULL_REQ_PAYLOAD_SEQNO);
+        return buildZkPath(DataPullConstants.FULL_PULL_CHECKPOINT_ROOT, getDbNameSpace(dataSourceInfo) + "/s" + seqNo + "/" + splitIndex);
+    }
+
+    public static ShardCheckpoint getShardCheckpoint(ZkService zkService, String dataSourceInfo, String splitIndex) {
+        String zkPath = getShardCheckpointPath(dataSourceInfo, splitIndex);
+        try {
+            if (zkService.isExists(zkPath)) {
+                byte[] data = zkService.getData(zkPath);
+                if (data != null && data.length > 0) {
+                    return JsonUtil.convertToObject(JsonUtil.getObjectMapper(), new String(data), ShardCheckpoint.class);
+                }
+            }
+        } catch (Exception e) {
+            LOG.warn("Get shard checkpoint " + zkPath + " failed, will pull the shard from the beginning.", e);
+        }
+        return null;
+    }
+
+    /**
+     * 断点写入失败不影响拉取，只是重试时会从更早的位置开始
+     */
+    public static void saveShardCheckpoint(ZkService zkService, String dataSourceInfo, String splitIndex, ShardCheckpoint checkpoint) {
+        String zkPath = getShardCheckpointPath(dataSourceInfo, splitIndex);
+        try {
+            byte[] data = JsonUtil.getObjectMapper().writeValueAsString(checkpoint).getBytes();
+            if (zkService.isExists(zkPath)) {
+                zkService.setData(zkPath, data);
+            } else {
+                zkService.createNodeWithParents(zkPath, data);
+            }
+        } catch (Exception e) {
+            LOG.warn("Save shard checkpoint " + zkPath + " failed.", e);
+        }
+    }
+
+    public static void deleteShardCheckpoint(ZkService zkService, String dataSourceInfo, String splitIndex) {
+        String zkPath = getShardCheckpointPath(dataSourceInfo, splitIndex);
+        try {
+            if (zkService.isExists(zkPath)) {
+                zkService.deleteNode(zkPath);
+            }
+        } catch (Exception e) {
+            LOG.warn("Delete shard checkpoint " + zkPath + " failed.", e);
+        }
+    }
+
+    /**
+     * 开始新一次拉取前清理该表以前遗留的断点(如被中止的拉取)
+     */
+    public static void cleanShardCheckpoints(ZkService zkService, String dataSourceInfo) {
+        String zkPath = buildZkPath(DataPullConstants.FULL_PULL_CHECKPOINT_ROOT, getDbNameSpace(dataSourceInfo));
+        try {
+            if (zkService.isExists(zkPath)) {
+                zkService.deleteNodeRecursively(zkPath);
+            }
+        } catch (Exception e) {
+            LOG.warn("Clean shard checkpoints " + zkPath + " failed.", e);
+        }
+    }
+
+    /**
+     * 数据块校验值节点: /DBus/FullPullerChecksum/{dbName}/{schema}/{table}，表节点保存分块信息，子节点保存各数据块的校验值。
+     * 不区分拉取批次，供下一次校验和同步比较
+     */
+    public static String getChecksumTablePath(String dataSourceInfo) {
+        DBConfiguration dbConf = getDbConfiguration(dataSourceInfo);
+        JSONObject payload = JSONObject.parseObject(dataSourceInfo).getJSONObject(DataPullConstants.FullPullInterfaceJson.PAYLOAD_KEY);
+        String dbName = (String) (dbConf.get(DBConfiguration.DataSourceInfo.DB_NAME));
+        return buildZkPath(DataPullConstants.FULL_PULL_CHECKSUM_ROOT, dbName + "/"
+                + payload.getString(DataPullConstants.FULL_DATA_PULL_REQ_PAYLOAD_SCHEMA_NAME) + "/"
+                + payload.getString(DataPullConstants.FULL_DATA_PULL_REQ_PAYLOAD_TABLE_NAME));
+    }
+
+    public static JSONObject getChecksumNode(ZkService zkService, String zkPath) {
+        try {
+            if (zkService.isExists(zkPath)) {
+                byte[] data = zkService.getData(zkPath);
+                if (data != null && data.length > 0) {
+                    return JSONObject.parseObject(new String(data));
+                }
+            }
+        } catch (Exception e) {
+            LOG.warn("Get checksum node " + zkPath + " failed.", e);
+        }
+        return null;
+    }
+
+    public static void saveChecksumNode(ZkService zkService, String zkPath, JSONObject node) {
+        try {
+            byte[] data = node.toJSONString().getBytes();
+            if (zkService.isExists(zkPath)) {
+                zkService.setData(zkPath, data);
+            } else {
+                zkService.createNodeWithParents(zkPath, data);
+            }
+        } catch (Exception e) {
+            LOG.warn("Save checksum node " + zkPath + " failed.", e);
+        }
+    }
+
+    /**
+     * 分片拉取成功后保存其数据块的校验值，保存失败时下次同步会再拉取这些数据块
+     */
+    public static void saveChunkChecksums(ZkService zkService, String dataSourceInfo, JSONArray checksums) {
+        String tablePath = getChecksumTablePath(dataSourceInfo);
+        for (int i = 0; i < checksums.size(); i++) {
+            JSONObject checksum = checksums.getJSONObject(i);
+            saveChecksumNode(zkService, tablePath + "/" + checksum.getString("Key"), checksum);
+        }
+    }
+
+    /**
+     * 分块方式或拉取列变化后，以前的校验值不再可比，全部删除
+     */
+    public static void cleanChunkChecksums(ZkService zkService, String dataSourceInfo) {
+        String zkPath = getChecksumTablePath(dataSourceInfo);
+        try {
+            if (zkService.isExists(zkPath)) {
+                zkService.deleteNodeRecursively(zkPath);
+            }
+        } catch (Exception e) {
+            LOG.warn("Clean chunk checksums " + zkPath + " failed.", e);
+        }
+    }
+
     public static String getDbNameSpace(String dataSourceInfo) {
         DBConfiguration dbConf = FullPullHelper.getDbConfiguration(dataSourceInfo);
         String dbNameSpace = dbConf.buildSlashedNameSpace(dataSourceInfo);
@@ -0,0 +1,360 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.common;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alibaba.fastjson.JSONObject;
+import com.creditease.dbus.commons.Constants;
+import com.creditease.dbus.commons.ZkService;
+
+/**
+ * DataPullingSpout的分片调度器
+ *
+ * 从kafka读到的分片先按拉取请求缓存，每次发射时在数据源并发未满的请求中选择 在途分片数/权重 最小的请求，
+ * 同一请求内的分片按到达顺序发射。这样大表拉取过程中到达的小表请求可以立即分到并发，不必排在大表的所有分片之后。
+ * 最后reservedShards个并发只留给没有在途分片的请求，保证新请求总能尽快开始。
+ * 排队位置和预计剩余时间定期写入拉取的monitor节点。
+ */
+public class FullPullScheduler {
+    private static Logger LOG = LoggerFactory.getLogger(FullPullScheduler.class);
+
+    // 请求没有缓存和在途分片超过这个时间后清理
+    private static final long IDLE_REQUEST_EXPIRE_MS = 30 * 60 * 1000L;
+
+    private final Map<String, Request> requests = new LinkedHashMap<>();
+    private final Map<String, Source> sources = new HashMap<>();
+    private final Map<Object, Shard> inflightShards = new HashMap<>();
+    private int bufferedShards = 0;
+
+    private int maxShardsPerSource;
+    private int reservedShards;
+    private int maxBufferedShards;
+    private String weightGroups;
+    private long reportIntervalMs;
+    private long lastReportTime = 0;
+
+    public FullPullScheduler(Properties commonProps) {
+        configure(commonProps);
+    }
+
+    public void configure(Properties commonProps) {
+        maxShardsPerSource = getInt(commonProps, DataPullConstants.SCHEDULER_MAX_SHARDS_PER_SOURCE, 0);
+        reservedShards = getInt(commonProps, DataPullConstants.SCHEDULER_RESERVED_SHARDS, 1);
+        maxBufferedShards = getInt(commonProps, DataPullConstants.SCHEDULER_MAX_BUFFERED_SHARDS, 10000);
+        weightGroups = commonProps.getProperty(DataPullConstants.SCHEDULER_REQUEST_WEIGHT);
+        reportIntervalMs = getInt(commonProps, Constants.ZkTopoConfForFullPull.HEARTBEAT_MONITOR_TIME_INTERVAL,
+                (int) Constants.ZkTopoConfForFullPull.HEARTBEAT_MONITOR_TIME_INTERVAL_DEFAULT_VAL) * 1000L;
+        for (Request request : requests.values()) {
+            request.weight = resolveWeight(request.tableName);
+        }
+    }
+
+    /**
+     * 缓存从kafka读到的一个分片
+     */
+    public void offer(ConsumerRecord<String, byte[]> record, JSONObject shardJson) {
+        String dataSourceInfo = shardJson.getString(DataPullConstants.DATA_SOURCE_INFO);
+        Request request = requests.get(dataSourceInfo);
+        if (request == null) {
+            request = new Request(dataSourceInfo, shardJson.getLongValue(DataPullConstants.DATA_CHUNK_COUNT));
+            requests.put(dataSourceInfo, request);
+            if (!sources.containsKey(request.sourceId)) {
+                sources.put(request.sourceId, new Source());
+            }
+            LOG.info("Scheduler: new request {} of source {}, {} shards, weight {}.", request.dsKey, request.sourceId,
+                    request.totalShards, request.weight);
+        }
+        request.queue.add(record);
+        request.lastActiveTime = now();
+        bufferedShards++;
+    }
+
+    /**
+     * 选出下一个要发射的分片，没有可发射的分片时返回null
+     * @param inflight 当前在途的分片数
+     * @param maxInflight spout允许的最大在途分片数
+     */
+    public ConsumerRecord<String, byte[]> next(int inflight, int maxInflight) {
+        if (inflight >= maxInflight) {
+            return null;
+        }
+        boolean reservedOnly = inflight >= maxInflight - Math.min(reservedShards, maxInflight - 1);
+        Request best = null;
+        for (Request request : requests.values()) {
+            if (request.queue.isEmpty() || (reservedOnly && request.inflight > 0)) {
+                continue;
+            }
+            if (maxShardsPerSource > 0 && sources.get(request.sourceId).inflight >= maxShardsPerSource) {
+                continue;
+            }
+            // 在途分片数/权重 最小的优先，相同时先到的优先
+            if (best == null || request.inflight * best.weight < best.inflight * request.weight) {
+                best = request;
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+
+        ConsumerRecord<String, byte[]> record = best.queue.poll();
+        bufferedShards--;
+        best.inflight++;
+        best.emittedShards++;
+        best.lastActiveTime = now();
+        sources.get(best.sourceId).inflight++;
+        inflightShards.put(record, new Shard(best, now()));
+        return record;
+    }
+
+    /**
+     * 分片处理完成(ack或fail)。fail时丢弃该请求缓存的分片，整个请求已经失败
+     */
+    public void complete(Object msgId, boolean success) {
+        Shard shard = inflightShards.remove(msgId);
+        if (shard == null) {
+            return;
+        }
+        Request request = shard.request;
+        Source source = sources.get(request.sourceId);
+        request.inflight--;
+        source.inflight--;
+        request.lastActiveTime = now();
+        if (success) {
+            long costMs = now() - shard.emitTime;
+            request.finishedShards++;
+            request.shardMillis += costMs;
+            source.finishedShards++;
+            source.shardMillis += costMs;
+        } else {
+            abort(request.dataSourceInfo);
+        }
+        if (request.inflight == 0 && request.queue.isEmpty()
+                && (request.aborted || request.finishedShards >= request.totalShards)) {
+            requests.remove(request.dataSourceInfo);
+        }
+    }
+
+    /**
+     * 丢弃请求缓存的分片，在途分片完成后清理该请求
+     */
+    public void abort(String dataSourceInfo) {
+        Request request = requests.get(dataSourceInfo);
+        if (request == null) {
+            return;
+        }
+        request.aborted = true;
+        bufferedShards -= request.queue.size();
+        request.queue.clear();
+        if (request.inflight == 0) {
+            requests.remove(dataSourceInfo);
+        }
+    }
+
+    public boolean isBufferFull() {
+        return bufferedShards >= maxBufferedShards;
+    }
+
+    public int getBufferedShards() {
+        return bufferedShards;
+    }
+
+    /**
+     * 各partition中最早的未发射分片的offset，提交kafka offset时不能越过这些分片，否则重启后它们会丢失
+     */
+    public Map<TopicPartition, Long> getFirstBufferedOffsets() {
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        for (Request request : requests.values()) {
+            for (ConsumerRecord<String, byte[]> record : request.queue) {
+                TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+                Long offset = offsets.get(partition);
+                if (offset == null || record.offset() < offset) {
+                    offsets.put(partition, record.offset());
+                }
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * 按监控间隔把各请求的排队位置和预计剩余时间写入monitor节点，排队位置变化时立即写入
+     */
+    public void report(ZkService zkService) {
+        long now = now();
+        if (now - lastReportTime < 1000) {
+            return;
+        }
+        lastReportTime = now;
+
+        int position = 0;
+        Iterator<Request> it = requests.values().iterator();
+        while (it.hasNext()) {
+            Request request = it.next();
+            if (request.queue.isEmpty() && request.inflight == 0 && now - request.lastActiveTime > IDLE_REQUEST_EXPIRE_MS) {
+                LOG.info("Scheduler: request {} has been idle for a long time, removed.", request.dsKey);
+                it.remove();
+                continue;
+            }
+            if (request.aborted) {
+                continue;
+            }
+            int queuePosition = request.emittedShards == 0 ? ++position : 0;
+            if (queuePosition == request.reportedPosition && now - request.lastReportTime < reportIntervalMs) {
+                continue;
+            }
+            long etaSecs = estimateSecs(request, queuePosition);
+            if (request.dbNameSpace == null) {
+                request.dbNameSpace = FullPullHelper.getDbNameSpace(request.dataSourceInfo);
+            }
+            if (FullPullHelper.updateMonitorQueueInfo(zkService, request.dbNameSpace, queuePosition, etaSecs)) {
+                request.reportedPosition = queuePosition;
+            }
+            request.lastReportTime = now;
+        }
+    }
+
+    /**
+     * 请求的排队位置(还没有发射过分片的请求按到达顺序从1开始，已经开始的为0)和预计剩余秒数
+     * @return [排队位置, 预计剩余秒数]，请求不存在时返回null
+     */
+    long[] progress(String dataSourceInfo) {
+        int position = 0;
+        for (Request request : requests.values()) {
+            if (request.aborted) {
+                continue;
+            }
+            int queuePosition = request.emittedShards == 0 ? ++position : 0;
+            if (request.dataSourceInfo.equals(dataSourceInfo)) {
+                return new long[]{queuePosition, estimateSecs(request, queuePosition)};
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 预计剩余秒数：剩余分片数 / 并发数 * 平均分片耗时，排队中的请求加上前面请求占用并发的时间。
+     * 还没有分片完成时用同一数据源的平均分片耗时，都没有时返回-1
+     */
+    private long estimateSecs(Request request, int queuePosition) {
+        Source source = sources.get(request.sourceId);
+        double shardMs;
+        if (request.finishedShards > 0) {
+            shardMs = (double) request.shardMillis / request.finishedShards;
+        } else if (source.finishedShards > 0) {
+            shardMs = (double) source.shardMillis / source.finishedShards;
+        } else {
+            return -1;
+        }
+        int parallel = Math.max(Math.max(request.inflight, source.inflight), 1);
+        long remaining = Math.max(request.totalShards - request.finishedShards - request.inflight, 0);
+        // 在途分片大约完成了一半
+        double ms = Math.ceil((double) remaining / Math.max(request.inflight, 1)) * shardMs + (request.inflight > 0 ? shardMs / 2 : 0);
+        if (queuePosition > 0) {
+            ms += (double) queuePosition / parallel * shardMs;
+        }
+        return (long) Math.ceil(ms / 1000);
+    }
+
+    private double resolveWeight(String tableName) {
+        if (StringUtils.isNotBlank(weightGroups)) {
+            for (String weightGroup : weightGroups.split("\\|")) {
+                String[] pair = weightGroup.split(":");
+                if (pair.length == 2 && (pair[0].trim().equalsIgnoreCase(tableName) || pair[0].trim().equals("*"))) {
+                    double weight = Double.parseDouble(pair[1].trim());
+                    return weight > 0 ? weight : 1;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * 当前时间，测试中可以替换为模拟时钟
+     */
+    long now() {
+        return System.currentTimeMillis();
+    }
+
+    private static int getInt(Properties props, String key, int defaultVal) {
+        String val = props.getProperty(key);
+        return StringUtils.isNotBlank(val) ? Integer.parseInt(val.trim()) : defaultVal;
+    }
+
+    private class Request {
+        final String dataSourceInfo;
+        final String dsKey;
+        // 需要读取源库配置，上报monitor时才解析
+        String dbNameSpace;
+        final String sourceId;
+        final String tableName;
+        final long totalShards;
+        final Deque<ConsumerRecord<String, byte[]>> queue = new ArrayDeque<>();
+        double weight;
+        int inflight;
+        long emittedShards;
+        long finishedShards;
+        long shardMillis;
+        boolean aborted;
+        long lastActiveTime;
+        int reportedPosition = -1;
+        long lastReportTime;
+
+        Request(String dataSourceInfo, long totalShards) {
+            JSONObject dsObj = JSONObject.parseObject(dataSourceInfo);
+            JSONObject payload = dsObj.getJSONObject(DataPullConstants.FullPullInterfaceJson.PAYLOAD_KEY);
+            this.dataSourceInfo = dataSourceInfo;
+            this.dsKey = FullPullHelper.getDataSourceKey(dsObj);
+            this.sourceId = payload.getString(DataPullConstants.FULL_DATA_PULL_REQ_PAYLOAD_DATA_SOURCE_ID);
+            this.tableName = payload.getString(DataPullConstants.FULL_DATA_PULL_REQ_PAYLOAD_SCHEMA_NAME) + "."
+                    + payload.getString(DataPullConstants.FULL_DATA_PULL_REQ_PAYLOAD_TABLE_NAME);
+            this.totalShards = totalShards;
+            this.weight = resolveWeight(tableName);
+        }
+    }
+
+    private static class Source {
+        int inflight;
+        long finishedShards;
+        long shardMillis;
+    }
+
+    private static class Shard {
+        final Request request;
+        final long emitTime;
+
+        Shard(Request request, long emitTime) {
+            this.request = request;
+            this.emitTime = emitTime;
+        }
+    }
+}
@@ -75,6 +75,14 @@ public class ProgressInfo {
     @JsonProperty("BatchNo")
     private String batchNo;
 
+    //排队位置，0表示已经开始拉取，由DataPullingSpout的调度器写入
+    @JsonProperty("QueuePosition")
+    private String queuePosition;
+
+    //预计剩余时间
+    @JsonProperty("Eta")
+    private String eta;
+
     //do not serialization
     private int zkVersion = -1;
 
@@ -88,6 +96,8 @@ public class ProgressInfo {
 
     public void mergeProgressInfo(ProgressInfo other) {
         this.errorMsg = other.getErrorMsg();
+        this.queuePosition = other.getQueuePosition();
+        this.eta = other.getEta();
         this.zkVersion = other.getZkVersion();
     }
     public String getPartitions() {
@@ -209,4 +219,20 @@ public class ProgressInfo {
     public void setBatchNo(String batchNo) {
         this.batchNo = batchNo;
     }
+
+    public String getQueuePosition() {
+        return queuePosition;
+    }
+
+    public void setQueuePosition(String queuePosition) {
+        this.queuePosition = queuePosition;
+    }
+
+    public String getEta() {
+        return eta;
+    }
+
+    public void setEta(String eta) {
+        this.eta = eta;
+    }
 }
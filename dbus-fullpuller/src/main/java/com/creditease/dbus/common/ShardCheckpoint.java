@@ -0,0 +1,230 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.common;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.TreeMap;
+
+import com.creditease.dbus.common.utils.DataDrivenDBInputFormat.DataDrivenDBInputSplit;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * 分片拉取断点
+ * lastKey: 已被kafka确认的最后一个完整的分片列取值(该取值的所有行都已确认发送)
+ * rows: 截止到lastKey(含)已确认发送的行数; 分片无法续拉时为本次尝试已确认发送的行数
+ * reportedRows: 已经汇报给ProgressBolt的行数, 用于重试后修正进度
+ * 发往kafka的每批数据按发送顺序编号, 回调乱序到达时断点只推进到之前所有批次都已确认的最大编号
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ShardCheckpoint {
+    @JsonProperty("LastKey")
+    private String lastKey;
+
+    @JsonProperty("Rows")
+    private long rows;
+
+    @JsonProperty("ReportedRows")
+    private long reportedRows;
+
+    /** 最后一个已分配的批次编号 */
+    private long lastBatch;
+    /** 该编号及之前的批次都已确认(或属于之前的尝试) */
+    private long ackedBatch;
+    /** 已确认但之前还有批次未确认的断点, key为批次编号 */
+    private final TreeMap<Long, Mark> pendingAcks = new TreeMap<>();
+    /** 有批次发送失败后不再推进断点 */
+    private boolean halted;
+
+    public synchronized String getLastKey() {
+        return lastKey;
+    }
+
+    public synchronized void setLastKey(String lastKey) {
+        this.lastKey = lastKey;
+    }
+
+    public synchronized long getRows() {
+        return rows;
+    }
+
+    public synchronized void setRows(long rows) {
+        this.rows = rows;
+    }
+
+    public synchronized long getReportedRows() {
+        return reportedRows;
+    }
+
+    public synchronized void setReportedRows(long reportedRows) {
+        this.reportedRows = reportedRows;
+    }
+
+    /**
+     * 同步确认一批数据后推进断点, 不回退
+     */
+    public synchronized void advance(String key, long rows) {
+        if (rows > this.rows) {
+            this.lastKey = key;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * 开始一次新的尝试: 之前尝试中还没有确认的批次作废, 之后到达的回调不再影响断点
+     */
+    public synchronized void resetBatches() {
+        ackedBatch = lastBatch;
+        pendingAcks.clear();
+        halted = false;
+    }
+
+    /**
+     * 为即将发送的一批数据分配编号, 必须按发送顺序调用
+     */
+    public synchronized long nextBatch() {
+        return ++lastBatch;
+    }
+
+    /**
+     * kafka确认编号为batch的一批数据, key/rows为该批发送完成后的断点
+     * 之前的批次都已确认时推进断点, 否则暂存到之前的批次确认后再推进
+     */
+    public synchronized void acked(long batch, String key, long rows) {
+        if (halted || batch <= ackedBatch) {
+            return;
+        }
+        pendingAcks.put(batch, new Mark(key, rows));
+        Mark mark;
+        while ((mark = pendingAcks.remove(ackedBatch + 1)) != null) {
+            ackedBatch++;
+            advance(mark.key, mark.rows);
+        }
+    }
+
+    /**
+     * 有批次发送失败, 之后的确认不再推进断点, 重试从当前断点开始
+     */
+    public synchronized void halt() {
+        halted = true;
+        pendingAcks.clear();
+    }
+
+    /**
+     * 分片无法续拉时从头开始, 已汇报的行数保留, 下次汇报时扣回
+     */
+    public synchronized void restart() {
+        this.lastKey = null;
+        this.rows = 0;
+    }
+
+    public synchronized ShardCheckpoint copy() {
+        ShardCheckpoint other = new ShardCheckpoint();
+        other.lastKey = lastKey;
+        other.rows = rows;
+        other.reportedRows = reportedRows;
+        return other;
+    }
+
+    /**
+     * 只有数值和时间类型的分片列可以续拉:
+     * 字符类型在数据库排序规则下相等的取值(如大小写不敏感)在java中不相等, 无法可靠地判断一个取值是否已经读完
+     */
+    public static boolean isResumable(DataDrivenDBInputSplit split) {
+        if (DataPullConstants.QUERY_COND_IS_NULL.equals(split.getLowerOperator())) {
+            return false;
+        }
+        switch (split.getSqlType()) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+            case Types.DATE:
+            case Types.TIME:
+            case Types.TIMESTAMP:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 读取当前行分片列的取值, 用于判断取值是否变化
+     */
+    public static Comparable readKey(ResultSet rs, int index, int sqlType) throws SQLException {
+        if (isDateType(sqlType)) {
+            return rs.getTimestamp(index);
+        }
+        return rs.getBigDecimal(index);
+    }
+
+    public static String formatKey(Comparable key) {
+        if (key instanceof BigDecimal) {
+            return ((BigDecimal) key).toPlainString();
+        }
+        return key.toString();
+    }
+
+    public static Comparable parseKey(String key, int sqlType) {
+        if (isDateType(sqlType)) {
+            return Timestamp.valueOf(key);
+        }
+        return new BigDecimal(key);
+    }
+
+    /**
+     * 生成从lastKey开始继续读取的分片, 上界不变
+     * 下界取 >= lastKey(时间类型的分片边界是截断到毫秒的值), 已发送的行由调用方按完整取值跳过
+     */
+    public DataDrivenDBInputSplit continueSplit(DataDrivenDBInputSplit split) {
+        String key = getLastKey();
+        Object lowerValue = isDateType(split.getSqlType()) ? (Object) Timestamp.valueOf(key).getTime() : new BigDecimal(key);
+        DataDrivenDBInputSplit continued = new DataDrivenDBInputSplit(split.getSqlType(), split.getSplitCol(),
+                " >= ", lowerValue, split.getUpperOperator(), split.getUpperValue());
+        continued.setTargetTableName(split.getTargetTableName());
+        continued.setTablePartitionInfo(split.getTablePartitionInfo());
+        continued.setCollate(split.getCollate());
+        return continued;
+    }
+
+    private static boolean isDateType(int sqlType) {
+        return sqlType == Types.DATE || sqlType == Types.TIME || sqlType == Types.TIMESTAMP;
+    }
+
+    private static class Mark {
+        private final String key;
+        private final long rows;
+
+        private Mark(String key, long rows) {
+            this.key = key;
+            this.rows = rows;
+        }
+    }
+}
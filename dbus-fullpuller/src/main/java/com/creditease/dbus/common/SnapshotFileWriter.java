@@ -0,0 +1,277 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+package com.creditease.dbus.common;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.file.CodecFactory;
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.file.DataFileWriter;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.commons.lang.StringUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.apache.parquet.avro.AvroParquetWriter;
+import org.apache.parquet.avro.AvroWriteSupport;
+import org.apache.parquet.format.converter.ParquetMetadataConverter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.creditease.dbus.commons.DbusMessage;
+import com.creditease.dbus.commons.avro.UmsAvroSchemas;
+
+/**
+ * 把一个分片的拉取结果写成本地快照文件，供批量入库直接读取，不必再从kafka解析UMS。
+ * 支持两种格式：parquet(列式存储，按列压缩，用parquet-avro写在本地文件系统上，不依赖hdfs)和avro(行式数据文件，按块压缩)。
+ * 文件的schema由第一条消息的UMS schema生成，类型对应关系见UmsAvroSchemas，与二进制UMS的schema一致。
+ * 写入过程中文件名带.tmp后缀，commit()校验行数和schema后才改为正式文件名，没有commit的文件在close()时删除。
+ */
+public class SnapshotFileWriter implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(SnapshotFileWriter.class);
+
+    public static final String FORMAT_PARQUET = "parquet";
+    public static final String FORMAT_AVRO = "avro";
+    private static final String NAMESPACE = "com.creditease.dbus.snapshot";
+
+    private final String format;
+    private final File file;
+    private final File tmpFile;
+    private final String recordName;
+    private final String codec;
+    private Schema schema;
+    private DataFileWriter<GenericRecord> avroWriter;
+    private ParquetWriter<GenericRecord> parquetWriter;
+    private long rows;
+    private boolean committed;
+
+    /**
+     * @param dir 文件目录，不存在时创建
+     * @param name 不含后缀的文件名
+     * @param recordName avro record名，一般为表名
+     * @param format 文件格式：parquet(默认)/avro
+     * @param codec 压缩方式，为空时parquet用snappy，avro用deflate。parquet可选snappy/gzip/uncompressed，avro可选deflate/snappy/null
+     */
+    public SnapshotFileWriter(String dir, String name, String recordName, String format, String codec) {
+        this.format = StringUtils.isBlank(format) ? FORMAT_PARQUET : format.trim().toLowerCase();
+        if (!FORMAT_PARQUET.equals(this.format) && !FORMAT_AVRO.equals(this.format)) {
+            throw new IllegalArgumentException("Unsupported snapshot format: " + format);
+        }
+        this.file = new File(dir, name + "." + this.format);
+        this.tmpFile = new File(dir, name + "." + this.format + ".tmp");
+        this.recordName = recordName;
+        this.codec = StringUtils.isBlank(codec) ? null : codec.trim();
+    }
+
+    /**
+     * 追加一条消息中的所有行。同一文件中各消息的UMS schema必须一致
+     */
+    public void append(DbusMessage message) throws IOException {
+        List<DbusMessage.Field> fields = message.getSchema().getFields();
+        if (schema == null) {
+            open(fields);
+        } else if (schema.getFields().size() != fields.size()) {
+            throw new IOException("Schema of message doesn't match snapshot file " + tmpFile.getPath());
+        }
+        for (DbusMessage.Payload payload : message.getPayload()) {
+            List<Object> tuple = payload.getTuple();
+            GenericRecord record = new GenericData.Record(schema);
+            for (int i = 0; i < fields.size(); i++) {
+                record.put(i, UmsAvroSchemas.toAvroValue(fields.get(i), tuple.get(i)));
+            }
+            if (parquetWriter != null) {
+                parquetWriter.write(record);
+            } else {
+                avroWriter.append(record);
+            }
+            rows++;
+        }
+    }
+
+    /**
+     * 关闭文件，校验文件中的行数和schema与写入的一致后改为正式文件名
+     * @return 快照文件
+     */
+    public File commit() throws IOException {
+        if (schema == null) {
+            // 没有写入过消息时生成没有列的空文件，下游按分片数核对文件数。parquet不能写没有列的文件，调用方需先写入一条带schema的空消息
+            open(new ArrayList<DbusMessage.Field>());
+        }
+        closeWriter();
+        if (FORMAT_PARQUET.equals(format)) {
+            verifyParquet();
+        } else {
+            verifyAvro();
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Can't replace snapshot file " + file.getPath());
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("Can't rename " + tmpFile.getPath() + " to " + file.getPath());
+        }
+        committed = true;
+        return file;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    @Override
+    public void close() {
+        try {
+            closeWriter();
+        } catch (IOException e) {
+            LOG.warn("Closing snapshot file {} failed: {}", tmpFile.getPath(), e.getMessage());
+        }
+        if (!committed && tmpFile.exists() && !tmpFile.delete()) {
+            LOG.warn("Can't delete uncommitted snapshot file {}", tmpFile.getPath());
+        }
+    }
+
+    private void open(List<DbusMessage.Field> fields) throws IOException {
+        File dir = tmpFile.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create snapshot directory " + dir.getPath());
+        }
+        // 重试时覆盖上次尝试留下的文件
+        if (tmpFile.exists() && !tmpFile.delete()) {
+            throw new IOException("Can't delete snapshot file left by last attempt " + tmpFile.getPath());
+        }
+        Schema fileSchema = UmsAvroSchemas.toAvroSchema(recordName, NAMESPACE, fields);
+        if (FORMAT_PARQUET.equals(format)) {
+            if (fields.isEmpty()) {
+                throw new IOException("Parquet snapshot file " + tmpFile.getPath() + " needs at least one column");
+            }
+            parquetWriter = AvroParquetWriter.<GenericRecord>builder(new Path(tmpFile.toURI()))
+                    .withSchema(fileSchema)
+                    .withCompressionCodec(parquetCodec(codec))
+                    .withConf(localConf())
+                    .build();
+        } else {
+            avroWriter = new DataFileWriter<>(new GenericDatumWriter<GenericRecord>(fileSchema));
+            avroWriter.setCodec(codec == null ? CodecFactory.deflateCodec(CodecFactory.DEFAULT_DEFLATE_LEVEL) : CodecFactory.fromString(codec));
+            avroWriter.create(fileSchema, tmpFile);
+        }
+        schema = fileSchema;
+    }
+
+    private void closeWriter() throws IOException {
+        if (parquetWriter != null) {
+            ParquetWriter<GenericRecord> w = parquetWriter;
+            parquetWriter = null;
+            w.close();
+        }
+        if (avroWriter != null) {
+            DataFileWriter<GenericRecord> w = avroWriter;
+            avroWriter = null;
+            w.close();
+        }
+    }
+
+    /**
+     * parquet的压缩方式，兼容avro的写法：deflate对应gzip，null对应uncompressed
+     */
+    static CompressionCodecName parquetCodec(String codec) {
+        if (codec == null) {
+            return CompressionCodecName.SNAPPY;
+        }
+        if ("deflate".equalsIgnoreCase(codec)) {
+            return CompressionCodecName.GZIP;
+        }
+        if ("null".equalsIgnoreCase(codec)) {
+            return CompressionCodecName.UNCOMPRESSED;
+        }
+        return CompressionCodecName.fromConf(codec);
+    }
+
+    /**
+     * 只用本地文件系统，不加载classpath上的core-site.xml，以免被worker上的hdfs配置影响。
+     * RawLocalFileSystem不生成.crc校验文件，改名时不会留下孤立的校验文件
+     */
+    private static Configuration localConf() {
+        Configuration conf = new Configuration(false);
+        conf.setClass("fs.file.impl", RawLocalFileSystem.class, FileSystem.class);
+        conf.setBoolean("fs.file.impl.disable.cache", true);
+        return conf;
+    }
+
+    /**
+     * 只读取文件尾部的元数据，按各行组的行数统计，不解码数据
+     */
+    private void verifyParquet() throws IOException {
+        ParquetMetadata footer = ParquetFileReader.readFooter(localConf(), new Path(tmpFile.toURI()),
+                ParquetMetadataConverter.NO_FILTER);
+        String fileSchema = footer.getFileMetaData().getKeyValueMetaData().get(AvroWriteSupport.AVRO_SCHEMA);
+        if (fileSchema == null || !schema.equals(new Schema.Parser().parse(fileSchema))) {
+            throw new IOException("Schema of snapshot file " + tmpFile.getPath() + " doesn't match the written schema");
+        }
+        long fileRows = 0;
+        for (BlockMetaData block : footer.getBlocks()) {
+            fileRows += block.getRowCount();
+        }
+        checkRows(fileRows);
+    }
+
+    /**
+     * 只读取各数据块的头部统计行数，不解码数据
+     */
+    private void verifyAvro() throws IOException {
+        long fileRows = 0;
+        try (DataFileReader<GenericRecord> reader = new DataFileReader<>(tmpFile, new GenericDatumReader<GenericRecord>())) {
+            if (!schema.equals(reader.getSchema())) {
+                throw new IOException("Schema of snapshot file " + tmpFile.getPath() + " doesn't match the written schema");
+            }
+            while (reader.hasNext()) {
+                fileRows += reader.getBlockCount();
+                reader.nextBlock();
+            }
+        }
+        checkRows(fileRows);
+    }
+
+    private void checkRows(long fileRows) throws IOException {
+        if (fileRows != rows) {
+            throw new IOException("Snapshot file " + tmpFile.getPath() + " has " + fileRows + " rows, " + rows + " rows written");
+        }
+    }
+}
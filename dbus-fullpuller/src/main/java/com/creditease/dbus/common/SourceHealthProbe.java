@@ -0,0 +1,95 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.common;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.creditease.dbus.common.utils.DBConfiguration;
+import com.creditease.dbus.enums.DbusDatasourceType;
+import com.creditease.dbus.manager.GenericJdbcManager;
+
+/**
+ * 采集源库的健康指标，供SourceLoadController判断是否过载
+ *
+ * mysql: Threads_running及从库的Seconds_Behind_Master；oracle: V$SYSMETRIC中的Average Active Sessions。
+ * 拉取账号没有权限等原因采集失败时返回null，不影响拉取。
+ */
+public class SourceHealthProbe {
+    private static Logger LOG = LoggerFactory.getLogger(SourceHealthProbe.class);
+
+    private static final String MYSQL_THREADS_RUNNING = "SHOW GLOBAL STATUS LIKE 'Threads_running'";
+    private static final String MYSQL_SLAVE_STATUS = "SHOW SLAVE STATUS";
+    private static final String ORACLE_ACTIVE_SESSIONS = "SELECT VALUE FROM V$SYSMETRIC WHERE METRIC_NAME = 'Average Active Sessions' AND GROUP_ID = 2";
+
+    public static SourceLoadController.Health sample(DBConfiguration dbConf) {
+        String dsType = dbConf.getString(DBConfiguration.DataSourceInfo.DS_TYPE);
+        GenericJdbcManager dbManager = null;
+        Statement stmt = null;
+        try {
+            dbManager = FullPullHelper.getDbManager(dbConf, dbConf.getString(DBConfiguration.DataSourceInfo.URL_PROPERTY_READ_ONLY));
+            Connection conn = dbManager.getConnection();
+            stmt = conn.createStatement();
+            SourceLoadController.Health health = new SourceLoadController.Health();
+            if (dsType.toUpperCase().equals(DbusDatasourceType.MYSQL.name())) {
+                try (ResultSet rs = stmt.executeQuery(MYSQL_THREADS_RUNNING)) {
+                    if (rs.next()) {
+                        health.setThreadsRunning(rs.getLong(2));
+                    }
+                }
+                // 拉取连接的是从库时才有复制延迟，Seconds_Behind_Master为NULL表示复制中断，按未采集处理
+                try (ResultSet rs = stmt.executeQuery(MYSQL_SLAVE_STATUS)) {
+                    if (rs.next()) {
+                        long lag = rs.getLong("Seconds_Behind_Master");
+                        if (!rs.wasNull()) {
+                            health.setReplicaLagSecs(lag);
+                        }
+                    }
+                }
+            } else if (dsType.toUpperCase().equals(DbusDatasourceType.ORACLE.name())) {
+                try (ResultSet rs = stmt.executeQuery(ORACLE_ACTIVE_SESSIONS)) {
+                    if (rs.next()) {
+                        health.setActiveSessions(rs.getDouble(1));
+                    }
+                }
+            }
+            return health;
+        } catch (Exception e) {
+            LOG.warn("Sampling source health failed, skipped this time. " + e.getMessage());
+            return null;
+        } finally {
+            try {
+                if (stmt != null) {
+                    stmt.close();
+                }
+                if (dbManager != null) {
+                    dbManager.close();
+                }
+            } catch (Exception e) {
+                LOG.error(e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,299 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.common;
+
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 全量拉取对源库的自适应限流，每个数据源(worker进程内)一个实例
+ *
+ * 控制两个量：同时读取分片的reader数和每页数据之间的停顿时间。
+ * 每读完一页汇报读取耗时，按行耗时的指数平均与历史最好水平比较；查询耗时过长、行耗时超出容忍倍数或源库健康指标超限时视为过载。
+ * 过载时reader数减半、停顿加倍；不过载时停顿逐步减少，每个控制周期reader数加一(AIMD)。
+ * 控制逻辑不访问数据库，健康指标由SourceHealthProbe采集后通过onHealth传入，便于用模拟的慢数据源验证。
+ */
+public class SourceLoadController {
+    private static Logger LOG = LoggerFactory.getLogger(SourceLoadController.class);
+
+    private static final ConcurrentMap<String, SourceLoadController> CONTROLLERS = new ConcurrentHashMap<>();
+
+    private static final long PAUSE_STEP_MS = 50;
+    private static final double EWMA_WEIGHT = 0.3;
+
+    private final String dsName;
+
+    private volatile boolean enabled;
+    private volatile int minReaders;
+    private volatile int maxReaders;
+    private volatile long maxPauseMs;
+    private volatile double latencyTolerance;
+    private volatile long maxQueryMs;
+    private volatile long controlIntervalMs;
+    private volatile long healthIntervalMs;
+    private volatile long maxReplicaLagSecs;
+    private volatile long maxThreadsRunning;
+    private volatile double maxActiveSessions;
+
+    private int readers;
+    private int activeReaders;
+    private long pauseMs;
+    private double rowNanosEwma = -1;
+    private double baselineRowNanos = -1;
+    private boolean overloaded;
+    private String overloadReason;
+    private long lastControlTime = System.currentTimeMillis();
+    private long nextHealthTime = 0;
+    private Health health;
+
+    SourceLoadController(String dsName) {
+        this.dsName = dsName;
+    }
+
+    public static SourceLoadController of(String dsName) {
+        SourceLoadController controller = CONTROLLERS.get(dsName);
+        if (controller == null) {
+            controller = new SourceLoadController(dsName);
+            SourceLoadController existed = CONTROLLERS.putIfAbsent(dsName, controller);
+            if (existed != null) {
+                controller = existed;
+            }
+        }
+        return controller;
+    }
+
+    /**
+     * 加载或重新加载拉取配置，未开启时所有方法都不生效
+     */
+    public synchronized void configure(Properties props) {
+        enabled = Boolean.parseBoolean(props.getProperty(DataPullConstants.THROTTLE_ENABLED, "false").trim());
+        minReaders = Math.max(getInt(props, DataPullConstants.THROTTLE_MIN_READERS, 1), 1);
+        maxReaders = Math.max(getInt(props, DataPullConstants.THROTTLE_MAX_READERS, 8), minReaders);
+        maxPauseMs = getInt(props, DataPullConstants.THROTTLE_MAX_PAUSE_MS, 2000);
+        latencyTolerance = Double.parseDouble(props.getProperty(DataPullConstants.THROTTLE_LATENCY_TOLERANCE, "3").trim());
+        maxQueryMs = getInt(props, DataPullConstants.THROTTLE_MAX_QUERY_SECS, 60) * 1000L;
+        controlIntervalMs = getInt(props, DataPullConstants.THROTTLE_CONTROL_INTERVAL_SECS, 5) * 1000L;
+        healthIntervalMs = getInt(props, DataPullConstants.THROTTLE_HEALTH_INTERVAL_SECS, 10) * 1000L;
+        maxReplicaLagSecs = getInt(props, DataPullConstants.THROTTLE_MAX_REPLICA_LAG_SECS, 0);
+        maxThreadsRunning = getInt(props, DataPullConstants.THROTTLE_MAX_THREADS_RUNNING, 0);
+        maxActiveSessions = Double.parseDouble(props.getProperty(DataPullConstants.THROTTLE_MAX_ACTIVE_SESSIONS, "0").trim());
+        readers = readers == 0 ? minReaders : Math.min(Math.max(readers, minReaders), maxReaders);
+        pauseMs = Math.min(pauseMs, maxPauseMs);
+        notifyAll();
+        LOG.info("[throttle] {}: enabled={}, readers {}~{}, max pause {}ms, latency tolerance {}, max query {}ms, max replica lag {}s, max threads running {}, max active sessions {}.",
+                dsName, enabled, minReaders, maxReaders, maxPauseMs, latencyTolerance, maxQueryMs, maxReplicaLagSecs,
+                maxThreadsRunning, maxActiveSessions);
+    }
+
+    /**
+     * 开始读取一个分片前调用，reader数已满时等待
+     */
+    public synchronized void acquire() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        while (enabled && activeReaders >= readers) {
+            wait(1000);
+        }
+        activeReaders++;
+    }
+
+    public synchronized void release() {
+        if (activeReaders > 0) {
+            activeReaders--;
+        }
+        notifyAll();
+    }
+
+    /**
+     * 汇报一次查询(executeQuery)的耗时
+     */
+    public synchronized void onQuery(long nanos) {
+        if (!enabled) {
+            return;
+        }
+        long ms = TimeUnit.NANOSECONDS.toMillis(nanos);
+        if (maxQueryMs > 0 && ms > maxQueryMs) {
+            markOverloaded("query took " + ms + "ms");
+        }
+    }
+
+    /**
+     * 汇报读取一页数据的行数和耗时，返回这一页之后应该停顿的毫秒数
+     */
+    public synchronized long onPage(long rows, long nanos) {
+        if (!enabled || rows <= 0) {
+            return 0;
+        }
+        double rowNanos = (double) nanos / rows;
+        rowNanosEwma = rowNanosEwma < 0 ? rowNanos : EWMA_WEIGHT * rowNanos + (1 - EWMA_WEIGHT) * rowNanosEwma;
+        if (baselineRowNanos < 0 || rowNanosEwma < baselineRowNanos) {
+            baselineRowNanos = rowNanosEwma;
+        }
+        if (rowNanosEwma > baselineRowNanos * latencyTolerance) {
+            markOverloaded(String.format("%.1fus/row against baseline %.1fus/row", rowNanosEwma / 1000, baselineRowNanos / 1000));
+        }
+
+        if (overloaded) {
+            pauseMs = Math.min(maxPauseMs, Math.max(PAUSE_STEP_MS, pauseMs * 2));
+        } else {
+            pauseMs = Math.max(0, pauseMs - PAUSE_STEP_MS);
+        }
+        control();
+        return pauseMs;
+    }
+
+    /**
+     * 汇报源库健康指标，没有采集到的指标为负数
+     */
+    public synchronized void onHealth(Health health) {
+        if (!enabled || health == null) {
+            return;
+        }
+        this.health = health;
+        if (maxReplicaLagSecs > 0 && health.getReplicaLagSecs() > maxReplicaLagSecs) {
+            markOverloaded("replica lag " + health.getReplicaLagSecs() + "s");
+        }
+        if (maxThreadsRunning > 0 && health.getThreadsRunning() > maxThreadsRunning) {
+            markOverloaded("threads running " + health.getThreadsRunning());
+        }
+        if (maxActiveSessions > 0 && health.getActiveSessions() > maxActiveSessions) {
+            markOverloaded("active sessions " + health.getActiveSessions());
+        }
+    }
+
+    /**
+     * 是否到了采集健康指标的时间，同一时间只有一个reader会得到true
+     */
+    public synchronized boolean isHealthCheckDue() {
+        if (!enabled || healthIntervalMs <= 0 || (maxReplicaLagSecs <= 0 && maxThreadsRunning <= 0 && maxActiveSessions <= 0)) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        if (now < nextHealthTime) {
+            return false;
+        }
+        nextHealthTime = now + healthIntervalMs;
+        return true;
+    }
+
+    /**
+     * 按onPage返回的时间停顿
+     */
+    public void pause(long ms) throws InterruptedException {
+        if (ms > 0) {
+            TimeUnit.MILLISECONDS.sleep(ms);
+        }
+    }
+
+    private void markOverloaded(String reason) {
+        overloaded = true;
+        overloadReason = reason;
+    }
+
+    /**
+     * 每个控制周期调整一次reader数：过载减半，否则加一。基线缓慢上调，以适应源库正常的负载变化
+     */
+    private void control() {
+        long now = System.currentTimeMillis();
+        if (now - lastControlTime < controlIntervalMs) {
+            return;
+        }
+        lastControlTime = now;
+        int oldReaders = readers;
+        if (overloaded) {
+            readers = Math.max(minReaders, readers / 2);
+        } else if (readers < maxReaders) {
+            readers++;
+        }
+        if (readers != oldReaders || overloaded) {
+            LOG.info("[throttle] {}: readers {} -> {}, pause {}ms, {}us/row, health {}{}.", dsName, oldReaders, readers, pauseMs,
+                    String.format("%.1f", rowNanosEwma / 1000), health, overloaded ? ", overloaded: " + overloadReason : "");
+        }
+        if (baselineRowNanos > 0) {
+            baselineRowNanos *= 1.05;
+        }
+        overloaded = false;
+        overloadReason = null;
+        notifyAll();
+    }
+
+    public synchronized int getReaders() {
+        return readers;
+    }
+
+    public synchronized long getPauseMs() {
+        return pauseMs;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    private static int getInt(Properties props, String key, int defaultVal) {
+        String val = props.getProperty(key);
+        return StringUtils.isNotBlank(val) ? Integer.parseInt(val.trim()) : defaultVal;
+    }
+
+    /**
+     * 源库健康指标，-1表示没有采集
+     */
+    public static class Health {
+        private long replicaLagSecs = -1;
+        private long threadsRunning = -1;
+        private double activeSessions = -1;
+
+        public long getReplicaLagSecs() {
+            return replicaLagSecs;
+        }
+
+        public void setReplicaLagSecs(long replicaLagSecs) {
+            this.replicaLagSecs = replicaLagSecs;
+        }
+
+        public long getThreadsRunning() {
+            return threadsRunning;
+        }
+
+        public void setThreadsRunning(long threadsRunning) {
+            this.threadsRunning = threadsRunning;
+        }
+
+        public double getActiveSessions() {
+            return activeSessions;
+        }
+
+        public void setActiveSessions(double activeSessions) {
+            this.activeSessions = activeSessions;
+        }
+
+        @Override
+        public String toString() {
+            return "{replicaLag=" + replicaLagSecs + ", threadsRunning=" + threadsRunning + ", activeSessions=" + activeSessions + "}";
+        }
+    }
+}
@@ -80,6 +80,9 @@ public class DBConfiguration {
   
   public static final String PREPARE_STATEMENT_FETCH_SIZE = "prepare.statement.fetch.size";
   public static final String DB_RECORD_ROW_SIZE = "db.record.row.size";
+
+  /** mysql分片数据读取方式: buffered/stream/cursor, 可以用 mysql.fetch.mode.数据源名称 为单个数据源配置 */
+  public static final String MYSQL_FETCH_MODE = "mysql.fetch.mode";
   
   public static final String TABEL_ENCODE_COLUMNS = "table.encode.columns";
   public static final String TABEL_PARTITIONS = "table.partitions";
@@ -373,6 +376,10 @@ public class DBConfiguration {
   public void setSplitShardSize(Integer splitShardSize) {
       properties.put(DBConfiguration.SPLIT_SHARD_SIZE, splitShardSize);
   }
+
+  public String getMysqlFetchMode() {
+      return getString(DBConfiguration.MYSQL_FETCH_MODE, DataPullConstants.MYSQL_FETCH_MODE_STREAM);
+  }
   
     public boolean getAllowTextSplitter() {
 //        boolean allowTextSplitter = false;
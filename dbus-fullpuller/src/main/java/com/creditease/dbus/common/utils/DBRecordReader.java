@@ -66,6 +66,8 @@ public class DBRecordReader<T extends DBWritable> {
 
   private String tableName;
 
+  private String orderBy;
+
   /**
    * @throws SQLException
    */
@@ -150,14 +152,13 @@ public class DBRecordReader<T extends DBWritable> {
             
             LOG.info("split_index{}: Query Begin: {}, with cond lower: {} and upper: {}.", splitIndex, query, lowBound, upperBound);
             
-            int fetchSize = dbConf.getPrepareStatementFetchSize();
-            statement.setFetchSize(fetchSize);
-            LOG.info("split_index{}: Using fetchSize for next query: {}", splitIndex, fetchSize);
+            configureFetch(splitIndex);
 
             statement.setQueryTimeout(3600);
             LOG.info("split_index{}: Using queryTimeout 3600 seconds", splitIndex);
 
             rset = statement.executeQuery();
+            this.results = rset;
             LOG.info("split_index{}: Query end! ", splitIndex);
             return rset;
         } catch (SQLException e) {
@@ -203,6 +204,26 @@ public class DBRecordReader<T extends DBWritable> {
 //        }
     }
 
+  /**
+   * 设置查询语句的fetch size, 子类可以根据数据库驱动的特性覆盖该方法
+   */
+  protected void configureFetch(String splitIndex) throws SQLException {
+      int fetchSize = dbConf.getPrepareStatementFetchSize();
+      statement.setFetchSize(fetchSize);
+      LOG.info("split_index{}: Using fetchSize for next query: {}", splitIndex, fetchSize);
+  }
+
+  /**
+   * 指定本次读取的排序列(如分片续拉需要按分片列排序), 未指定时使用配置的jdbc.input.orderby
+   */
+  public void setOrderBy(String orderBy) {
+      this.orderBy = orderBy;
+  }
+
+  protected String getOrderBy() {
+      return orderBy != null ? orderBy : dbConf.getInputOrderBy();
+  }
+
   /** Returns the query for selecting the records,
    * subclasses can override this for custom behaviour.
  * @throws Exception */
@@ -229,7 +250,7 @@ public class DBRecordReader<T extends DBWritable> {
         query.append(" WHERE (").append(condWithPlaceholder).append(")");
       }
 
-      String orderBy = dbConf.getInputOrderBy();
+      String orderBy = getOrderBy();
       if (orderBy != null && orderBy.length() > 0) {
         query.append(" ORDER BY ").append(orderBy);
       }
@@ -268,6 +289,20 @@ public class DBRecordReader<T extends DBWritable> {
     }
   }
 
+  /**
+   * 只关闭本次查询的结果集和statement, 连接继续用于后续查询(如逐块计算校验值)
+   */
+  public void closeQuery() throws SQLException {
+      if (null != results) {
+          results.close();
+          results = null;
+      }
+      if (null != statement) {
+          statement.close();
+          statement = null;
+      }
+  }
+
   public void initialize(InputSplit inputSplit)
       throws IOException, InterruptedException {
     //do nothing
@@ -400,6 +435,10 @@ public class DBRecordReader<T extends DBWritable> {
     return tableName;
   }
 
+  protected ResultSet getResults() {
+    return results;
+  }
+
   protected DBConfiguration getDBConf() {
     return dbConf;
   }
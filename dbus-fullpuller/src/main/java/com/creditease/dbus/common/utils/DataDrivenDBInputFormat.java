@@ -43,6 +43,7 @@ import com.creditease.dbus.commons.Constants;
 import com.creditease.dbus.commons.ZkService;
 import com.creditease.dbus.enums.DbusDatasourceType;
 import com.creditease.dbus.manager.GenericJdbcManager;
+import com.creditease.dbus.manager.OracleManager;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -154,6 +155,24 @@ public class DataDrivenDBInputFormat<T extends DBWritable>//, InputSplit
                 .get(DBConfiguration.TABEL_PARTITIONS);
         LOG.info("Physical Tables count:{}; Table Partitions count:{}.", physicalTables.length, tablePartitions.size());
 
+        // oracle表配置了rowid策略时，按物理区切分，与是否有合适的分片列无关
+        String dsType = dbConfiguration.getString(DBConfiguration.DataSourceInfo.DS_TYPE);
+        if (dsType.toUpperCase().equals(DbusDatasourceType.ORACLE.name()) && dbManager instanceof OracleManager) {
+            String strategyGroups = FullPullHelper.getConfFromZk(Constants.ZkTopoConfForFullPull.COMMON_CONFIG,
+                    DataPullConstants.ORACLE_SPLIT_STRATEGY_GROUPS);
+            String strategy = resolveTableStyle(strategyGroups, dbConfiguration.getInputTableName(),
+                    DataPullConstants.ORACLE_SPLIT_STRATEGY_COLUMN);
+            LOG.info("oracle split strategy=" + strategy);
+            if (DataPullConstants.ORACLE_SPLIT_STRATEGY_ROWID.equals(strategy)) {
+                Map<String, Object> rowidInfoMap = getRowidSplits((OracleManager) dbManager, physicalTables,
+                        tablePartitions, splitShardSize, dbNameSpace, zkService);
+                if (rowidInfoMap != null) {
+                    return rowidInfoMap;
+                }
+                LOG.warn("Failed to generate rowid splits. Will split by column [{}] instead.", splitCol);
+            }
+        }
+
         boolean hasNotProperSplitCol = StringUtils.isBlank(splitCol);
         int totalRows = 0;
         int totalShardsCount = 0;
@@ -187,7 +206,6 @@ public class DataDrivenDBInputFormat<T extends DBWritable>//, InputSplit
 
         } else {
             String pullCollate = "";
-            String dsType = dbConfiguration.getString(DBConfiguration.DataSourceInfo.DS_TYPE);
             // 仅mysql需要考虑设置collate
             if (dsType.toUpperCase().equals(DbusDatasourceType.MYSQL.name())) {
                 FullPullHelper.getConfFromZk(Constants.ZkTopoConfForFullPull.COMMON_CONFIG,
@@ -200,25 +218,8 @@ public class DataDrivenDBInputFormat<T extends DBWritable>//, InputSplit
                     DataPullConstants.SPLITTER_STRING_STYLEGROUPS);
             LOG.info("splitterStyleGroup=" + splitterStyleGroups);
             LOG.info("logicalTableName=" + logicalTableName);
-            String splitterStyle = DataPullConstants.SPLITTER_STRING_STYLE_DEFAULT;
-            if (splitterStyleGroups != null) {
-                String[] styleGroups = splitterStyleGroups.split("\\|");
-                for (String styleGroup : styleGroups) {
-                    String[] pair = styleGroup.split(":");
-                    if (pair.length == 2) {
-                        String table = pair[0];
-                        String style = pair[1];
-                        if (logicalTableName.equalsIgnoreCase(table)) {
-                            splitterStyle = style.toLowerCase();
-                            break;
-                        }
-                        if (table.equals("*")) {
-                            splitterStyle = style;
-                            break;
-                        }
-                    }
-                }
-            }
+            String splitterStyle = resolveTableStyle(splitterStyleGroups, logicalTableName,
+                    DataPullConstants.SPLITTER_STRING_STYLE_DEFAULT);
             LOG.info("splitterStyle=" + splitterStyle);
             if (splitterStyle.equals("md5") || splitterStyle.equals("number")) {
                 pullCollate = "";
@@ -254,6 +255,75 @@ public class DataDrivenDBInputFormat<T extends DBWritable>//, InputSplit
         }
     }
 
+    /**
+     * 按ROWID区间切分：分片数仍由行数和split.shard.size决定，每片的块数相同。
+     * 任一物理表/分区无法取得区信息时返回null，整体退回按列切分，避免同一任务混用两种分片。
+     */
+    private Map<String, Object> getRowidSplits(OracleManager dbManager, String[] physicalTables, List<String> tablePartitions,
+                                               int splitShardSize, String dbNameSpace, ZkService zkService) {
+        List<InputSplit> inputSplitList = new ArrayList<InputSplit>();
+        int totalRows = 0;
+        int totalShardsCount = 0;
+        for (String table : physicalTables) {
+            for (String tablePartition : tablePartitions) {
+                int totalRowsOfCurShard = dbManager.queryTotalRows(table, null, tablePartition);
+                int numSplitsOfCurShard = totalRowsOfCurShard % splitShardSize == 0
+                        ? totalRowsOfCurShard / splitShardSize : totalRowsOfCurShard / splitShardSize + 1;
+                List<InputSplit> splitsOfCurShard = dbManager.queryRowidSplits(table, tablePartition, numSplitsOfCurShard);
+                if (splitsOfCurShard == null) {
+                    return null;
+                }
+                if (splitsOfCurShard.isEmpty()) {
+                    if (totalRowsOfCurShard > 0) {
+                        // 有数据却没有表段(如索引组织表)，无法按ROWID切分
+                        LOG.warn("Physical Table:{} - Partition:{} has no table segment.", table, tablePartition);
+                        return null;
+                    }
+                    // 尚未分配段的空表，与无分片列时一样生成1=1分片
+                    InputSplit inputSplit = new DataDrivenDBInputFormat.DataDrivenDBInputSplit(-1, "1", " = ", "1",
+                            " = ", "1");
+                    inputSplit.setTargetTableName(table);
+                    inputSplit.setTablePartitionInfo(tablePartition);
+                    splitsOfCurShard.add(inputSplit);
+                }
+
+                totalRows = totalRows + totalRowsOfCurShard;
+                totalShardsCount = totalShardsCount + splitsOfCurShard.size();
+                inputSplitList.addAll(splitsOfCurShard);
+
+                FullPullHelper.updateMonitorSplitPartitionInfo(zkService, dbNameSpace, totalShardsCount, totalRows);
+                LOG.info("Physical Table:{} - Partition:{} - Total Count:{}, Rowid shards count:{}.", table, tablePartition,
+                        totalRowsOfCurShard, splitsOfCurShard.size());
+            }
+        }
+        LOG.info("All rowid splits are generated. Ready for writing kafka now.");
+
+        Map<String, Object> allInfoMap = new HashMap<>();
+        allInfoMap.put(Constants.TABLE_SPLITTED_TOTAL_ROWS_KEY, totalRows);
+        allInfoMap.put(Constants.TABLE_SPLITTED_SHARD_SPLITS_KEY, inputSplitList);
+        return allInfoMap;
+    }
+
+    /**
+     * 解析 "table:style|*:style" 格式的配置，返回逻辑表对应的取值，没有匹配时返回defaultStyle
+     */
+    protected String resolveTableStyle(String styleGroups, String logicalTableName, String defaultStyle) {
+        if (styleGroups == null) {
+            return defaultStyle;
+        }
+        for (String styleGroup : styleGroups.split("\\|")) {
+            String[] pair = styleGroup.split(":");
+            if (pair.length == 2) {
+                String table = pair[0];
+                String style = pair[1];
+                if (logicalTableName.equalsIgnoreCase(table) || table.equals("*")) {
+                    return style.toLowerCase();
+                }
+            }
+        }
+        return defaultStyle;
+    }
+
   /*
    * Set the user-defined bounding query to use with a user-defined query.
    * This *must* include the substring "$CONDITIONS"
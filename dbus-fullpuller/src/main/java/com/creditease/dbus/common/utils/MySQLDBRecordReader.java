@@ -0,0 +1,94 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.common.utils;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.creditease.dbus.common.DataPullConstants;
+import com.creditease.dbus.common.utils.DataDrivenDBInputFormat.DataDrivenDBInputSplit;
+
+/**
+ * A RecordReader that reads records from a MySQL table.
+ * 根据mysql.fetch.mode决定分片数据的读取方式:
+ * stream模式逐行读取, cursor模式通过服务端游标每次读取fetch size行,
+ * 两种方式的内存占用都与分片大小无关; buffered模式保持驱动默认行为.
+ */
+public class MySQLDBRecordReader<T extends DBWritable>
+extends DBRecordReader<T> {
+
+  private Logger LOG = LoggerFactory.getLogger(getClass());
+
+  private String fetchMode;
+
+  public MySQLDBRecordReader(Connection conn,
+      DBConfiguration dbConfig, DataDrivenDBInputSplit inputSplit, String [] fields, String table) throws SQLException {
+    super(conn, dbConfig, inputSplit, fields, table);
+    this.fetchMode = dbConfig.getMysqlFetchMode();
+  }
+
+  @Override
+  protected void configureFetch(String splitIndex) throws SQLException {
+      if (DataPullConstants.MYSQL_FETCH_MODE_STREAM.equals(fetchMode)) {
+          // Connector/J只有在fetch size为Integer.MIN_VALUE时才逐行读取
+          statement.setFetchSize(Integer.MIN_VALUE);
+          LOG.info("split_index{}: Using streaming result set for next query", splitIndex);
+      } else if (DataPullConstants.MYSQL_FETCH_MODE_CURSOR.equals(fetchMode)) {
+          // 连接上已经设置了useCursorFetch, fetch size必须大于0游标才会生效
+          int fetchSize = Math.max(getDBConf().getPrepareStatementFetchSize(), 1);
+          statement.setFetchSize(fetchSize);
+          LOG.info("split_index{}: Using cursor fetch for next query, fetchSize: {}", splitIndex, fetchSize);
+      } else {
+          super.configureFetch(splitIndex);
+      }
+  }
+
+  /**
+   * 分片未读完就关闭时(拉取出错或被中止), 流式结果集关闭时驱动会把剩余的行全部读完,
+   * 分片很大时耗时很长, 因此先取消查询再关闭.
+   */
+  @Override
+  public void close() throws IOException {
+      boolean cancelled = false;
+      if (DataPullConstants.MYSQL_FETCH_MODE_STREAM.equals(fetchMode) && getResults() != null && !isDone()) {
+          try {
+              statement.cancel();
+              cancelled = true;
+              LOG.info("Streaming query was cancelled before the shard was fully read.");
+          } catch (SQLException e) {
+              LoggingUtils.logAll(LOG, "Failed to cancel streaming query", e);
+          }
+      }
+      try {
+          super.close();
+      } catch (IOException e) {
+          if (!cancelled) {
+              throw e;
+          }
+          // 取消查询后关闭结果集会收到查询中断的异常, 连接由dbManager负责关闭
+          LOG.info("Ignored exception when closing cancelled query: {}", e.getMessage());
+      }
+  }
+}
@@ -94,7 +94,7 @@ extends DBRecordReader<T>  {
             query.append(this.getSplit().getCondWithPlaceholder());
         }
 
-        String orderBy = dbConf.getInputOrderBy();
+        String orderBy = getOrderBy();
         if (orderBy != null && orderBy.length() > 0) {
             query.append(" ORDER BY ").append(orderBy);
         }
@@ -106,6 +106,38 @@ public class MySQLManager
 
   public MySQLManager(final DBConfiguration opts, String conString) {
     super(DRIVER_CLASS, opts, conString);
+    checkFetchMode();
+  }
+
+  /**
+   * Connector/J ignores the fetch size unless the result set is streamed
+   * (fetch size Integer.MIN_VALUE, set by MySQLDBRecordReader) or read
+   * through a server side cursor. The cursor mode needs useCursorFetch on
+   * the connection, which also turns on server side prepared statements.
+   */
+  private void checkFetchMode() {
+    String fetchMode = options.getMysqlFetchMode();
+    if (DataPullConstants.MYSQL_FETCH_MODE_CURSOR.equals(fetchMode)) {
+      addConnectionParam("useCursorFetch", "true");
+    }
+    LOG.info("Using fetch mode " + fetchMode + " (mysql)");
+  }
+
+  /**
+   * Append a connection property to the connect string unless the user has
+   * already set it in the datasource url.
+   */
+  private void addConnectionParam(String name, String value) {
+    if (conString.indexOf(name + "=") != -1) {
+      return;
+    }
+    if (conString.indexOf('?') == -1) {
+      conString = conString + "?";
+    } else if (!conString.endsWith("?") && !conString.endsWith("&")) {
+      conString = conString + "&";
+    }
+    conString = conString + name + "=" + value;
+    LOG.debug("Rewriting connect string to " + conString);
   }
 
   @Override
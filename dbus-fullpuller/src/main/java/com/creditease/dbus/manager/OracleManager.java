@@ -63,6 +63,8 @@ import org.slf4j.LoggerFactory;
 import com.creditease.dbus.common.DataPullConstants;
 import com.creditease.dbus.common.FullPullHelper;
 import com.creditease.dbus.common.utils.DBConfiguration;
+import com.creditease.dbus.common.utils.DataDrivenDBInputFormat;
+import com.creditease.dbus.common.utils.InputSplit;
 import com.creditease.dbus.common.utils.LoggingUtils;
 import com.creditease.dbus.common.utils.DBConfiguration.DataSourceInfo;
 import com.creditease.dbus.commons.Constants;
@@ -1144,6 +1146,121 @@ public class OracleManager
       return null;
   }
   
+  /**
+   * 按物理存储切分表：从DBA_EXTENTS取出表(或分区)段的全部区，按块数把相邻的区归并成numSplits个左右的ROWID区间。
+   * 每个区间用ROWID范围扫描读取，不依赖索引也不需要排序，且各分片的物理大小基本一致。
+   * 区在拉取SCN之后才分配的，其中不会有该SCN可见的行；SCN之后被回收的区会使AS OF SCN查询直接报错。故按当前区信息切分是安全的。
+   * 分片以区为最小粒度，不会拆开单个区。
+   * @return 切分出的分片；段不存在时返回空列表；无权访问DBA_EXTENTS等情况返回null，由调用方退回按列切分
+   */
+  public List<InputSplit> queryRowidSplits(String table, String tablePartition, int numSplits) {
+      String owner = options.getString(DBConfiguration.INPUT_SCHEMA_PROPERTY);
+      String tableName = table;
+      if (table.indexOf(".") != -1) {
+          owner = table.split("\\.")[0];
+          tableName = table.split("\\.")[1];
+      }
+      boolean hasPartition = StringUtils.isNotBlank(tablePartition);
+      StringBuilder sql = new StringBuilder();
+      sql.append("SELECT O.DATA_OBJECT_ID, E.BLOCKS,")
+         .append(" DBMS_ROWID.ROWID_CREATE(1, O.DATA_OBJECT_ID, E.RELATIVE_FNO, E.BLOCK_ID, 0) LOWER_ROWID,")
+         .append(" DBMS_ROWID.ROWID_CREATE(1, O.DATA_OBJECT_ID, E.RELATIVE_FNO, E.BLOCK_ID + E.BLOCKS - 1, 32767) UPPER_ROWID")
+         .append(" FROM DBA_EXTENTS E, DBA_OBJECTS O")
+         .append(" WHERE E.OWNER = ? AND E.SEGMENT_NAME = ?")
+         .append(" AND E.SEGMENT_TYPE IN ('TABLE', 'TABLE PARTITION', 'TABLE SUBPARTITION')");
+      if (hasPartition) {
+          // 组合分区表的段在子分区上
+          sql.append(" AND (E.PARTITION_NAME = ? OR E.PARTITION_NAME IN (SELECT SUBPARTITION_NAME FROM DBA_TAB_SUBPARTITIONS")
+             .append(" WHERE TABLE_OWNER = ? AND TABLE_NAME = ? AND PARTITION_NAME = ?))");
+      }
+      sql.append(" AND O.OWNER = E.OWNER AND O.OBJECT_NAME = E.SEGMENT_NAME")
+         .append(" AND NVL(O.SUBOBJECT_NAME, ' ') = NVL(E.PARTITION_NAME, ' ')")
+         .append(" AND O.DATA_OBJECT_ID IS NOT NULL")
+         .append(" ORDER BY O.DATA_OBJECT_ID, E.RELATIVE_FNO, E.BLOCK_ID");
+      LOG.info("[Oracle manager] Rowid extents query sql is {}.", sql);
+
+      Connection conn = null;
+      PreparedStatement pStmt = null;
+      ResultSet rs = null;
+      List<long[]> extentBlocks = new ArrayList<>();
+      List<String[]> extentRowids = new ArrayList<>();
+      try {
+          conn = getConnection();
+          pStmt = conn.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+          pStmt.setString(1, owner.toUpperCase());
+          pStmt.setString(2, tableName.toUpperCase());
+          if (hasPartition) {
+              pStmt.setString(3, tablePartition);
+              pStmt.setString(4, owner.toUpperCase());
+              pStmt.setString(5, tableName.toUpperCase());
+              pStmt.setString(6, tablePartition);
+          }
+          rs = pStmt.executeQuery();
+          while (rs.next()) {
+              extentBlocks.add(new long[]{rs.getLong("DATA_OBJECT_ID"), rs.getLong("BLOCKS")});
+              extentRowids.add(new String[]{rs.getString("LOWER_ROWID"), rs.getString("UPPER_ROWID")});
+          }
+          conn.commit();
+      } catch (SQLException e) {
+          try {
+              if (conn != null) {
+                  conn.rollback();
+              }
+          } catch (SQLException ex) {
+              LoggingUtils.logAll(LOG, "Failed to rollback transaction", ex);
+          }
+          LoggingUtils.logAll(LOG, "Failed to query extents of " + table + ".", e);
+          return null;
+      } catch (Exception e) {
+          LOG.warn("Query extents of " + table + " encountered Exception", e);
+          return null;
+      } finally {
+          if (rs != null) {
+              try {
+                  rs.close();
+              } catch (SQLException ex) {
+                  LoggingUtils.logAll(LOG, "Failed to close resultset", ex);
+              }
+          }
+          if (pStmt != null) {
+              try {
+                  pStmt.close();
+              } catch (SQLException ex) {
+                  LoggingUtils.logAll(LOG, "Failed to close statement", ex);
+              }
+          }
+      }
+
+      long totalBlocks = 0;
+      for (long[] extent : extentBlocks) {
+          totalBlocks += extent[1];
+      }
+      numSplits = Math.max(numSplits, 1);
+      long blocksPerSplit = Math.max((totalBlocks + numSplits - 1) / numSplits, 1);
+
+      // 相邻的区归并到同一分片，直到块数达到blocksPerSplit。分片不跨数据对象(分区)，便于ROWID范围扫描。
+      List<InputSplit> splits = new ArrayList<>();
+      int chunkStart = 0;
+      long chunkBlocks = 0;
+      for (int i = 0; i < extentBlocks.size(); i++) {
+          chunkBlocks += extentBlocks.get(i)[1];
+          boolean lastOfObject = i == extentBlocks.size() - 1 || extentBlocks.get(i + 1)[0] != extentBlocks.get(i)[0];
+          if (chunkBlocks >= blocksPerSplit || lastOfObject) {
+              InputSplit split = new DataDrivenDBInputFormat.DataDrivenDBInputSplit(Types.VARCHAR,
+                      DataPullConstants.ORACLE_SPLIT_COL_ROWID, " >= ", extentRowids.get(chunkStart)[0],
+                      " <= ", extentRowids.get(i)[1]);
+              split.setTargetTableName(table);
+              split.setTablePartitionInfo(tablePartition);
+              splits.add(split);
+              chunkStart = i + 1;
+              chunkBlocks = 0;
+          }
+      }
+      LOG.info("Physical Table:{} - Partition:{} , {} extents({} blocks) grouped into {} rowid shards.",
+              table, tablePartition, extentBlocks.size(), totalBlocks, splits.size());
+      return splits;
+  }
+
   public MetaWrapper queryMetaInOriginalDb() {
       MetaWrapper metaInOriginalDb = new MetaWrapper();
       Connection conn = null;
@@ -20,15 +20,17 @@
 
 package com.creditease.dbus.spout;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
 
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.storm.spout.SpoutOutputCollector;
 import org.apache.storm.task.TopologyContext;
 import org.apache.storm.topology.OutputFieldsDeclarer;
@@ -42,6 +44,7 @@ import com.alibaba.fastjson.JSONObject;
 import com.creditease.dbus.common.CommandCtrl;
 import com.creditease.dbus.common.DataPullConstants;
 import com.creditease.dbus.common.FullPullHelper;
+import com.creditease.dbus.common.FullPullScheduler;
 import com.creditease.dbus.common.ProgressInfo;
 import com.creditease.dbus.common.TopoKillingStatus;
 import com.creditease.dbus.common.utils.JsonUtil;
@@ -73,6 +76,7 @@ public class DataPullingSpout extends BaseRichSpout {
     private int MAX_FLOW_THRESHOLD;
     //只关心流入数据的情况
     private int flowedMsgCount = 0;
+    private boolean consumerPaused = false;
 
     private Map confMap;
     private Properties commonProps;
@@ -80,6 +84,8 @@ public class DataPullingSpout extends BaseRichSpout {
     private Consumer<String, byte[]> consumer;
 
     private Set pendingTasksSet = new HashSet();
+    // 分片按拉取请求缓存，公平地分配在途分片数
+    private FullPullScheduler scheduler;
     private HashSet<String> failAndBreakTuplesSet = new HashSet<>();
 
     //variable about stop
@@ -123,26 +129,22 @@ public class DataPullingSpout extends BaseRichSpout {
      */
     @Override
     public void nextTuple() {
-        // 限流
-        if (flowedMsgCount >= MAX_FLOW_THRESHOLD) {
-        LOG.info("Flow control: Spout gets {} pieces of msg.", flowedMsgCount);
-            try {
-                TimeUnit.MILLISECONDS.sleep(10);
-            } catch (InterruptedException e) {
-                LOG.error(e.getMessage(), e);
-            }
-            return;
-        }
-
         if (stopFlag > TopoKillingStatus.RUNNING.status) {
             if(stopFlag == TopoKillingStatus.STOPPING.status) {
                 try {
+                    // 停止前继续发射已经缓存的分片，不再读取新的kafka消息
+                    emitShards();
                     long timeout = System.currentTimeMillis() - startTime;
                     String toposKillWaitTimeout = commonProps.getProperty(Constants.ZkTopoConfForFullPull.TOPOS_KILL_WAIT_TIMEOUT);
                     long toposKillWaitTimeConf = toposKillWaitTimeout == null
                             ? Constants.ZkTopoConfForFullPull.TOPOS_KILL_WAIT_TIMEOUT_DEFAULT_VAL
                             : Long.valueOf(toposKillWaitTimeout);
-                    if (emittedCount == processedCount || timeout / 1000 >= toposKillWaitTimeConf) {
+                    boolean drained = scheduler.getBufferedShards() == 0 && flowedMsgCount == 0;
+                    if (drained || timeout / 1000 >= toposKillWaitTimeConf) {
+                        if (!drained) {
+                            LOG.warn("Topology {} is killed after waiting {}s, {} shards buffered and {} shards in flight.",
+                                    topologyId, timeout / 1000, scheduler.getBufferedShards(), flowedMsgCount);
+                        }
                         ObjectMapper mapper = new ObjectMapper();
                         mapper.configure(SerializationFeature.INDENT_OUTPUT, true);
 
@@ -157,7 +159,7 @@ public class DataPullingSpout extends BaseRichSpout {
                         }
                        String killResult = CommandCtrl.killTopology(zkService, topologyId, topoKillWaitTime);
                        stopFlag = TopoKillingStatus.READY_FOR_KILL.status;
-                       consumer.commitSync();
+                       commitOffsets();
                        LOG.info("Id为 {}的Topology Kill已結束.Kill结果：{}.",topologyId,killResult);
                     }
                 }
@@ -171,10 +173,23 @@ public class DataPullingSpout extends BaseRichSpout {
         }
 
         try {
+            // 限流: 缓存的分片过多时暂停读取kafka, 仍然poll以保持consumer心跳
+            if (scheduler.isBufferFull()) {
+                consumer.pause(consumer.assignment());
+                consumerPaused = true;
+            } else if (consumerPaused) {
+                consumer.resume(consumer.assignment());
+                consumerPaused = false;
+            }
+
             // 读取kafka消息
             ConsumerRecords<String, byte[]> records = consumer.poll(0);
             // 判断是否有数据被读取
             if (records.isEmpty()) {
+                // 缓存的分片发射后推进offset
+                if (emitShards() > 0) {
+                    commitOffsets();
+                }
                 return;
             }
 
@@ -212,15 +227,8 @@ public class DataPullingSpout extends BaseRichSpout {
                         }
 
                         if(!failAndBreakTuplesSet.contains(dataSourceInfo)) {
-                            emittedCount++;
-                            String dsKey = FullPullHelper.getDataSourceKey(JSONObject.parseObject(dataSourceInfo));
-                            String splitIndex = jsonObject.getString(DataPullConstants.DATA_CHUNK_SPLIT_INDEX);
-                            LOG.info("Spout read Record offset--------is:{}, {} spout-->bolt the split index is {}", record.offset(), dsKey, splitIndex);
-                            if (splitIndex.equals("1")) {
-                                startPullingReport(zkService, dataSourceInfo);
-                            }
-                            flowedMsgCount++;
-                            collector.emit(new Values(msg), record);
+                            // 由调度器决定发射顺序
+                            scheduler.offer(record, jsonObject);
                         } else {
                             LOG.info("Spout skipped Record offset(have received fail ack)--------is:{}", record.offset());
                         }
@@ -238,13 +246,69 @@ public class DataPullingSpout extends BaseRichSpout {
                     }
                 }
             }
-            consumer.commitSync();
+            emitShards();
+            commitOffsets();
         } catch (Exception e) {
             LOG.error("DataPullingSpout:spout-->bolt exception!", e);
         }
 
     }
 
+    /**
+     * 提交kafka offset，但不越过调度器中尚未发射的分片，这些分片在重启后重新读取
+     */
+    private void commitOffsets() {
+        Map<TopicPartition, Long> buffered = scheduler.getFirstBufferedOffsets();
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (TopicPartition partition : consumer.assignment()) {
+            long position = consumer.position(partition);
+            Long first = buffered.get(partition);
+            offsets.put(partition, new OffsetAndMetadata(first == null ? position : Math.min(first, position)));
+        }
+        consumer.commitSync(offsets);
+    }
+
+    /**
+     * 在限流范围内发射调度器选出的分片，并更新排队信息
+     * @return 本次发射的分片数
+     */
+    private int emitShards() {
+        int emitted = 0;
+        ConsumerRecord<String, byte[]> record;
+        while ((record = scheduler.next(flowedMsgCount, MAX_FLOW_THRESHOLD)) != null) {
+            String msg = new String(record.value());
+            JSONObject jsonObject = JSONObject.parseObject(msg);
+            String dataSourceInfo = jsonObject.getString(DataPullConstants.DATA_SOURCE_INFO);
+            try {
+                emittedCount++;
+                String dsKey = FullPullHelper.getDataSourceKey(JSONObject.parseObject(dataSourceInfo));
+                String splitIndex = jsonObject.getString(DataPullConstants.DATA_CHUNK_SPLIT_INDEX);
+                LOG.info("Spout read Record offset--------is:{}, {} spout-->bolt the split index is {}", record.offset(), dsKey, splitIndex);
+                if (splitIndex.equals("1")) {
+                    startPullingReport(zkService, dataSourceInfo);
+                }
+                flowedMsgCount++;
+                emitted++;
+                collector.emit(new Values(msg), record);
+            } catch (Exception e) {
+                String errorMsg = "DataPullingSpout:spout-->bolt exception!" + e.getMessage();
+                LOG.error(errorMsg, e);
+                //处理悬而未决的任务和发送拉取报告
+                scheduler.complete(record, false);
+                failAndBreakTuplesSet.add(dataSourceInfo);
+                FullPullHelper.updatePendingTasksTrackInfo(zkService, dsName, dataSourceInfo, DataPullConstants.FULLPULL_PENDING_TASKS_OP_REMOVE_WATCHING);
+                FullPullHelper.finishPullReport(zkService, dataSourceInfo,
+                        FullPullHelper.getCurrentTimeStampString(), Constants.DataTableStatus.DATA_STATUS_ABORT,
+                        errorMsg);
+            }
+        }
+        if (flowedMsgCount >= MAX_FLOW_THRESHOLD && scheduler.getBufferedShards() > 0) {
+            LOG.debug("Flow control: Spout gets {} pieces of msg, {} shards buffered.", flowedMsgCount, scheduler.getBufferedShards());
+        }
+        scheduler.report(zkService);
+        return emitted;
+    }
+
     /**
      * 定义字段id，该id在简单模式下没有用处，但在按照字段分组的模式下有很大的用处。
      * 该declarer变量有很大作用，我们还可以调用declarer.declareStream();来定义stramId，该id可以用来定义更加复杂的流拓扑结构
@@ -259,6 +323,7 @@ public class DataPullingSpout extends BaseRichSpout {
         try {
             if (msgId != null && ConsumerRecord.class.isInstance(msgId)) {
                 flowedMsgCount--;
+                scheduler.complete(msgId, true);
 
                 ConsumerRecord<String, byte[]> record = getMessageId(msgId);
                 String recordString = new String(record.value());
@@ -281,6 +346,8 @@ public class DataPullingSpout extends BaseRichSpout {
         try {
             if (msgId != null && ConsumerRecord.class.isInstance(msgId)) {
                 flowedMsgCount--;
+                // 请求已经失败，缓存中该请求的其他分片不再发射
+                scheduler.complete(msgId, false);
 
                 ConsumerRecord<String, byte[]> record = getMessageId(msgId);
                 String recordString = new String(record.value());
@@ -344,6 +411,12 @@ public class DataPullingSpout extends BaseRichSpout {
             this.dsName = commonProps.getProperty(Constants.ZkTopoConfForFullPull.DATASOURCE_NAME);
             this.zkService = (ZkService) confMap.get(FullPullHelper.RUNNING_CONF_KEY_ZK_SERVICE);
             this.consumer =  (Consumer<String, byte[]>)confMap.get(FullPullHelper.RUNNING_CONF_KEY_CONSUMER);
+            this.consumerPaused = false;
+            if (this.scheduler == null) {
+                this.scheduler = new FullPullScheduler(commonProps);
+            } else {
+                this.scheduler.configure(commonProps);
+            }
 
             String notifyEvtName = reloadMsgJson == null ? "loaded" : "reloaded";
             LOG.info("Running Config is " + notifyEvtName + " successfully for DataPullingSpout!");
@@ -0,0 +1,165 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+package com.creditease.dbus.common;
+
+import com.alibaba.fastjson.JSONObject;
+import com.creditease.dbus.common.utils.DataDrivenDBInputFormat.DataDrivenDBInputSplit;
+import com.creditease.dbus.common.utils.InputSplit;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChecksumSyncPlannerTest {
+    private static final String GROUP = "T_ORDER|";
+
+    @Test
+    public void gridBoundariesStayWhenTableGrows() {
+        JSONObject widths = new JSONObject();
+        List<DataDrivenDBInputSplit> chunks = ChecksumSyncPlanner.toChunks(
+                splits(split(0, 100), split(100, 200), last(200, 300)), widths);
+        assertEquals(101, widths.getLongValue(GROUP));
+        assertBounds(chunks, 0, 101, 202, 303);
+
+        // 表增长后宽度不变，已有数据块的边界保持不变
+        chunks = ChecksumSyncPlanner.toChunks(splits(split(0, 150), split(150, 300), last(300, 450)), widths);
+        assertEquals(101, widths.getLongValue(GROUP));
+        assertBounds(chunks, 0, 101, 202, 303, 404, 505);
+    }
+
+    @Test
+    public void gridIsWidenedWhenRangeExpandsTooMuch() {
+        JSONObject widths = new JSONObject();
+        widths.put(GROUP, 101L);
+        List<DataDrivenDBInputSplit> chunks = ChecksumSyncPlanner.toChunks(
+                splits(split(0, 50000), split(50000, 80000), last(80000, 100000)), widths);
+        assertEquals(33334, widths.getLongValue(GROUP));
+        assertBounds(chunks, 0, 33334, 66668, 100002);
+    }
+
+    @Test
+    public void negativeValuesAlignToGrid() {
+        assertEquals(-1, ChecksumSyncPlanner.floorDiv(-1, 10));
+        assertEquals(-1, ChecksumSyncPlanner.floorDiv(-10, 10));
+        assertEquals(-2, ChecksumSyncPlanner.floorDiv(-11, 10));
+        assertEquals(0, ChecksumSyncPlanner.floorDiv(9, 10));
+
+        JSONObject widths = new JSONObject();
+        widths.put(GROUP, 100L);
+        List<DataDrivenDBInputSplit> chunks = ChecksumSyncPlanner.toChunks(splits(split(-250, 0), last(0, 120)), widths);
+        assertBounds(chunks, -300, -200, -100, 0, 100, 200);
+    }
+
+    @Test
+    public void nullAndNonGridableSplitsAreKept() {
+        DataDrivenDBInputSplit nulls = new DataDrivenDBInputSplit(Types.BIGINT, "ID",
+                DataPullConstants.QUERY_COND_IS_NULL, null, DataPullConstants.QUERY_COND_IS_NULL, null);
+        nulls.setTargetTableName("T_ORDER");
+        DataDrivenDBInputSplit text = new DataDrivenDBInputSplit(Types.VARCHAR, "NAME", " >= ", "a", " < ", "m");
+        text.setTargetTableName("T_USER");
+        JSONObject widths = new JSONObject();
+        List<DataDrivenDBInputSplit> chunks = ChecksumSyncPlanner.toChunks(
+                Arrays.<InputSplit>asList(nulls, text, split(0, 10)), widths);
+        assertEquals(3, chunks.size());
+        assertTrue(chunks.contains(nulls));
+        assertTrue(chunks.contains(text));
+        assertTrue(widths.containsKey(GROUP));
+        assertFalse(widths.containsKey("T_USER|"));
+        assertTrue(ChecksumSyncPlanner.narrow(text, 4).isEmpty());
+    }
+
+    @Test
+    public void narrowsRecursivelyUntilChunksAreTooSmall() {
+        List<DataDrivenDBInputSplit> children = ChecksumSyncPlanner.narrow(split(0, 100), 4);
+        assertBounds(children, 0, 25, 50, 75, 100);
+
+        List<DataDrivenDBInputSplit> grandChildren = ChecksumSyncPlanner.narrow(children.get(0), 4);
+        assertBounds(grandChildren, 0, 7, 14, 21, 25);
+
+        assertTrue(ChecksumSyncPlanner.narrow(split(0, 3), 4).isEmpty());
+        // 计划中的最后一个分片(<=)不是网格块，不细分
+        assertTrue(ChecksumSyncPlanner.narrow(last(0, 100), 4).isEmpty());
+    }
+
+    @Test
+    public void decimalChunksKeepValueType() {
+        DataDrivenDBInputSplit split = new DataDrivenDBInputSplit(Types.NUMERIC, "ID",
+                " >= ", new BigDecimal("0"), " < ", new BigDecimal("100"));
+        split.setTargetTableName("T_ORDER");
+        for (DataDrivenDBInputSplit child : ChecksumSyncPlanner.narrow(split, 2)) {
+            assertTrue(child.getLowerValue() instanceof BigDecimal);
+            assertTrue(child.getUpperValue() instanceof BigDecimal);
+        }
+        DataDrivenDBInputSplit fraction = new DataDrivenDBInputSplit(Types.NUMERIC, "ID",
+                " >= ", new BigDecimal("0.5"), " < ", new BigDecimal("100"));
+        assertTrue(ChecksumSyncPlanner.narrow(fraction, 2).isEmpty());
+    }
+
+    @Test
+    public void sameOnlyWhenRowsAndSumMatch() {
+        assertFalse(ChecksumSyncPlanner.isSame(checksum(10, "123"), null));
+        assertTrue(ChecksumSyncPlanner.isSame(checksum(10, "123"), checksum(10, "123")));
+        assertFalse(ChecksumSyncPlanner.isSame(checksum(10, "123"), checksum(10, "124")));
+        assertFalse(ChecksumSyncPlanner.isSame(checksum(10, "123"), checksum(11, "123")));
+    }
+
+    private static DataDrivenDBInputSplit split(long lower, long upper) {
+        DataDrivenDBInputSplit split = new DataDrivenDBInputSplit(Types.BIGINT, "ID", " >= ", lower, " < ", upper);
+        split.setTargetTableName("T_ORDER");
+        return split;
+    }
+
+    private static DataDrivenDBInputSplit last(long lower, long upper) {
+        DataDrivenDBInputSplit split = new DataDrivenDBInputSplit(Types.BIGINT, "ID", " >= ", lower, " <= ", upper);
+        split.setTargetTableName("T_ORDER");
+        return split;
+    }
+
+    private static List<InputSplit> splits(DataDrivenDBInputSplit... splits) {
+        return new ArrayList<InputSplit>(Arrays.asList(splits));
+    }
+
+    private static JSONObject checksum(long rows, String sum) {
+        JSONObject checksum = new JSONObject();
+        checksum.put("Rows", rows);
+        checksum.put("Sum", sum);
+        return checksum;
+    }
+
+    /**
+     * 数据块首尾相接，依次覆盖给定的边界
+     */
+    private static void assertBounds(List<DataDrivenDBInputSplit> chunks, long... bounds) {
+        assertEquals(bounds.length - 1, chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            assertEquals(bounds[i], ((Number) chunks.get(i).getLowerValue()).longValue());
+            assertEquals(bounds[i + 1], ((Number) chunks.get(i).getUpperValue()).longValue());
+            assertEquals(" >= ", chunks.get(i).getLowerOperator());
+            assertEquals(" < ", chunks.get(i).getUpperOperator());
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+package com.creditease.dbus.common;
+
+import com.alibaba.fastjson.JSONObject;
+import com.creditease.dbus.commons.Constants;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 用构造的拉取请求验证调度器的按权重选择、数据源并发上限、预留并发、中止以及排队位置和预计剩余时间。
+ * 调度器的时间使用模拟时钟
+ */
+public class FullPullSchedulerTest {
+    private static final String TOPIC = "fullpull";
+
+    private final Properties props = new Properties();
+    private final Map<String, Integer> inflight = new HashMap<>();
+    private long clock = 1000000L;
+    private long offset = 0;
+    private int total = 0;
+    private FullPullScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        props.setProperty(DataPullConstants.SCHEDULER_RESERVED_SHARDS, "0");
+        props.setProperty(Constants.ZkTopoConfForFullPull.HEARTBEAT_MONITOR_TIME_INTERVAL, "60");
+    }
+
+    @Test
+    public void selectsByInflightOverWeight() {
+        props.setProperty(DataPullConstants.SCHEDULER_REQUEST_WEIGHT, "db.big:2");
+        create();
+        String big = request("1", "db", "big", 1);
+        String small = request("1", "db", "small", 2);
+        offer(big, 0, 10);
+        offer(small, 0, 10);
+
+        for (int i = 0; i < 6; i++) {
+            emit(100);
+        }
+        assertEquals(4, inflightOf(big));
+        assertEquals(2, inflightOf(small));
+    }
+
+    @Test
+    public void capsShardsPerSource() {
+        props.setProperty(DataPullConstants.SCHEDULER_MAX_SHARDS_PER_SOURCE, "2");
+        create();
+        String a = request("1", "db", "a", 1);
+        String b = request("1", "db", "b", 2);
+        String c = request("2", "db", "c", 3);
+        offer(a, 0, 5);
+        offer(b, 0, 5);
+        offer(c, 0, 5);
+
+        while (emit(10) != null) {
+        }
+        assertEquals(2, inflightOf(a) + inflightOf(b));
+        assertEquals(2, inflightOf(c));
+        assertEquals(11, scheduler.getBufferedShards());
+    }
+
+    @Test
+    public void smallRequestStartsWhileLargeHoldsAllSlots() {
+        create();
+        String large = request("1", "db", "large", 1);
+        offer(large, 0, 100);
+        ConsumerRecord<String, byte[]> first = null;
+        for (int i = 0; i < 4; i++) {
+            ConsumerRecord<String, byte[]> record = emit(4);
+            first = first == null ? record : first;
+        }
+        assertNull(emit(4));
+
+        String small = request("1", "db", "small", 2);
+        offer(small, 0, 2);
+        assertNull(emit(4));
+        // 大表一个分片完成后，空出的并发先给没有在途分片的小表
+        complete(first, true);
+        assertEquals(small, dataSourceInfo(emit(4)));
+    }
+
+    @Test
+    public void reservedSlotIsLeftForNewRequest() {
+        props.setProperty(DataPullConstants.SCHEDULER_RESERVED_SHARDS, "1");
+        create();
+        String large = request("1", "db", "large", 1);
+        offer(large, 0, 100);
+        while (emit(4) != null) {
+        }
+        assertEquals(3, inflightOf(large));
+
+        String small = request("1", "db", "small", 2);
+        offer(small, 0, 2);
+        assertEquals(small, dataSourceInfo(emit(4)));
+        assertNull(emit(4));
+    }
+
+    @Test
+    public void failureAbortsBufferedShards() {
+        create();
+        String a = request("1", "db", "a", 1);
+        String b = request("1", "db", "b", 2);
+        offer(a, 0, 5);
+        offer(b, 0, 5);
+        ConsumerRecord<String, byte[]> record = emit(1);
+        assertEquals(a, dataSourceInfo(record));
+
+        complete(record, false);
+        assertEquals(5, scheduler.getBufferedShards());
+        while ((record = emit(10)) != null) {
+            assertEquals(b, dataSourceInfo(record));
+        }
+        assertNull(scheduler.progress(a));
+    }
+
+    @Test
+    public void estimatesRemainingTime() {
+        create();
+        String a = request("1", "db", "a", 1);
+        offer(a, 0, 10);
+        ConsumerRecord<String, byte[]> r1 = emit(2);
+        ConsumerRecord<String, byte[]> r2 = emit(2);
+        clock += 1000;
+        complete(r1, true);
+        complete(r2, true);
+        emit(2);
+        emit(2);
+
+        String b = request("1", "db", "b", 2);
+        offer(b, 0, 4);
+        // a: 剩余6个分片，2个并发，分片耗时1s，在途分片大约完成一半: 3s + 0.5s
+        assertArrayEquals(new long[]{0, 4}, scheduler.progress(a));
+        // b: 用数据源的平均分片耗时，4个分片 + 排在第1位等待2个并发中的一个: 4s + 0.5s
+        assertArrayEquals(new long[]{1, 5}, scheduler.progress(b));
+    }
+
+    @Test
+    public void firstBufferedOffsetsPerPartition() {
+        create();
+        String a = request("1", "db", "a", 1);
+        String b = request("1", "db", "b", 2);
+        offer(a, 0, 3);
+        offer(b, 1, 2);
+        offer(b, 0, 1);
+        ConsumerRecord<String, byte[]> record = emit(1);
+        assertEquals(0, record.partition());
+
+        Map<TopicPartition, Long> offsets = scheduler.getFirstBufferedOffsets();
+        assertEquals(2, offsets.size());
+        assertEquals(record.offset() + 1, (long) offsets.get(new TopicPartition(TOPIC, 0)));
+        assertEquals(3, (long) offsets.get(new TopicPartition(TOPIC, 1)));
+    }
+
+    private void create() {
+        scheduler = new FullPullScheduler(props) {
+            @Override
+            long now() {
+                return clock;
+            }
+        };
+    }
+
+    private static String request(String sourceId, String schema, String table, int seqNo) {
+        JSONObject payload = new JSONObject();
+        payload.put(DataPullConstants.FULL_DATA_PULL_REQ_PAYLOAD_DATA_SOURCE_ID, sourceId);
+        payload.put(DataPullConstants.FULL_DATA_PULL_REQ_PAYLOAD_SCHEMA_NAME, schema);
+        payload.put(DataPullConstants.FULL_DATA_PULL_REQ_PAYLOAD_TABLE_NAME, table);
+        payload.put(DataPullConstants.FULL_DATA_PULL_REQ_PAYLOAD_SEQNO, String.valueOf(seqNo));
+        payload.put(DataPullConstants.FullPullInterfaceJson.VERSION_KEY, "1");
+        JSONObject ds = new JSONObject();
+        ds.put(DataPullConstants.FullPullInterfaceJson.PAYLOAD_KEY, payload);
+        return ds.toJSONString();
+    }
+
+    private void offer(String dataSourceInfo, int partition, int shards) {
+        for (int i = 0; i < shards; i++) {
+            JSONObject shard = new JSONObject();
+            shard.put(DataPullConstants.DATA_SOURCE_INFO, dataSourceInfo);
+            shard.put(DataPullConstants.DATA_CHUNK_COUNT, shards);
+            scheduler.offer(new ConsumerRecord<>(TOPIC, partition, offset++, "key", shard.toJSONString().getBytes()), shard);
+        }
+    }
+
+    private ConsumerRecord<String, byte[]> emit(int maxInflight) {
+        ConsumerRecord<String, byte[]> record = scheduler.next(total, maxInflight);
+        if (record != null) {
+            total++;
+            inflight.merge(dataSourceInfo(record), 1, Integer::sum);
+        }
+        return record;
+    }
+
+    private void complete(ConsumerRecord<String, byte[]> record, boolean success) {
+        scheduler.complete(record, success);
+        total--;
+        inflight.merge(dataSourceInfo(record), -1, Integer::sum);
+    }
+
+    private int inflightOf(String dataSourceInfo) {
+        Integer n = inflight.get(dataSourceInfo);
+        return n == null ? 0 : n;
+    }
+
+    private static String dataSourceInfo(ConsumerRecord<String, byte[]> record) {
+        return JSONObject.parseObject(new String(record.value())).getString(DataPullConstants.DATA_SOURCE_INFO);
+    }
+}
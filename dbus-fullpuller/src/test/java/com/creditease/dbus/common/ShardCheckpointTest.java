@@ -0,0 +1,89 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ShardCheckpointTest {
+
+    @Test
+    public void advancesInOrder() {
+        ShardCheckpoint checkpoint = new ShardCheckpoint();
+        long b1 = checkpoint.nextBatch();
+        long b2 = checkpoint.nextBatch();
+        checkpoint.acked(b1, "10", 100);
+        assertEquals("10", checkpoint.getLastKey());
+        assertEquals(100, checkpoint.getRows());
+        checkpoint.acked(b2, "20", 200);
+        assertEquals("20", checkpoint.getLastKey());
+        assertEquals(200, checkpoint.getRows());
+    }
+
+    @Test
+    public void waitsForEarlierBatches() {
+        ShardCheckpoint checkpoint = new ShardCheckpoint();
+        long b1 = checkpoint.nextBatch();
+        long b2 = checkpoint.nextBatch();
+        long b3 = checkpoint.nextBatch();
+        checkpoint.acked(b3, "30", 300);
+        checkpoint.acked(b2, "20", 200);
+        assertNull(checkpoint.getLastKey());
+        assertEquals(0, checkpoint.getRows());
+
+        checkpoint.acked(b1, "10", 100);
+        assertEquals("30", checkpoint.getLastKey());
+        assertEquals(300, checkpoint.getRows());
+    }
+
+    @Test
+    public void stopsAdvancingAfterFailure() {
+        ShardCheckpoint checkpoint = new ShardCheckpoint();
+        long b1 = checkpoint.nextBatch();
+        long b2 = checkpoint.nextBatch();
+        long b3 = checkpoint.nextBatch();
+        checkpoint.acked(b1, "10", 100);
+        checkpoint.acked(b3, "30", 300);
+        checkpoint.halt();
+        checkpoint.acked(b2, "20", 200);
+        assertEquals("10", checkpoint.getLastKey());
+        assertEquals(100, checkpoint.getRows());
+    }
+
+    @Test
+    public void ignoresBatchesOfEarlierAttempts() {
+        ShardCheckpoint checkpoint = new ShardCheckpoint();
+        long b1 = checkpoint.nextBatch();
+        long b2 = checkpoint.nextBatch();
+        checkpoint.acked(b1, "10", 100);
+        checkpoint.halt();
+
+        checkpoint.resetBatches();
+        long b3 = checkpoint.nextBatch();
+        checkpoint.acked(b2, "20", 200);
+        assertEquals("10", checkpoint.getLastKey());
+        checkpoint.acked(b3, "15", 150);
+        assertEquals("15", checkpoint.getLastKey());
+        assertEquals(150, checkpoint.getRows());
+    }
+}
@@ -0,0 +1,232 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.common;
+
+import org.apache.avro.file.DataFileReader;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.avro.AvroParquetReader;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.creditease.dbus.commons.DataType;
+import com.creditease.dbus.commons.DbusMessage;
+import com.creditease.dbus.commons.DbusMessageBuilder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 在本地磁盘上写快照文件，读回后核对行数、schema和取值
+ */
+public class SnapshotFileWriterTest {
+    private static final String NAMESPACE = "mysql.db1.schema1.t1.0.0.0";
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("snapshot").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    @Test
+    public void commitsVerifiedFile() throws IOException {
+        File file;
+        SnapshotFileWriter writer = new SnapshotFileWriter(new File(dir, "s1").getPath(), "0_1", "t1", "avro", "deflate");
+        try {
+            writer.append(message(1, 3));
+            writer.append(message(4, 2));
+            file = writer.commit();
+            assertEquals(5, writer.getRows());
+        } finally {
+            writer.close();
+        }
+        assertEquals(new File(new File(dir, "s1"), "0_1.avro"), file);
+        assertTrue(file.isFile());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        try (DataFileReader<GenericRecord> reader = new DataFileReader<>(file, new GenericDatumReader<GenericRecord>())) {
+            assertEquals(writer.getSchema(), reader.getSchema());
+            List<GenericRecord> records = new ArrayList<>();
+            while (reader.hasNext()) {
+                records.add(reader.next());
+            }
+            assertEquals(5, records.size());
+            for (int i = 0; i < records.size(); i++) {
+                GenericRecord record = records.get(i);
+                int id = i + 1;
+                assertEquals(id, record.get("id"));
+                if (id % 2 == 0) {
+                    assertNull(record.get("name"));
+                } else {
+                    assertEquals("name" + id, record.get("name").toString());
+                }
+                assertEquals(id + ".50", record.get("amount").toString());
+            }
+        }
+    }
+
+    @Test
+    public void commitsVerifiedParquetFile() throws IOException {
+        File file;
+        SnapshotFileWriter writer = new SnapshotFileWriter(dir.getPath(), "0_5", "t1", null, null);
+        try {
+            assertEquals(SnapshotFileWriter.FORMAT_PARQUET, writer.getFormat());
+            writer.append(message(1, 3));
+            writer.append(message(4, 2));
+            file = writer.commit();
+        } finally {
+            writer.close();
+        }
+        assertEquals(new File(dir, "0_5.parquet"), file);
+        assertFalse(new File(dir, "0_5.parquet.tmp").exists());
+        // RawLocalFileSystem不生成.crc文件
+        assertFalse(new File(dir, ".0_5.parquet.tmp.crc").exists());
+
+        List<GenericRecord> records = new ArrayList<>();
+        try (ParquetReader<GenericRecord> reader = AvroParquetReader.<GenericRecord>builder(new Path(file.getAbsolutePath())).build()) {
+            GenericRecord record;
+            while ((record = reader.read()) != null) {
+                records.add(record);
+            }
+        }
+        assertEquals(5, records.size());
+        assertEquals(writer.getSchema(), records.get(0).getSchema());
+        for (int i = 0; i < records.size(); i++) {
+            GenericRecord record = records.get(i);
+            int id = i + 1;
+            assertEquals(id, record.get("id"));
+            if (id % 2 == 0) {
+                assertNull(record.get("name"));
+            } else {
+                assertEquals("name" + id, record.get("name").toString());
+            }
+            assertEquals(id + ".50", record.get("amount").toString());
+        }
+    }
+
+    @Test
+    public void parquetNeedsColumns() throws IOException {
+        try (SnapshotFileWriter writer = new SnapshotFileWriter(dir.getPath(), "0_6", "t1", "parquet", null)) {
+            writer.commit();
+            fail("parquet file without columns expected to be rejected");
+        } catch (IOException e) {
+            // expected
+        }
+        assertFalse(new File(dir, "0_6.parquet").exists());
+    }
+
+    @Test
+    public void mapsAvroCodecNamesForParquet() {
+        assertEquals(CompressionCodecName.SNAPPY, SnapshotFileWriter.parquetCodec(null));
+        assertEquals(CompressionCodecName.GZIP, SnapshotFileWriter.parquetCodec("deflate"));
+        assertEquals(CompressionCodecName.UNCOMPRESSED, SnapshotFileWriter.parquetCodec("null"));
+        assertEquals(CompressionCodecName.GZIP, SnapshotFileWriter.parquetCodec("gzip"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownFormat() {
+        new SnapshotFileWriter(dir.getPath(), "0_7", "t1", "orc", null);
+    }
+
+    @Test
+    public void emptyShardCommitsEmptyFile() throws IOException {
+        try (SnapshotFileWriter writer = new SnapshotFileWriter(dir.getPath(), "0_2", "t1", "avro", null)) {
+            File file = writer.commit();
+            assertEquals(0, writer.getRows());
+            try (DataFileReader<GenericRecord> reader = new DataFileReader<>(file, new GenericDatumReader<GenericRecord>())) {
+                assertEquals(0, reader.getSchema().getFields().size());
+                assertFalse(reader.hasNext());
+            }
+        }
+    }
+
+    @Test
+    public void uncommittedFileIsDeletedOnClose() throws IOException {
+        try (SnapshotFileWriter writer = new SnapshotFileWriter(dir.getPath(), "0_3", "t1", "avro", "null")) {
+            writer.append(message(1, 2));
+            assertTrue(new File(dir, "0_3.avro.tmp").isFile());
+        }
+        assertFalse(new File(dir, "0_3.avro.tmp").exists());
+        assertFalse(new File(dir, "0_3.avro").exists());
+    }
+
+    @Test
+    public void rejectsMessageWithDifferentSchema() throws IOException {
+        try (SnapshotFileWriter writer = new SnapshotFileWriter(dir.getPath(), "0_4", "t1", null, null)) {
+            writer.append(message(1, 1));
+            DbusMessageBuilder builder = new DbusMessageBuilder();
+            builder.build(DbusMessage.ProtocolType.DATA_INITIAL_DATA, NAMESPACE, 0);
+            builder.appendSchema("id", DataType.INT, false);
+            builder.appendPayload(new Object[]{"0", "2017-10-19 12:00:00.000", "i", "2", 2});
+            try {
+                writer.append(builder.getMessage());
+                fail("schema mismatch expected");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * 全量数据消息，id从firstId开始，偶数id的name为null
+     */
+    private static DbusMessage message(int firstId, int rows) {
+        DbusMessageBuilder builder = new DbusMessageBuilder();
+        builder.build(DbusMessage.ProtocolType.DATA_INITIAL_DATA, NAMESPACE, 0);
+        builder.appendSchema("id", DataType.INT, false);
+        builder.appendSchema("name", DataType.STRING, true);
+        builder.appendSchema("amount", DataType.DECIMAL, false);
+        for (int id = firstId; id < firstId + rows; id++) {
+            builder.appendPayload(new Object[]{"0", "2017-10-19 12:00:00.000", "i", String.valueOf(id),
+                    id, id % 2 == 0 ? null : "name" + id, id + ".50"});
+        }
+        return builder.getMessage();
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,207 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.common;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 用行读取耗时可调的JDBC桩模拟源库变慢、恢复，验证reader数加性增、乘性减(AIMD)以及停顿时间的调整。
+ * 桩的耗时记在模拟时钟上而不真正等待，结果不受机器负载影响
+ */
+public class SourceLoadControllerTest {
+    private static final int MAX_READERS = 8;
+    private static final int PAGE_ROWS = 10;
+    private static final long FAST_ROW_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private static final long SLOW_ROW_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final AtomicLong rowNanos = new AtomicLong(FAST_ROW_NANOS);
+    private final AtomicLong clock = new AtomicLong();
+    private SourceLoadController controller;
+    private ResultSet rs;
+
+    @Before
+    public void setUp() throws SQLException {
+        Properties props = new Properties();
+        props.setProperty(DataPullConstants.THROTTLE_ENABLED, "true");
+        props.setProperty(DataPullConstants.THROTTLE_MIN_READERS, "1");
+        props.setProperty(DataPullConstants.THROTTLE_MAX_READERS, String.valueOf(MAX_READERS));
+        props.setProperty(DataPullConstants.THROTTLE_MAX_PAUSE_MS, "400");
+        props.setProperty(DataPullConstants.THROTTLE_LATENCY_TOLERANCE, "3");
+        // 每读一页都执行一次控制
+        props.setProperty(DataPullConstants.THROTTLE_CONTROL_INTERVAL_SECS, "0");
+        controller = new SourceLoadController("test");
+        controller.configure(props);
+        rs = connection(clock, rowNanos).createStatement().executeQuery("select * from t");
+    }
+
+    @Test
+    public void increasesAdditivelyAndDecreasesMultiplicatively() throws SQLException {
+        assertEquals(1, controller.getReaders());
+        // 源库正常: 每页reader数加一直到上限，不停顿
+        for (int expected = 2; expected <= MAX_READERS; expected++) {
+            assertEquals(0, readPage());
+            assertEquals(expected, controller.getReaders());
+        }
+        assertEquals(0, readPage());
+        assertEquals(MAX_READERS, controller.getReaders());
+
+        // 源库变慢: 每页reader数减半直到下限，停顿加倍直到上限
+        rowNanos.set(SLOW_ROW_NANOS);
+        assertEquals(50, readPage());
+        assertEquals(4, controller.getReaders());
+        assertEquals(100, readPage());
+        assertEquals(2, controller.getReaders());
+        assertEquals(200, readPage());
+        assertEquals(1, controller.getReaders());
+        assertEquals(400, readPage());
+        assertEquals(1, controller.getReaders());
+        assertEquals(400, readPage());
+
+        // 源库恢复: 停顿逐步减少，reader数每页最多加一
+        rowNanos.set(FAST_ROW_NANOS);
+        int readers = controller.getReaders();
+        long pause = controller.getPauseMs();
+        for (int i = 0; i < 100 && (controller.getReaders() < MAX_READERS || controller.getPauseMs() > 0); i++) {
+            long next = readPage();
+            assertTrue(controller.getReaders() <= readers + 1);
+            readers = controller.getReaders();
+            if (next < pause) {
+                assertEquals(pause - 50, next);
+            }
+            pause = next;
+        }
+        assertEquals(MAX_READERS, controller.getReaders());
+        assertEquals(0, controller.getPauseMs());
+    }
+
+    @Test
+    public void unhealthySourceHalvesReaders() throws SQLException {
+        Properties props = new Properties();
+        props.setProperty(DataPullConstants.THROTTLE_ENABLED, "true");
+        props.setProperty(DataPullConstants.THROTTLE_MAX_READERS, String.valueOf(MAX_READERS));
+        props.setProperty(DataPullConstants.THROTTLE_CONTROL_INTERVAL_SECS, "0");
+        props.setProperty(DataPullConstants.THROTTLE_MAX_THREADS_RUNNING, "32");
+        controller.configure(props);
+        for (int i = 1; i < MAX_READERS; i++) {
+            readPage();
+        }
+        assertEquals(MAX_READERS, controller.getReaders());
+
+        SourceLoadController.Health health = new SourceLoadController.Health();
+        health.setThreadsRunning(64);
+        controller.onHealth(health);
+        assertEquals(50, readPage());
+        assertEquals(4, controller.getReaders());
+    }
+
+    @Test
+    public void acquireWaitsForFreeReader() throws Exception {
+        assertEquals(1, controller.getReaders());
+        controller.acquire();
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread second = new Thread(() -> {
+            try {
+                controller.acquire();
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        second.start();
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        controller.release();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        controller.release();
+        second.join();
+    }
+
+    /**
+     * 与PagedBatchDataFetchingBolt一样只统计rs.next()的耗时(按模拟时钟)，返回这一页之后的停顿
+     */
+    private long readPage() throws SQLException {
+        long nanos = 0;
+        for (int i = 0; i < PAGE_ROWS; i++) {
+            long start = clock.get();
+            assertTrue(rs.next());
+            nanos += clock.get() - start;
+        }
+        return controller.onPage(PAGE_ROWS, nanos);
+    }
+
+    /**
+     * 模拟的源库连接，结果集无限行，每次next()使模拟时钟前进rowNanos
+     */
+    private static Connection connection(AtomicLong clock, AtomicLong rowNanos) {
+        InvocationHandler resultSet = (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "next":
+                    clock.addAndGet(rowNanos.get());
+                    return true;
+                case "close":
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        };
+        InvocationHandler statement = (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "executeQuery":
+                    return proxy(ResultSet.class, resultSet);
+                case "close":
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        };
+        InvocationHandler connection = (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "createStatement":
+                    return proxy(Statement.class, statement);
+                case "close":
+                    return null;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        };
+        return proxy(Connection.class, connection);
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(SourceLoadControllerTest.class.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+}
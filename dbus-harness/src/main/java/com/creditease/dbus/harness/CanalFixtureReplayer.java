@@ -0,0 +1,194 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.harness;
+
+import com.alibaba.otter.canal.protocol.CanalEntry;
+import com.alibaba.otter.canal.protocol.CanalPacket;
+import com.google.protobuf.ByteString;
+import org.apache.commons.io.FileUtils;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * 向数据源topic写入canal格式的消息,与dbus-mysql-extractor输出的格式一致
+ * 消息可以来自录制的fixture文件(每个文件为一个序列化的CanalPacket.Messages),也可以按SyntheticDataset生成insert数据
+ */
+public class CanalFixtureReplayer implements Closeable {
+    private static Logger logger = LoggerFactory.getLogger(CanalFixtureReplayer.class);
+
+    private static final String LOGFILE_NAME = "mysql-bin.000001";
+
+    private SyntheticDataset dataset;
+    private KafkaProducer<String, byte[]> producer;
+    private long batchId = 0;
+    private long logfileOffset = 4;
+    private long nextId = 1;
+
+    public CanalFixtureReplayer(SyntheticDataset dataset, String bootstrapServers) {
+        this.dataset = dataset;
+        Properties props = new Properties();
+        props.setProperty("bootstrap.servers", bootstrapServers);
+        props.setProperty("acks", "1");
+        props.setProperty("linger.ms", "5");
+        props.setProperty("key.serializer", "org.apache.kafka.common.serialization.StringSerializer");
+        props.setProperty("value.serializer", "org.apache.kafka.common.serialization.ByteArraySerializer");
+        producer = new KafkaProducer<>(props);
+    }
+
+    /**
+     * 读取目录下的*.bin文件,按文件名顺序返回
+     */
+    public static List<CanalPacket.Messages> loadFixtures(File dir) throws IOException {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".bin"));
+        if (files == null) {
+            throw new IOException("fixture directory " + dir + " not found");
+        }
+        Arrays.sort(files);
+        List<CanalPacket.Messages> list = new ArrayList<>();
+        for (File file : files) {
+            list.add(CanalPacket.Messages.parseFrom(FileUtils.readFileToByteArray(file)));
+        }
+        logger.info("{} fixture messages loaded from {}", list.size(), dir);
+        return list;
+    }
+
+    /**
+     * 重新发送录制的消息,header中的时间和binlog位置会被改写,保证pos单调递增且延迟按当前时间统计
+     * @return 发送的行数
+     */
+    public long replay(List<CanalPacket.Messages> fixtures) throws IOException {
+        long rows = 0;
+        for (CanalPacket.Messages fixture : fixtures) {
+            CanalPacket.Messages.Builder builder = CanalPacket.Messages.newBuilder().setBatchId(++batchId);
+            for (ByteString bs : fixture.getMessagesList()) {
+                CanalEntry.Entry entry = CanalEntry.Entry.parseFrom(bs);
+                CanalEntry.Header header = CanalEntry.Header.newBuilder(entry.getHeader())
+                        .setExecuteTime(System.currentTimeMillis())
+                        .setLogfileName(LOGFILE_NAME)
+                        .setLogfileOffset(nextOffset(entry.getSerializedSize()))
+                        .build();
+                builder.addMessages(CanalEntry.Entry.newBuilder(entry).setHeader(header).build().toByteString());
+                if (entry.getEntryType() == CanalEntry.EntryType.ROWDATA) {
+                    rows += CanalEntry.RowChange.parseFrom(entry.getStoreValue()).getRowDatasCount();
+                }
+            }
+            send(builder.build());
+        }
+        producer.flush();
+        return rows;
+    }
+
+    /**
+     * 按表轮询生成insert消息,每个CanalPacket.Messages包含batchSize个entry,每个entry一行数据
+     * @return 发送的行数
+     */
+    public long generate(long rows, int batchSize) {
+        long sent = 0;
+        while (sent < rows) {
+            CanalPacket.Messages.Builder builder = CanalPacket.Messages.newBuilder().setBatchId(++batchId);
+            for (int i = 0; i < batchSize && sent < rows; i++, sent++) {
+                String table = dataset.tableName((int) (sent % dataset.getTables()));
+                builder.addMessages(insertEntry(table, nextId++).toByteString());
+            }
+            send(builder.build());
+        }
+        producer.flush();
+        return sent;
+    }
+
+    private CanalEntry.Entry insertEntry(String table, long id) {
+        CanalEntry.RowData.Builder row = CanalEntry.RowData.newBuilder();
+        String now = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
+        String[] values = {String.valueOf(id), "name_" + id, new BigDecimal(id % 100000).movePointLeft(2).toPlainString(),
+                String.valueOf(id % 4), now};
+        int index = 0;
+        for (SyntheticDataset.Column column : SyntheticDataset.COLUMNS) {
+            row.addAfterColumns(CanalEntry.Column.newBuilder()
+                    .setIndex(index)
+                    .setSqlType(column.sqlType)
+                    .setName(column.name)
+                    .setIsKey(column.pk)
+                    .setUpdated(true)
+                    .setIsNull(false)
+                    .setValue(values[index])
+                    .setMysqlType(column.mysqlType)
+                    .build());
+            index++;
+        }
+        ByteString storeValue = CanalEntry.RowChange.newBuilder()
+                .setEventType(CanalEntry.EventType.INSERT)
+                .setIsDdl(false)
+                .addRowDatas(row)
+                .build().toByteString();
+
+        CanalEntry.Header header = CanalEntry.Header.newBuilder()
+                .setVersion(1)
+                .setLogfileName(LOGFILE_NAME)
+                .setLogfileOffset(nextOffset(storeValue.size()))
+                .setServerId(1)
+                .setServerenCode("UTF-8")
+                .setExecuteTime(System.currentTimeMillis())
+                .setSourceType(CanalEntry.Type.MYSQL)
+                .setSchemaName(dataset.getSchema())
+                .setTableName(table)
+                .setEventLength(storeValue.size())
+                .setEventType(CanalEntry.EventType.INSERT)
+                .build();
+        return CanalEntry.Entry.newBuilder()
+                .setHeader(header)
+                .setEntryType(CanalEntry.EntryType.ROWDATA)
+                .setStoreValue(storeValue)
+                .build();
+    }
+
+    private long nextOffset(int length) {
+        long offset = logfileOffset;
+        logfileOffset += length;
+        return offset;
+    }
+
+    private void send(CanalPacket.Messages messages) {
+        // extractor发送数据时key为空字符串
+        producer.send(new ProducerRecord<>(dataset.dataTopic(), "", messages.toByteArray()), (metadata, e) -> {
+            if (e != null) {
+                logger.error("send canal message error", e);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        producer.close();
+    }
+}
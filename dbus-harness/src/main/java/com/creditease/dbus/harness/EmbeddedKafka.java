@@ -0,0 +1,96 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.harness;
+
+import kafka.admin.AdminUtils;
+import kafka.admin.RackAwareMode;
+import kafka.server.KafkaConfig;
+import kafka.server.KafkaServerStartable;
+import kafka.utils.ZkUtils;
+import org.apache.commons.io.FileUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.Properties;
+
+/**
+ * 内嵌的单broker kafka,日志目录在关闭时删除
+ */
+public class EmbeddedKafka implements Closeable {
+    private String zkConnect;
+    private File logDir;
+    private int port;
+    private KafkaServerStartable server;
+
+    public EmbeddedKafka(String zkConnect) throws IOException {
+        this.zkConnect = zkConnect;
+        this.logDir = Files.createTempDirectory("dbus-harness-kafka").toFile();
+        try (ServerSocket socket = new ServerSocket(0)) {
+            this.port = socket.getLocalPort();
+        }
+
+        Properties props = new Properties();
+        props.setProperty("broker.id", "0");
+        props.setProperty("zookeeper.connect", zkConnect);
+        props.setProperty("listeners", "PLAINTEXT://127.0.0.1:" + port);
+        props.setProperty("log.dirs", logDir.getAbsolutePath());
+        props.setProperty("num.partitions", "1");
+        props.setProperty("auto.create.topics.enable", "true");
+        props.setProperty("offsets.topic.replication.factor", "1");
+        props.setProperty("offsets.topic.num.partitions", "1");
+        // producer-config模板中max.request.size为10M
+        props.setProperty("message.max.bytes", "20971520");
+        props.setProperty("replica.fetch.max.bytes", "20971520");
+        server = new KafkaServerStartable(new KafkaConfig(props));
+    }
+
+    public void start() {
+        server.startup();
+    }
+
+    public String getBootstrapServers() {
+        return "127.0.0.1:" + port;
+    }
+
+    /**
+     * 预先创建topic,避免消费者在topic自动创建完成之前拿不到partition信息
+     */
+    public void createTopic(String topic, int partitions) {
+        ZkUtils zkUtils = ZkUtils.apply(zkConnect, 30000, 30000, false);
+        try {
+            if (!AdminUtils.topicExists(zkUtils, topic)) {
+                AdminUtils.createTopic(zkUtils, topic, partitions, 1, new Properties(), RackAwareMode.Enforced$.MODULE$);
+            }
+        } finally {
+            zkUtils.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.shutdown();
+        server.awaitShutdown();
+        FileUtils.deleteQuietly(logDir);
+    }
+}
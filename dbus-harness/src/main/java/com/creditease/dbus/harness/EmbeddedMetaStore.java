@@ -0,0 +1,188 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.harness;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * 使用H2(MySQL模式)模拟dbus管理库,表结构取自initScript/dbusmgr.sql
+ */
+public class EmbeddedMetaStore implements Closeable {
+    private static Logger logger = LoggerFactory.getLogger(EmbeddedMetaStore.class);
+
+    public static final String URL = "jdbc:h2:mem:dbusmgr;MODE=MySQL;DB_CLOSE_DELAY=-1";
+    private static final String USER = "dbusmgr";
+    private static final String SCHEMA_SCRIPT = "initScript/dbusmgr.sql";
+
+    /** 保持一个连接,内存库在连接全部关闭前不会被销毁 */
+    private Connection conn;
+
+    public EmbeddedMetaStore() throws Exception {
+        Class.forName("org.h2.Driver");
+        conn = DriverManager.getConnection(URL, USER, "");
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : loadSchema()) {
+                stmt.execute(sql);
+            }
+        }
+        logger.info("Embedded meta store created: {}", URL);
+    }
+
+    /**
+     * 写入zookeeper的Commons/mysql.properties内容,appender通过druid连接管理库
+     */
+    public Properties dataSourceProperties() {
+        Properties props = new Properties();
+        props.setProperty("driverClassName", "org.h2.Driver");
+        props.setProperty("url", URL);
+        props.setProperty("username", USER);
+        props.setProperty("password", "");
+        props.setProperty("initialSize", "1");
+        props.setProperty("maxActive", "20");
+        props.setProperty("minIdle", "1");
+        props.setProperty("maxWait", "60000");
+        props.setProperty("validationQuery", "select 1");
+        props.setProperty("testWhileIdle", "true");
+        props.setProperty("testOnBorrow", "false");
+        props.setProperty("testOnReturn", "false");
+        return props;
+    }
+
+    /**
+     * 写入数据源、schema、表以及每张表的初始meta版本
+     */
+    public void seed(SyntheticDataset dataset) throws SQLException {
+        long dsId = insert("insert into t_dbus_datasource(ds_name, ds_type, status, ds_desc, topic, ctrl_topic, schema_topic, split_topic, " +
+                        "master_url, slave_url, dbus_user, dbus_pwd) values(?, 'mysql', 'active', 'harness', ?, ?, ?, ?, '', '', 'dbus', '')",
+                dataset.getDsName(), dataset.dataTopic(), dataset.ctrlTopic(), dataset.getDsName() + "_schema", dataset.getDsName() + "_split");
+        long schemaId = insert("insert into t_data_schema(ds_id, schema_name, status, src_topic, target_topic) values(?, ?, 'active', ?, ?)",
+                dsId, dataset.getSchema(), dataset.schemaTopic(), dataset.outputTopic());
+
+        for (int i = 0; i < dataset.getTables(); i++) {
+            String table = dataset.tableName(i);
+            long tableId = insert("insert into t_data_tables(ds_id, schema_id, schema_name, table_name, physical_table_regex, output_topic, status, batch_id) " +
+                    "values(?, ?, ?, ?, ?, ?, 'ok', 0)", dsId, schemaId, dataset.getSchema(), table, table, dataset.outputTopic());
+            long verId = insert("insert into t_meta_version(table_id, ds_id, db_name, schema_name, table_name, version, inner_version, event_offset, event_pos) " +
+                    "values(?, ?, ?, ?, ?, 0, 0, 0, 0)", tableId, dsId, dataset.getSchema(), dataset.getSchema(), table);
+            update("update t_data_tables set ver_id = ? where id = ?", verId, tableId);
+
+            int columnId = 1;
+            for (SyntheticDataset.Column column : SyntheticDataset.COLUMNS) {
+                insert("insert into t_table_meta(ver_id, column_name, original_column_name, column_id, internal_column_id, original_ser, data_type, " +
+                                "data_length, data_precision, data_scale, nullable, is_pk, pk_position) values(?, ?, ?, ?, ?, 0, ?, ?, ?, ?, ?, ?, ?)",
+                        verId, column.name, column.name, columnId, columnId, column.dataType, column.length, column.precision, column.scale,
+                        column.pk ? "N" : "Y", column.pk ? "Y" : "N", column.pk ? 1 : null);
+                columnId++;
+            }
+        }
+        logger.info("Meta store seeded with {} tables of {}.{}", dataset.getTables(), dataset.getDsName(), dataset.getSchema());
+    }
+
+    private long insert(String sql, Object... params) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            bind(ps, params);
+            ps.executeUpdate();
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                return rs.next() ? rs.getLong(1) : -1;
+            }
+        }
+    }
+
+    private void update(String sql, Object... params) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            bind(ps, params);
+            ps.executeUpdate();
+        }
+    }
+
+    private static void bind(PreparedStatement ps, Object... params) throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            ps.setObject(i + 1, params[i]);
+        }
+    }
+
+    /**
+     * 读取mysql建表脚本并去掉H2不支持的语法: 注释、存储引擎、字符集、ON UPDATE、普通索引等
+     */
+    static List<String> loadSchema() throws IOException {
+        String script;
+        try (InputStream is = EmbeddedMetaStore.class.getClassLoader().getResourceAsStream(SCHEMA_SCRIPT)) {
+            if (is == null) {
+                throw new IOException(SCHEMA_SCRIPT + " not found in classpath");
+            }
+            // 脚本中的中文注释为GBK编码
+            script = IOUtils.toString(is, "GBK");
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (String line : script.split("\r?\n")) {
+            if (!line.trim().startsWith("--")) {
+                sb.append(line).append('\n');
+            }
+        }
+
+        List<String> statements = new ArrayList<>();
+        for (String sql : sb.toString().split(";")) {
+            String stmt = sql.trim();
+            String upper = stmt.toUpperCase();
+            if (!upper.startsWith("CREATE TABLE") && !upper.startsWith("DROP TABLE")) {
+                continue;
+            }
+            stmt = stmt.replaceAll("(?i)\\s+COMMENT\\s*=?\\s*'(?:[^'\\\\]|\\\\.|'')*'", "")
+                    .replaceAll("(?i)\\s+ENGINE\\s*=\\s*\\w+", "")
+                    .replaceAll("(?i)\\s+DEFAULT\\s+CHARSET\\s*=\\s*\\w+", "")
+                    .replaceAll("(?i)\\s+CHARACTER\\s+SET\\s+\\w+", "")
+                    .replaceAll("(?i)\\s+COLLATE\\s+\\w+", "")
+                    .replaceAll("(?i)\\s+ON\\s+UPDATE\\s+CURRENT_TIMESTAMP", "")
+                    .replaceAll("(?i)\\s+USING\\s+BTREE", "")
+                    .replaceAll("(?i)\\s+unsigned", "")
+                    .replaceAll("(?i),\\s*KEY\\s+`[^`]+`\\s*\\([^)]*\\)", "")
+                    .replaceAll("(?i)UNIQUE\\s+KEY\\s+`[^`]+`\\s*\\(", "UNIQUE (")
+                    .replace("`", "");
+            statements.add(stmt);
+        }
+        return statements;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.harness;
+
+import org.apache.curator.test.TestingServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * 内嵌的单节点zookeeper
+ */
+public class EmbeddedZookeeper implements Closeable {
+    private TestingServer server;
+
+    public EmbeddedZookeeper() throws Exception {
+        server = new TestingServer(true);
+    }
+
+    public String getConnectString() {
+        return server.getConnectString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+}
@@ -0,0 +1,173 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.harness;
+
+import com.alibaba.otter.canal.protocol.CanalPacket;
+import com.creditease.dbus.commons.ZkService;
+import com.creditease.dbus.stream.DispatcherAppenderTopology;
+import com.creditease.dbus.stream.common.Constants;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.storm.Config;
+import org.apache.storm.LocalCluster;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * 本地端到端吞吐测试: 启动嵌入式zookeeper、kafka和H2管理库,在LocalCluster中运行dispatcher-appender拓扑,
+ * 向数据源topic写入canal格式的数据,统计输出topic的吞吐量和延迟
+ *
+ * mvn -Pharness -pl dbus-harness -am install
+ * mvn -Pharness -pl dbus-harness exec:java -Dexec.args="-t 4 -r 100000"
+ */
+public class PipelineHarness {
+    private static Logger logger = LoggerFactory.getLogger(PipelineHarness.class);
+
+    private static final String DS_NAME = "harness";
+    private static final String SCHEMA = "dbus_harness";
+
+    private int tables = 4;
+    private long rows = 100000;
+    private int batchSize = 100;
+    private long warmupRows = 5000;
+    private long timeoutSeconds = 600;
+    private File fixtures;
+
+    public static void main(String[] args) throws Exception {
+        PipelineHarness harness = new PipelineHarness();
+        if (!harness.parseCommandArgs(args)) {
+            return;
+        }
+        boolean passed = harness.run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    private boolean parseCommandArgs(String[] args) {
+        Options options = new Options();
+        options.addOption("t", "tables", true, "number of synthetic tables, default 4.");
+        options.addOption("r", "rows", true, "number of rows to measure, default 100000.");
+        options.addOption("b", "batch", true, "number of canal entries per kafka message, default 100.");
+        options.addOption("w", "warmup", true, "number of rows sent before measuring, default 5000.");
+        options.addOption("f", "fixtures", true, "directory of recorded canal messages (*.bin) to replay instead of synthetic rows.");
+        options.addOption("o", "timeout", true, "seconds to wait for the output, default 600.");
+        options.addOption("h", "help", false, "print usage().");
+
+        CommandLineParser parser = new DefaultParser();
+        try {
+            CommandLine line = parser.parse(options, args);
+            if (line.hasOption("help")) {
+                new HelpFormatter().printHelp("dbus-harness", options);
+                return false;
+            }
+            tables = Integer.parseInt(line.getOptionValue("tables", String.valueOf(tables)));
+            rows = Long.parseLong(line.getOptionValue("rows", String.valueOf(rows)));
+            batchSize = Integer.parseInt(line.getOptionValue("batch", String.valueOf(batchSize)));
+            warmupRows = Long.parseLong(line.getOptionValue("warmup", String.valueOf(warmupRows)));
+            timeoutSeconds = Long.parseLong(line.getOptionValue("timeout", String.valueOf(timeoutSeconds)));
+            if (line.hasOption("fixtures")) {
+                fixtures = new File(line.getOptionValue("fixtures"));
+            }
+            return true;
+        } catch (ParseException | NumberFormatException e) {
+            System.err.println("Parsing failed.  Reason: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean run() throws Exception {
+        SyntheticDataset dataset = new SyntheticDataset(DS_NAME, SCHEMA, tables);
+        LocalCluster cluster = null;
+        try (EmbeddedZookeeper zookeeper = new EmbeddedZookeeper();
+             EmbeddedKafka kafka = new EmbeddedKafka(zookeeper.getConnectString());
+             EmbeddedMetaStore metaStore = new EmbeddedMetaStore()) {
+
+            kafka.start();
+            for (String topic : new String[]{dataset.dataTopic(), dataset.ctrlTopic(), dataset.schemaTopic(),
+                    dataset.outputTopic(), "dbus_statistic", "global_ctrl_topic"}) {
+                kafka.createTopic(topic, 1);
+            }
+
+            metaStore.seed(dataset);
+            try (ZkService zk = new ZkService(zookeeper.getConnectString())) {
+                new ZkConfigSeeder(zk, kafka.getBootstrapServers()).seed(dataset, metaStore.dataSourceProperties());
+            }
+
+            DispatcherAppenderTopology.configure(zookeeper.getConnectString(), DS_NAME, Constants.TopologyType.ALL);
+            DispatcherAppenderTopology topology = new DispatcherAppenderTopology();
+            topology.loadPlan();
+            Config conf = topology.buildConfig();
+            conf.setDebug(false);
+            cluster = new LocalCluster();
+            cluster.submitTopology(DispatcherAppenderTopology.getTopologyId(), conf, topology.buildTopology());
+
+            try (CanalFixtureReplayer replayer = new CanalFixtureReplayer(dataset, kafka.getBootstrapServers());
+                 ThroughputProbe probe = new ThroughputProbe(kafka.getBootstrapServers(), dataset.outputTopic())) {
+                List<CanalPacket.Messages> recorded = fixtures == null ? null : CanalFixtureReplayer.loadFixtures(fixtures);
+
+                // 预热阶段: 等待拓扑启动、缓存加载和jit编译完成
+                long warmup = recorded == null ? replayer.generate(warmupRows, batchSize) : replayer.replay(recorded);
+                if (!probe.await(warmup, timeoutSeconds * 1000)) {
+                    logger.error("Warm up timed out, {} of {} rows received.", probe.getRows(), warmup);
+                    return false;
+                }
+                probe.reset();
+
+                long start = System.currentTimeMillis();
+                long expected = 0;
+                if (recorded == null) {
+                    expected = replayer.generate(rows, batchSize);
+                } else {
+                    while (expected < rows) {
+                        long replayed = replayer.replay(recorded);
+                        if (replayed == 0) {
+                            // 录制文件中没有行数据时重放不会推进,直接失败避免死循环
+                            logger.error("Fixtures in {} contain no row data.", fixtures);
+                            return false;
+                        }
+                        expected += replayed;
+                    }
+                }
+                boolean completed = probe.await(expected, timeoutSeconds * 1000);
+                long elapsed = Math.max(1, System.currentTimeMillis() - start);
+
+                logger.info("Rows: {}/{}, messages: {}, elapsed: {} ms, throughput: {} rows/s",
+                        probe.getRows(), expected, probe.getMessages(), elapsed, probe.getRows() * 1000 / elapsed);
+                logger.info("Latency(ms) p50: {}, p90: {}, p99: {}, max: {}", probe.latencyPercentile(50),
+                        probe.latencyPercentile(90), probe.latencyPercentile(99), probe.latencyPercentile(100));
+                if (!completed) {
+                    logger.error("Timed out before all rows arrived.");
+                }
+                return completed;
+            }
+        } finally {
+            if (cluster != null) {
+                cluster.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.harness;
+
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 压测使用的合成数据集: 一个mysql数据源、一个schema以及若干结构相同的表
+ */
+public class SyntheticDataset {
+    public static final List<Column> COLUMNS = Arrays.asList(
+            new Column("id", "bigint", "bigint(20)", Types.BIGINT, 20, 19, 0, true),
+            new Column("name", "varchar", "varchar(64)", Types.VARCHAR, 64, 0, 0, false),
+            new Column("amount", "decimal", "decimal(12,2)", Types.DECIMAL, 12, 12, 2, false),
+            new Column("status", "int", "int(11)", Types.INTEGER, 11, 10, 0, false),
+            new Column("updated_at", "datetime", "datetime", Types.TIMESTAMP, 19, 0, 0, false));
+
+    private String dsName;
+    private String schema;
+    private int tables;
+
+    public SyntheticDataset(String dsName, String schema, int tables) {
+        this.dsName = dsName;
+        this.schema = schema;
+        this.tables = tables;
+    }
+
+    public String getDsName() {
+        return dsName;
+    }
+
+    public String getSchema() {
+        return schema;
+    }
+
+    public int getTables() {
+        return tables;
+    }
+
+    public String tableName(int i) {
+        return "t_harness_" + i;
+    }
+
+    /** extractor写入、dispatcher消费的topic */
+    public String dataTopic() {
+        return dsName;
+    }
+
+    public String ctrlTopic() {
+        return dsName + "_ctrl";
+    }
+
+    /** dispatcher按schema分发、appender消费的topic */
+    public String schemaTopic() {
+        return dsName + "." + schema;
+    }
+
+    /** appender输出UMS的topic */
+    public String outputTopic() {
+        return dsName + "." + schema + ".result";
+    }
+
+    public static class Column {
+        final String name;
+        final String dataType;
+        final String mysqlType;
+        final int sqlType;
+        final int length;
+        final int precision;
+        final int scale;
+        final boolean pk;
+
+        Column(String name, String dataType, String mysqlType, int sqlType, int length, int precision, int scale, boolean pk) {
+            this.name = name;
+            this.dataType = dataType;
+            this.mysqlType = mysqlType;
+            this.sqlType = sqlType;
+            this.length = length;
+            this.precision = precision;
+            this.scale = scale;
+            this.pk = pk;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.harness;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.creditease.dbus.commons.DateTimeCodec;
+import com.creditease.dbus.commons.DbusMessage;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+/**
+ * 消费appender输出的UMS消息,统计输出行数以及ums_ts_到消费时刻的延迟
+ */
+public class ThroughputProbe implements Closeable {
+    private static Logger logger = LoggerFactory.getLogger(ThroughputProbe.class);
+
+    private KafkaConsumer<String, byte[]> consumer;
+    private long rows = 0;
+    private long messages = 0;
+    private long[] latencies = new long[1024];
+    private int samples = 0;
+
+    public ThroughputProbe(String bootstrapServers, String topic) {
+        Properties props = new Properties();
+        props.setProperty("bootstrap.servers", bootstrapServers);
+        props.setProperty("group.id", "dbus-harness-probe");
+        props.setProperty("enable.auto.commit", "false");
+        props.setProperty("auto.offset.reset", "earliest");
+        props.setProperty("key.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
+        props.setProperty("value.deserializer", "org.apache.kafka.common.serialization.ByteArrayDeserializer");
+        consumer = new KafkaConsumer<>(props);
+        consumer.subscribe(Collections.singletonList(topic));
+    }
+
+    /**
+     * 持续消费直到收到期望的行数或超时
+     * @return 是否在超时前收到全部数据
+     */
+    public boolean await(long expectedRows, long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (rows < expectedRows && System.currentTimeMillis() < deadline) {
+            ConsumerRecords<String, byte[]> records = consumer.poll(200);
+            for (ConsumerRecord<String, byte[]> record : records) {
+                consume(record.value());
+            }
+        }
+        return rows >= expectedRows;
+    }
+
+    private void consume(byte[] value) {
+        long now = System.currentTimeMillis();
+        JSONObject ums = JSON.parseObject(new String(value, StandardCharsets.UTF_8));
+        JSONObject protocol = ums.getJSONObject("protocol");
+        if (protocol == null || !DbusMessage.ProtocolType.DATA_INCREMENT_DATA.toString().equals(protocol.getString("type"))) {
+            // 心跳和控制消息不计入
+            return;
+        }
+        messages++;
+
+        JSONArray fields = ums.getJSONObject("schema").getJSONArray("fields");
+        int tsIndex = -1;
+        for (int i = 0; i < fields.size(); i++) {
+            if (DbusMessage.Field._UMS_TS_.equals(fields.getJSONObject(i).getString("name"))) {
+                tsIndex = i;
+                break;
+            }
+        }
+        JSONArray payload = ums.getJSONArray("payload");
+        for (int i = 0; i < payload.size(); i++) {
+            rows++;
+            if (tsIndex < 0) {
+                continue;
+            }
+            String ts = payload.getJSONObject(i).getJSONArray("tuple").getString(tsIndex);
+            try {
+                addLatency(now - DateTimeCodec.parseMillis(ts));
+            } catch (Exception e) {
+                logger.warn("unparseable ums_ts_ {}", ts);
+            }
+        }
+    }
+
+    private void addLatency(long latency) {
+        if (samples == latencies.length) {
+            latencies = Arrays.copyOf(latencies, samples * 2);
+        }
+        latencies[samples++] = latency;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getMessages() {
+        return messages;
+    }
+
+    /**
+     * 清空统计,预热阶段结束后调用
+     */
+    public void reset() {
+        rows = 0;
+        messages = 0;
+        samples = 0;
+    }
+
+    /**
+     * @param percent 0-100
+     * @return 延迟的百分位数,单位毫秒
+     */
+    public long latencyPercentile(double percent) {
+        if (samples == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(latencies, samples);
+        Arrays.sort(sorted);
+        int idx = (int) Math.ceil(percent / 100 * samples) - 1;
+        return sorted[Math.max(0, Math.min(idx, samples - 1))];
+    }
+
+    @Override
+    public void close() {
+        consumer.close();
+    }
+}
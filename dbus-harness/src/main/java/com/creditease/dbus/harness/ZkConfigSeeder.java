@@ -0,0 +1,112 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.harness;
+
+import com.creditease.dbus.commons.Constants;
+import com.creditease.dbus.commons.ZkService;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/**
+ * 按照InitZooKeeper的方式初始化嵌入式zookeeper,并为数据线上传dispatcher/appender配置
+ */
+public class ZkConfigSeeder {
+    private static Logger logger = LoggerFactory.getLogger(ZkConfigSeeder.class);
+
+    private static final String TEMPLATE_ROOT = "templates/";
+    private static final String DS_NAME_PLACEHOLDER = "placeholder";
+    private static final String BOOTSTRAP_SERVER_PLACEHOLDER = "[BOOTSTRAP_SERVER_PLACEHOLDER]";
+    private static final String[] CONF_PATHS = {
+            "placeholder-appender/configure.properties",
+            "placeholder-appender/consumer-config.properties",
+            "placeholder-appender/ora-meta.properties",
+            "placeholder-appender/producer-config.properties",
+            "placeholder-appender/producer-control.properties",
+
+            "placeholder-dispatcher/dispatcher.configure.properties",
+            "placeholder-dispatcher/dispatcher.consumer.properties",
+            "placeholder-dispatcher/dispatcher.producer.properties",
+            "placeholder-dispatcher/dispatcher.raw.topics.properties",
+            "placeholder-dispatcher/dispatcher.schema.topics.properties"
+    };
+
+    private ZkService zk;
+    private String bootstrapServers;
+
+    public ZkConfigSeeder(ZkService zk, String bootstrapServers) {
+        this.zk = zk;
+        this.bootstrapServers = bootstrapServers;
+    }
+
+    public void seed(SyntheticDataset dataset, Properties dataSourceProps) throws Exception {
+        createNode(Constants.DBUS_ROOT, null);
+        createNode(Constants.COMMON_ROOT, null);
+        createNode(Constants.CONTROL_MESSAGE_RESULT_ROOT, null);
+        createNode(Constants.HEARTBEAT_ROOT, null);
+        createNode(Constants.NAMESPACE_ROOT, null);
+        createNode(Constants.TOPOLOGY_ROOT, null);
+
+        Properties global = new Properties();
+        global.setProperty("bootstrap.servers", bootstrapServers);
+        createNode(Constants.COMMON_ROOT + "/" + Constants.GLOBAL_PROPERTIES, toBytes(global));
+        createNode(Constants.COMMON_ROOT + "/" + Constants.MYSQL_PROPERTIES, toBytes(dataSourceProps));
+
+        for (String path : CONF_PATHS) {
+            String content = loadTemplate(TEMPLATE_ROOT + path)
+                    .replace(BOOTSTRAP_SERVER_PLACEHOLDER, bootstrapServers)
+                    .replace(DS_NAME_PLACEHOLDER, dataset.getDsName());
+            String zkPath = Constants.TOPOLOGY_ROOT + "/" + path.replace(DS_NAME_PLACEHOLDER, dataset.getDsName());
+            createNode(zkPath.substring(0, zkPath.lastIndexOf('/')), null);
+            createNode(zkPath, content.getBytes(StandardCharsets.UTF_8));
+        }
+        logger.info("Zookeeper configurations of {} uploaded.", dataset.getDsName());
+    }
+
+    private void createNode(String path, byte[] data) throws Exception {
+        if (!zk.isExists(path)) {
+            zk.createNode(path, data);
+        } else if (data != null) {
+            zk.setData(path, data);
+        }
+    }
+
+    private static String loadTemplate(String path) throws IOException {
+        try (InputStream is = ZkConfigSeeder.class.getClassLoader().getResourceAsStream(path)) {
+            if (is == null) {
+                throw new IOException(path + " not found in classpath");
+            }
+            return IOUtils.toString(is, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static byte[] toBytes(Properties props) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        props.store(os, null);
+        return os.toByteArray();
+    }
+}
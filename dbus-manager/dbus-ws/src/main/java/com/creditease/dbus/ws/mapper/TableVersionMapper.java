@@ -22,7 +22,9 @@ package com.creditease.dbus.ws.mapper;
 
 
 import com.creditease.dbus.ws.domain.TableVersion;
+import org.apache.ibatis.annotations.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -31,6 +33,7 @@ import java.util.Map;
  */
 public interface TableVersionMapper {
     TableVersion findById(long id);
+    List<TableVersion> findByIds(@Param("ids") Collection<Long> ids);
     List<TableVersion> getVersionListByTableId(long tableId);
     List<TableVersion> search(Map<String, Object> param);
     int update(TableVersion version);
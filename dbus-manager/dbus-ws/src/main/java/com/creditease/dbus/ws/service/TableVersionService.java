@@ -23,11 +23,20 @@ package com.creditease.dbus.ws.service;
 import com.creditease.dbus.ws.domain.TableVersion;
 import com.creditease.dbus.ws.mapper.TableVersionMapper;
 import com.creditease.dbus.ws.service.mybatis.MybatisTemplate;
+import com.google.common.collect.Iterables;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Created by Shrimp on 16/9/8.
  */
 public class TableVersionService {
+    /** 批量查询时每条sql中in条件的最大个数 */
+    private static final int BATCH_SIZE = 500;
 
     private MybatisTemplate template = MybatisTemplate.template();
     public static TableVersionService getService() {
@@ -41,6 +50,25 @@ public class TableVersionService {
         }));
     }
 
+    /**
+     * 批量查询版本信息,每BATCH_SIZE个id执行一次查询
+     * @param ids 版本id集合
+     * @return 版本id到版本信息的映射,不存在的id不包含在结果中
+     */
+    public Map<Long, TableVersion> findByIds(Collection<Long> ids) {
+        Map<Long, TableVersion> result = new HashMap<>();
+        for (List<Long> batch : Iterables.partition(ids, BATCH_SIZE)) {
+            List<TableVersion> versions = template.query(((session, args) -> {
+                TableVersionMapper mapper = session.getMapper(TableVersionMapper.class);
+                return mapper.findByIds(new ArrayList<>(batch));
+            }));
+            for (TableVersion version : versions) {
+                result.put(version.getId(), version);
+            }
+        }
+        return result;
+    }
+
     public int updateVersion(long id, TableVersion v) {
         return template.update(((session, args) -> {
             TableVersionMapper mapper = session.getMapper(TableVersionMapper.class);
@@ -23,6 +23,8 @@ package com.creditease.dbus.ws.service.meta;
 import com.creditease.dbus.enums.DbusDatasourceType;
 import com.creditease.dbus.ws.domain.DbusDataSource;
 import com.creditease.dbus.ws.domain.TableMeta;
+import com.creditease.dbus.ws.tools.SourceConnectionProvider;
+import com.creditease.dbus.ws.tools.SourceMetaCache;
 
 import java.sql.*;
 import java.util.*;
@@ -43,6 +45,8 @@ public abstract class MetaFetcher {
     public abstract String fillParameters(PreparedStatement statement, Map<String, Object> params) throws Exception;
 
     public List<TableMeta> fetchMeta(Map<String, Object> params) throws Exception {
+        // 同步meta时源库的表结构可能已经变化,清除浏览时缓存的元数据
+        SourceMetaCache.invalidate(ds.getMasterURL(), ds.getDbusUser());
         try {
             PreparedStatement statement = conn.prepareStatement(buildQuery(params));
             fillParameters(statement, params);
@@ -69,7 +73,7 @@ public abstract class MetaFetcher {
             default:
                 throw new IllegalArgumentException();
         }
-        Connection conn = DriverManager.getConnection(ds.getMasterURL(), ds.getDbusUser(), ds.getDbusPassword());
+        Connection conn = SourceConnectionProvider.getInstance().getConnection(dsType, ds.getMasterURL(), ds.getDbusUser(), ds.getDbusPassword());
         fetcher.setConnection(conn);
         return fetcher;
     }
@@ -22,6 +22,8 @@ package com.creditease.dbus.ws.service.schema;
 
 import com.creditease.dbus.enums.DbusDatasourceType;
 import com.creditease.dbus.ws.domain.*;
+import com.creditease.dbus.ws.tools.SourceConnectionProvider;
+import com.creditease.dbus.ws.tools.SourceMetaCache;
 
 import java.sql.*;
 import java.util.*;
@@ -41,10 +43,12 @@ public abstract class SchemaFetcher {
 
     public List<DataSchema> fetchSchema(Map<String, Object> params) throws Exception {
         try {
-            PreparedStatement statement = conn.prepareStatement(buildQuery(params));
-            fillParameters(statement, params);
-            ResultSet resultSet = statement.executeQuery();
+            return SourceMetaCache.get(ds.getMasterURL(), ds.getDbusUser(), "schema", params, () -> {
+                PreparedStatement statement = conn.prepareStatement(buildQuery(params));
+                fillParameters(statement, params);
+                ResultSet resultSet = statement.executeQuery();
                 return buildResultMySQLAndOracle(resultSet);
+            });
         } finally {
             if (!conn.isClosed()) {
                 conn.close();
@@ -67,7 +71,7 @@ public abstract class SchemaFetcher {
             default:
                 throw new IllegalArgumentException();
         }
-        Connection conn = DriverManager.getConnection(ds.getMasterURL(), ds.getDbusUser(), ds.getDbusPassword());
+        Connection conn = SourceConnectionProvider.getInstance().getConnection(dsType, ds.getMasterURL(), ds.getDbusUser(), ds.getDbusPassword());
         fetcher.setConnection(conn);
         return fetcher;
     }
@@ -21,6 +21,7 @@
 package com.creditease.dbus.ws.service.source;
 
 import com.creditease.dbus.enums.DbusDatasourceType;
+import com.creditease.dbus.ws.tools.SourceConnectionProvider;
 
 import java.sql.*;
 import java.util.ArrayList;
@@ -103,7 +104,8 @@ public abstract class SourceFetcher {
 
     public static SourceFetcher getFetcher(Map<String, Object> params) throws Exception {
         SourceFetcher fetcher;
-        switch (DbusDatasourceType.parse(params.get("dsType").toString())) {
+        DbusDatasourceType dsType = DbusDatasourceType.parse(params.get("dsType").toString());
+        switch (dsType) {
             case MYSQL:
                 Class.forName("com.mysql.jdbc.Driver");
                 fetcher = new MySqlSourceFetcher();
@@ -115,7 +117,7 @@ public abstract class SourceFetcher {
             default:
                 throw new IllegalArgumentException();
         }
-        Connection conn = DriverManager.getConnection(params.get("URL").toString(),params.get("user").toString() , params.get("password").toString());
+        Connection conn = SourceConnectionProvider.getInstance().getConnection(dsType, params.get("URL").toString(),params.get("user").toString() , params.get("password").toString());
         fetcher.setConnection(conn);
         return fetcher;
     }
@@ -0,0 +1,145 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.ws.service.table;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 在JVM内执行规则预览sql。
+ * 样例数据写入H2内存数据库(MySQL兼容模式,字符串比较不区分大小写,与原来mysql临时表的默认排序规则一致)的temp表,
+ * 列名为c1,c2...cN,然后执行用户的规则sql。每次调用使用独立的内存库,连接关闭后数据随之释放。
+ * 规则sql先经过SqlRuleValidator校验,只允许一条查询temp表的select语句;
+ * 执行时使用只有temp表查询权限的非管理员用户,H2的FILE_READ、CSVREAD、CSVWRITE、LINK_SCHEMA等函数都要求管理员权限。
+ */
+public class SqlRuleEvaluator {
+    private static Logger logger = LoggerFactory.getLogger(SqlRuleEvaluator.class);
+
+    private static final String URL = "jdbc:h2:mem:rule_%s;MODE=MySQL;IGNORECASE=TRUE";
+    private static final String TABLE_NAME = "temp";
+    private static final String ADMIN = "sa";
+    private static final String READER = "rule_reader";
+    private static final int QUERY_TIMEOUT_SECONDS = 10;
+
+    private SqlRuleEvaluator() {
+    }
+
+    /**
+     * 对样例数据执行规则sql
+     * @param sql 规则sql,只能是一条查询temp表的select语句
+     * @param data 样例数据,每行的第i个值对应列ci,缺失的值按空字符串处理
+     * @return 查询结果,sql校验不通过或执行失败时返回null
+     */
+    public static List<List<String>> evaluate(String sql, List<List<String>> data) {
+        int maxColumn = getMaxColumn(data);
+        // 库名随机,同一JVM内的其他连接无法猜到;最后一个连接关闭时内存库自动删除
+        String url = String.format(URL, UUID.randomUUID().toString().replace("-", ""));
+        String password = UUID.randomUUID().toString();
+        try {
+            String query = SqlRuleValidator.check(sql);
+            try (Connection admin = DriverManager.getConnection(url, ADMIN, "")) {
+                createTable(admin, maxColumn);
+                insertData(admin, data, maxColumn);
+                createReader(admin, password);
+                try (Connection reader = DriverManager.getConnection(url, READER, password)) {
+                    return executeQuery(reader, query);
+                }
+            }
+        } catch (SQLException e) {
+            logger.warn("Execute custom sql command failed", e);
+            return null;
+        }
+    }
+
+    private static int getMaxColumn(List<List<String>> data) {
+        int result = 1;
+        for (List<String> list : data) {
+            result = Math.max(result, list.size());
+        }
+        return result;
+    }
+
+    private static void createTable(Connection conn, int maxColumn) throws SQLException {
+        StringBuilder sb = new StringBuilder("create table ").append(TABLE_NAME).append(" (c1 varchar");
+        for (int i = 2; i <= maxColumn; i++) {
+            sb.append(",c").append(i).append(" varchar");
+        }
+        sb.append(")");
+        try (Statement statement = conn.createStatement()) {
+            statement.execute(sb.toString());
+        }
+    }
+
+    private static void insertData(Connection conn, List<List<String>> data, int maxColumn) throws SQLException {
+        StringBuilder sb = new StringBuilder("insert into ").append(TABLE_NAME).append(" values(?");
+        for (int i = 2; i <= maxColumn; i++) {
+            sb.append(",?");
+        }
+        sb.append(")");
+        try (PreparedStatement statement = conn.prepareStatement(sb.toString())) {
+            for (List<String> list : data) {
+                for (int i = 1; i <= maxColumn; i++) {
+                    String value = i <= list.size() ? list.get(i - 1) : null;
+                    statement.setString(i, value == null ? "" : value);
+                }
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private static void createReader(Connection conn, String password) throws SQLException {
+        try (Statement statement = conn.createStatement()) {
+            statement.execute("create user " + READER + " password '" + password + "'");
+            statement.execute("grant select on " + TABLE_NAME + " to " + READER);
+        }
+    }
+
+    private static List<List<String>> executeQuery(Connection conn, String sql) throws SQLException {
+        try (PreparedStatement statement = conn.prepareStatement(sql)) {
+            statement.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                int columnCount = metaData.getColumnCount();
+                List<List<String>> result = new ArrayList<>();
+                while (resultSet.next()) {
+                    List<String> list = new ArrayList<>(columnCount);
+                    for (int i = 1; i <= columnCount; i++) {
+                        list.add(resultSet.getString(i));
+                    }
+                    result.add(list);
+                }
+                return result;
+            }
+        }
+    }
+}
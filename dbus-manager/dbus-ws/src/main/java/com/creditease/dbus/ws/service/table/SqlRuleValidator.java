@@ -0,0 +1,265 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.ws.service.table;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 规则预览sql的校验:只允许一条查询temp表的select语句。
+ * 按词法扫描sql,from/join之后只能是temp表或子查询,函数调用只能使用白名单中的函数,
+ * 从而屏蔽H2的FILE_READ、CSVREAD、CSVWRITE、LINK_SCHEMA等可以访问文件或其他数据库的函数。
+ */
+final class SqlRuleValidator {
+
+    private static final String TABLE_NAME = "TEMP";
+
+    /** 允许调用的函数,均为MySQL与H2都支持的常用函数 */
+    private static final Set<String> FUNCTIONS = new HashSet<>(Arrays.asList(
+            "COUNT", "SUM", "AVG", "MIN", "MAX", "GROUP_CONCAT",
+            "CONCAT", "CONCAT_WS", "SUBSTRING", "SUBSTR", "LEFT", "RIGHT", "LENGTH", "CHAR_LENGTH",
+            "CHARACTER_LENGTH", "UPPER", "LOWER", "UCASE", "LCASE", "TRIM", "LTRIM", "RTRIM", "REPLACE",
+            "INSTR", "LOCATE", "POSITION", "LPAD", "RPAD", "REPEAT", "REVERSE", "SPACE", "ASCII", "CHAR",
+            "ABS", "CEIL", "CEILING", "FLOOR", "ROUND", "TRUNCATE", "MOD", "SIGN", "POWER", "SQRT",
+            "GREATEST", "LEAST", "IF", "IFNULL", "NULLIF", "COALESCE", "CAST", "CONVERT",
+            "YEAR", "MONTH", "DAY", "DAYOFMONTH", "HOUR", "MINUTE", "SECOND", "DATEDIFF"));
+
+    /** 后面可以直接跟'('的关键字 */
+    private static final Set<String> KEYWORDS = new HashSet<>(Arrays.asList(
+            "SELECT", "DISTINCT", "FROM", "WHERE", "AND", "OR", "XOR", "NOT", "IN", "EXISTS", "ON", "AS",
+            "CASE", "WHEN", "THEN", "ELSE", "ANY", "ALL", "SOME", "BETWEEN", "LIKE", "REGEXP", "RLIKE",
+            "ESCAPE", "IS", "HAVING", "BY", "USING", "JOIN", "UNION", "EXCEPT", "MINUS", "INTERSECT"));
+
+    /** 结束from子句的关键字 */
+    private static final Set<String> CLAUSES = new HashSet<>(Arrays.asList(
+            "WHERE", "GROUP", "HAVING", "ORDER", "LIMIT", "OFFSET", "ON", "USING",
+            "UNION", "EXCEPT", "MINUS", "INTERSECT", "FOR"));
+
+    private final String sql;
+    private int pos;
+    /** 当前token,单词时为大写的单词,符号时为该字符 */
+    private String token;
+    private boolean word;
+    private boolean quoted;
+
+    private SqlRuleValidator(String sql) {
+        this.sql = sql;
+    }
+
+    /**
+     * 校验规则sql
+     * @param sql 规则sql
+     * @return 去掉末尾分号后可以直接执行的sql
+     * @throws SQLException sql不是一条只查询temp表的select语句时抛出
+     */
+    static String check(String sql) throws SQLException {
+        if (sql == null) {
+            throw new SQLException("Rule sql is empty");
+        }
+        return new SqlRuleValidator(sql).check();
+    }
+
+    private String check() throws SQLException {
+        if (!next() || !isWord("SELECT")) {
+            throw reject("only a select statement is allowed");
+        }
+        // 每层括号一个标记,表示当前是否位于from子句的表列表中
+        Deque<Boolean> fromClause = new ArrayDeque<>();
+        fromClause.push(false);
+        boolean expectTable = false;
+        boolean afterDot = false;
+        int end = -1;
+        do {
+            if (expectTable) {
+                expectTable = false;
+                if (isSymbol('(')) {
+                    if (!nextIs("SELECT")) {
+                        throw reject("only temp or a sub query can follow from/join");
+                    }
+                } else if (!word || quoted || !TABLE_NAME.equals(token)) {
+                    throw reject("only table temp can be queried");
+                }
+            }
+
+            if (isSymbol(';')) {
+                end = pos - 1;
+                while (next()) {
+                    if (!isSymbol(';')) {
+                        throw reject("only a single statement is allowed");
+                    }
+                }
+                break;
+            }
+
+            if (word) {
+                if (afterDot) {
+                    if (nextIs("(")) {
+                        throw reject("qualified function " + token + " is not allowed");
+                    }
+                } else if (isWord("FROM") || isWord("JOIN")) {
+                    expectTable = true;
+                    fromClause.pop();
+                    fromClause.push(true);
+                } else if (!quoted && CLAUSES.contains(token)) {
+                    fromClause.pop();
+                    fromClause.push(false);
+                } else if (nextIs("(") && (quoted || !FUNCTIONS.contains(token) && !KEYWORDS.contains(token))) {
+                    throw reject("function " + token + " is not allowed");
+                }
+            } else if (isSymbol(',')) {
+                expectTable = fromClause.peek();
+            } else if (isSymbol('(')) {
+                fromClause.push(false);
+            } else if (isSymbol(')')) {
+                if (fromClause.size() == 1) {
+                    throw reject("unbalanced parenthesis");
+                }
+                fromClause.pop();
+            } else if (isSymbol('$') || isSymbol('?')) {
+                throw reject("character " + token + " is not allowed");
+            }
+            afterDot = isSymbol('.');
+        } while (next());
+
+        if (expectTable) {
+            throw reject("table expected");
+        }
+        if (fromClause.size() != 1) {
+            throw reject("unbalanced parenthesis");
+        }
+        return end == -1 ? sql : sql.substring(0, end);
+    }
+
+    private boolean isWord(String keyword) {
+        return word && !quoted && keyword.equals(token);
+    }
+
+    private boolean isSymbol(char c) {
+        return !word && token.length() == 1 && token.charAt(0) == c;
+    }
+
+    /**
+     * 读取下一个token,跳过空白、注释和字符串常量
+     * @return 没有更多token时返回false
+     */
+    private boolean next() throws SQLException {
+        int len = sql.length();
+        while (pos < len) {
+            char c = sql.charAt(pos);
+            if (Character.isWhitespace(c)) {
+                pos++;
+            } else if (startsWith("--") || startsWith("//")) {
+                int eol = sql.indexOf('\n', pos);
+                pos = eol == -1 ? len : eol + 1;
+            } else if (startsWith("/*")) {
+                int close = sql.indexOf("*/", pos + 2);
+                if (close == -1) {
+                    throw reject("unterminated comment");
+                }
+                pos = close + 2;
+            } else if (c == '\'') {
+                pos = skipQuoted('\'');
+            } else {
+                break;
+            }
+        }
+        if (pos >= len) {
+            return false;
+        }
+
+        char c = sql.charAt(pos);
+        if (c == '"' || c == '`') {
+            int start = pos + 1;
+            pos = skipQuoted(c);
+            token = sql.substring(start, pos - 1).toUpperCase();
+            word = true;
+            quoted = true;
+        } else if (Character.isLetter(c) || c == '_') {
+            int start = pos;
+            while (pos < len && (Character.isLetterOrDigit(sql.charAt(pos)) || sql.charAt(pos) == '_')) {
+                pos++;
+            }
+            token = sql.substring(start, pos).toUpperCase();
+            word = true;
+            quoted = false;
+        } else if (Character.isDigit(c)) {
+            // 数字按符号处理,带小数点、指数时逐个字符读取不影响校验
+            pos++;
+            while (pos < len && Character.isLetterOrDigit(sql.charAt(pos))) {
+                pos++;
+            }
+            token = "0";
+            word = false;
+            quoted = false;
+        } else {
+            pos++;
+            token = String.valueOf(c);
+            word = false;
+            quoted = false;
+        }
+        return true;
+    }
+
+    /**
+     * 查看下一个token是否为指定的单词或符号,不移动位置
+     */
+    private boolean nextIs(String expected) throws SQLException {
+        int savedPos = pos;
+        String savedToken = token;
+        boolean savedWord = word;
+        boolean savedQuoted = quoted;
+        try {
+            return next() && !quoted && expected.equals(token);
+        } finally {
+            pos = savedPos;
+            token = savedToken;
+            word = savedWord;
+            quoted = savedQuoted;
+        }
+    }
+
+    private boolean startsWith(String prefix) {
+        return sql.startsWith(prefix, pos);
+    }
+
+    private int skipQuoted(char quote) throws SQLException {
+        int i = pos + 1;
+        while (i < sql.length()) {
+            if (sql.charAt(i) == quote) {
+                if (i + 1 < sql.length() && sql.charAt(i + 1) == quote) {
+                    i += 2;
+                    continue;
+                }
+                return i + 1;
+            }
+            i++;
+        }
+        throw reject("unterminated quote");
+    }
+
+    private SQLException reject(String reason) {
+        return new SQLException("Rule sql rejected, " + reason + ": " + sql);
+    }
+}
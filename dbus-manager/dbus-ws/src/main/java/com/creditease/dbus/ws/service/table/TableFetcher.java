@@ -26,6 +26,8 @@ import com.creditease.dbus.enums.DbusDatasourceType;
 import com.creditease.dbus.ws.domain.DataTable;
 import com.creditease.dbus.ws.domain.DbusDataSource;
 import com.creditease.dbus.ws.domain.TableMeta;
+import com.creditease.dbus.ws.tools.SourceConnectionProvider;
+import com.creditease.dbus.ws.tools.SourceMetaCache;
 import org.slf4j.LoggerFactory;
 
 import java.sql.*;
@@ -46,14 +48,16 @@ public abstract class TableFetcher {
 
     public List<DataTable> fetchTable(Map<String, Object> params) throws Exception {
         try {
-            PreparedStatement statement = conn.prepareStatement(buildQuery(params));
-            fillParameters(statement, params);
-            ResultSet resultSet = statement.executeQuery();
-            if(ds.getDsType().equals("mysql")){
-                return buildResultMySQL(resultSet);
-            }else{
-                return buildResultOracle(resultSet);
-            }
+            return SourceMetaCache.get(ds.getMasterURL(), ds.getDbusUser(), "table", params, () -> {
+                PreparedStatement statement = conn.prepareStatement(buildQuery(params));
+                fillParameters(statement, params);
+                ResultSet resultSet = statement.executeQuery();
+                if(ds.getDsType().equals("mysql")){
+                    return buildResultMySQL(resultSet);
+                }else{
+                    return buildResultOracle(resultSet);
+                }
+            });
         } finally {
             if (!conn.isClosed()) {
                 conn.close();
@@ -69,14 +73,16 @@ public abstract class TableFetcher {
      */
     public List<TableMeta> fetchTableField(Map<String, Object> params) throws Exception {
         try {
-            PreparedStatement statement = conn.prepareStatement(buildTableFieldQuery(params));
-            fillTableParameters(statement, params);
-            ResultSet resultSet = statement.executeQuery();
-            if(ds.getDsType().equals("mysql")){
-                return tableFieldMysql(resultSet);
-            }else{
-                return tableFieldOracle(resultSet);
-            }
+            return SourceMetaCache.get(ds.getMasterURL(), ds.getDbusUser(), "column", params, () -> {
+                PreparedStatement statement = conn.prepareStatement(buildTableFieldQuery(params));
+                fillTableParameters(statement, params);
+                ResultSet resultSet = statement.executeQuery();
+                if(ds.getDsType().equals("mysql")){
+                    return tableFieldMysql(resultSet);
+                }else{
+                    return tableFieldOracle(resultSet);
+                }
+            });
         } finally {
             if (!conn.isClosed()) {
                 conn.close();
@@ -99,7 +105,7 @@ public abstract class TableFetcher {
             default:
                 throw new IllegalArgumentException();
         }
-        Connection conn = DriverManager.getConnection(ds.getMasterURL(), ds.getDbusUser(), ds.getDbusPassword());
+        Connection conn = SourceConnectionProvider.getInstance().getConnection(dsType, ds.getMasterURL(), ds.getDbusUser(), ds.getDbusPassword());
         fetcher.setConnection(conn);
         return fetcher;
     }
@@ -389,123 +395,10 @@ public abstract class TableFetcher {
         return -1;
     }
 
+    /**
+     * 规则预览,在JVM内执行,不再访问当前连接对应的数据库
+     */
     public List<List<String>> doSqlRule(String sql, List<List<String>> data) {
-        int maxColumn = getMaxColumn(data);
-        createSqlTable(maxColumn);
-        insertSqlData(data, maxColumn);
-        List<List<String>> result = executeSqlRule(sql, data);
-        return result;
-    }
-
-    private int getMaxColumn(List<List<String>> data) {
-        int result = 0;
-        for (List<String> list : data) {
-            result = Math.max(result, list.size());
-        }
-        return result;
-    }
-
-    private void createSqlTable(int maxColumn) {
-        StringBuilder sb = new StringBuilder("c1 varchar(512)");
-        for(int i=2;i<=maxColumn;i++) {
-            sb.append(",c");
-            sb.append(i);
-            sb.append(" varchar(512)");
-        }
-        String sql="create temporary table temp ("+sb.toString()+")DEFAULT CHARSET=utf8;";
-        try {
-            PreparedStatement statement = conn.prepareStatement(sql);
-            statement.execute();
-        } catch (SQLException e) {
-            LoggerFactory.getLogger(getClass()).warn("Execute create failed");
-            try {
-                if (conn != null) {
-                    conn.close();
-                }
-            } catch (SQLException e1) {
-                e1.printStackTrace();
-            }
-        }
-    }
-
-    private void insertSqlData(List<List<String>> data,int maxColumn) {
-        Statement statement = null;
-        try {
-            statement = conn.createStatement();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            try {
-                if (conn != null) {
-                    conn.close();
-                }
-            } catch (SQLException e1) {
-                e1.printStackTrace();
-            }
-        }
-        StringBuilder sb = new StringBuilder();
-        for(List<String> list: data) {
-            sb.setLength(0);
-            for(int i=1;i<=maxColumn;i++) {
-                sb.append('\'');
-                if(i<=list.size() && list.get(i-1)!=null){
-                    sb.append(list.get(i-1));
-                }
-                sb.append('\'');
-                sb.append(',');
-            }
-            sb.deleteCharAt(sb.length()-1);
-            try {
-                statement.addBatch("insert into temp values("+sb.toString()+");");
-            } catch (SQLException e) {
-                e.printStackTrace();
-                try {
-                    if (conn != null) {
-                        conn.close();
-                    }
-                } catch (SQLException e1) {
-                    e1.printStackTrace();
-                }
-            }
-        }
-        try {
-            statement.executeBatch();
-        } catch (SQLException e) {
-            LoggerFactory.getLogger(getClass()).warn("Execute insert failed");
-            try {
-                if (conn != null) {
-                    conn.close();
-                }
-            } catch (SQLException e1) {
-                e1.printStackTrace();
-            }
-        }
-    }
-
-    private List<List<String>> executeSqlRule(String sql, List<List<String>> data) {
-        try {
-            PreparedStatement statement = conn.prepareStatement(sql);
-            ResultSet resultSet = statement.executeQuery();
-            ResultSetMetaData metaData = resultSet.getMetaData();
-
-            List<List<String>> result = new ArrayList<>();
-            while (resultSet.next()) {
-                List<String> list = new ArrayList<>();
-                for(int i=1;i<=metaData.getColumnCount();i++) {
-                    list.add(resultSet.getString(i));
-                }
-                result.add(list);
-            }
-            return result;
-        } catch (SQLException e) {
-            LoggerFactory.getLogger(getClass()).warn("Execute custom sql command failed");
-            try {
-                if (conn != null) {
-                    conn.close();
-                }
-            } catch (SQLException e1) {
-                e1.printStackTrace();
-            }
-            return null;
-        }
+        return SqlRuleEvaluator.evaluate(sql, data);
     }
 }
@@ -23,6 +23,7 @@ package com.creditease.dbus.ws.service.tableSource;
 import com.creditease.dbus.enums.DbusDatasourceType;
 import com.creditease.dbus.ws.domain.DataTable;
 import com.creditease.dbus.ws.domain.DbusDataSource;
+import com.creditease.dbus.ws.tools.SourceConnectionProvider;
 
 import java.sql.*;
 import java.util.ArrayList;
@@ -79,7 +80,7 @@ public abstract class TableFetcher {
             default:
                 throw new IllegalArgumentException();
         }
-        Connection conn = DriverManager.getConnection(ds.getMasterURL(), ds.getDbusUser(), ds.getDbusPassword());
+        Connection conn = SourceConnectionProvider.getInstance().getConnection(dsType, ds.getMasterURL(), ds.getDbusUser(), ds.getDbusPassword());
         fetcher.setConnection(conn);
         return fetcher;
     }
@@ -0,0 +1,142 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.ws.service.zk;
+
+import com.creditease.dbus.commons.IZkService;
+import com.creditease.dbus.ws.common.Charset;
+import com.creditease.dbus.ws.domain.ZkNode;
+import com.creditease.dbus.ws.tools.ZkTreeMirror;
+import com.creditease.dbus.ws.tools.ZookeeperServiceProvider;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * zookeeper配置树加载器。
+ * 优先从ZkTreeMirror内存镜像读取,镜像不可用时按层批量读取,
+ * 每一层的所有节点通过IZkService的批量接口并发读取。
+ */
+public class ZkTreeLoader {
+    private ZkTreeMirror mirror = ZkTreeMirror.getInstance();
+    private IZkService zkService = ZookeeperServiceProvider.getInstance().getZkService();
+
+    public static ZkTreeLoader getLoader() {
+        return new ZkTreeLoader();
+    }
+
+    /**
+     * 加载parent节点下的完整子树,子节点按名称排序
+     * @return parent的直接子节点,没有子节点时返回空列表
+     */
+    public List<ZkNode> loadChildren(ZkNode parent) throws Exception {
+        List<ZkNode> level = Collections.singletonList(parent);
+        while (!level.isEmpty()) {
+            Map<String, List<String>> children = readChildren(paths(level));
+            List<ZkNode> next = new ArrayList<>();
+            for (ZkNode node : level) {
+                List<String> names = children.get(node.getPath());
+                if (names == null || names.isEmpty()) {
+                    continue;
+                }
+                names = new ArrayList<>(names);
+                Collections.sort(names, (s1, s2) -> s1.compareToIgnoreCase(s2));
+                List<ZkNode> childrenNodes = new ArrayList<>(names.size());
+                for (String name : names) {
+                    ZkNode child = new ZkNode(name);
+                    child.setPath(childPath(node.getPath(), name));
+                    child.setExisted(true);
+                    childrenNodes.add(child);
+                }
+                node.setChildren(childrenNodes);
+                next.addAll(childrenNodes);
+            }
+
+            Map<String, byte[]> data = readData(paths(next));
+            for (ZkNode node : next) {
+                byte[] bytes = data.get(node.getPath());
+                if (bytes != null && bytes.length > 0) {
+                    node.setContent(new String(bytes, Charset.UTF8));
+                }
+            }
+            level = next;
+        }
+        return parent.getChildren() == null ? new ArrayList<>() : parent.getChildren();
+    }
+
+    /**
+     * 批量读取节点数据
+     * @return 节点路径到数据的映射,不存在的节点不包含在结果中
+     */
+    public Map<String, byte[]> readData(Collection<String> paths) throws Exception {
+        Map<String, byte[]> result = new HashMap<>();
+        List<String> remote = new ArrayList<>();
+        for (String path : paths) {
+            if (mirror.covers(path)) {
+                byte[] data = mirror.getData(path);
+                if (data != null) {
+                    result.put(path, data);
+                }
+            } else {
+                remote.add(path);
+            }
+        }
+        result.putAll(zkService.getDataInBatch(remote));
+        return result;
+    }
+
+    /**
+     * 批量读取子节点名称
+     * @return 节点路径到子节点名称的映射,不存在的节点不包含在结果中
+     */
+    public Map<String, List<String>> readChildren(Collection<String> paths) throws Exception {
+        Map<String, List<String>> result = new HashMap<>();
+        List<String> remote = new ArrayList<>();
+        for (String path : paths) {
+            if (mirror.covers(path)) {
+                List<String> children = mirror.getChildren(path);
+                if (children != null) {
+                    result.put(path, children);
+                }
+            } else {
+                remote.add(path);
+            }
+        }
+        result.putAll(zkService.getChildrenInBatch(remote));
+        return result;
+    }
+
+    public static String childPath(String parentPath, String name) {
+        //我们的地址是 /DBus/xxx的形式。需要对第一个 / 进行特殊处理.
+        return parentPath.equals("/") ? parentPath + name : parentPath + "/" + name;
+    }
+
+    private static List<String> paths(List<ZkNode> nodes) {
+        List<String> paths = new ArrayList<>(nodes.size());
+        for (ZkNode node : nodes) {
+            paths.add(node.getPath());
+        }
+        return paths;
+    }
+}
@@ -0,0 +1,90 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.ws.tools;
+
+import com.creditease.dbus.ws.common.Constants;
+import org.apache.zookeeper.WatchedEvent;
+import org.apache.zookeeper.Watcher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 缓存zookeeper中global.properties的内容,通过watcher感知节点变化,
+ * 节点未变化时直接返回内存中的快照,避免每次请求都访问zookeeper
+ */
+public class GlobalConfProvider {
+    private static Logger logger = LoggerFactory.getLogger(GlobalConfProvider.class);
+
+    private volatile Properties snapshot;
+    /** 每次收到watcher事件加1,用于丢弃加载过程中已经过期的数据 */
+    private final AtomicLong changes = new AtomicLong();
+
+    private static class Instance {
+        private static GlobalConfProvider provider = new GlobalConfProvider();
+    }
+
+    private GlobalConfProvider() {
+    }
+
+    public static GlobalConfProvider getInstance() {
+        return Instance.provider;
+    }
+
+    /**
+     * 获取global.properties的快照,返回的对象被所有调用者共享,只能读取不能修改
+     */
+    public Properties getGlobalConf() throws Exception {
+        Properties props = snapshot;
+        if (props != null) {
+            return props;
+        }
+        synchronized (this) {
+            if (snapshot != null) {
+                return snapshot;
+            }
+            long current = changes.get();
+            byte[] data = ZookeeperServiceProvider.getInstance().getZkService()
+                    .registerWatcher(Constants.GLOBAL_CONF, new Watcher() {
+                        @Override
+                        public void process(WatchedEvent event) {
+                            changes.incrementAndGet();
+                            snapshot = null;
+                            logger.info("{} changed, event type:{}", Constants.GLOBAL_CONF, event.getType());
+                        }
+                    });
+            props = new Properties();
+            props.load(new ByteArrayInputStream(data));
+            // 加载期间节点发生了变化则不缓存,下次请求重新加载
+            if (changes.get() == current) {
+                snapshot = props;
+            }
+            return props;
+        }
+    }
+
+    public String getProperty(String key) throws Exception {
+        return getGlobalConf().getProperty(key);
+    }
+}
@@ -0,0 +1,129 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.ws.tools;
+
+import com.creditease.dbus.enums.DbusDatasourceType;
+import org.apache.commons.dbcp.BasicDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 源端数据库连接池,按url和用户名区分,每个源库最多保持MAX_ACTIVE个连接,
+ * 空闲超过MIN_EVICTABLE_IDLE_MILLIS的连接会被回收。
+ * 取得的连接调用close()后归还连接池,fetcher的使用方式不变。
+ */
+public class SourceConnectionProvider {
+    private static Logger logger = LoggerFactory.getLogger(SourceConnectionProvider.class);
+
+    private static final int MAX_ACTIVE = 4;
+    private static final int MAX_IDLE = 2;
+    private static final long MAX_WAIT_MILLIS = 10000;
+    private static final long EVICTION_INTERVAL_MILLIS = 60000;
+    private static final long MIN_EVICTABLE_IDLE_MILLIS = 300000;
+
+    private ConcurrentHashMap<String, BasicDataSource> cmap = new ConcurrentHashMap<>();
+
+    private static class Instance {
+        private static SourceConnectionProvider provider = new SourceConnectionProvider();
+    }
+
+    private SourceConnectionProvider() {
+    }
+
+    public static SourceConnectionProvider getInstance() {
+        return Instance.provider;
+    }
+
+    /**
+     * 从对应源库的连接池中获取连接,密码变化时重建连接池
+     */
+    public Connection getConnection(DbusDatasourceType dsType, String url, String user, String password) throws SQLException {
+        BasicDataSource bds = cmap.compute(key(url, user), (key, old) -> {
+            if (old != null && !old.isClosed() && Objects.equals(old.getPassword(), password)) {
+                return old;
+            }
+            if (old != null) {
+                close(key, old);
+            }
+            return create(dsType, url, user, password);
+        });
+        return bds.getConnection();
+    }
+
+    /**
+     * 关闭并移除对应源库的连接池
+     */
+    public void release(String url, String user) {
+        String key = key(url, user);
+        BasicDataSource bds = cmap.remove(key);
+        if (bds != null) {
+            close(key, bds);
+        }
+    }
+
+    public static String key(String url, String user) {
+        return url + "|" + user;
+    }
+
+    private BasicDataSource create(DbusDatasourceType dsType, String url, String user, String password) {
+        BasicDataSource bds = new BasicDataSource();
+        switch (dsType) {
+            case MYSQL:
+                bds.setDriverClassName("com.mysql.jdbc.Driver");
+                bds.setValidationQuery("select 1");
+                break;
+            case ORACLE:
+                bds.setDriverClassName("oracle.jdbc.driver.OracleDriver");
+                bds.setValidationQuery("select 1 from dual");
+                break;
+            default:
+                throw new IllegalArgumentException("unsupported datasource type:" + dsType);
+        }
+        bds.setUrl(url);
+        bds.setUsername(user);
+        bds.setPassword(password);
+        bds.setInitialSize(0);
+        bds.setMinIdle(0);
+        bds.setMaxIdle(MAX_IDLE);
+        bds.setMaxActive(MAX_ACTIVE);
+        bds.setMaxWait(MAX_WAIT_MILLIS);
+        bds.setTestOnBorrow(true);
+        bds.setTestWhileIdle(true);
+        bds.setTimeBetweenEvictionRunsMillis(EVICTION_INTERVAL_MILLIS);
+        bds.setMinEvictableIdleTimeMillis(MIN_EVICTABLE_IDLE_MILLIS);
+        bds.setNumTestsPerEvictionRun(MAX_ACTIVE);
+        logger.info("source connection pool created for {}", key(url, user));
+        return bds;
+    }
+
+    private void close(String key, BasicDataSource bds) {
+        try {
+            bds.close();
+        } catch (SQLException e) {
+            logger.error("close source connection pool {} error", key, e);
+        }
+    }
+}
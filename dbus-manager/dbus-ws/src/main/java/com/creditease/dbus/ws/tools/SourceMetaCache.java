@@ -0,0 +1,88 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.ws.tools;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 源端schema、table、column等元数据的短时缓存,避免在页面上浏览时重复查询源库。
+ * 缓存按url和用户名区分源库,meta同步时通过invalidate清除对应源库的缓存。
+ */
+public class SourceMetaCache {
+    private static final long EXPIRE_SECONDS = 30;
+    private static final long MAX_SIZE = 1000;
+
+    private static Cache<String, Object> cache = CacheBuilder.newBuilder()
+            .expireAfterWrite(EXPIRE_SECONDS, TimeUnit.SECONDS)
+            .maximumSize(MAX_SIZE)
+            .build();
+
+    public interface Loader<T> {
+        T load() throws Exception;
+    }
+
+    private SourceMetaCache() {
+    }
+
+    /**
+     * 从缓存获取元数据,不存在时通过loader加载。
+     * 返回的对象会被后续请求共享,List以只读方式缓存,调用方需要修改其中的元素时应先复制
+     * @param kind 元数据种类,如schema、table、column
+     * @param params 查询参数,和kind一起作为缓存的key
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T get(String url, String user, String kind, Object params, Loader<T> loader) throws Exception {
+        if (params instanceof Map) {
+            params = new TreeMap<>((Map<String, Object>) params);
+        }
+        String key = prefix(url, user) + kind + "|" + params;
+        Object value = cache.getIfPresent(key);
+        if (value == null) {
+            value = loader.load();
+            if (value instanceof List) {
+                value = Collections.unmodifiableList((List<?>) value);
+            }
+            if (value != null) {
+                cache.put(key, value);
+            }
+        }
+        return (T) value;
+    }
+
+    /**
+     * 清除对应源库的所有元数据缓存
+     */
+    public static void invalidate(String url, String user) {
+        String prefix = prefix(url, user);
+        cache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    private static String prefix(String url, String user) {
+        return SourceConnectionProvider.key(url, user) + "|";
+    }
+}
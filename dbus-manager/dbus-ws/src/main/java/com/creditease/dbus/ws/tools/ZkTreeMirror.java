@@ -0,0 +1,90 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.ws.tools;
+
+import com.creditease.dbus.commons.ZkTreeCache;
+import com.creditease.dbus.ws.common.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * /DBus 下zookeeper配置树的内存镜像,由ZkService.mirrorTree创建。
+ * 镜像初始化完成且连接正常时,浏览配置树直接读取内存,否则由调用方回退到直接访问zookeeper。
+ * 通过manager修改节点后的短时间内镜像可能还未收到变更通知,此期间同样不使用镜像。
+ */
+public class ZkTreeMirror {
+    private static Logger logger = LoggerFactory.getLogger(ZkTreeMirror.class);
+
+    /** 本地修改zookeeper后不使用镜像的时长(毫秒) */
+    private static final long DIRTY_MILLIS = 2000;
+
+    private ZkTreeCache cache;
+    private volatile long dirtyUntil = 0;
+
+    private static class Instance {
+        private static ZkTreeMirror mirror = new ZkTreeMirror();
+    }
+
+    private ZkTreeMirror() {
+        try {
+            cache = ZookeeperServiceProvider.getInstance().getZkService().mirrorTree(Constants.DBUS_ROOT);
+        } catch (Exception e) {
+            logger.error("start zookeeper tree mirror of {} failed", Constants.DBUS_ROOT, e);
+            cache = null;
+        }
+    }
+
+    public static ZkTreeMirror getInstance() {
+        return Instance.mirror;
+    }
+
+    /**
+     * 判断给定路径是否可以从镜像中读取
+     */
+    public boolean covers(String path) {
+        return cache != null && cache.isReady() && System.currentTimeMillis() >= dirtyUntil && cache.contains(path);
+    }
+
+    /**
+     * 获取子节点名称
+     * @return 节点不存在时返回null
+     */
+    public List<String> getChildren(String path) {
+        return cache.getChildren(path);
+    }
+
+    /**
+     * 获取节点数据
+     * @return 节点不存在时返回null
+     */
+    public byte[] getData(String path) {
+        return cache.getData(path);
+    }
+
+    /**
+     * 通过manager修改zookeeper后调用,等待镜像收到变更通知
+     */
+    public void markDirty() {
+        dirtyUntil = System.currentTimeMillis() + DIRTY_MILLIS;
+    }
+}
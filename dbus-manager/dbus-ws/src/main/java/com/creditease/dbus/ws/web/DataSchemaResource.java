@@ -34,6 +34,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.*;
 import javax.ws.rs.core.Response;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -212,12 +213,16 @@ public class DataSchemaResource {
 
             Map<String, Object> map = new HashMap<>();
             map.put("dsName", dsName);
-            List<DataSchema> list = fetcher.fetchSchema(map);
-            for(int i=0;i<list.size();i++){
-                list.get(i).setDsId(ds.getId());
-                list.get(i).setStatus(ds.getStatus());
-                list.get(i).setSrcTopic(ds.getDsName()+"."+list.get(i).getSchemaName());
-                list.get(i).setTargetTopic(ds.getDsName()+"."+list.get(i).getSchemaName()+".result");
+            // fetchSchema返回的是缓存中共享的对象,这里复制一份再填充数据源相关信息
+            List<DataSchema> list = new ArrayList<>();
+            for (DataSchema cached : fetcher.fetchSchema(map)) {
+                DataSchema schema = new DataSchema();
+                schema.setSchemaName(cached.getSchemaName());
+                schema.setDsId(ds.getId());
+                schema.setStatus(ds.getStatus());
+                schema.setSrcTopic(ds.getDsName()+"."+schema.getSchemaName());
+                schema.setTargetTopic(ds.getDsName()+"."+schema.getSchemaName()+".result");
+                list.add(schema);
             }
             return Response.ok().entity(list).build();
             //return Response.ok(list.size()).build();
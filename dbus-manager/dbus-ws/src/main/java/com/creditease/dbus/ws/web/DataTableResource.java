@@ -34,8 +34,10 @@ import com.creditease.dbus.ws.domain.*;
 import com.creditease.dbus.ws.mapper.*;
 import com.creditease.dbus.ws.service.*;
 import com.creditease.dbus.ws.service.mybatis.MybatisTemplate;
+import com.creditease.dbus.ws.service.table.SqlRuleEvaluator;
 import com.creditease.dbus.ws.service.table.TableFetcher;
 import com.creditease.dbus.ws.tools.ControlMessageSenderProvider;
+import com.creditease.dbus.ws.tools.GlobalConfProvider;
 import com.creditease.dbus.ws.tools.ZookeeperServiceProvider;
 import com.github.pagehelper.PageInfo;
 import com.google.common.base.Joiner;
@@ -146,6 +148,13 @@ public class DataTableResource {
         //List<DataTable> list = service.findTables(dsID, schemaID, tableName);
         List<DataTable> list = service.search(null);
         List<RiderTable> listRider =new ArrayList<RiderTable>();
+        String kafka;
+        try {
+            // 每个请求只读取一次global.properties,且优先使用内存中的快照
+            kafka = GlobalConfProvider.getInstance().getProperty("bootstrap.servers");
+        } catch (Exception e) {
+            return Response.status(200).entity(new Result(-1, e.getMessage())).build();
+        }
         for(DataTable table:list ){
             boolean flag = false;
             if(table.getTableName().equals(table.getPhysicalTableRegex())) {
@@ -169,13 +178,7 @@ public class DataTableResource {
             rTable.setTopic(table.getOutputTopic());
             rTable.setId(table.getId());
             rTable.setCreateTime(table.getCreateTime());
-            try {
-                ZookeeperServiceProvider provider = ZookeeperServiceProvider.getInstance();
-                Properties globalConf = provider.getZkService().getProperties(com.creditease.dbus.ws.common.Constants.GLOBAL_CONF);
-                rTable.setKafka(globalConf.getProperty("bootstrap.servers"));
-            }catch (Exception e) {
-                return Response.status(200).entity(new Result(-1, e.getMessage())).build();
-            }
+            rTable.setKafka(kafka);
             listRider.add(rTable);
         }
         return Response.status(200).entity(listRider).build();
@@ -372,21 +375,41 @@ public class DataTableResource {
     public Response searchDataTable(Map<String, Object> map) {
         try {
             PageInfo<DataTable> result = service.search(getInt(map, "pageNum"), getInt(map, "pageSize"), map);
-            TableVersionService versionService = TableVersionService.getService();
+            // 先收集当前页所有表引用的版本id,一次批量查询出来,避免每个id查询一次数据库
+            Set<Long> verIds = new HashSet<>();
             for(DataTable dataTable : result.getList()) {
                 String verChangeHistory = dataTable.getVerChangeHistory();
                 if(StringUtils.isEmpty(verChangeHistory)) continue;
-                String versionsChangeHistory = StringUtils.EMPTY;
                 for(String verId : verChangeHistory.split(",")) {
                     try {
-                        TableVersion tableVersion = versionService.findById(Long.parseLong(verId));
-                        versionsChangeHistory += ","+tableVersion.getVersion();
+                        verIds.add(Long.parseLong(verId));
                     } catch (NumberFormatException e) {
                         logger.warn("transform verId to version failed for verid: {}, error message: {}",verId, e);
                     }
                 }
-                versionsChangeHistory = versionsChangeHistory.substring(1);
-                dataTable.setVersionsChangeHistory(versionsChangeHistory);
+            }
+            Map<Long, TableVersion> versions = verIds.isEmpty() ? Collections.emptyMap()
+                    : TableVersionService.getService().findByIds(verIds);
+            for(DataTable dataTable : result.getList()) {
+                String verChangeHistory = dataTable.getVerChangeHistory();
+                if(StringUtils.isEmpty(verChangeHistory)) continue;
+                StringBuilder versionsChangeHistory = new StringBuilder();
+                for(String verId : verChangeHistory.split(",")) {
+                    TableVersion tableVersion;
+                    try {
+                        tableVersion = versions.get(Long.parseLong(verId));
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                    if(tableVersion == null) {
+                        logger.warn("table version not found for verid: {}", verId);
+                        continue;
+                    }
+                    versionsChangeHistory.append(",").append(tableVersion.getVersion());
+                }
+                if(versionsChangeHistory.length() > 0) {
+                    dataTable.setVersionsChangeHistory(versionsChangeHistory.substring(1));
+                }
             }
             return Response.ok().entity(result).build();
         } catch (Exception e) {
@@ -784,14 +807,7 @@ public class DataTableResource {
         }
 
         try {
-            Properties properties = PropertiesUtils.getProps("mybatis.properties");
-            DbusDataSource source = new DbusDataSource();
-            source.setDsType("mysql");
-            source.setMasterURL(properties.get("url").toString());
-            source.setDbusUser(properties.get("username").toString());
-            source.setDbusPassword(properties.get("password").toString());
-            TableFetcher fetcher = TableFetcher.getFetcher(source);
-            List<List<String>> result = fetcher.doSqlRule(sql, data);
+            List<List<String>> result = SqlRuleEvaluator.evaluate(sql, data);
             return Response.ok().entity(result).build();
         } catch (Exception e) {
             logger.error("Error encountered while execute sql rule, error message:{}", e);
@@ -27,6 +27,8 @@ import com.creditease.dbus.ws.common.Constants;
 import com.creditease.dbus.ws.common.Result;
 import com.creditease.dbus.ws.domain.ZkNode;
 import com.creditease.dbus.ws.service.source.SourceFetcher;
+import com.creditease.dbus.ws.service.zk.ZkTreeLoader;
+import com.creditease.dbus.ws.tools.ZkTreeMirror;
 import com.creditease.dbus.ws.tools.ZookeeperServiceProvider;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.zookeeper.data.Stat;
@@ -36,6 +38,7 @@ import javax.ws.rs.*;
 import javax.ws.rs.core.Response;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -56,7 +59,7 @@ public class ZkConfResource {
         IZkService zkService = ZookeeperServiceProvider.getInstance().getZkService();
         ZkNode root=initialTreeOfPath(path,zkService); //根据path，生成（公共祖先的）父子关系链
         ZkNode lastCommonParent=getLastCommonParent(root);
-        lastCommonParent.setChildren(loadChildrenRecursively(zkService,lastCommonParent));//获取子树
+        lastCommonParent.setChildren(loadChildrenRecursively(lastCommonParent));//获取子树
         return Response.status(200).entity(root).build();
     }
 
@@ -70,7 +73,7 @@ public class ZkConfResource {
         IZkService zkService = ZookeeperServiceProvider.getInstance().getZkService();
         ZkNode root=initialTreeOfPath(path,zkService); //根据path，生成（公共祖先的）父子关系链
         ZkNode lastCommonParent=getLastCommonParent(root);
-        List<ZkNode> children=loadChildrenRecursively(zkService,lastCommonParent);//获取子树
+        List<ZkNode> children=loadChildrenRecursively(lastCommonParent);//获取子树
         return Response.status(200).entity(children).build();
     }
 
@@ -158,6 +161,7 @@ public class ZkConfResource {
         String newNodePath = path.concat(nodeName);
         try {
             zkService.createNode(newNodePath, null);
+            ZkTreeMirror.getInstance().markDirty();
         }catch (Exception e) {
             e.printStackTrace();
         }
@@ -174,6 +178,7 @@ public class ZkConfResource {
         try {
             //zkService.deleteNode(path);
             deleteNodeRecursively(path, zkService);
+            ZkTreeMirror.getInstance().markDirty();
         }catch (Exception e) {
             e.printStackTrace();
         }
@@ -305,52 +310,77 @@ public class ZkConfResource {
     }
 
     //  /DBus/ConfTemplates/Topology   /DBus/ConfTemplates/Extractor
-    private  void cloneNodeRecursively(String templatePath, String dsName, IZkService zkService){
-        // TODO
-        String TEMPLATE_NODE_NAME = "/ConfTemplates";
+    /**
+     * 根据模板树生成业务配置节点：不存在的节点创建，叶子节点写入替换占位符后的模板内容。
+     * 所有修改放在一个zookeeper事务(multi)中提交，要么全部成功要么全部失败。
+     */
+    private void cloneNodeRecursively(String templatePath, String dsName, IZkService zkService){
         try{
-            List<String> children = zkService.getChildren(templatePath);
-            if(children.size() > 0){
-                for(String nodeName:children){
-                    String templateNodePath = templatePath+"/"+nodeName;
-                    //判断节点是否存在，如果不存在，则创建
-                    String businessNodePath = templateNodePath.replace(TEMPLATE_NODE_NAME,"");
-                    businessNodePath = businessNodePath.replaceAll("placeholder",dsName);
-                    if(!zkService.isExists(businessNodePath)){
-                        zkService.createNode(businessNodePath, null);
+            ZkNode templateRoot = new ZkNode(templatePath.substring(templatePath.lastIndexOf("/") + 1));
+            templateRoot.setPath(templatePath);
+            ZkTreeLoader loader = ZkTreeLoader.getLoader();
+            if (loader.loadChildren(templateRoot).isEmpty()) {
+                // 模板根节点本身就是叶子节点，需要单独读取其内容
+                byte[] rootData = loader.readData(Collections.singletonList(templatePath)).get(templatePath);
+                if (rootData != null && rootData.length > 0) {
+                    templateRoot.setContent(new String(rootData, Charset.UTF8));
+                }
+            }
+
+            List<ZkNode> templateNodes = new ArrayList<>();
+            collectNodes(templateRoot, templateNodes);
+            List<String> businessPaths = new ArrayList<>();
+            for (ZkNode node : templateNodes) {
+                businessPaths.add(toBusinessPath(node.getPath(), dsName));
+            }
+            Map<String, byte[]> existed = loader.readData(businessPaths);
+
+            Map<String, byte[]> creates = new LinkedHashMap<>();
+            Map<String, byte[]> updates = new LinkedHashMap<>();
+            for (int i = 0; i < templateNodes.size(); i++) {
+                ZkNode node = templateNodes.get(i);
+                String businessNodePath = businessPaths.get(i);
+                boolean leaf = node.getChildren() == null || node.getChildren().isEmpty();
+                byte[] data = new byte[0];
+                if (leaf) {
+                    String nodeData = node.getContent() == null ? "" : node.getContent();
+                    data = nodeData.replace(Constants.BUSSINESS_PLACEHOLDER, dsName).getBytes(Charset.UTF8);
+                }
+                if (existed.containsKey(businessNodePath)) {
+                    if (leaf) {
+                        updates.put(businessNodePath, data);
                     }
-                    cloneNodeRecursively(templateNodePath, dsName, zkService);
+                } else if (node != templateRoot) {
+                    //判断节点是否存在，如果不存在，则创建
+                    creates.put(businessNodePath, data);
                 }
-            }else{
-                populateLeafNodeData(templatePath, dsName, zkService);
+            }
+            if (!creates.isEmpty() || !updates.isEmpty()) {
+                zkService.commitTransaction(creates, updates);
+                ZkTreeMirror.getInstance().markDirty();
             }
         }catch (Exception e){
             e.printStackTrace();
         }
-
     }
 
-    private void populateLeafNodeData(String templatePath, String dsName,  IZkService zkService){
-        // TODO
-        String TEMPLATE_NODE_NAME = "/ConfTemplates";
-        String businessNodePath = templatePath.replace(TEMPLATE_NODE_NAME,"");
-        businessNodePath = businessNodePath.replaceAll("placeholder",dsName);  //替换占位符placeholder为dsName
-        try {
-            if(zkService.isExists(businessNodePath)){
-                String nodeData = new String(zkService.getData(templatePath),"UTF-8");
-                if(nodeData != null){
-                    nodeData = nodeData.replaceAll("placeholder", dsName);
-                }else{
-                    nodeData = "";
-                }
-                zkService.setData(businessNodePath, nodeData.getBytes());
+    /**
+     * 先序遍历，保证父节点排在子节点之前
+     */
+    private void collectNodes(ZkNode node, List<ZkNode> nodes) {
+        nodes.add(node);
+        if (node.getChildren() != null) {
+            for (ZkNode child : node.getChildren()) {
+                collectNodes(child, nodes);
             }
-
-        }catch (Exception e){
-            e.printStackTrace();
         }
     }
 
+    private String toBusinessPath(String templatePath, String dsName) {
+        String businessNodePath = templatePath.replace(Constants.TEMPLATE_NODE_NAME, "");
+        return businessNodePath.replace(Constants.BUSSINESS_PLACEHOLDER, dsName);  //替换占位符placeholder为dsName
+    }
+
     private ZkNode initialTreeOfPath(String pathParam,IZkService zkService){
         //我们的地址是 /DBus/xxx的形式。需要对第一个 / 进行特殊处理,生成其代表的根节点
         ZkNode root=new ZkNode("/");
@@ -359,103 +389,86 @@ public class ZkConfResource {
         // 根据给定的路径前缀，生成父子关系链，直至给定路径对应的最后一级的节点（最后一个公共父节点）
         String[] pathArr=pathParam.split("/");
         ZkNode parent = root;
+        List<ZkNode> chain = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
         if(pathArr.length>0){
             for(String nodeName:pathArr) {
                 if(StringUtils.isNotBlank(nodeName)){
                     ZkNode node=new ZkNode(nodeName);
-                    String curPath=parent.getPath()+"/"+nodeName;
-                    if(parent.getPath().equals("/")){ //我们的地址是 /DBus/xxx的形式。需要对第一个 / 进行特殊处理.
-                        curPath=parent.getPath()+nodeName;
-                    }
-                    node.setPath(curPath);
-                    try {
-                        boolean nodeExisted = zkService.isExists(curPath);
-                        node.setExisted(zkService.isExists(curPath));
-                        if(nodeExisted){
-                            byte[] data = zkService.getData(curPath);
-                            if (data != null && data.length > 0) {
-                                node.setContent(new String(data, Charset.UTF8));
-                            }
-                        }
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                    }
+                    node.setPath(ZkTreeLoader.childPath(parent.getPath(), nodeName));
                     List<ZkNode> children=new ArrayList<>();
                     children.add(node);
                     parent.setChildren(children);
                     parent=node;
+                    chain.add(node);
+                    paths.add(node.getPath());
                 }
             }
         }
+        // 整条链上的节点一次批量读取
+        try {
+            Map<String, byte[]> dataOfPath = ZkTreeLoader.getLoader().readData(paths);
+            for (ZkNode node : chain) {
+                byte[] data = dataOfPath.get(node.getPath());
+                node.setExisted(data != null);
+                if (data != null && data.length > 0) {
+                    node.setContent(new String(data, Charset.UTF8));
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
         return root;
     }
 
-    private List<ZkNode> loadChildrenRecursively(IZkService zkService, ZkNode parent){
-        List<ZkNode> childrenNodes=new ArrayList();
-        List<String> children= null;
+    private List<ZkNode> loadChildrenRecursively(ZkNode parent){
         try {
-            children = zkService.getChildren(parent.getPath());
-            if(children.size()>0){
-                for(String nodeName:children){
-                    ZkNode node=new ZkNode(nodeName);
-                    String path=parent.getPath()+"/"+nodeName;
-                    if(parent.getPath().equals("/")){ //我们的地址是 /DBus/xxx的形式。需要对第一个 / 进行特殊处理.
-                        path=parent.getPath()+nodeName;
-                    }
-                    node.setPath(path);
-                    byte[] data = zkService.getData(path);
-                    if (data != null && data.length > 0) {
-                        node.setContent(new String(data, Charset.UTF8));
-                    }
-                    node.setExisted(true);
-                    childrenNodes.add(node);
-                }
-                parent.setChildren(childrenNodes);
-                for(ZkNode node:childrenNodes){
-                    loadChildrenRecursively(zkService, node);
-                }
-            }
+            return ZkTreeLoader.getLoader().loadChildren(parent);
         } catch (Exception e) {
             e.printStackTrace();
         }
-        return childrenNodes;
+        return new ArrayList<>();
     }
     private List<ZkNode> loadBusinessConf(IZkService zkService, String dsName){
         ZkNode root=initialTreeOfPath(Constants.TEMPLATE_ROOT,zkService);
         ZkNode templateRoot=getLastCommonParent(root);
         // 获取具体配置模板节点
-        List<ZkNode> confNodes=loadChildrenRecursively(zkService,templateRoot);
+        List<ZkNode> confNodes=loadChildrenRecursively(templateRoot);
         // 根据dsName把配置模板渲染成业务配置节点
-        if(confNodes.size()>0) {
-            for (ZkNode node : confNodes) {
-                renderBusinessTreeBasedTemplate(zkService, node, dsName);
+        List<ZkNode> businessNodes = new ArrayList<>();
+        for (ZkNode node : confNodes) {
+            renderBusinessTreeBasedTemplate(node, dsName, businessNodes);
+        }
+        // 检查是否存在与dsName对应的业务配置节点，设置标志。并且，存在的话，获取具体配置内容
+        try {
+            List<String> paths = new ArrayList<>();
+            for (ZkNode node : businessNodes) {
+                paths.add(node.getPath());
+            }
+            Map<String, byte[]> dataOfPath = ZkTreeLoader.getLoader().readData(paths);
+            for (ZkNode node : businessNodes) {
+                byte[] data = dataOfPath.get(node.getPath());
+                node.setExisted(data != null);
+                if (data != null && data.length > 0) {
+                    node.setContent(new String(data, Charset.UTF8));
+                }
             }
+        } catch (Exception e) {
+            e.printStackTrace();
         }
         return  confNodes;
     }
-    private void renderBusinessTreeBasedTemplate(IZkService zkService, ZkNode zkNode, String dsName){
-            zkNode.setName(zkNode.getName().replace(Constants.BUSSINESS_PLACEHOLDER,dsName));
-            String path=zkNode.getPath();
-            path=path.replace(Constants.TEMPLATE_NODE_NAME,"");
-            path=path.replace(Constants.BUSSINESS_PLACEHOLDER,dsName);
-            zkNode.setPath(path);
-            try {
-                // 检查是否存在与dsName对应的业务配置节点，设置标志。并且，存在的话，获取具体配置内容
-                boolean exists=zkService.isExists(path);
-                zkNode.setExisted(exists);
-                if(exists){
-                    byte[] data = zkService.getData(path);
-                    if (data != null && data.length > 0) {
-                        zkNode.setContent(new String(data, Charset.UTF8));
-                    }
-                }
-            }catch (Exception e){
-                e.printStackTrace();
-            }
+    private void renderBusinessTreeBasedTemplate(ZkNode zkNode, String dsName, List<ZkNode> businessNodes){
+        zkNode.setName(zkNode.getName().replace(Constants.BUSSINESS_PLACEHOLDER,dsName));
+        String path=zkNode.getPath();
+        path=path.replace(Constants.TEMPLATE_NODE_NAME,"");
+        path=path.replace(Constants.BUSSINESS_PLACEHOLDER,dsName);
+        zkNode.setPath(path);
+        businessNodes.add(zkNode);
         List<ZkNode> children=zkNode.getChildren();
         if(children!=null&&!children.isEmpty()){
             for (ZkNode node : children) {
-                renderBusinessTreeBasedTemplate(zkService, node, dsName);
+                renderBusinessTreeBasedTemplate(node, dsName, businessNodes);
             }
         }
     }
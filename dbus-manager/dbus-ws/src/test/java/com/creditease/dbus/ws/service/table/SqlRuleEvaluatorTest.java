@@ -0,0 +1,81 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.ws.service.table;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 固定样例下与原mysql临时表(utf8_general_ci)实现的结果比较,期望值取自mysql的执行结果
+ */
+public class SqlRuleEvaluatorTest {
+    private static final List<List<String>> SAMPLES = Arrays.asList(
+            Arrays.asList("1", "abc", "x"),
+            Arrays.asList("2", "ABC", "y"),
+            Arrays.asList("3", "abd"),
+            Arrays.asList("10", "O'Brien", "z"));
+
+    @Test
+    public void comparesStringsIgnoringCase() {
+        assertRows("select c1 from temp where c2 = 'abc' order by c1", rows("1"), rows("2"));
+        assertRows("select c1 from temp where c2 like 'A%D'", rows("3"));
+        assertRows("select c1 from temp where c2 = 'o''brien'", rows("10"));
+    }
+
+    @Test
+    public void treatsMissingValuesAsEmptyString() {
+        assertRows("select c1 from temp where c3 = ''", rows("3"));
+        assertRows("select c1 from temp where c3 is null");
+    }
+
+    @Test
+    public void evaluatesFunctionsAndGrouping() {
+        assertRows("select concat(c1, '-', substring(c2, 2, 2)) from temp where c1 in ('1', '3') order by c1",
+                rows("1-bc"), rows("3-bd"));
+        assertRows("select lower(c2), count(*) from temp group by lower(c2) order by lower(c2)",
+                rows("abc", "2"), rows("abd", "1"), rows("o'brien", "1"));
+        // 字符串排序按字典序,转为数字后按数值比较
+        assertRows("select max(c1) from temp", rows("3"));
+        assertRows("select c1 from temp where cast(c1 as signed) > 2 order by cast(c1 as signed)",
+                rows("3"), rows("10"));
+    }
+
+    @Test
+    public void rejectsFileFunctions() {
+        assertNull(SqlRuleEvaluator.evaluate("select file_read('/etc/passwd') from temp", SAMPLES));
+        assertNull(SqlRuleEvaluator.evaluate("select * from csvread('/etc/passwd')", SAMPLES));
+        assertNull(SqlRuleEvaluator.evaluate("select c1 from temp; drop table temp", SAMPLES));
+    }
+
+    @SafeVarargs
+    private static void assertRows(String sql, List<String>... expected) {
+        assertEquals(sql, Arrays.asList(expected), SqlRuleEvaluator.evaluate(sql, SAMPLES));
+    }
+
+    private static List<String> rows(String... values) {
+        return Arrays.asList(values);
+    }
+}
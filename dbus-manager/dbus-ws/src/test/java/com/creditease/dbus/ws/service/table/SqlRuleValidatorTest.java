@@ -0,0 +1,95 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.ws.service.table;
+
+import org.junit.Test;
+
+import java.sql.SQLException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SqlRuleValidatorTest {
+
+    @Test
+    public void acceptsSelectOverTemp() throws SQLException {
+        accept("select c1, c2 from temp where c2 = 'abc'");
+        accept("SELECT t.c1 FROM temp t WHERE t.c2 LIKE 'a%' ORDER BY t.c1 LIMIT 10");
+        accept("select lower(c2), count(*) from temp group by lower(c2) having count(*) > 1");
+        accept("select concat(c1, '-', substring(c2, 1, 3)) from temp where c1 in ('1', '2')");
+        accept("select a.c1 from temp a join temp b on a.c1 = b.c2, temp c where a.c1 = c.c1");
+        accept("select c1 from (select c1, c2 from temp) t where exists (select 1 from temp where c1 = t.c2)");
+        accept("select c1 from temp where c2 = 'file_read(''/etc/passwd'')' -- csvread(\n");
+        accept("select cast(c1 as signed) from temp union all select c2 from temp");
+    }
+
+    @Test
+    public void stripsTrailingSemicolons() throws SQLException {
+        assertEquals("select c1 from temp ", SqlRuleValidator.check("select c1 from temp ;; "));
+    }
+
+    @Test
+    public void rejectsFileAndLinkFunctions() {
+        reject("select file_read('/etc/passwd') from temp");
+        reject("select * from csvread('/etc/passwd')");
+        reject("select csvwrite('/tmp/x.csv', 'select * from temp') from temp");
+        reject("select link_schema('s', '', 'jdbc:h2:mem:x', 'sa', '', 'PUBLIC') from temp");
+        reject("select c1 from temp where c2 = FILE_READ /* x */ ('/etc/passwd')");
+        reject("select \"FILE_READ\"('/etc/passwd') from temp");
+        reject("select `file_read`('/etc/passwd') from temp");
+        reject("select public.file_read('/etc/passwd') from temp");
+    }
+
+    @Test
+    public void rejectsOtherStatementsAndTables() {
+        reject("drop table temp");
+        reject("call file_read('/etc/passwd')");
+        reject("select c1 from temp; drop table temp");
+        reject("select c1 from temp; select 1");
+        reject("select * from information_schema.tables");
+        reject("select c1 from temp, information_schema.users");
+        reject("select c1 from temp join information_schema.users on 1 = 1");
+        reject("select .5 from information_schema.users");
+        reject("select * from table(x int = (1))");
+        reject("select c1 from (drop) t");
+        reject("select c1 from \"temp\"");
+        reject("select c1 from temp where c1 = $$x$$");
+        reject("select c1 from temp where c1 = ?");
+        reject("select c1 from temp where (c1 = '1'");
+        reject("select c1 from temp /* unterminated");
+        reject("select c1 from temp where c1 = 'unterminated");
+        reject("");
+        reject(null);
+    }
+
+    private static void accept(String sql) throws SQLException {
+        assertEquals(sql, SqlRuleValidator.check(sql));
+    }
+
+    private static void reject(String sql) {
+        try {
+            SqlRuleValidator.check(sql);
+            fail("expected rejection: " + sql);
+        } catch (SQLException e) {
+            // expected
+        }
+    }
+}
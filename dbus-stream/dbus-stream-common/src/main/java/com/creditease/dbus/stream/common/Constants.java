@@ -40,6 +40,7 @@ public class Constants {
         public static final String ORA_META = "ora-meta";
         public static final String PRODUCER_CONFIG = "producer-config";
         public static final String PRODUCER_CONTROL = "producer-control";
+        public static final String PARALLELISM = "parallelism";
     }
 
     /**
@@ -52,11 +53,17 @@ public class Constants {
         public static final String HEARTBEAT_SRC = "heartbeat.src"; // 心跳表名
         public static final String META_EVENT_SRC = "meta.event.src"; // meta同步表名
         public static final String SPOUT_MAX_FLOW_THRESHOLD = "spout.max.flow.threshold";
+        public static final String SPOUT_POLL_MAX_WAIT_MS = "spout.poll.max.wait.ms"; // spout空闲时poll kafka阻塞的最长时间,单位毫秒
         public static final String UMS_PAYLOAD_MAX_COUNT = "ums.payload.max.count"; // ums中payload记录数的最大值
         public static final String UMS_PAYLOAD_MAX_SIZE = "ums.payload.max.size"; // ums中payload大小最大值,单位Byte
         public static final String DBUS_STATISTIC_TOPIC = "dbus.statistic.topic"; // 统计信息topic
         public static final String BASE64_DECODE = "base64.decode"; // 是否需要使用base64解码
         public static final String GLOBAL_EVENT_TOPIC = "global.event.topic"; // 全局事件topic
+        public static final String UMS_MERGE_ENABLED = "ums.merge.enabled"; // 是否合并同一namespace的连续ums消息后写kafka
+        public static final String UMS_MERGE_MAX_COUNT = "ums.merge.max.count"; // 合并后payload记录数的最大值
+        public static final String UMS_MERGE_MAX_SIZE = "ums.merge.max.size"; // 合并后payload大小最大值,单位Byte
+        public static final String UMS_MERGE_LINGER_MS = "ums.merge.linger.ms"; // 合并等待的最长时间,单位毫秒
+        public static final String UMS_OUTPUT_FORMAT = "ums.output.format"; // 增量数据消息的输出格式: json(默认)或avro(二进制UMS), 心跳等控制消息始终为json
 
     }
 
@@ -125,6 +132,7 @@ public class Constants {
         public static final String TOPOLOGY_ID = "topology_appender_id";
         public static final String DATASOURCE = "datasource";
         public static final String ZKCONNECT = "zkconnect";
+        public static final String SHARED_PRODUCER = "shared_producer"; // 同一worker中的kafka writer共用producer
     }
 
     public static class TopologyType {
@@ -20,8 +20,6 @@
 
 package com.creditease.dbus.stream.common;
 
-import com.alibaba.fastjson.JSON;
-
 /**
  * Created by dongwang47 on 2016/8/23.
  */
@@ -41,7 +39,14 @@ public class HeartBeatPacket {
     private long txtime;
 
     public static HeartBeatPacket parse(String jsonString) {
-        return JSON.parseObject(jsonString, HeartBeatPacket.class);
+        com.creditease.dbus.stream.common.appender.bolt.processor.stat.HeartBeatPacket p =
+                com.creditease.dbus.stream.common.appender.bolt.processor.stat.HeartBeatPacket.parse(jsonString);
+        HeartBeatPacket packet = new HeartBeatPacket();
+        packet.setType(p.getType());
+        packet.setNode(p.getNode());
+        packet.setTime(p.getTime());
+        packet.setTxtime(p.getTxtime());
+        return packet;
     }
 
 
@@ -20,6 +20,7 @@
 
 package com.creditease.dbus.stream.common.appender.bolt.processor;
 
+import com.creditease.dbus.stream.common.appender.cache.MetaVersionTimeline;
 import com.creditease.dbus.stream.common.appender.cache.ThreadLocalCache;
 import com.creditease.dbus.stream.common.appender.bean.DataTable;
 import com.creditease.dbus.stream.common.appender.bean.MetaVersion;
@@ -45,7 +46,7 @@ public class MetaVerController {
 
     /**
      * 通过缓存获取version,如果触发version生成的kafka消息的trailPos比参数传入的pos大,
-     * 则需要通过数据库重新获取version
+     * 则需要通过MetaVersionTimeline重新获取version
      */
     public static MetaVersion getSuitableVersion(String key, long pos, long offset) {
         MetaVersion version = getVersionFromCache(key);
@@ -54,8 +55,13 @@ public class MetaVerController {
         // 此时需要找到合适版本的version解析消息
         if (version.getTrailPos() > pos) {
             DataTable table = ThreadLocalCache.get(CacheNames.DATA_TABLES, key);
-            version = DBFacadeManager.getDbFacade().queryMetaVersion(table.getId(), pos, offset);
-            logger.info("The trail pos[{}] of Cached version is greater than the pos[{}] of message, loading new version[{pos:{}}] from database", version.getTrailPos(), offset, version.getTrailPos());
+            MetaVersion found = MetaVersionTimeline.lookup(table.getId(), pos, offset);
+            if (found == null) {
+                logger.warn("The trail pos[{}] of Cached version is greater than the pos[{}] of message, but no version found at that pos, keep using the cached version", version.getTrailPos(), pos);
+                return version;
+            }
+            logger.info("The trail pos[{}] of Cached version is greater than the pos[{}] of message, loading new version[{pos:{}}] from timeline", version.getTrailPos(), pos, found.getTrailPos());
+            version = found;
             putVersion(key, version);
         }
         return version;
@@ -80,5 +86,6 @@ public class MetaVerController {
 
     public static void updateVersion(MetaVersion version) throws Exception {
         DBFacadeManager.getDbFacade().updateVersion(version);
+        MetaVersionTimeline.invalidate(version.getTableId());
     }
 }
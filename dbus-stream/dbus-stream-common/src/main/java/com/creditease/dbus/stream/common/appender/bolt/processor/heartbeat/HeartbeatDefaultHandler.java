@@ -20,11 +20,9 @@
 
 package com.creditease.dbus.stream.common.appender.bolt.processor.heartbeat;
 
-import avro.shaded.com.google.common.base.Joiner;
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONObject;
 import com.creditease.dbus.stream.common.appender.bolt.processor.BoltCommandHandler;
 import com.creditease.dbus.stream.common.appender.bolt.processor.listener.HeartbeatHandlerListener;
+import com.creditease.dbus.stream.common.appender.bolt.processor.stat.HeartBeatPacket;
 import com.creditease.dbus.stream.common.appender.bean.MetaVersion;
 import com.creditease.dbus.stream.common.appender.utils.Utils;
 import com.creditease.dbus.stream.common.Constants;
@@ -37,7 +35,9 @@ import org.apache.storm.tuple.Tuple;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * 在重新加载bolt时不能重新创建这个类的实例,否则会无法控制重新加载次数
@@ -50,8 +50,12 @@ public class HeartbeatDefaultHandler implements BoltCommandHandler {
     //private static final String HEARTBEAT_FLAG = "heartbeat";
     private HeartbeatHandlerListener listener;
 
+    /** 按表id缓存心跳消息模板,表版本等信息变化时重新生成 */
+    private Map<Long, HeartbeatMessageTemplate> templates;
+
     public HeartbeatDefaultHandler(HeartbeatHandlerListener listener) {
         this.listener = listener;
+        this.templates = new HashMap<>();
     }
 
     @Override
@@ -60,9 +64,10 @@ public class HeartbeatDefaultHandler implements BoltCommandHandler {
         List<PairWrapper<String, Object>> wrapperList = data.get(EmitData.MESSAGE);
         DataTable table = data.get(EmitData.DATA_TABLE);
         MetaVersion ver = data.get(EmitData.VERSION);
+        HeartbeatMessageTemplate template = template(table, ver);
         for (PairWrapper<String, Object> wrapper : wrapperList) {
             Object packet = wrapper.getPairValue("PACKET");
-            JSONObject json = JSON.parseObject(packet.toString());
+            HeartBeatPacket hbPacket = HeartBeatPacket.parse(packet.toString());
             String dbSchema = wrapper.getPairValue("SCHEMA_NAME").toString();
             String tableName = wrapper.getPairValue("TABLE_NAME").toString();
 
@@ -72,13 +77,33 @@ public class HeartbeatDefaultHandler implements BoltCommandHandler {
             // 暂时不要统一
             //String opts = wrapper.getProperties(Constants.MessageBodyKey.OP_TS).toString().substring(0, 23);
             String opts = wrapper.getProperties(Constants.MessageBodyKey.OP_TS).toString();
-            long time = json.getLong("time");
-            long txTime = json.getLong("txTime");
+            long time = hbPacket.getTime();
+            long txTime = hbPacket.getTxtime();
 
             String targetTopic = listener.getTargetTopic(dbSchema, tableName);
+            String message = template != null ? template.message(pos, opts) : null;
+            if (message == null) {
+                message = message(table, ver, pos, opts).toString();
+            }
+            String key = template != null ? template.key(time, txTime, table.getStatus()) : buildKey(time + "|" + txTime, table, ver);
             // 发送Heartbeat
-            listener.sendHeartbeat(message(table, ver, pos, opts), targetTopic, buildKey(time + "|" + txTime, table, ver));
+            listener.sendHeartbeat(message, targetTopic, key);
+        }
+    }
+
+    private HeartbeatMessageTemplate template(DataTable table, MetaVersion ver) {
+        String datasourceNs = Utils.getDataSourceNamespace();
+        HeartbeatMessageTemplate template = templates.get(table.getId());
+        if (template == null || !template.matches(datasourceNs, table, ver)) {
+            template = HeartbeatMessageTemplate.build(datasourceNs, table, ver);
+            if (template != null) {
+                templates.put(table.getId(), template);
+            } else {
+                templates.remove(table.getId());
+                logger.warn("Unable to build heartbeat message template for {}.{}", table.getSchema(), table.getTableName());
+            }
         }
+        return template;
     }
 
     private DbusMessage message(DataTable table, MetaVersion ver, String pos, String opts) {
@@ -94,7 +119,6 @@ public class HeartbeatDefaultHandler implements BoltCommandHandler {
     }
 
     private String buildNs(DataTable table, MetaVersion ver) {
-        return Joiner.on(".").join(Utils.getDataSourceNamespace(), table.getSchema(), table.getTableName(),
-                ver.getVersion(), 0, table.isPartationTable() ? "*" : 0);
+        return HeartbeatMessageTemplate.namespace(Utils.getDataSourceNamespace(), table, ver);
     }
 }
@@ -0,0 +1,141 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.stream.common.appender.bolt.processor.heartbeat;
+
+import com.creditease.dbus.commons.DateTimeCodec;
+import com.creditease.dbus.commons.DbusMessage;
+import com.creditease.dbus.commons.DbusMessageBuilder;
+import com.creditease.dbus.stream.common.appender.bean.DataTable;
+import com.creditease.dbus.stream.common.appender.bean.MetaVersion;
+import com.creditease.dbus.stream.common.appender.utils.Utils;
+
+import java.util.Objects;
+
+/**
+ * 心跳UMS消息模板,按表及版本缓存namespace、消息key前缀和序列化后的消息骨架,
+ * 发送心跳时只需要填入ums_id_和ums_ts_两个值,不再逐条构建DbusMessage并序列化
+ */
+class HeartbeatMessageTemplate {
+    private static final String POS_HOLDER = "__dbus_heartbeat_pos__";
+    private static final String TS_HOLDER = "__dbus_heartbeat_ts__";
+    private static final String KEY_SUFFIX = ".wh_placeholder";
+
+    private final String datasourceNs;
+    private final String schema;
+    private final String tableName;
+    private final int version;
+    private final int batchId;
+    private final boolean partitioned;
+
+    private final String keyPrefix;
+    private final String head;
+    private final String middle;
+    private final String tail;
+
+    private HeartbeatMessageTemplate(String datasourceNs, DataTable table, MetaVersion ver, String head, String middle, String tail) {
+        this.datasourceNs = datasourceNs;
+        this.schema = table.getSchema();
+        this.tableName = table.getTableName();
+        this.version = ver.getVersion();
+        this.batchId = table.getBatchId();
+        this.partitioned = table.isPartationTable();
+        this.keyPrefix = DbusMessage.ProtocolType.DATA_INCREMENT_HEARTBEAT.toString() + "." + namespace(datasourceNs, table, ver) + ".";
+        this.head = head;
+        this.middle = middle;
+        this.tail = tail;
+    }
+
+    /**
+     * 使用占位符构建一条心跳消息并序列化,以占位符为界切分出消息骨架
+     *
+     * @return 消息格式无法切分时返回null
+     */
+    public static HeartbeatMessageTemplate build(String datasourceNs, DataTable table, MetaVersion ver) {
+        DbusMessage message = new DbusMessageBuilder()
+                .build(DbusMessage.ProtocolType.DATA_INCREMENT_HEARTBEAT, namespace(datasourceNs, table, ver), table.getBatchId())
+                .getMessage();
+        message.addTuple(new Object[]{POS_HOLDER, TS_HOLDER});
+        String json = message.toString();
+
+        int posIdx = json.indexOf(quote(POS_HOLDER));
+        int tsIdx = json.indexOf(quote(TS_HOLDER));
+        if (posIdx < 0 || tsIdx < posIdx || json.indexOf(quote(POS_HOLDER), posIdx + 1) >= 0) {
+            return null;
+        }
+        return new HeartbeatMessageTemplate(datasourceNs, table, ver,
+                json.substring(0, posIdx + 1),
+                json.substring(posIdx + POS_HOLDER.length() + 1, tsIdx + 1),
+                json.substring(tsIdx + TS_HOLDER.length() + 1));
+    }
+
+    public static String namespace(String datasourceNs, DataTable table, MetaVersion ver) {
+        return Utils.join(".", datasourceNs, table.getSchema(), table.getTableName(),
+                String.valueOf(ver.getVersion()), "0", table.isPartationTable() ? "*" : "0");
+    }
+
+    /**
+     * 判断模板是否仍然适用于当前的表信息及版本
+     */
+    public boolean matches(String datasourceNs, DataTable table, MetaVersion ver) {
+        return version == ver.getVersion()
+                && batchId == table.getBatchId()
+                && partitioned == table.isPartationTable()
+                && Objects.equals(this.datasourceNs, datasourceNs)
+                && Objects.equals(schema, table.getSchema())
+                && Objects.equals(tableName, table.getTableName());
+    }
+
+    /**
+     * 填充心跳消息
+     *
+     * @param pos  ums_id_
+     * @param opts ums_ts_, 未格式化的时间字符串
+     * @return 值中包含需要转义的字符时返回null
+     */
+    public String message(String pos, String opts) {
+        String ts = DateTimeCodec.normalizeDateTime(opts);
+        if (needEscape(pos) || needEscape(ts)) {
+            return null;
+        }
+        return new StringBuilder(head.length() + middle.length() + tail.length() + pos.length() + ts.length())
+                .append(head).append(pos).append(middle).append(ts).append(tail).toString();
+    }
+
+    public String key(long time, long txTime, String status) {
+        return new StringBuilder(keyPrefix.length() + 64)
+                .append(keyPrefix).append(time).append('|').append(txTime).append('|').append(status)
+                .append(KEY_SUFFIX).toString();
+    }
+
+    private static boolean needEscape(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x20 || c == '"' || c == '\\' || c == '/' || c > 0x7e) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String quote(String value) {
+        return "\"" + value + "\"";
+    }
+}
@@ -20,12 +20,10 @@
 
 package com.creditease.dbus.stream.common.appender.bolt.processor.listener;
 
-import com.creditease.dbus.commons.DbusMessage;
-
 /**
  * Created by Shrimp on 16/7/4.
  */
 public interface HeartbeatHandlerListener extends CommandHandlerListener {
-    void sendHeartbeat(DbusMessage message, String topic, String key);
+    void sendHeartbeat(String message, String topic, String key);
     String getTargetTopic(String dbSchema, String tableName);
 }
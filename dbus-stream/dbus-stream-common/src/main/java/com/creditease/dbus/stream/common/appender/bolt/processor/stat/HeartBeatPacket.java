@@ -23,6 +23,8 @@ package com.creditease.dbus.stream.common.appender.bolt.processor.stat;
 import com.alibaba.fastjson.JSON;
 
 /**
+ * 心跳表PACKET字段的内容,格式如下:
+ * {"node":"/DBus/HeartBeat/Monitor/ds/schema/table","time":1490337000995,"type":"checkpoint","txTime":1490337000990}
  * Created by dongwang47 on 2016/8/23.
  */
 public class HeartBeatPacket {
@@ -31,8 +33,104 @@ public class HeartBeatPacket {
     private long time;
     private long txtime;
 
+    /**
+     * 解析心跳包,只识别一层的字符串/整数字段,不构建JSON树;
+     * 遇到嵌套结构、转义字符、没有引号的字符串字段(如null)等无法识别的内容时退回到fastjson解析
+     */
     public static HeartBeatPacket parse(String jsonString) {
-        return JSON.parseObject(jsonString, HeartBeatPacket.class);
+        HeartBeatPacket packet = new HeartBeatPacket();
+        if (!packet.scan(jsonString)) {
+            return JSON.parseObject(jsonString, HeartBeatPacket.class);
+        }
+        return packet;
+    }
+
+    private boolean scan(String s) {
+        if (s == null) return false;
+        int len = s.length();
+        int i = skipWhitespace(s, 0);
+        if (i >= len || s.charAt(i) != '{') return false;
+        i = skipWhitespace(s, i + 1);
+        if (i < len && s.charAt(i) == '}') return true;
+
+        while (i < len) {
+            // key
+            if (s.charAt(i) != '"') return false;
+            int keyEnd = s.indexOf('"', i + 1);
+            if (keyEnd < 0) return false;
+            int keyStart = i + 1;
+            i = skipWhitespace(s, keyEnd + 1);
+            if (i >= len || s.charAt(i) != ':') return false;
+            i = skipWhitespace(s, i + 1);
+            if (i >= len) return false;
+
+            // value
+            int valueStart, valueEnd;
+            boolean quoted = s.charAt(i) == '"';
+            if (quoted) {
+                valueStart = i + 1;
+                valueEnd = s.indexOf('"', valueStart);
+                if (valueEnd < 0) return false;
+                i = valueEnd + 1;
+            } else {
+                valueStart = i;
+                while (i < len && s.charAt(i) != ',' && s.charAt(i) != '}' && !Character.isWhitespace(s.charAt(i))) {
+                    i++;
+                }
+                valueEnd = i;
+            }
+            if (!assign(s, keyStart, keyEnd, valueStart, valueEnd, quoted)) return false;
+
+            i = skipWhitespace(s, i);
+            if (i >= len) return false;
+            char c = s.charAt(i);
+            if (c == '}') return true;
+            if (c != ',') return false;
+            i = skipWhitespace(s, i + 1);
+        }
+        return false;
+    }
+
+    private boolean assign(String s, int keyStart, int keyEnd, int valueStart, int valueEnd, boolean quoted) {
+        int keyLen = keyEnd - keyStart;
+        if (s.lastIndexOf('\\', keyEnd) >= keyStart) return false;
+        for (int i = valueStart; i < valueEnd; i++) {
+            char c = s.charAt(i);
+            if (c == '\\' || c == '{' || c == '[') return false;
+        }
+        if (keyLen == 4 && s.regionMatches(true, keyStart, "time", 0, 4)) {
+            return (time = parseLong(s, valueStart, valueEnd)) >= 0;
+        } else if (keyLen == 6 && s.regionMatches(true, keyStart, "txtime", 0, 6)) {
+            return (txtime = parseLong(s, valueStart, valueEnd)) >= 0;
+        } else if (keyLen == 4 && s.regionMatches(true, keyStart, "type", 0, 4)) {
+            if (!quoted) return false;
+            type = s.substring(valueStart, valueEnd);
+        } else if (keyLen == 4 && s.regionMatches(true, keyStart, "node", 0, 4)) {
+            if (!quoted) return false;
+            node = s.substring(valueStart, valueEnd);
+        }
+        return true;
+    }
+
+    /**
+     * 解析非负整数,格式不正确时返回-1
+     */
+    private static long parseLong(String s, int start, int end) {
+        if (start >= end || end - start > 18) return -1;
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int skipWhitespace(String s, int i) {
+        while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        return i;
     }
 
 
@@ -32,37 +32,77 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.Timestamp;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * 全局的缓存,和ThreadLocalCache相互辅助使用,需要在调用前初始化
+ * 同一个worker中可能运行多个数据源的组件,缓存按数据源隔离,
+ * 调用线程通过initialize或bind绑定所属的数据源
  * Created by Shrimp on 16/8/17.
  */
 public class GlobalCache {
     private static Logger logger = LoggerFactory.getLogger(GlobalCache.class);
-    private static String datasource;
-    private static Cache<String, Object> cache;
+    private static final ConcurrentMap<String, Cache<String, Object>> caches = new ConcurrentHashMap<>();
+    private static final ThreadLocal<String> bound = new ThreadLocal<>();
 
     private static class Const {
         public static final String DATASOURCE = "datasource";
     }
 
-    static {
-        cache = CacheBuilder.newBuilder().build();
+    /**
+     * 注册数据源并将当前线程绑定到该数据源,storm组件在prepare/open中调用,
+     * 之后同一个executor线程中的访问都使用该数据源的缓存
+     */
+    public static void initialize(String ds) {
+        if (Strings.isNullOrEmpty(ds)) {
+            throw new IllegalArgumentException("Initial parameter can not be null or empty string");
+        }
+        caches.computeIfAbsent(ds, key -> CacheBuilder.newBuilder().build());
+        bound.set(ds);
+    }
+
+    /**
+     * 将后台线程绑定到指定的数据源,数据源需要已经初始化
+     */
+    public static void bind(String ds) {
+        if (ds == null) {
+            bound.remove();
+        } else if (caches.containsKey(ds)) {
+            bound.set(ds);
+        } else {
+            throw new InitializationException("Datasource " + ds + " has not been initialized in GlobalCache");
+        }
     }
 
-    public static synchronized void initialize(String ds) {
-        if (datasource == null) {
-            if(Strings.isNullOrEmpty(ds)) {
-                throw new IllegalArgumentException("Initial parameter can not be null or empty string");
-            }
-            datasource = ds;
+    /**
+     * 当前线程所属的数据源,没有绑定的线程在只有一个数据源时使用该数据源
+     */
+    public static String currentDatasource() {
+        String ds = bound.get();
+        if (ds != null) {
+            return ds;
+        }
+        if (caches.size() == 1) {
+            return caches.keySet().iterator().next();
         }
+        if (caches.isEmpty()) {
+            throw new InitializationException("Please initialize GlobalCache with calling GlobalCache.initialize(String datasource)");
+        }
+        throw new InitializationException("Current thread is not bound to any datasource, candidates:" + caches.keySet());
+    }
+
+    /**
+     * 当前线程绑定的数据源,没有绑定时返回null
+     */
+    public static String boundDatasource() {
+        return bound.get();
     }
 
     public static DbusDatasource getDatasource() {
-        checkInit();
+        String datasource = currentDatasource();
         try {
-            DbusDatasource ds = (DbusDatasource) cache.get(Const.DATASOURCE, () -> {
+            DbusDatasource ds = (DbusDatasource) caches.get(datasource).get(Const.DATASOURCE, () -> {
                 Map<String, Object> map = DBFacadeManager.getDbFacade().queryDatasource(datasource);
                 return convert(map);
             });
@@ -81,13 +121,11 @@ public class GlobalCache {
         throw new RuntimeException("Datasource not found!!!");
     }
 
+    /**
+     * 清空当前数据源的缓存,不影响同一个worker中的其他数据源
+     */
     public static void refreshCache() {
-        cache.invalidateAll();
-    }
-    private static void checkInit() {
-        if(datasource == null) {
-            throw new InitializationException("Please initialize GlobalCache with calling GlobalCache.initialize(String datasource)");
-        }
+        caches.get(currentDatasource()).invalidateAll();
     }
 
     private static DbusDatasource convert(Map<String, Object> map) {
@@ -0,0 +1,174 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.stream.common.appender.cache;
+
+import com.creditease.dbus.commons.MetaWrapper;
+import com.creditease.dbus.stream.common.appender.bean.MetaVersion;
+import com.creditease.dbus.stream.common.appender.utils.DBFacadeManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按表缓存meta version的时间线,用于重复消费或者回放历史binlog时查找当时生效的version,
+ * 避免每条消息都通过 DBFacade.queryMetaVersion(tableId, pos, offset) 查询数据库.
+ * 每张表首次使用时从数据库加载最近的 MAX_VERSIONS 个版本,之后在 createMetaVersion 时增量追加,
+ * 查找时按 (event_pos, event_offset) 二分查找.
+ */
+public class MetaVersionTimeline {
+    private static Logger logger = LoggerFactory.getLogger(MetaVersionTimeline.class);
+
+    /** 每张表最多保留的版本数,更早的版本回退到数据库查询 */
+    public static final int MAX_VERSIONS = 32;
+
+    private static final ConcurrentMap<Long, Timeline> timelines = new ConcurrentHashMap<>();
+
+    private static final Comparator<MetaVersion> ORDER = (v1, v2) -> {
+        int c = Long.compare(v1.getTrailPos(), v2.getTrailPos());
+        return c != 0 ? c : Long.compare(v1.getOffset(), v2.getOffset());
+    };
+
+    /**
+     * 查找指定位置生效的meta version,返回的对象为副本,调用方可以任意修改
+     *
+     * @param tableId t_data_tables 表ID
+     * @param pos     接收到消息的 binlog pos 值
+     * @param offset  接收到消息的kafka offset
+     * @return MetaVersion 对象,没有找到返回null
+     */
+    public static MetaVersion lookup(long tableId, long pos, long offset) {
+        Timeline timeline = timelines.computeIfAbsent(tableId, MetaVersionTimeline::load);
+        int idx = timeline.floor(pos);
+        if (idx < 0) {
+            if (timeline.complete) {
+                return null;
+            }
+            // 超出缓存的时间范围,回退到数据库查询
+            logger.info("Meta version of table[{}] at pos[{}] is older than the cached timeline, loading from database", tableId, pos);
+            return DBFacadeManager.getDbFacade().queryMetaVersion(tableId, pos, offset);
+        }
+        MetaVersion version = timeline.versions[idx];
+        if (version.getMeta() == null) {
+            // 时间线中的元素被多个线程共享,不能原地修改,加载meta后以副本替换
+            MetaVersion loaded = copy(version);
+            loaded.setMeta(DBFacadeManager.getDbFacade().queryMeta(version.getId()));
+            timelines.computeIfPresent(tableId, (id, t) -> t.with(loaded));
+            version = loaded;
+        }
+        return copy(version);
+    }
+
+    /**
+     * 新的version持久化后追加到时间线,相同id的version会被替换
+     */
+    public static void record(MetaVersion version) {
+        MetaVersion v = copy(version);
+        timelines.computeIfPresent(version.getTableId(), (id, timeline) -> timeline.with(v));
+    }
+
+    /**
+     * meta同步事件修改了已有version时调用,下次查找时重新从数据库加载
+     */
+    public static void invalidate(long tableId) {
+        timelines.remove(tableId);
+    }
+
+    public static void invalidateAll() {
+        timelines.clear();
+    }
+
+    private static Timeline load(Long tableId) {
+        List<MetaVersion> list = DBFacadeManager.getDbFacade().queryMetaVersions(tableId, MAX_VERSIONS);
+        MetaVersion[] versions = list.toArray(new MetaVersion[list.size()]);
+        Arrays.sort(versions, ORDER);
+        logger.info("Meta version timeline of table[{}] loaded, {} versions", tableId, versions.length);
+        return new Timeline(versions, versions.length < MAX_VERSIONS);
+    }
+
+    private static MetaVersion copy(MetaVersion src) {
+        MetaVersion v = new MetaVersion(src.getVersion(), src.getInnerVersion());
+        v.setId(src.getId());
+        v.setDsId(src.getDsId());
+        v.setTableId(src.getTableId());
+        v.setSchema(src.getSchema());
+        v.setTable(src.getTable());
+        v.setOffset(src.getOffset());
+        v.setTrailPos(src.getTrailPos());
+        v.setMeta(src.getMeta());
+        return v;
+    }
+
+    /**
+     * 单张表的时间线,数组按 (trailPos, offset) 升序排列,修改时整体替换
+     */
+    private static class Timeline {
+        private final MetaVersion[] versions;
+        /** 是否包含了该表的全部版本 */
+        private final boolean complete;
+
+        Timeline(MetaVersion[] versions, boolean complete) {
+            this.versions = versions;
+            this.complete = complete;
+        }
+
+        /**
+         * 返回 trailPos <= pos 的最后一个元素下标,不存在返回-1
+         */
+        int floor(long pos) {
+            int low = 0, high = versions.length - 1, idx = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (versions[mid].getTrailPos() <= pos) {
+                    idx = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return idx;
+        }
+
+        Timeline with(MetaVersion version) {
+            MetaVersion[] arr = new MetaVersion[versions.length + 1];
+            int n = 0;
+            for (MetaVersion v : versions) {
+                if (v.getId() != version.getId()) {
+                    arr[n++] = v;
+                }
+            }
+            arr[n++] = version;
+            arr = Arrays.copyOf(arr, n);
+            Arrays.sort(arr, ORDER);
+
+            boolean full = complete;
+            if (arr.length > MAX_VERSIONS) {
+                arr = Arrays.copyOfRange(arr, arr.length - MAX_VERSIONS, arr.length);
+                full = false;
+            }
+            return new Timeline(arr, full);
+        }
+    }
+}
@@ -20,41 +20,121 @@
 
 package com.creditease.dbus.stream.common.appender.cache;
 
+import com.creditease.dbus.stream.common.Constants.CacheNames;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 /**
  * 线程本地私有缓存实现
  * Created by Shrimp on 16/5/18.
  */
 public class ThreadLocalCache {
+    private static Logger logger = LoggerFactory.getLogger(ThreadLocalCache.class);
 
-    private static ThreadLocal<LocalCache> cachePool = new ThreadLocal<>();
+    /** 刷新时需要预热的缓存,这些缓存的值都可以通过LocalCacheLoader从数据库重新加载 */
+    private static final String[] WARM_UP_CACHES = {CacheNames.DATA_TABLES, CacheNames.TAB_SCHEMA,
+            CacheNames.META_VERSION_CACHE, CacheNames.AVRO_SCHEMA_CACHE, CacheNames.TAB_ENCODE_FIELDS};
+
+    private static ThreadLocal<Generation> cachePool = new ThreadLocal<>();
 
     private static CacheProvider provider = new LocalCacheProvider();
 
+    private static ExecutorService warmUpExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "thread-local-cache-warm-up");
+        t.setDaemon(true);
+        return t;
+    });
+
     public static void put(String cache, String key, Object value) {
-        LocalCache localCache = cachePool.get();
-        if (localCache == null) {
-            localCache = provider.getCache();
-            cachePool.set(localCache);
+        Generation generation = generation();
+        // 先读pending再读current,保证预热期间写入的值不会在切换时丢失
+        LocalCache pending = generation.pending;
+        LocalCache current = generation.current;
+        current.put(cache, key, value);
+        if (pending != null && pending != current) {
+            pending.put(cache, key, value);
         }
-        localCache.put(cache, key, value);
     }
 
     public static <T> T get(String cache, String key) {
-        LocalCache localCache = cachePool.get();
-        if (localCache == null) {
-            localCache = provider.getCache();
-            cachePool.set(localCache);
-        }
-        return localCache.get(cache, key);
+        return generation().current.get(cache, key);
     }
 
     public static void remove(String cache, String key) {
-        LocalCache localCache = cachePool.get();
-        if (localCache != null) {
-            localCache.remove(cache, key);
+        Generation generation = cachePool.get();
+        if (generation != null) {
+            LocalCache pending = generation.pending;
+            generation.current.remove(cache, key);
+            if (pending != null) {
+                pending.remove(cache, key);
+            }
         }
     }
+
+    /**
+     * 清空当前线程的缓存,之后的访问全部重新从数据库加载
+     */
     public static void reload() {
         cachePool.remove();
     }
+
+    /**
+     * 在后台线程中按当前缓存的key重新加载一份新的缓存,加载完成后替换当前线程的缓存。
+     * 替换之前当前线程继续使用原有缓存,避免reload之后所有表同时回源数据库
+     */
+    public static void refresh() {
+        Generation generation = cachePool.get();
+        if (generation == null) {
+            return;
+        }
+        LocalCache old = generation.current;
+        LocalCache next = provider.getCache();
+        generation.pending = next;
+        // 预热线程为所有数据源共用,加载时需要使用发起刷新的线程所属的数据源
+        String datasource = GlobalCache.boundDatasource();
+        warmUpExecutor.submit(() -> {
+            long start = System.currentTimeMillis();
+            int count = 0;
+            try {
+                GlobalCache.bind(datasource);
+                for (String cacheName : WARM_UP_CACHES) {
+                    for (String key : old.asMap(cacheName).keySet()) {
+                        next.get(cacheName, key);
+                        count++;
+                    }
+                }
+            } catch (Exception e) {
+                logger.error("Warm up thread local cache error, the rest will be loaded on demand", e);
+            } finally {
+                GlobalCache.bind(null);
+                generation.current = next;
+                generation.pending = null;
+                logger.info("Thread local cache refreshed, {} entries warmed up in {}ms", count, System.currentTimeMillis() - start);
+            }
+        });
+    }
+
+    private static Generation generation() {
+        Generation generation = cachePool.get();
+        if (generation == null) {
+            generation = new Generation(provider.getCache());
+            cachePool.set(generation);
+        }
+        return generation;
+    }
+
+    /**
+     * 线程当前使用的缓存以及正在预热的下一代缓存
+     */
+    private static class Generation {
+        private volatile LocalCache current;
+        private volatile LocalCache pending;
+
+        Generation(LocalCache current) {
+            this.current = current;
+        }
+    }
 }
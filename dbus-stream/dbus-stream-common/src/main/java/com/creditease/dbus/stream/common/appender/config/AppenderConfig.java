@@ -0,0 +1,190 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.stream.common.appender.config;
+
+import com.creditease.dbus.stream.common.Constants.ConfigureKey;
+
+import java.util.Collections;
+import java.util.Properties;
+
+/**
+ * configure配置文件的不可变快照,每次reload只构建一次,在所有executor之间共享
+ * 热点路径上只需要读取字段,不再重复解析字符串
+ */
+public final class AppenderConfig {
+    private final long generation;
+    private final Properties raw;
+
+    private final String datasourceName;
+    private final String availableSchemas;
+    private final String fulldataRequestSrc;
+    private final String heartbeatSrc;
+    private final String metaEventSrc;
+    private final Integer spoutMaxFlowThreshold;
+    private final int spoutPollMaxWaitMs;
+    private final int umsPayloadMaxCount;
+    private final int umsPayloadMaxSize;
+    private final String dbusStatisticTopic;
+    private final boolean base64Decode;
+    private final String globalEventTopic;
+    private final boolean umsMergeEnabled;
+    private final int umsMergeMaxCount;
+    private final int umsMergeMaxSize;
+    private final int umsMergeLingerMs;
+    private final boolean umsAvroOutput;
+
+    AppenderConfig(long generation, Properties props) {
+        this.generation = generation;
+        this.raw = new Properties();
+        this.raw.putAll(props);
+
+        this.datasourceName = string(ConfigureKey.DATASOURCE_NAME);
+        this.availableSchemas = string(ConfigureKey.AVAILABLE_SCHEMAS);
+        this.fulldataRequestSrc = string(ConfigureKey.FULLDATA_REQUEST_SRC);
+        this.heartbeatSrc = string(ConfigureKey.HEARTBEAT_SRC);
+        this.metaEventSrc = string(ConfigureKey.META_EVENT_SRC);
+        this.spoutMaxFlowThreshold = integer(ConfigureKey.SPOUT_MAX_FLOW_THRESHOLD, null);
+        this.spoutPollMaxWaitMs = integer(ConfigureKey.SPOUT_POLL_MAX_WAIT_MS, 100);
+        this.umsPayloadMaxCount = integer(ConfigureKey.UMS_PAYLOAD_MAX_COUNT, Integer.MAX_VALUE);
+        this.umsPayloadMaxSize = integer(ConfigureKey.UMS_PAYLOAD_MAX_SIZE, Integer.MAX_VALUE);
+        this.dbusStatisticTopic = string(ConfigureKey.DBUS_STATISTIC_TOPIC);
+        this.base64Decode = Boolean.parseBoolean(string(ConfigureKey.BASE64_DECODE));
+        this.globalEventTopic = string(ConfigureKey.GLOBAL_EVENT_TOPIC);
+        this.umsMergeEnabled = Boolean.parseBoolean(string(ConfigureKey.UMS_MERGE_ENABLED));
+        this.umsMergeMaxCount = integer(ConfigureKey.UMS_MERGE_MAX_COUNT, umsPayloadMaxCount);
+        this.umsMergeMaxSize = integer(ConfigureKey.UMS_MERGE_MAX_SIZE, umsPayloadMaxSize);
+        this.umsMergeLingerMs = integer(ConfigureKey.UMS_MERGE_LINGER_MS, 20);
+        this.umsAvroOutput = "avro".equalsIgnoreCase(string(ConfigureKey.UMS_OUTPUT_FORMAT));
+    }
+
+    /**
+     * 获取未在快照中定义类型的配置项
+     */
+    public String get(String key) {
+        return string(key);
+    }
+
+    /**
+     * 判断两个快照的配置内容是否相同,不比较generation
+     */
+    public boolean sameContent(AppenderConfig other) {
+        return other != null && raw.equals(other.raw);
+    }
+
+    public Properties asProperties() {
+        Properties props = new Properties();
+        props.putAll(raw);
+        return props;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public String getDatasourceName() {
+        return datasourceName;
+    }
+
+    public String getAvailableSchemas() {
+        return availableSchemas;
+    }
+
+    public String getFulldataRequestSrc() {
+        return fulldataRequestSrc;
+    }
+
+    public String getHeartbeatSrc() {
+        return heartbeatSrc;
+    }
+
+    public String getMetaEventSrc() {
+        return metaEventSrc;
+    }
+
+    public Integer getSpoutMaxFlowThreshold() {
+        return spoutMaxFlowThreshold;
+    }
+
+    public int getSpoutPollMaxWaitMs() {
+        return spoutPollMaxWaitMs;
+    }
+
+    public int getUmsPayloadMaxCount() {
+        return umsPayloadMaxCount;
+    }
+
+    public int getUmsPayloadMaxSize() {
+        return umsPayloadMaxSize;
+    }
+
+    public String getDbusStatisticTopic() {
+        return dbusStatisticTopic;
+    }
+
+    public boolean isBase64Decode() {
+        return base64Decode;
+    }
+
+    public String getGlobalEventTopic() {
+        return globalEventTopic;
+    }
+
+    public boolean isUmsMergeEnabled() {
+        return umsMergeEnabled;
+    }
+
+    public int getUmsMergeMaxCount() {
+        return umsMergeMaxCount;
+    }
+
+    public int getUmsMergeMaxSize() {
+        return umsMergeMaxSize;
+    }
+
+    public int getUmsMergeLingerMs() {
+        return umsMergeLingerMs;
+    }
+
+    public boolean isUmsAvroOutput() {
+        return umsAvroOutput;
+    }
+
+    private String string(String key) {
+        Object val = raw.get(key);
+        if (val != null) {
+            return val.toString().trim();
+        }
+        return null;
+    }
+
+    private Integer integer(String key, Integer defaultValue) {
+        String value = string(key);
+        if (value != null && value.length() > 0) {
+            return Integer.parseInt(value);
+        }
+        return defaultValue;
+    }
+
+    @Override
+    public String toString() {
+        return "AppenderConfig{generation=" + generation + ", " + Collections.unmodifiableMap(raw) + "}";
+    }
+}
@@ -0,0 +1,114 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.stream.common.appender.config;
+
+import com.creditease.dbus.commons.PropertiesHolder;
+import com.creditease.dbus.commons.exception.UnintializedException;
+import com.creditease.dbus.stream.common.Constants;
+import com.creditease.dbus.stream.common.appender.cache.GlobalCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * AppenderConfig的全局持有者,配置快照通过AtomicReference原子发布,
+ * 同一个worker中同一数据源的所有executor在同一时刻看到相同的配置版本。
+ * 快照按datasource.name分别持有,调用线程所属的数据源由GlobalCache绑定
+ */
+public class AppenderConfigHolder {
+    private static Logger logger = LoggerFactory.getLogger(AppenderConfigHolder.class);
+
+    private static final ConcurrentMap<String, AtomicReference<AppenderConfig>> configs = new ConcurrentHashMap<>();
+    private static final List<ConfigChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 配置变更通知,监听者对所有数据源生效,可以通过AppenderConfig.getDatasourceName()区分
+     */
+    public interface ConfigChangeListener {
+        void onChange(AppenderConfig oldConfig, AppenderConfig newConfig);
+    }
+
+    /**
+     * 获取当前配置快照,调用方在一次处理过程中应该只获取一次并持有该引用
+     */
+    public static AppenderConfig get() {
+        String ds = GlobalCache.boundDatasource();
+        AtomicReference<AppenderConfig> ref = ds == null ? null : configs.get(ds);
+        if (ref == null && configs.size() == 1) {
+            ref = configs.values().iterator().next();
+        }
+        AppenderConfig config = ref == null ? null : ref.get();
+        if (config == null) {
+            throw new UnintializedException("AppenderConfigHolder has not initialized");
+        }
+        return config;
+    }
+
+    /**
+     * 从PropertiesHolder重新构建配置快照,调用前需要先调用PropertiesHolder.reload()
+     * 多个bolt先后reload时,只有配置内容发生变化才会发布新的快照并通知监听者
+     * @return 当前生效的配置快照
+     */
+    public static AppenderConfig reload() throws Exception {
+        Properties props = PropertiesHolder.getProperties(Constants.Properties.CONFIGURE);
+        if (props == null) {
+            throw new UnintializedException("Properties " + Constants.Properties.CONFIGURE + " not found");
+        }
+        return publish(props);
+    }
+
+    static AppenderConfig publish(Properties props) {
+        String ds = props.getProperty(Constants.ConfigureKey.DATASOURCE_NAME, "");
+        AtomicReference<AppenderConfig> current = configs.computeIfAbsent(ds, key -> new AtomicReference<>());
+        while (true) {
+            AppenderConfig old = current.get();
+            AppenderConfig config = new AppenderConfig(old == null ? 1 : old.getGeneration() + 1, props);
+            if (config.sameContent(old)) {
+                return old;
+            }
+            if (current.compareAndSet(old, config)) {
+                logger.info("Appender configuration of {} published, generation:{}", ds, config.getGeneration());
+                for (ConfigChangeListener listener : listeners) {
+                    try {
+                        listener.onChange(old, config);
+                    } catch (Exception e) {
+                        logger.error("Error when notifying configuration change listener {}", listener, e);
+                    }
+                }
+                return config;
+            }
+        }
+    }
+
+    public static void addListener(ConfigChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public static void removeListener(ConfigChangeListener listener) {
+        listeners.remove(listener);
+    }
+}
@@ -23,11 +23,13 @@ package com.creditease.dbus.stream.common.appender.enums;
 import com.creditease.dbus.commons.PropertiesHolder;
 import com.creditease.dbus.commons.exception.UnintializedException;
 import com.creditease.dbus.stream.common.Constants;
+import com.creditease.dbus.stream.common.appender.cache.GlobalCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 命令枚举
@@ -50,8 +52,8 @@ public enum Command {
 
     private static Logger logger = LoggerFactory.getLogger(Command.class);
 
-    private static boolean initialized = false;
-    private static Map<String, Command> cmds = new HashMap<>();
+    // 数据源 -> 配置的表名命令,同一个worker中的数据源各自配置心跳、拉全量等表名
+    private static Map<String, Map<String, Command>> dsCmds = new ConcurrentHashMap<>();
     private static Map<String, Command> nameCmds = new HashMap<>();
 
     static {
@@ -61,15 +63,22 @@ public enum Command {
     }
 
     public static void initialize() {
+        Map<String, Command> cmds = new HashMap<>();
         cmds.put($(Constants.ConfigureKey.FULLDATA_REQUEST_SRC), FULL_DATA_PULL_REQ);
         cmds.put($(Constants.ConfigureKey.HEARTBEAT_SRC), HEART_BEAT);
         cmds.put($(Constants.ConfigureKey.META_EVENT_SRC), META_SYNC);
+        String ds = PropertiesHolder.getProperties(Constants.Properties.CONFIGURE, Constants.ConfigureKey.DATASOURCE_NAME);
+        dsCmds.put(ds == null ? "" : ds, cmds);
         logger.info("Command initialize {}", cmds.toString());
-        initialized = true;
     }
 
     public static Command parse(String cmd) {
-        if(!initialized) {
+        String ds = GlobalCache.boundDatasource();
+        Map<String, Command> cmds = ds == null ? null : dsCmds.get(ds);
+        if (cmds == null && dsCmds.size() == 1) {
+            cmds = dsCmds.values().iterator().next();
+        }
+        if(cmds == null) {
             throw new UnintializedException("Command has not initialized!");
         }
         cmd = cmd.toLowerCase();
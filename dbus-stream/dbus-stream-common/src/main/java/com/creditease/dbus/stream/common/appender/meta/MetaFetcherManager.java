@@ -23,6 +23,7 @@ package com.creditease.dbus.stream.common.appender.meta;
 import com.creditease.dbus.commons.PropertiesHolder;
 import com.creditease.dbus.commons.exception.UnintializedException;
 import com.creditease.dbus.stream.common.Constants;
+import com.creditease.dbus.stream.common.appender.cache.GlobalCache;
 import com.creditease.dbus.stream.common.appender.db.DataSourceProvider;
 import com.creditease.dbus.stream.common.appender.db.DruidDataSourceProvider;
 import com.creditease.dbus.stream.common.appender.bean.DbusDatasource;
@@ -33,18 +34,19 @@ import org.slf4j.LoggerFactory;
 import javax.sql.DataSource;
 import java.lang.reflect.Constructor;
 import java.util.Properties;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
+ * 每个数据源持有各自的MetaFetcher,数据源由GlobalCache中当前线程的绑定决定
  * Created by Shrimp on 16/5/17.
  */
 public class MetaFetcherManager {
     private static Logger logger = LoggerFactory.getLogger(MetaFetcherManager.class);
     private static final String DATASOURCE_CONFIG_NAME = Constants.Properties.ORA_META;
-    private static MetaFetcher fetcher;
-    private static AtomicBoolean initialized = new AtomicBoolean(false);
+    private static final ConcurrentMap<String, MetaFetcher> fetchers = new ConcurrentHashMap<>();
 
-    private static boolean initialize(String jdbcUrl, String user, String pwd) {
+    private static MetaFetcher initialize(String jdbcUrl, String user, String pwd) {
         try {
             Properties properties = PropertiesHolder.getProperties(DATASOURCE_CONFIG_NAME);
             properties.setProperty("url", jdbcUrl);
@@ -53,32 +55,39 @@ public class MetaFetcherManager {
             DataSourceProvider provider = new DruidDataSourceProvider(properties);
             Class<?> clazz = Class.forName("com.creditease.dbus.stream.oracle.appender.meta.OraMetaFetcher");
             Constructor<?> constructor = clazz.getConstructor(DataSource.class);
-            fetcher = (MetaFetcher) constructor.newInstance(provider.provideDataSource());
-            return true;
+            return (MetaFetcher) constructor.newInstance(provider.provideDataSource());
         } catch (Exception e) {
             logger.error("MetaFetcherManager initialize error!", e);
-            return false;
+            return null;
         }
     }
 
     public static MetaFetcher getFetcher() {
-        if (!initialized.get()) {
+        String datasource = GlobalCache.currentDatasource();
+        MetaFetcher fetcher = fetchers.get(datasource);
+        if (fetcher == null) {
             synchronized (MetaFetcherManager.class) {
-                DbusDatasource ds = Utils.getDatasource();
-                boolean result = initialize(ds.getMasterUrl(), ds.getDbusUser(), ds.getDbusPwd());
-                if (!result) {
-                    result = initialize(ds.getSlaveUrl(), ds.getDbusUser(), ds.getDbusPwd());
-                    if (!result) {
-                        throw new UnintializedException("DBFacadeManager initialized error!");
+                fetcher = fetchers.get(datasource);
+                if (fetcher == null) {
+                    DbusDatasource ds = Utils.getDatasource();
+                    fetcher = initialize(ds.getMasterUrl(), ds.getDbusUser(), ds.getDbusPwd());
+                    if (fetcher == null) {
+                        fetcher = initialize(ds.getSlaveUrl(), ds.getDbusUser(), ds.getDbusPwd());
+                        if (fetcher == null) {
+                            throw new UnintializedException("DBFacadeManager initialized error!");
+                        }
                     }
+                    fetchers.put(datasource, fetcher);
                 }
-                initialized.set(true);
             }
         }
         return fetcher;
     }
 
+    /**
+     * 当前数据源下次获取时重新创建MetaFetcher
+     */
     public static void reset() {
-        initialized.compareAndSet(true, false);
+        fetchers.remove(GlobalCache.currentDatasource());
     }
 }
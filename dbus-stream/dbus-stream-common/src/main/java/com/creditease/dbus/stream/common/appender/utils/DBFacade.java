@@ -28,6 +28,7 @@ import com.creditease.dbus.stream.common.appender.bean.AvroSchema;
 import com.creditease.dbus.stream.common.appender.bean.DataTable;
 import com.creditease.dbus.stream.common.appender.bean.MetaVersion;
 import com.creditease.dbus.stream.common.appender.bean.TabSchema;
+import com.creditease.dbus.stream.common.appender.cache.MetaVersionTimeline;
 import com.google.common.collect.Lists;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,6 +53,10 @@ public class DBFacade {
         this.ds = dataSource;
     }
 
+    public DataSource getDataSource() {
+        return ds;
+    }
+
     /**
      * 获取指定表的schema信息
      *
@@ -197,6 +202,7 @@ public class DBFacade {
 
             conn.commit();
 
+            MetaVersionTimeline.record(version);
         } catch (Exception e) {
             if (conn != null) conn.rollback();
             logger.error("create meta and version error", e);
@@ -442,13 +448,24 @@ public class DBFacade {
         });
     }
 
-    public void saveMeta(long verId, MetaWrapper metaWrapper) throws Exception {
+    /**
+     * 保存version的meta信息,同时在同一个事务中更新version生效的位置(event_offset, event_pos)
+     */
+    public void saveMeta(MetaVersion version, MetaWrapper metaWrapper) throws Exception {
         Connection conn = null;
         PreparedStatement ps = null;
+        long verId = version.getId();
 
         try {
             conn = ds.getConnection();
             conn.setAutoCommit(false);
+            ps = conn.prepareStatement("update t_meta_version set event_offset=?, event_pos=? where id=?");
+            ps.setLong(1, version.getOffset());
+            ps.setLong(2, version.getTrailPos());
+            ps.setLong(3, verId);
+            ps.executeUpdate();
+            ps.close();
+
             // 生成meta信息
             String sql = "insert into t_table_meta(ver_id,column_name,column_id,original_ser,data_type,data_length,data_precision," +
                     "data_scale,nullable,is_pk,pk_position,alter_time,char_length,char_used, internal_column_id, " +
@@ -599,6 +616,23 @@ public class DBFacade {
         return ver;
     }
 
+    /**
+     * 查询指定表最近的若干个meta version,不包含meta信息
+     *
+     * @param tableId t_data_tables 表ID
+     * @param limit   最多返回的记录数
+     * @return 按 event_pos 降序排列的 MetaVersion 列表
+     */
+    public List<MetaVersion> queryMetaVersions(long tableId, int limit) {
+        String sql = "select * from t_meta_version t where t.table_id=? order by t.event_pos desc, t.id desc limit ?";
+        List<Map<String, Object>> list = query(sql, tableId, limit);
+        List<MetaVersion> versions = new ArrayList<>(list.size());
+        for (Map<String, Object> map : list) {
+            versions.add(MetaVersion.parse(map));
+        }
+        return versions;
+    }
+
     public MetaVersion queryMetaVersion(long dsId, String schemaName, String tableName) {
         String sql = "select * from t_meta_version t where t.ds_id = ? and t.schema_name = ? and t.table_name = ? order by t.inner_version desc, t.id desc limit 1";
 
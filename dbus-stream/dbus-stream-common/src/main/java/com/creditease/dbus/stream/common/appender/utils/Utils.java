@@ -20,6 +20,7 @@
 
 package com.creditease.dbus.stream.common.appender.utils;
 
+import com.creditease.dbus.commons.DateTimeCodec;
 import com.creditease.dbus.stream.common.Constants;
 import com.creditease.dbus.stream.common.appender.cache.GlobalCache;
 import com.creditease.dbus.stream.common.appender.enums.Command;
@@ -29,9 +30,7 @@ import com.google.common.base.Strings;
 import org.apache.storm.shade.org.joda.time.DateTime;
 import org.apache.storm.shade.org.joda.time.format.ISODateTimeFormat;
 
-import java.text.DateFormat;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 
 /**
@@ -140,13 +139,6 @@ public final class Utils {
     }
 
     public static long getTimeMills(String timeStr) throws ParseException {
-        String ptn = "yyyy-MM-dd HH:mm:ss.SSS";
-        timeStr = timeStr.substring(0, 23);
-        if (timeStr.length() == 19) {
-            ptn = "yyyy-MM-dd HH:mm:ss";
-        }
-
-        DateFormat df = new SimpleDateFormat(ptn);
-        return df.parse(timeStr).getTime();
+        return DateTimeCodec.parseMillis(timeStr);
     }
 }
@@ -0,0 +1,91 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.stream.common.tools;
+
+/**
+ * spout读取kafka的poll调度,根据在途数据量和最近的消息到达间隔选择poll的阻塞时间。
+ * storm中spout的nextTuple/ack/fail在同一个executor线程中执行,poll阻塞期间ack无法被处理,所以:
+ * 1.在途数据达到上限时不poll,直接返回,由storm的spout等待策略短暂等待后处理ack,容量释放后立刻恢复读取
+ * 2.没有在途数据时阻塞poll,消息到达后poll立即返回,空闲的spout不再空转,延迟只取决于kafka的fetch
+ * 3.有在途数据时只在预计很快有消息到达时短暂阻塞,其余情况不阻塞以便尽快处理ack
+ * 非线程安全,只能在spout的executor线程中使用
+ */
+public class PollScheduler {
+    /** 不需要poll */
+    public static final long SKIP = -1L;
+
+    public static final long DEFAULT_MAX_WAIT_MS = 100L;
+    public static final long DEFAULT_BUSY_WAIT_MS = 2L;
+
+    /** 到达间隔的指数平滑系数 */
+    private static final double SMOOTHING = 0.2;
+
+    private final long maxWaitMs;
+    private final long busyWaitMs;
+    private double interval = Double.MAX_VALUE;
+    private long lastArrival;
+
+    public PollScheduler() {
+        this(DEFAULT_MAX_WAIT_MS, DEFAULT_BUSY_WAIT_MS);
+    }
+
+    /**
+     * @param maxWaitMs 没有在途数据时poll阻塞的最长时间,同时也是spout响应deactivate等事件的最大延迟
+     * @param busyWaitMs 有在途数据时poll阻塞的最长时间,即ack被推迟处理的最大时间
+     */
+    public PollScheduler(long maxWaitMs, long busyWaitMs) {
+        this.maxWaitMs = Math.max(0, maxWaitMs);
+        this.busyWaitMs = Math.max(0, Math.min(busyWaitMs, this.maxWaitMs));
+        this.lastArrival = System.currentTimeMillis();
+    }
+
+    /**
+     * 计算下一次poll的超时时间
+     * @param inFlight 已经发出还没有ack或者fail的数据量,为0时才认为空闲
+     * @param capacity 在途数据量的上限
+     * @return poll的超时时间(毫秒),SKIP表示本次不需要poll
+     */
+    public long timeout(long inFlight, long capacity) {
+        if (inFlight >= capacity) {
+            return SKIP;
+        }
+        // 只有确实没有在途数据时才长时间阻塞; 统计出错为负数时按有在途数据处理,不推迟ack
+        if (inFlight == 0) {
+            return maxWaitMs;
+        }
+        double expected = Math.max(interval, System.currentTimeMillis() - lastArrival);
+        return expected <= busyWaitMs ? (long) Math.ceil(expected) : 0L;
+    }
+
+    /**
+     * 记录poll的结果,更新消息的平均到达间隔
+     * @param count poll返回的消息数
+     */
+    public void polled(int count) {
+        if (count <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        double sample = (double) (now - lastArrival) / count;
+        interval = interval == Double.MAX_VALUE ? sample : interval * (1 - SMOOTHING) + sample * SMOOTHING;
+        lastArrival = now;
+    }
+}
@@ -0,0 +1,54 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.stream.common.appender.bolt.processor.stat;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class HeartBeatPacketTest {
+
+    @Test
+    public void parsesFlatPacket() {
+        HeartBeatPacket packet = HeartBeatPacket.parse(
+                "{\"node\":\"/DBus/HeartBeat/Monitor/ds/schema/table\",\"time\":1490337000995,\"type\":\"checkpoint\",\"txTime\":1490337000990}");
+        assertEquals("/DBus/HeartBeat/Monitor/ds/schema/table", packet.getNode());
+        assertEquals("checkpoint", packet.getType());
+        assertEquals(1490337000995L, packet.getTime());
+        assertEquals(1490337000990L, packet.getTxtime());
+    }
+
+    @Test
+    public void unquotedNullIsNotAString() {
+        HeartBeatPacket packet = HeartBeatPacket.parse("{\"node\":null,\"time\":1490337000995,\"type\":null}");
+        assertNull(packet.getNode());
+        assertNull(packet.getType());
+        assertEquals(1490337000995L, packet.getTime());
+    }
+
+    @Test
+    public void fallsBackOnEscapes() {
+        HeartBeatPacket packet = HeartBeatPacket.parse("{\"node\":\"/a\\/b\",\"time\":1}");
+        assertEquals("/a/b", packet.getNode());
+        assertEquals(1L, packet.getTime());
+    }
+}
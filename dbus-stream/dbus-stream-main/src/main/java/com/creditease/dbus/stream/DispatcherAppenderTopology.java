@@ -26,6 +26,10 @@ import com.creditease.dbus.stream.dispatcher.bout.DispatcherBout;
 import com.creditease.dbus.stream.dispatcher.bout.KafkaProducerBout;
 import com.creditease.dbus.stream.common.Constants;
 import com.creditease.dbus.commons.PropertiesHolder;
+import com.creditease.dbus.commons.ZkService;
+import com.creditease.dbus.stream.plan.ParallelismPlan;
+import com.creditease.dbus.stream.plan.ParallelismPlanner;
+import com.creditease.dbus.stream.plan.StormStageProfiler;
 import com.creditease.dbus.stream.dispatcher.Spout.KafkaConsumerSpout;
 import com.creditease.dbus.stream.appender.spout.DbusKafkaSpout;
 import org.apache.commons.cli.*;
@@ -34,10 +38,18 @@ import org.apache.storm.Config;
 import org.apache.storm.LocalCluster;
 import org.apache.storm.StormSubmitter;
 import org.apache.storm.generated.StormTopology;
+import org.apache.storm.topology.BoltDeclarer;
+import org.apache.storm.topology.ComponentConfigurationDeclarer;
 import org.apache.storm.topology.TopologyBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
 
 public class DispatcherAppenderTopology {
 
@@ -52,7 +64,36 @@ public class DispatcherAppenderTopology {
     private static String appenderTopologyId;
     private static String topologyType;
     private static boolean runAsLocal;
+    private static boolean profile;
+    /** 多数据源模式下各数据源的拓扑名称前缀,单数据源模式为null */
+    private static List<String> datasourcePrefixes;
+    /** 多数据源模式下共用的worker数,不指定时取各数据源方案中的最大值 */
+    private static Integer sharedWorkers;
     private String datasource;
+    private ParallelismPlan plan;
+    private List<Pipeline> pipelines;
+
+    /**
+     * 一个数据源的dispatcher/appender组件集合。多数据源模式下每个数据源在同一个拓扑中拥有独立的一组组件,
+     * 组件id以数据源前缀区分,配置、并行度、控制topic以及暂停/恢复、reload都只作用于本数据源
+     */
+    private static class Pipeline {
+        final String prefix;
+        final String dispatcherTopologyId;
+        final String appenderTopologyId;
+        String datasource;
+        ParallelismPlan plan;
+
+        Pipeline(String prefix, String dispatcherTopologyId, String appenderTopologyId) {
+            this.prefix = prefix;
+            this.dispatcherTopologyId = dispatcherTopologyId;
+            this.appenderTopologyId = appenderTopologyId;
+        }
+
+        String id(String component) {
+            return prefix == null ? component : prefix + "-" + component;
+        }
+    }
 
     public static void main(String[] args) throws Exception {
 
@@ -63,9 +104,12 @@ public class DispatcherAppenderTopology {
 
         DispatcherAppenderTopology topology = new DispatcherAppenderTopology();
 
+        if (profile) {
+            topology.saveProfile();
+            return;
+        }
 
-
-
+        topology.loadPlan();
         StormTopology top = topology.buildTopology();
         topology.start(top, runAsLocal);
     }
@@ -77,6 +121,9 @@ public class DispatcherAppenderTopology {
         options.addOption("tid", "topology_id", true, "the unique id as topology name and root node name in zookeeper.");
         options.addOption("t", "type", true, "the topology you want to start, it can be dispatcher, appender or all. If not exist, both dispatcher and appender will start.");
         options.addOption("l", "local", false, "run as local topology.");
+        options.addOption("p", "profile", false, "collect per-stage throughput of the running topology from storm and save it to zookeeper as the parallelism profile.");
+        options.addOption("ds", "datasources", true, "comma separated topology id prefixes of the datasources hosted together in one topology, topology_id is used as the name of the shared topology.");
+        options.addOption("w", "workers", true, "worker number of the shared topology when datasources is specified.");
         options.addOption("h", "help", false, "print usage().");
 
         CommandLineParser parser = new DefaultParser();
@@ -92,6 +139,7 @@ public class DispatcherAppenderTopology {
             } else {
 
                 runAsLocal = line.hasOption("local");
+                profile = line.hasOption("profile");
                 zookeeper = line.getOptionValue("zookeeper");
                 if(line.hasOption("type")) {
                     topologyType = line.getOptionValue("type");
@@ -118,13 +166,14 @@ public class DispatcherAppenderTopology {
                     return -1;
                 }
 
-                dispatcherTopologyId = StringUtils.join(new String[]{topologyIdPrefix, Constants.TopologyType.DISPATCHER}, "-");
-                appenderTopologyId = StringUtils.join(new String[]{topologyIdPrefix, Constants.TopologyType.APPENDER}, "-");
-
-                if(topologyType.equals(Constants.TopologyType.ALL)) {
-                    topologyId = StringUtils.join(new String[]{topologyIdPrefix, Constants.TopologyType.DISPATCHER, Constants.TopologyType.APPENDER}, "-");
-                } else {
-                    topologyId = StringUtils.join(new String[]{topologyIdPrefix, topologyType}, "-");
+                configure(zookeeper, topologyIdPrefix, topologyType);
+                if (line.hasOption("datasources")) {
+                    if (profile) {
+                        System.err.println("Profile is not supported by the shared topology, please profile each datasource separately.");
+                        return -1;
+                    }
+                    Integer workers = line.hasOption("workers") ? Integer.valueOf(line.getOptionValue("workers")) : null;
+                    configureDatasources(Arrays.asList(StringUtils.split(line.getOptionValue("datasources"), ",")), workers);
                 }
             }
             return 0;
@@ -134,30 +183,178 @@ public class DispatcherAppenderTopology {
         }
     }
 
-    private void initialize(String zkconnect, String root) throws Exception {
+    /**
+     * 设置拓扑的zookeeper地址、名称前缀和类型,本地测试环境可以不经过命令行直接调用
+     */
+    public static void configure(String zkconnect, String topologyIdPrefix, String type) {
+        zookeeper = zkconnect;
+        topologyType = type;
+        dispatcherTopologyId = StringUtils.join(new String[]{topologyIdPrefix, Constants.TopologyType.DISPATCHER}, "-");
+        appenderTopologyId = StringUtils.join(new String[]{topologyIdPrefix, Constants.TopologyType.APPENDER}, "-");
+
+        if(topologyType.equals(Constants.TopologyType.ALL)) {
+            topologyId = StringUtils.join(new String[]{topologyIdPrefix, Constants.TopologyType.DISPATCHER, Constants.TopologyType.APPENDER}, "-");
+        } else {
+            topologyId = StringUtils.join(new String[]{topologyIdPrefix, topologyType}, "-");
+        }
+    }
+
+    /**
+     * 在configure的基础上将多个数据源的组件部署到同一个拓扑中,共用worker进程以及进程中的zookeeper会话和数据库连接池
+     * @param prefixes 各数据源的拓扑名称前缀,与单独部署时的topology_id相同
+     * @param workers 共用的worker数,为null时取各数据源并行度方案中的最大值
+     */
+    public static void configureDatasources(List<String> prefixes, Integer workers) {
+        datasourcePrefixes = new ArrayList<>();
+        for (String prefix : prefixes) {
+            if (StringUtils.isNotBlank(prefix) && !datasourcePrefixes.contains(prefix.trim())) {
+                datasourcePrefixes.add(prefix.trim());
+            }
+        }
+        if (datasourcePrefixes.isEmpty()) {
+            throw new IllegalArgumentException("At least one datasource is required");
+        }
+        sharedWorkers = workers;
+    }
+
+    public static String getTopologyId() {
+        return topologyId;
+    }
+
+    private String initialize(String zkconnect, String root) throws Exception {
         // 初始化配置文件
         PropertiesHolder.initialize(zkconnect, root);
         String configure = Constants.Properties.CONFIGURE;
 
-        this.datasource = PropertiesHolder.getProperties(configure, Constants.ConfigureKey.DATASOURCE_NAME);
+        return PropertiesHolder.getProperties(configure, Constants.ConfigureKey.DATASOURCE_NAME);
+    }
+
+    private boolean withDispatcher() {
+        return topologyType.equals(Constants.TopologyType.ALL) || topologyType.equals(Constants.TopologyType.DISPATCHER);
+    }
+
+    private boolean withAppender() {
+        return topologyType.equals(Constants.TopologyType.ALL) || topologyType.equals(Constants.TopologyType.APPENDER);
+    }
+
+    /**
+     * parallelism配置所在的zookeeper路径,all类型的拓扑使用appender的配置
+     */
+    private String configRoot() {
+        return configRoot(appenderTopologyId, dispatcherTopologyId);
+    }
+
+    private String configRoot(String appenderId, String dispatcherId) {
+        return Constants.ZKPath.ZK_TOPOLOGY_ROOT + "/" + (withAppender() ? appenderId : dispatcherId);
+    }
+
+    private List<String> components() {
+        List<String> components = new ArrayList<>();
+        if (withDispatcher()) {
+            components.add(ParallelismPlanner.DISPATCHER_SPOUT);
+            components.add(ParallelismPlanner.DISPATCHER_BOUT);
+            components.add(ParallelismPlanner.DISPATCHER_PRODUCER);
+        }
+        if (withAppender()) {
+            components.add(ParallelismPlanner.APPENDER_SPOUT);
+            components.add(ParallelismPlanner.APPENDER_DISPATCHER);
+            components.add(ParallelismPlanner.APPENDER_META_FETCHER);
+            components.add(ParallelismPlanner.APPENDER_WRAPPER);
+            components.add(ParallelismPlanner.APPENDER_KAFKA_WRITER);
+            components.add(ParallelismPlanner.APPENDER_HEART_BEAT);
+        }
+        return components;
+    }
+
+    /**
+     * 读取zookeeper中的parallelism配置生成并行度方案
+     */
+    public void loadPlan() throws Exception {
+        pipelines = new ArrayList<>();
+        if (datasourcePrefixes == null) {
+            pipelines.add(loadPipeline(new Pipeline(null, dispatcherTopologyId, appenderTopologyId)));
+        } else {
+            for (String prefix : datasourcePrefixes) {
+                pipelines.add(loadPipeline(new Pipeline(prefix,
+                        StringUtils.join(new String[]{prefix, Constants.TopologyType.DISPATCHER}, "-"),
+                        StringUtils.join(new String[]{prefix, Constants.TopologyType.APPENDER}, "-"))));
+            }
+        }
+        this.plan = pipelines.get(0).plan;
+        this.datasource = pipelines.get(0).datasource;
+    }
+
+    private Pipeline loadPipeline(Pipeline pipeline) throws Exception {
+        String root = configRoot(pipeline.appenderTopologyId, pipeline.dispatcherTopologyId);
+        if (withAppender()) {
+            pipeline.datasource = this.initialize(zookeeper, root);
+        } else {
+            PropertiesHolder.initialize(zookeeper, root);
+        }
+        Properties props = PropertiesHolder.getProperties(Constants.Properties.PARALLELISM);
+        pipeline.plan = new ParallelismPlanner(props).plan(components());
+        logger.info("Parallelism plan of topology {}{}: {}", topologyId,
+                pipeline.prefix == null ? "" : "[" + pipeline.prefix + "]", pipeline.plan);
+        return pipeline;
+    }
+
+    /**
+     * 采集运行中拓扑的统计信息并合并到zookeeper的parallelism配置中,保留手工配置的项
+     */
+    private void saveProfile() throws Exception {
+        Properties measured = new StormStageProfiler().profile(topologyId);
+        if (measured == null) {
+            return;
+        }
+        String path = configRoot() + "/" + Constants.Properties.PARALLELISM + ".properties";
+        try (ZkService zk = new ZkService(zookeeper)) {
+            Properties props = zk.isExists(path) ? zk.getProperties(path) : new Properties();
+            props.putAll(measured);
+            if (zk.isExists(path)) {
+                zk.setProperties(path, props);
+            } else {
+                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                props.store(os, null);
+                zk.createNode(path, os.toByteArray());
+            }
+            logger.info("Parallelism profile saved to {}", path);
+        }
     }
 
-    private StormTopology buildTopology() throws Exception {
+    private BoltDeclarer shuffle(ParallelismPlan plan, BoltDeclarer declarer, String component) {
+        return plan.isLocalShuffle() ? declarer.localOrShuffleGrouping(component) : declarer.shuffleGrouping(component);
+    }
+
+    private DbusGrouping dbusGrouping(ParallelismPlan plan) {
+        return new DbusGrouping(plan.getRebalanceInterval(), plan.getImbalanceRatio());
+    }
+
+    public StormTopology buildTopology() throws Exception {
 
         TopologyBuilder builder = new TopologyBuilder();
+        for (Pipeline pipeline : pipelines) {
+            buildPipeline(builder, pipeline);
+        }
+
+        return builder.createTopology();
+    }
+
+    private void buildPipeline(TopologyBuilder builder, Pipeline p) {
+        ParallelismPlan plan = p.plan;
 
         // 启动类型为all，或者dispatcher
         if(topologyType.equals(Constants.TopologyType.ALL) || topologyType.equals(Constants.TopologyType.DISPATCHER)) {
             /**
              * dispatcher部分
              */
-            builder.setSpout("dispatcher-kafkaConsumerSpout", new KafkaConsumerSpout(), 1);
+            dispatcherConf(p, builder.setSpout(p.id(ParallelismPlanner.DISPATCHER_SPOUT), new KafkaConsumerSpout(),
+                    plan.parallelism(ParallelismPlanner.DISPATCHER_SPOUT)));
 
-            builder.setBolt("dispatcher-DispatcherBout", new DispatcherBout(), 1)
-                    .shuffleGrouping("dispatcher-kafkaConsumerSpout");
+            dispatcherConf(p, shuffle(plan, builder.setBolt(p.id(ParallelismPlanner.DISPATCHER_BOUT), new DispatcherBout(),
+                    plan.parallelism(ParallelismPlanner.DISPATCHER_BOUT)), p.id(ParallelismPlanner.DISPATCHER_SPOUT)));
 
-            builder.setBolt("dispatcher-kafkaProducerBout", new KafkaProducerBout(), 1)
-                    .shuffleGrouping("dispatcher-DispatcherBout");
+            dispatcherConf(p, shuffle(plan, builder.setBolt(p.id(ParallelismPlanner.DISPATCHER_PRODUCER), new KafkaProducerBout(),
+                    plan.parallelism(ParallelismPlanner.DISPATCHER_PRODUCER)), p.id(ParallelismPlanner.DISPATCHER_BOUT)));
         }
 
         // 启动类型为all，或者appender
@@ -165,20 +362,60 @@ public class DispatcherAppenderTopology {
             /**
              * appender部分
              */
-            builder.setSpout("appender-spout", new DbusKafkaSpout(), 1);
-            builder.setBolt("appender-dispatcher", new DispatcherBolt(), 1).shuffleGrouping("appender-spout");
-            builder.setBolt("appender-meta-fetcher", new DbusAppenderBolt(), 3).customGrouping("appender-dispatcher", new DbusGrouping());
-            builder.setBolt("appender-wrapper", new WrapperBolt(), 3).customGrouping("appender-meta-fetcher", new DbusGrouping());
-            builder.setBolt("appender-kafka-writer", new DbusKafkaWriterBolt(), 3).customGrouping("appender-wrapper", new DbusGrouping());
-            builder.setBolt("appender-heart-beat", new DbusHeartBeatBolt(), 1).shuffleGrouping("appender-kafka-writer");
+            appenderConf(p, builder.setSpout(p.id(ParallelismPlanner.APPENDER_SPOUT), new DbusKafkaSpout(), plan.parallelism(ParallelismPlanner.APPENDER_SPOUT)));
+            appenderConf(p, shuffle(plan, builder.setBolt(p.id(ParallelismPlanner.APPENDER_DISPATCHER), new DispatcherBolt(),
+                    plan.parallelism(ParallelismPlanner.APPENDER_DISPATCHER)), p.id(ParallelismPlanner.APPENDER_SPOUT)));
+            appenderConf(p, builder.setBolt(p.id(ParallelismPlanner.APPENDER_META_FETCHER), new DbusAppenderBolt(), plan.parallelism(ParallelismPlanner.APPENDER_META_FETCHER))
+                    .customGrouping(p.id(ParallelismPlanner.APPENDER_DISPATCHER), dbusGrouping(plan)));
+            appenderConf(p, builder.setBolt(p.id(ParallelismPlanner.APPENDER_WRAPPER), new WrapperBolt(), plan.parallelism(ParallelismPlanner.APPENDER_WRAPPER))
+                    .customGrouping(p.id(ParallelismPlanner.APPENDER_META_FETCHER), dbusGrouping(plan)));
+            appenderConf(p, builder.setBolt(p.id(ParallelismPlanner.APPENDER_KAFKA_WRITER), new DbusKafkaWriterBolt(), plan.parallelism(ParallelismPlanner.APPENDER_KAFKA_WRITER))
+                    .customGrouping(p.id(ParallelismPlanner.APPENDER_WRAPPER), dbusGrouping(plan)));
+            appenderConf(p, shuffle(plan, builder.setBolt(p.id(ParallelismPlanner.APPENDER_HEART_BEAT), new DbusHeartBeatBolt(),
+                    plan.parallelism(ParallelismPlanner.APPENDER_HEART_BEAT)), p.id(ParallelismPlanner.APPENDER_KAFKA_WRITER)));
         }
+    }
 
+    /**
+     * 多数据源模式下数据源相关的配置放到组件级别,单数据源模式使用buildConfig中的拓扑级配置
+     */
+    private void dispatcherConf(Pipeline p, ComponentConfigurationDeclarer<?> declarer) {
+        if (p.prefix != null) {
+            declarer.addConfiguration(com.creditease.dbus.commons.Constants.ZOOKEEPER_SERVERS, zookeeper);
+            declarer.addConfiguration(com.creditease.dbus.commons.Constants.TOPOLOGY_ID, p.dispatcherTopologyId);
+            declarer.addConfiguration(Config.TOPOLOGY_MAX_SPOUT_PENDING, p.plan.getMaxSpoutPending());
+        }
+    }
 
-        return builder.createTopology();
+    private void appenderConf(Pipeline p, ComponentConfigurationDeclarer<?> declarer) {
+        if (p.prefix != null) {
+            declarer.addConfiguration(Constants.StormConfigKey.TOPOLOGY_ID, p.appenderTopologyId);
+            declarer.addConfiguration(Constants.StormConfigKey.ZKCONNECT, zookeeper);
+            declarer.addConfiguration(Constants.StormConfigKey.DATASOURCE, p.datasource);
+            declarer.addConfiguration(Config.TOPOLOGY_MAX_SPOUT_PENDING, p.plan.getMaxSpoutPending());
+        }
     }
 
     private void start(StormTopology topology, boolean runAsLocal) throws Exception {
+        Config conf = buildConfig();
+
+        if (runAsLocal) {
+            LocalCluster cluster = new LocalCluster();
+            cluster.submitTopology(topologyId, conf, topology);
+            /*String cmd;
+            do {
+                cmd = System.console().readLine();
+            } while (!cmd.equals("exit"));
+            cluster.shutdown();*/
+        } else {
+            StormSubmitter.submitTopology(topologyId, conf, topology);
+        }
+    }
 
+    public Config buildConfig() {
+        if (datasourcePrefixes != null) {
+            return buildSharedConfig();
+        }
         Config conf = new Config();
 
         // 启动类型为all，或者dispatcher
@@ -199,9 +436,7 @@ public class DispatcherAppenderTopology {
             /**
              * appender配置
              */
-            // 初始化配置文件
-            this.initialize(zookeeper, Constants.ZKPath.ZK_TOPOLOGY_ROOT + "/" + appenderTopologyId);
-
+            // 配置文件已经在loadPlan中初始化
             conf.put(Constants.StormConfigKey.TOPOLOGY_ID, appenderTopologyId);
             conf.put(Constants.StormConfigKey.ZKCONNECT, zookeeper);
             conf.put(Constants.StormConfigKey.DATASOURCE, datasource);
@@ -210,22 +445,32 @@ public class DispatcherAppenderTopology {
         conf.setDebug(true);
 
         //设置worker数
-        conf.setNumWorkers(1);
+        conf.setNumWorkers(plan.getWorkers());
         //设置任务在发出后，但还没处理完成的中间状态任务的最大数量
-        conf.setMaxSpoutPending(100);
+        conf.setMaxSpoutPending(plan.getMaxSpoutPending());
         //设置任务在多久之内没处理完成，就任务这个任务处理失败
         conf.setMessageTimeoutSecs(120);
+        return conf;
+    }
 
-        if (runAsLocal) {
-            LocalCluster cluster = new LocalCluster();
-            cluster.submitTopology(topologyId, conf, topology);
-            /*String cmd;
-            do {
-                cmd = System.console().readLine();
-            } while (!cmd.equals("exit"));
-            cluster.shutdown();*/
-        } else {
-            StormSubmitter.submitTopology(topologyId, conf, topology);
+    /**
+     * 多数据源共用拓扑的配置,数据源相关的配置以及max spout pending已经设置在各个组件上
+     */
+    private Config buildSharedConfig() {
+        Config conf = new Config();
+        int workers = 0;
+        for (Pipeline pipeline : pipelines) {
+            workers = Math.max(workers, pipeline.plan.getWorkers());
+        }
+        if (sharedWorkers != null) {
+            workers = sharedWorkers;
         }
+        logger.info("Topology {} hosts datasources {} with {} workers", topologyId, datasourcePrefixes, workers);
+
+        conf.put(Constants.StormConfigKey.SHARED_PRODUCER, true);
+        conf.setDebug(true);
+        conf.setNumWorkers(workers);
+        conf.setMessageTimeoutSecs(120);
+        return conf;
     }
 }
\ No newline at end of file
@@ -26,6 +26,7 @@ import com.creditease.dbus.commons.CtlMessageResultSender;
 import com.creditease.dbus.commons.PropertiesHolder;
 import com.creditease.dbus.enums.DbusDatasourceType;
 import com.creditease.dbus.stream.appender.exception.InitializationException;
+import com.creditease.dbus.stream.appender.utils.TrackingOutputCollector;
 import com.creditease.dbus.stream.common.Constants;
 import com.creditease.dbus.stream.common.Constants.EmitFields;
 import com.creditease.dbus.stream.common.Constants.StormConfigKey;
@@ -34,7 +35,9 @@ import com.creditease.dbus.stream.common.appender.bolt.processor.BoltCommandHand
 import com.creditease.dbus.stream.common.appender.bolt.processor.BoltCommandHandlerProvider;
 import com.creditease.dbus.stream.common.appender.bolt.processor.BoltHandlerManager;
 import com.creditease.dbus.stream.common.appender.bolt.processor.listener.CommandHandlerListener;
+import com.creditease.dbus.stream.common.appender.config.AppenderConfigHolder;
 import com.creditease.dbus.stream.common.appender.cache.GlobalCache;
+import com.creditease.dbus.stream.common.appender.cache.MetaVersionTimeline;
 import com.creditease.dbus.stream.common.appender.cache.ThreadLocalCache;
 import com.creditease.dbus.stream.common.appender.enums.Command;
 import com.creditease.dbus.stream.common.appender.utils.Utils;
@@ -71,7 +74,8 @@ public class DbusAppenderBolt extends BaseRichBolt implements CommandHandlerList
 
     @Override
     public void prepare(Map conf, TopologyContext context, OutputCollector collector) {
-        this.collector = collector;
+        // ack/fail时通知DbusGrouping表的在途tuple已经处理完成
+        this.collector = new TrackingOutputCollector(context, collector);
         this.context = context;
 
         if (!initialized) {
@@ -129,8 +133,10 @@ public class DbusAppenderBolt extends BaseRichBolt implements CommandHandlerList
         String msg = null;
         try {
             PropertiesHolder.reload();
+            AppenderConfigHolder.reload();
             Command.initialize();
-            ThreadLocalCache.reload();
+            ThreadLocalCache.refresh();
+            MetaVersionTimeline.invalidateAll();
             msg = "appender bolt reload successful!";
             logger.info("Appender bolt was reloaded at:{}", System.currentTimeMillis());
         } catch (Exception e) {
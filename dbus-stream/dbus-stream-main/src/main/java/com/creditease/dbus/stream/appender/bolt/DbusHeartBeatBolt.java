@@ -31,6 +31,7 @@ import com.creditease.dbus.stream.common.appender.bolt.processor.BoltCommandHand
 import com.creditease.dbus.stream.common.appender.bolt.processor.BoltCommandHandlerProvider;
 import com.creditease.dbus.stream.common.appender.bolt.processor.BoltHandlerManager;
 import com.creditease.dbus.stream.common.appender.bolt.processor.listener.HeartbeatHandlerListener;
+import com.creditease.dbus.stream.common.appender.config.AppenderConfigHolder;
 import com.creditease.dbus.stream.common.appender.cache.GlobalCache;
 import com.creditease.dbus.stream.common.appender.cache.ThreadLocalCache;
 import com.creditease.dbus.stream.common.appender.enums.Command;
@@ -70,6 +71,8 @@ public class DbusHeartBeatBolt extends BaseRichBolt implements HeartbeatHandlerL
 
     private BoltHandlerManager handlerManager;
     private TopologyContext context;
+    /** 创建当前producer所使用的配置,reload时据此判断是否需要重建producer */
+    private Properties producerConf;
 
     public void prepare(Map conf, TopologyContext context, OutputCollector collector) {
         this.collector = collector;
@@ -82,6 +85,7 @@ public class DbusHeartBeatBolt extends BaseRichBolt implements HeartbeatHandlerL
             this.zkRoot = Utils.buildZKTopologyPath(topologyId);
             try {
                 PropertiesHolder.initialize(zkconnect, zkRoot);
+                AppenderConfigHolder.reload();
                 producer = createProducer(context.getThisTaskId());
                 topicProvider = new DataOutputTopicProvider();
                 GlobalCache.initialize(datasource);
@@ -111,8 +115,8 @@ public class DbusHeartBeatBolt extends BaseRichBolt implements HeartbeatHandlerL
     }
 
     @Override
-    public void sendHeartbeat(DbusMessage message, String topic, String key) {
-        ProducerRecord<String, String> record = new ProducerRecord<>(topic, key, message.toString());
+    public void sendHeartbeat(String message, String topic, String key) {
+        ProducerRecord<String, String> record = new ProducerRecord<>(topic, key, message);
         producer.send(record);
         //  logger.info("Write heartbeat message to kafka:{topic:{}, key:{}}", record.topic(), record.key());
         //logger.info("Write heartbeat message to kafka:{topic:{}, key:{}, message:{}}", record.topic(), record.key(), record.value());
@@ -133,13 +137,19 @@ public class DbusHeartBeatBolt extends BaseRichBolt implements HeartbeatHandlerL
         try {
             logger.info("Begin to reload local cache!");
             PropertiesHolder.reload();
+            AppenderConfigHolder.reload();
             GlobalCache.initialize(datasource);
-            ThreadLocalCache.reload();
+            ThreadLocalCache.refresh();
             Command.initialize();
-            if (producer != null) {
-                producer.close();
+            if (!producerConf.equals(PropertiesHolder.getProperties(Constants.Properties.PRODUCER_CONFIG))) {
+                if (producer != null) {
+                    producer.close();
+                }
+                this.producer = createProducer(context.getThisTaskId());
+                logger.info("Producer config changed, heartbeat bolt producer recreated.");
+            } else {
+                logger.info("Producer config unchanged, keep the running producer.");
             }
-            this.producer = createProducer(context.getThisTaskId());
             msg = "heartbeat bolt reload successful!";
             logger.info("Heartbeat bolt was reloaded at:{}", System.currentTimeMillis());
         } catch (Exception e) {
@@ -164,6 +174,8 @@ public class DbusHeartBeatBolt extends BaseRichBolt implements HeartbeatHandlerL
 
     private Producer<String, String> createProducer(int taskId) throws Exception {
         Properties props = PropertiesHolder.getProperties(Constants.Properties.PRODUCER_CONFIG);
+        producerConf = new Properties();
+        producerConf.putAll(props);
         Properties properties = new Properties();
         properties.putAll(props);
         properties.setProperty("client.id", this.topologyId + "_heartbeat_" + taskId);
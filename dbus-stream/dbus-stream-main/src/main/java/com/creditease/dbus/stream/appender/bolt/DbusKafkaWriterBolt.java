@@ -21,11 +21,16 @@
 package com.creditease.dbus.stream.appender.bolt;
 
 import com.creditease.dbus.commons.*;
+import com.creditease.dbus.commons.avro.JdbcUmsSchemaRegistry;
+import com.creditease.dbus.commons.avro.UmsAvroCodec;
 import com.creditease.dbus.enums.DbusDatasourceType;
 import com.creditease.dbus.stream.appender.exception.InitializationException;
 import com.creditease.dbus.stream.appender.kafka.DataOutputTopicProvider;
+import com.creditease.dbus.stream.appender.kafka.SharedProducers;
 import com.creditease.dbus.stream.appender.kafka.TopicProvider;
+import com.creditease.dbus.stream.appender.kafka.UmsMessageBatcher;
 import com.creditease.dbus.stream.appender.utils.AppenderMetricReporter;
+import com.creditease.dbus.stream.appender.utils.TrackingOutputCollector;
 import com.creditease.dbus.stream.common.Constants;
 import com.creditease.dbus.stream.common.Constants.EmitFields;
 import com.creditease.dbus.stream.common.Constants.StormConfigKey;
@@ -36,14 +41,18 @@ import com.creditease.dbus.stream.common.appender.bolt.processor.BoltHandlerMana
 import com.creditease.dbus.stream.common.appender.bolt.processor.listener.KafkaBoltHandlerListener;
 import com.creditease.dbus.stream.common.appender.bolt.processor.stat.StatSender;
 import com.creditease.dbus.stream.common.appender.bolt.processor.stat.TableMessageStatReporter;
+import com.creditease.dbus.stream.common.appender.config.AppenderConfig;
+import com.creditease.dbus.stream.common.appender.config.AppenderConfigHolder;
 import com.creditease.dbus.stream.common.appender.cache.GlobalCache;
 import com.creditease.dbus.stream.common.appender.cache.ThreadLocalCache;
 import com.creditease.dbus.stream.common.appender.enums.Command;
+import com.creditease.dbus.stream.common.appender.utils.DBFacadeManager;
 import com.creditease.dbus.stream.common.appender.utils.Utils;
 import com.google.common.base.Joiner;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.storm.task.OutputCollector;
 import org.apache.storm.task.TopologyContext;
 import org.apache.storm.topology.OutputFieldsDeclarer;
@@ -55,10 +64,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Constructor;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by Shrimp on 16/6/2.
@@ -76,32 +89,47 @@ public class DbusKafkaWriterBolt extends BaseRichBolt implements KafkaBoltHandle
     private OutputCollector collector;
     private TopicProvider topicProvider;
     private BoltHandlerManager handlerManager;
-    private Producer<String, String> producer;
+    private volatile Producer<String, byte[]> producer;
     private AppenderMetricReporter reporter;
     //private IndexedEvictingQueue evictingQueue;
     private TopologyContext context;
     private TableMessageStatReporter tableStatReporter;
     private StatSender statSender;
     private String zkconnect;
+    private UmsMessageBatcher batcher;
+    /** ums.output.format为avro时使用,否则为null */
+    private volatile UmsAvroCodec avroCodec;
+    private ScheduledExecutorService lingerTimer;
+    /** 创建当前producer和batcher所使用的配置,reload时据此判断哪些组件需要重建 */
+    private Properties producerConf;
+    private AppenderConfig batcherConf;
+    /** 多数据源共用拓扑中同一worker的writer共用producer */
+    private boolean sharedProducer;
+    /** 配置变更通知中收到的新快照,由executor线程在处理下一个tuple前应用 */
+    private volatile AppenderConfig changedConfig;
+    private AppenderConfigHolder.ConfigChangeListener configListener;
 
     @Override
     public void prepare(Map conf, TopologyContext context, OutputCollector collector) {
-        this.collector = collector;
+        // ack/fail时通知DbusGrouping表的在途tuple已经处理完成
+        this.collector = new TrackingOutputCollector(context, collector);
         this.context = context;
 
         if (!initialized) {
             this.topologyId = (String) conf.get(StormConfigKey.TOPOLOGY_ID);
             this.datasource = (String) conf.get(StormConfigKey.DATASOURCE);
             this.zkRoot = Utils.buildZKTopologyPath(topologyId);
+            this.sharedProducer = Boolean.parseBoolean(String.valueOf(conf.get(StormConfigKey.SHARED_PRODUCER)));
             try {
                 this.zkconnect = (String) conf.get(StormConfigKey.ZKCONNECT);
                 PropertiesHolder.initialize(this.zkconnect, zkRoot);
+                AppenderConfigHolder.reload();
                 GlobalCache.initialize(datasource);
 
-                if (producer != null) {
-                    producer.close();
-                }
+                closeProducer();
                 producer = createProducer();
+                batcher = createBatcher();
+                avroCodec = createAvroCodec();
 
                 topicProvider = new DataOutputTopicProvider();
                 reporter = AppenderMetricReporter.getInstance();
@@ -112,6 +140,14 @@ public class DbusKafkaWriterBolt extends BaseRichBolt implements KafkaBoltHandle
 
                 handlerManager = new BoltHandlerManager(buildProvider());
 
+                // 其他executor reload发布新配置后,本bolt不必等待reload控制消息到达即可切换合并和编码方式
+                configListener = (oldConfig, newConfig) -> {
+                    if (datasource == null || datasource.equals(newConfig.getDatasourceName())) {
+                        changedConfig = newConfig;
+                    }
+                };
+                AppenderConfigHolder.addListener(configListener);
+
                 initialized = true;
             } catch (Exception e) {
                 logger.error(e.getMessage(), e);
@@ -128,7 +164,15 @@ public class DbusKafkaWriterBolt extends BaseRichBolt implements KafkaBoltHandle
         }
 
         try {
+            if (changedConfig != null) {
+                changedConfig = null;
+                applyConfig(AppenderConfigHolder.get());
+            }
             Command cmd = (Command) input.getValueByField(EmitFields.COMMAND);
+            // 心跳、reload等控制消息不能越过已经缓存的数据消息
+            if (batcher != null && cmd != Command.UNKNOWN_CMD) {
+                batcher.flushAll();
+            }
             BoltCommandHandler handler = handlerManager.getHandler(cmd);
             handler.handle(input);
         } catch (Exception e) {
@@ -154,12 +198,23 @@ public class DbusKafkaWriterBolt extends BaseRichBolt implements KafkaBoltHandle
         String msg = null;
         try {
             PropertiesHolder.reload();
-            ThreadLocalCache.reload();
-            if (producer != null) {
-                producer.close();
+            AppenderConfigHolder.reload();
+            ThreadLocalCache.refresh();
+            if (batcher != null) {
+                batcher.flushAll();
             }
-
-            producer = createProducer();
+            if (!producerConf.equals(PropertiesHolder.getProperties(Constants.Properties.PRODUCER_CONFIG))) {
+                Producer<String, byte[]> old = producer;
+                producer = createProducer();
+                if (old != null) {
+                    release(old);
+                }
+                logger.info("Producer config changed, kafka writer bolt producer recreated.");
+            } else {
+                logger.info("Producer config unchanged, keep the running producer.");
+            }
+            changedConfig = null;
+            applyConfig(AppenderConfigHolder.get());
             msg = "kafka write bolt reload successful!";
             logger.info("Kafka writer bolt was reloaded at:{}", System.currentTimeMillis());
         } catch (Exception e) {
@@ -187,9 +242,21 @@ public class DbusKafkaWriterBolt extends BaseRichBolt implements KafkaBoltHandle
             return;
         }
 
-        String message = dbusMessage.toString();
-        ProducerRecord<String, String> record = new ProducerRecord<>(topics.get(0), buildKey(dbusMessage), message);
-        reporter.report(message.getBytes().length, dbusMessage.getPayload().size());
+        if (batcher != null) {
+            batcher.add(topics.get(0), dbusMessage, input);
+            return;
+        }
+
+        byte[] message;
+        try {
+            message = serialize(dbusMessage);
+        } catch (Exception e) {
+            logger.error("Serialize message error, namespace:{}", dbusMessage.getSchema().getNamespace(), e);
+            this.collector.fail(input);
+            return;
+        }
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>(topics.get(0), buildKey(dbusMessage), message);
+        reporter.report(message.length, dbusMessage.getPayload().size());
         Object offsetObj = data.get(EmitData.OFFSET);
         String offset = offsetObj != null ? offsetObj.toString() : "0";
         producer.send(record, (metadata, exception) -> {
@@ -207,6 +274,138 @@ public class DbusKafkaWriterBolt extends BaseRichBolt implements KafkaBoltHandle
         });
     }
 
+    /**
+     * 发送合并后的消息,发送成功后ack所有参与合并的tuple
+     */
+    private void sendMerged(String topic, DbusMessage dbusMessage, List<Tuple> inputs) {
+        byte[] message;
+        try {
+            message = serialize(dbusMessage);
+        } catch (Exception e) {
+            logger.error("Serialize merged message error, namespace:{}", dbusMessage.getSchema().getNamespace(), e);
+            synchronized (this.collector) {
+                for (Tuple input : inputs) {
+                    this.collector.fail(input);
+                }
+            }
+            return;
+        }
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>(topic, buildKey(dbusMessage), message);
+        reporter.report(message.length, dbusMessage.getPayload().size());
+        producer.send(record, (metadata, exception) -> {
+            synchronized (this.collector) {
+                for (Tuple input : inputs) {
+                    if (exception != null) {
+                        this.collector.fail(input);
+                    } else {
+                        this.collector.ack(input);
+                    }
+                }
+            }
+            if (exception != null) {
+                logger.error("Write merged data to kafka error, namespace:{}, tuples:{}!", dbusMessage.getSchema().getNamespace(), inputs.size(), exception);
+            } else {
+                logger.info("kafka-message,merged-tuples:{}, key:{}", inputs.size(), record.key());
+            }
+        });
+    }
+
+    /**
+     * 增量数据消息按ums.output.format编码; 心跳、termination等控制消息始终为json,
+     * 不需要解析avro的下游仍然可以识别。json消息与使用StringSerializer时写入的字节相同
+     */
+    private byte[] serialize(DbusMessage dbusMessage) throws Exception {
+        UmsAvroCodec codec = avroCodec;
+        if (codec != null && DbusMessage.ProtocolType.DATA_INCREMENT_DATA.toString().equals(dbusMessage.getProtocol().getType())) {
+            return codec.encode(dbusMessage);
+        }
+        return dbusMessage.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * ums.output.format为avro时创建二进制UMS编码器, schema注册在dbus管理库的t_avro_schema中
+     */
+    private UmsAvroCodec createAvroCodec() {
+        if (!AppenderConfigHolder.get().isUmsAvroOutput()) {
+            return null;
+        }
+        JdbcUmsSchemaRegistry registry = new JdbcUmsSchemaRegistry(DBFacadeManager.getDbFacade().getDataSource(),
+                Utils.getDatasource().getId());
+        logger.info("Ums output format is avro.");
+        return new UmsAvroCodec(registry);
+    }
+
+    /**
+     * ums.merge.enabled为true时创建UmsMessageBatcher,否则逐条写kafka
+     */
+    private UmsMessageBatcher createBatcher() {
+        AppenderConfig config = AppenderConfigHolder.get();
+        batcherConf = config;
+        if (!config.isUmsMergeEnabled()) {
+            if (lingerTimer != null) {
+                lingerTimer.shutdown();
+                lingerTimer = null;
+            }
+            return null;
+        }
+        UmsMessageBatcher umsBatcher = new UmsMessageBatcher(config.getUmsMergeMaxCount(), config.getUmsMergeMaxSize(),
+                config.getUmsMergeLingerMs(), this::sendMerged);
+        if (lingerTimer != null) {
+            lingerTimer.shutdown();
+        }
+        lingerTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ums-merge-linger-" + context.getThisTaskId());
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1, config.getUmsMergeLingerMs() / 2);
+        lingerTimer.scheduleAtFixedRate(() -> {
+            try {
+                umsBatcher.flushExpired();
+            } catch (Exception e) {
+                logger.error("Flush merged ums message error", e);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+        logger.info("Ums message merge enabled, max count:{}, max size:{}, linger:{}ms", config.getUmsMergeMaxCount(),
+                config.getUmsMergeMaxSize(), config.getUmsMergeLingerMs());
+        return umsBatcher;
+    }
+
+    /**
+     * 按新的配置快照重建发生变化的合并器和编码器,只能在executor线程中调用
+     */
+    private void applyConfig(AppenderConfig config) {
+        if (umsMergeChanged(batcherConf, config)) {
+            if (batcher != null) {
+                batcher.flushAll();
+            }
+            batcher = createBatcher();
+        }
+        if ((avroCodec != null) != config.isUmsAvroOutput()) {
+            avroCodec = createAvroCodec();
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        if (configListener != null) {
+            AppenderConfigHolder.removeListener(configListener);
+        }
+        PropertiesHolder.close();
+        super.cleanup();
+    }
+
+    /**
+     * 判断ums合并相关的配置是否发生了变化
+     */
+    private boolean umsMergeChanged(AppenderConfig prev, AppenderConfig curr) {
+        return prev == null
+                || prev.isUmsMergeEnabled() != curr.isUmsMergeEnabled()
+                || prev.getUmsMergeMaxCount() != curr.getUmsMergeMaxCount()
+                || prev.getUmsMergeMaxSize() != curr.getUmsMergeMaxSize()
+                || prev.getUmsMergeLingerMs() != curr.getUmsMergeLingerMs();
+    }
+
     private String buildKey(DbusMessage dbusMessage) {
         long opts;
         try {
@@ -219,14 +418,37 @@ public class DbusKafkaWriterBolt extends BaseRichBolt implements KafkaBoltHandle
         return Utils.join(".", type, ns, opts + "", "wh_placeholder");
     }
 
-    private Producer<String, String> createProducer() throws Exception {
-        Properties props = PropertiesHolder.getProperties(Constants.Properties.PRODUCER_CONFIG);
+    private Producer<String, byte[]> createProducer() throws Exception {
+        Properties conf = PropertiesHolder.getProperties(Constants.Properties.PRODUCER_CONFIG);
+        producerConf = new Properties();
+        producerConf.putAll(conf);
+        Properties props = new Properties();
+        props.putAll(conf);
+        // json和二进制UMS都以字节写入
+        props.setProperty("value.serializer", ByteArraySerializer.class.getName());
+        if (sharedProducer) {
+            return SharedProducers.acquire(props, "dbus_shared_writer_" + context.getThisTaskId());
+        }
         props.setProperty("client.id", this.topologyId + "_writer_" + context.getThisTaskId());
 
-        Producer<String, String> producer = new KafkaProducer<>(props);
+        Producer<String, byte[]> producer = new KafkaProducer<>(props);
         return producer;
     }
 
+    private void closeProducer() {
+        if (producer != null) {
+            release(producer);
+        }
+    }
+
+    private void release(Producer<String, byte[]> producer) {
+        if (sharedProducer) {
+            SharedProducers.release(producer);
+        } else {
+            producer.close();
+        }
+    }
+
     private BoltCommandHandlerProvider buildProvider() throws Exception {
         /*Set<Class<?>> classes = AnnotationScanner.scan("com.creditease.dbus", BoltCmdHandlerProvider.class, (clazz, annotation) -> {
             BoltCmdHandlerProvider ca = clazz.getAnnotation(BoltCmdHandlerProvider.class);
@@ -258,8 +480,8 @@ public class DbusKafkaWriterBolt extends BaseRichBolt implements KafkaBoltHandle
         @Override
         public void sendStat(String message, Object... args) {
             String key = Joiner.on(".").join(args);
-            String topic = PropertiesHolder.getProperties(Constants.Properties.CONFIGURE, Constants.ConfigureKey.DBUS_STATISTIC_TOPIC);
-            ProducerRecord<String, String> record = new ProducerRecord<>(topic, key, message);
+            String topic = AppenderConfigHolder.get().getDbusStatisticTopic();
+            ProducerRecord<String, byte[]> record = new ProducerRecord<>(topic, key, message.getBytes(StandardCharsets.UTF_8));
             producer.send(record, (metadata, exception) -> {
                 if (exception != null) {
                     logger.error("Encounter error while writing statics message. topic:{}, key:{}, message:{}", topic, key, message, exception);
@@ -32,6 +32,7 @@ import com.creditease.dbus.stream.common.appender.bolt.processor.BoltCommandHand
 import com.creditease.dbus.stream.common.appender.bolt.processor.BoltCommandHandlerProvider;
 import com.creditease.dbus.stream.common.appender.bolt.processor.BoltHandlerManager;
 import com.creditease.dbus.stream.common.appender.bolt.processor.listener.CommandHandlerListener;
+import com.creditease.dbus.stream.common.appender.config.AppenderConfigHolder;
 import com.creditease.dbus.stream.common.appender.cache.GlobalCache;
 import com.creditease.dbus.stream.common.appender.cache.ThreadLocalCache;
 import com.creditease.dbus.stream.common.appender.enums.Command;
@@ -132,7 +133,8 @@ public class DispatcherBolt extends BaseRichBolt implements CommandHandlerListen
         String msg = null;
         try {
             PropertiesHolder.reload();
-            ThreadLocalCache.reload();
+            AppenderConfigHolder.reload();
+            ThreadLocalCache.refresh();
             Command.initialize();
             msg = "dispatcher bolt reload successful!";
             logger.info("Dispatcher bolt was reloaded at:{}", System.currentTimeMillis());
@@ -23,6 +23,7 @@ package com.creditease.dbus.stream.appender.bolt;
 import com.creditease.dbus.commons.*;
 import com.creditease.dbus.enums.DbusDatasourceType;
 import com.creditease.dbus.stream.appender.exception.InitializationException;
+import com.creditease.dbus.stream.appender.utils.TrackingOutputCollector;
 import com.creditease.dbus.stream.common.Constants;
 import com.creditease.dbus.stream.common.Constants.EmitFields;
 import com.creditease.dbus.stream.common.Constants.StormConfigKey;
@@ -31,6 +32,7 @@ import com.creditease.dbus.stream.common.appender.bolt.processor.BoltCommandHand
 import com.creditease.dbus.stream.common.appender.bolt.processor.BoltCommandHandlerProvider;
 import com.creditease.dbus.stream.common.appender.bolt.processor.BoltHandlerManager;
 import com.creditease.dbus.stream.common.appender.bolt.processor.listener.CommandHandlerListener;
+import com.creditease.dbus.stream.common.appender.config.AppenderConfigHolder;
 import com.creditease.dbus.stream.common.appender.cache.GlobalCache;
 import com.creditease.dbus.stream.common.appender.cache.ThreadLocalCache;
 import com.creditease.dbus.stream.common.appender.enums.Command;
@@ -69,10 +71,13 @@ public class WrapperBolt extends BaseRichBolt implements CommandHandlerListener
     private TopologyContext context;
     private String zkconnect;
     private ZkService zkService;
+    /** 创建当前producer所使用的配置,reload时据此判断是否需要重建producer */
+    private Properties producerConf;
 
     @Override
     public void prepare(Map conf, TopologyContext context, OutputCollector collector) {
-        this.collector = collector;
+        // ack/fail时通知DbusGrouping表的在途tuple已经处理完成
+        this.collector = new TrackingOutputCollector(context, collector);
         this.context = context;
 
         if (!initialized) {
@@ -88,6 +93,7 @@ public class WrapperBolt extends BaseRichBolt implements CommandHandlerListener
                 zkService = new ZkService(zkconnect);
 
                 PropertiesHolder.initialize(this.zkconnect, zkRoot);
+                AppenderConfigHolder.reload();
                 GlobalCache.initialize(this.datasource);
 
                 if (producer != null) {
@@ -181,19 +187,19 @@ public class WrapperBolt extends BaseRichBolt implements CommandHandlerListener
         String msg = null;
         try {
             PropertiesHolder.reload();
-            ThreadLocalCache.reload();
-            if (producer != null) {
-                producer.close();
-            }
-
-            producer = createProducer();
-
-            if (zkService != null) {
-                zkService.close();
+            AppenderConfigHolder.reload();
+            ThreadLocalCache.refresh();
+            // 只有producer配置发生变化时才重建producer,zkconnect在拓扑生命周期内不会变化,zkService无需重建
+            if (!producerConf.equals(PropertiesHolder.getProperties(Constants.Properties.PRODUCER_CONFIG))) {
+                if (producer != null) {
+                    producer.close();
+                }
+                producer = createProducer();
+                logger.info("Producer config changed, wrapper bolt producer recreated.");
+            } else {
+                logger.info("Producer config unchanged, keep the running producer.");
             }
 
-            zkService = new ZkService(zkconnect);
-
             msg = "Wrapper write bolt reload successful!";
             logger.info("Wrapper bolt was reloaded at:{}", System.currentTimeMillis());
         } catch (Exception e) {
@@ -212,7 +218,11 @@ public class WrapperBolt extends BaseRichBolt implements CommandHandlerListener
     }
 
     private Producer<String, String> createProducer() throws Exception {
-        Properties props = PropertiesHolder.getProperties(Constants.Properties.PRODUCER_CONFIG);
+        Properties conf = PropertiesHolder.getProperties(Constants.Properties.PRODUCER_CONFIG);
+        producerConf = new Properties();
+        producerConf.putAll(conf);
+        Properties props = new Properties();
+        props.putAll(conf);
         props.setProperty("client.id", this.topologyId + "_wrapper_" + context.getThisTaskId());
 
         Producer<String, String> producer = new KafkaProducer<>(props);
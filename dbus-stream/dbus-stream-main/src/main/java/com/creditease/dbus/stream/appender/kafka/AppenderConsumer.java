@@ -86,6 +86,13 @@ public class AppenderConsumer implements ConsumerListener, Closeable {
         return consumer.poll(0);
     }
 
+    /**
+     * 读取消息,没有消息时最多阻塞timeout毫秒
+     */
+    public ConsumerRecords<String, byte[]> getMessages(long timeout) {
+        return consumer.poll(timeout);
+    }
+
     private Consumer<String, byte[]> createConsumer() throws Exception {
         Properties props = PropertiesHolder.getProperties(Constants.Properties.CONSUMER_CONFIG);
 
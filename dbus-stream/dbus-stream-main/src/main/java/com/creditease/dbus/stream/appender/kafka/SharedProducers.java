@@ -0,0 +1,95 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.stream.appender.kafka;
+
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * worker内共享的KafkaProducer,配置相同的使用者共用一个producer。
+ * KafkaProducer是线程安全的,多数据源共用拓扑时各数据源的executor共用producer可以减少连接、发送线程和内存缓冲。
+ * 使用引用计数管理生命周期,最后一个使用者释放时关闭producer
+ */
+public class SharedProducers {
+    private static Logger logger = LoggerFactory.getLogger(SharedProducers.class);
+
+    private static final Map<Properties, Shared> producers = new HashMap<>();
+    private static final Map<Producer<?, ?>, Shared> owners = new IdentityHashMap<>();
+
+    private static class Shared {
+        final Properties key;
+        final Producer<String, byte[]> producer;
+        int refs;
+
+        Shared(Properties key, Producer<String, byte[]> producer) {
+            this.key = key;
+            this.producer = producer;
+        }
+    }
+
+    /**
+     * 获取与props配置相同的共享producer,不存在时以clientId创建
+     * @param props producer配置,不需要包含client.id
+     * @param clientId 新建producer时使用的client.id
+     */
+    public static synchronized Producer<String, byte[]> acquire(Properties props, String clientId) {
+        Properties key = new Properties();
+        key.putAll(props);
+        key.remove("client.id");
+        Shared shared = producers.get(key);
+        if (shared == null) {
+            Properties conf = new Properties();
+            conf.putAll(key);
+            conf.setProperty("client.id", clientId);
+            shared = new Shared(key, new KafkaProducer<>(conf));
+            producers.put(key, shared);
+            owners.put(shared.producer, shared);
+            logger.info("Shared kafka producer {} created.", clientId);
+        }
+        shared.refs++;
+        return shared.producer;
+    }
+
+    /**
+     * 释放通过acquire获取的producer
+     */
+    public static void release(Producer<String, byte[]> producer) {
+        Shared shared;
+        synchronized (SharedProducers.class) {
+            shared = owners.get(producer);
+            if (shared == null || --shared.refs > 0) {
+                return;
+            }
+            owners.remove(producer);
+            producers.remove(shared.key);
+        }
+        // close会等待缓冲中的消息发送完成,不在锁内执行
+        producer.close();
+        logger.info("Shared kafka producer closed.");
+    }
+}
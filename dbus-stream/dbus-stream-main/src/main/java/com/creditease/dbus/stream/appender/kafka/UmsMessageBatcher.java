@@ -0,0 +1,170 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.stream.appender.kafka;
+
+import com.creditease.dbus.commons.DbusMessage;
+import org.apache.storm.tuple.Tuple;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 将同一个topic、同一个namespace(包含版本号)的连续增量ums消息合并为一条消息写kafka,
+ * 合并后的payload数或者大小达到上限、或者等待时间超过linger时发送,
+ * 合并消息发送成功后ack所有参与合并的tuple.
+ * payload按照接收顺序追加,同一namespace的ums_id_顺序保持不变.
+ */
+public class UmsMessageBatcher {
+
+    /**
+     * 合并消息的发送者
+     */
+    public interface Sender {
+        void send(String topic, DbusMessage message, List<Tuple> inputs);
+    }
+
+    private final int maxCount;
+    private final int maxSize;
+    private final long lingerMs;
+    private final Sender sender;
+    private final Map<String, Batch> batches = new LinkedHashMap<>();
+
+    private static class Batch {
+        final String topic;
+        final DbusMessage message;
+        final List<Tuple> inputs = new ArrayList<>();
+        final long deadline;
+        int size;
+
+        Batch(String topic, DbusMessage message, long deadline) {
+            this.topic = topic;
+            this.message = message;
+            this.deadline = deadline;
+        }
+    }
+
+    public UmsMessageBatcher(int maxCount, int maxSize, long lingerMs, Sender sender) {
+        this.maxCount = maxCount;
+        this.maxSize = maxSize;
+        this.lingerMs = lingerMs;
+        this.sender = sender;
+    }
+
+    public synchronized void add(String topic, DbusMessage message, Tuple input) {
+        String key = topic + "/" + message.getSchema().getNamespace();
+        Batch batch = batches.get(key);
+
+        // 非增量数据消息(如termination)不合并,发送前先把同一namespace已经缓存的消息发出去
+        if (!DbusMessage.ProtocolType.DATA_INCREMENT_DATA.toString().equals(message.getProtocol().getType())) {
+            flush(key);
+            List<Tuple> inputs = new ArrayList<>(1);
+            inputs.add(input);
+            sender.send(topic, message, inputs);
+            return;
+        }
+
+        // 追加前检查上限,追加后会超过上限时先把已经缓存的消息发出去,单条消息本身超过上限时单独发送
+        int size = payloadSize(message);
+        if (batch != null && (!sameSchema(batch.message, message)
+                || batch.message.getPayload().size() + message.getPayload().size() > maxCount
+                || batch.size + size > maxSize)) {
+            flush(key);
+            batch = null;
+        }
+
+        if (batch == null) {
+            batch = new Batch(topic, message, System.currentTimeMillis() + lingerMs);
+            batches.put(key, batch);
+        } else {
+            batch.message.getPayload().addAll(message.getPayload());
+        }
+        batch.inputs.add(input);
+        batch.size += size;
+
+        if (batch.message.getPayload().size() >= maxCount || batch.size >= maxSize) {
+            flush(key);
+        }
+    }
+
+    /**
+     * 发送等待时间已经超过linger的合并消息
+     */
+    public synchronized void flushExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Batch> it = batches.values().iterator();
+        while (it.hasNext()) {
+            Batch batch = it.next();
+            if (batch.deadline <= now) {
+                it.remove();
+                sender.send(batch.topic, batch.message, batch.inputs);
+            }
+        }
+    }
+
+    public synchronized void flushAll() {
+        for (Batch batch : batches.values()) {
+            sender.send(batch.topic, batch.message, batch.inputs);
+        }
+        batches.clear();
+    }
+
+    private void flush(String key) {
+        Batch batch = batches.remove(key);
+        if (batch != null) {
+            sender.send(batch.topic, batch.message, batch.inputs);
+        }
+    }
+
+    private static boolean sameSchema(DbusMessage m1, DbusMessage m2) {
+        DbusMessage.Schema s1 = m1.getSchema();
+        DbusMessage.Schema s2 = m2.getSchema();
+        if (s1.getBatchId() != s2.getBatchId() || s1.getFields().size() != s2.getFields().size()) {
+            return false;
+        }
+        for (int i = 0; i < s1.getFields().size(); i++) {
+            DbusMessage.Field f1 = s1.field(i);
+            DbusMessage.Field f2 = s2.field(i);
+            if (!f1.getName().equals(f2.getName()) || f1.dataType() != f2.dataType()
+                    || f1.isNullable() != f2.isNullable() || f1.isEncoded() != f2.isEncoded()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按字符数估算payload的大小,避免为了计算大小而序列化消息
+     */
+    private static int payloadSize(DbusMessage message) {
+        int size = 0;
+        for (DbusMessage.Payload payload : message.getPayload()) {
+            for (Object value : payload.getTuple()) {
+                if (value != null) {
+                    size += value.toString().length();
+                }
+            }
+        }
+        return size;
+    }
+}
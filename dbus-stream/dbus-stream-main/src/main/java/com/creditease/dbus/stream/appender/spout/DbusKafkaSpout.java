@@ -27,12 +27,15 @@ import com.creditease.dbus.stream.common.appender.spout.processor.AbstractMessag
 import com.creditease.dbus.stream.common.appender.spout.processor.CtrlMessagePostOperation;
 import com.creditease.dbus.stream.common.appender.spout.processor.RecordProcessListener;
 import com.creditease.dbus.stream.appender.spout.queue.MessageStatusQueueManager;
+import com.creditease.dbus.stream.common.appender.config.AppenderConfig;
+import com.creditease.dbus.stream.common.appender.config.AppenderConfigHolder;
 import com.creditease.dbus.stream.common.appender.cache.GlobalCache;
 import com.creditease.dbus.stream.common.appender.cache.ThreadLocalCache;
 import com.creditease.dbus.stream.appender.exception.InitializationException;
 import com.creditease.dbus.stream.common.appender.utils.Utils;
 import com.creditease.dbus.stream.common.appender.bean.EmitData;
 import com.creditease.dbus.stream.common.appender.enums.Command;
+import com.creditease.dbus.stream.common.tools.PollScheduler;
 import com.creditease.dbus.commons.ControlMessage;
 import com.creditease.dbus.commons.PropertiesHolder;
 import com.creditease.dbus.enums.DbusDatasourceType;
@@ -43,6 +46,7 @@ import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.storm.Config;
 import org.apache.storm.spout.SpoutOutputCollector;
 import org.apache.storm.task.TopologyContext;
 import org.apache.storm.topology.OutputFieldsDeclarer;
@@ -57,7 +61,6 @@ import java.io.UnsupportedEncodingException;
 import java.util.*;
 import java.util.Properties;
 import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 
 import static com.creditease.dbus.stream.common.Constants.*;
 
@@ -79,6 +82,15 @@ public class DbusKafkaSpout extends BaseRichSpout implements RecordProcessListen
     private int rCount = 0;
     private int MAX_FLOW_THRESHOLD;
     private int flowBytes = 0;
+    private boolean flowLimited = false;
+    /** 最近一次收到ack/fail的时间,在途数据从0开始增加时也重新计时 */
+    private long lastAckTime;
+    /** 超过这个时间没有收到ack/fail时认为在途数据量统计有误,清零,取消息超时时间的2倍 */
+    private long flowResetIdleMs = 60000L;
+    private PollScheduler pollScheduler;
+    /** 配置变更通知中收到的新快照,由spout线程在下一次nextTuple中应用 */
+    private volatile AppenderConfig changedConfig;
+    private AppenderConfigHolder.ConfigChangeListener configListener;
 
     private AppenderConsumer consumer;
     private SpoutOutputCollector collector;
@@ -101,6 +113,11 @@ public class DbusKafkaSpout extends BaseRichSpout implements RecordProcessListen
         this.datasource = (String) conf.get(StormConfigKey.DATASOURCE);
         this.zkconnect = (String) conf.get(StormConfigKey.ZKCONNECT);
         this.zkRoot = Utils.buildZKTopologyPath(topologyId);
+        this.lastAckTime = System.currentTimeMillis();
+        Object messageTimeout = conf.get(Config.TOPOLOGY_MESSAGE_TIMEOUT_SECS);
+        if (messageTimeout instanceof Number) {
+            this.flowResetIdleMs = ((Number) messageTimeout).longValue() * 2000L;
+        }
 
         // consumer 订阅的topic列表
         if (!initialized) {
@@ -111,6 +128,12 @@ public class DbusKafkaSpout extends BaseRichSpout implements RecordProcessListen
                 mvInitializer = new MetaVersionInitializer();
                 status = new ReloadStatus();
                 reload();
+                configListener = (oldConfig, newConfig) -> {
+                    if (datasource == null || datasource.equals(newConfig.getDatasourceName())) {
+                        changedConfig = newConfig;
+                    }
+                };
+                AppenderConfigHolder.addListener(configListener);
 
                 logger.info(getClass().getName() + " Initialized!");
             } catch (Exception e) {
@@ -124,9 +147,16 @@ public class DbusKafkaSpout extends BaseRichSpout implements RecordProcessListen
     @Override
     public void nextTuple() {
         if (!reloadSpout()) return;  // 判断是否重新加载了缓存,如果重新加载则直接返回
-        if (flowLimitation()) return; // 如果读取的流量过大则要sleep一下
+        if (changedConfig != null) {
+            changedConfig = null;
+            applyConfig(AppenderConfigHolder.get());
+        }
+        releaseStaleFlow();
+        long timeout = pollScheduler.timeout(flowBytes, MAX_FLOW_THRESHOLD);
+        if (flowLimitation(timeout)) return; // 如果读取的流量过大则返回,等待ack释放流量
         // 读取kafka消息
-        ConsumerRecords<String, byte[]> records = consumer.getMessages();
+        ConsumerRecords<String, byte[]> records = consumer.getMessages(timeout);
+        pollScheduler.polled(records.count());
 
         if (records.isEmpty()) {
             bubble();
@@ -208,9 +238,10 @@ public class DbusKafkaSpout extends BaseRichSpout implements RecordProcessListen
     private void reload() throws Exception {
 
         PropertiesHolder.reload();
+        AppenderConfig config = AppenderConfigHolder.reload();
         // 加载缓存
         GlobalCache.refreshCache();
-        ThreadLocalCache.reload();
+        ThreadLocalCache.refresh();
 
         datasourceType = GlobalCache.getDatasourceType();
         //TODO 在spout中初始化 MetaVersionInitializer 并不合适, 应该在web端管理功能完善后转移到web端添加数据源时初始化
@@ -231,11 +262,19 @@ public class DbusKafkaSpout extends BaseRichSpout implements RecordProcessListen
         }
         this.producer = createProducer();
         this.msgQueueMgr = new MessageStatusQueueManager();
-        this.MAX_FLOW_THRESHOLD = PropertiesHolder.getIntegerValue(Constants.Properties.CONFIGURE, ConfigureKey.SPOUT_MAX_FLOW_THRESHOLD);
+        applyConfig(config);
 //        this.initialLoadTableNs = PropertiesHolder.getProperties(Constants.Properties.CONFIGURE, Constants.ConfigureKey.FULLDATA_REQUEST_SRC);
 //        this.metaEventTableNs = PropertiesHolder.getProperties(Constants.Properties.CONFIGURE, ConfigureKey.META_EVENT_SRC);
     }
 
+    /**
+     * 应用流量控制相关的配置,只能在spout线程中调用
+     */
+    private void applyConfig(AppenderConfig config) {
+        this.MAX_FLOW_THRESHOLD = config.getSpoutMaxFlowThreshold();
+        this.pollScheduler = new PollScheduler(config.getSpoutPollMaxWaitMs(), PollScheduler.DEFAULT_BUSY_WAIT_MS);
+    }
+
     @Override
     public void emitData(List<Object> values, Object msgId) {
         if (msgId != null && msgId instanceof ConsumerRecord) {
@@ -264,12 +303,16 @@ public class DbusKafkaSpout extends BaseRichSpout implements RecordProcessListen
 
     @Override
     public void reduceFlowSize(int recordSize) {
-        this.flowBytes -= recordSize;
+        // 统计出错(如重复扣减)时不允许出现负数
+        this.flowBytes = Math.max(0, this.flowBytes - recordSize);
         logger.debug("reduce flow size:{}", this.flowBytes);
     }
 
     @Override
     public void increaseFlowSize(int recordSize) {
+        if (this.flowBytes == 0) {
+            lastAckTime = System.currentTimeMillis();
+        }
         this.flowBytes += recordSize;
     }
 
@@ -282,6 +325,7 @@ public class DbusKafkaSpout extends BaseRichSpout implements RecordProcessListen
     public void ack(Object msgId) {
         if (msgId != null && ConsumerRecord.class.isInstance(msgId)) {
             ConsumerRecord<String, byte[]> record = getMessageId(msgId);
+            lastAckTime = System.currentTimeMillis();
             reduceFlowSize(record.serializedValueSize());
 
             // 标记处理成功并获取commit点
@@ -314,6 +358,7 @@ public class DbusKafkaSpout extends BaseRichSpout implements RecordProcessListen
                 consumer.resumeTopic(record.topic(), message);
                 logger.warn("Spout receive 'fail' when process FULL_DATA_PULL_REQ. Resume to read data from topic {}", record.topic());
             }
+            lastAckTime = System.currentTimeMillis();
             this.reduceFlowSize(record.serializedValueSize());
 
             // 标记处理失败,获取seek点
@@ -332,12 +377,16 @@ public class DbusKafkaSpout extends BaseRichSpout implements RecordProcessListen
 
     @Override
     public void close() {
+        if (configListener != null) {
+            AppenderConfigHolder.removeListener(configListener);
+        }
         try {
             consumer.close();
             super.close();
         } catch (IOException e) {
             logger.error("Close consumer error!", e);
         }
+        PropertiesHolder.close();
     }
 
     @Override
@@ -348,30 +397,45 @@ public class DbusKafkaSpout extends BaseRichSpout implements RecordProcessListen
     public void deactivate() {
     }
 
-    private boolean flowLimitation() {
-        if (flowBytes >= MAX_FLOW_THRESHOLD) {
-            logger.info("Flow control: Spout gets {} bytes data.", flowBytes);
-            try {
-                TimeUnit.MILLISECONDS.sleep(100);
-            } catch (InterruptedException e) {
-                logger.error(e.getMessage(), e);
+    /**
+     * 流量超过阈值时不再读取kafka,直接返回由storm处理ack,
+     * ack和nextTuple在同一个线程中执行,流量释放后下一次nextTuple即可恢复读取
+     */
+    private boolean flowLimitation(long timeout) {
+        if (timeout == PollScheduler.SKIP) {
+            if (!flowLimited) {
+                logger.info("Flow control: Spout gets {} bytes data.", flowBytes);
+                flowLimited = true;
             }
             return true;
         }
+        if (flowLimited) {
+            logger.info("Flow control released: Spout gets {} bytes data.", flowBytes);
+            flowLimited = false;
+        }
         return false;
     }
 
+    /**
+     * poll没有读到数据,空闲时poll已经阻塞等待过,不需要再sleep
+     */
     private void bubble() {
         rCount++;
         if (rCount == 10000) {
             logger.info("Spout running...");
             rCount = 0;
-            flowBytes = 0; // 容错,避免出现数据处理完成或者失败,没有成功的减少flowBytes数的情况导致实际流量变小的问题
         }
-        try {
-            TimeUnit.MILLISECONDS.sleep(10);
-        } catch (InterruptedException e) {
-            logger.warn(e.getMessage(), e);
+    }
+
+    /**
+     * 容错: 消息超时后storm一定会调用ack或fail,有在途数据却超过两倍消息超时时间没有收到ack/fail,
+     * 说明有数据处理完成或者失败后没有减少flowBytes,清零以免实际流量变小甚至停止读取
+     */
+    private void releaseStaleFlow() {
+        if (flowBytes > 0 && System.currentTimeMillis() - lastAckTime > flowResetIdleMs) {
+            logger.warn("No ack received in {} ms, reset flow size {} to 0.", flowResetIdleMs, flowBytes);
+            flowBytes = 0;
+            lastAckTime = System.currentTimeMillis();
         }
     }
 
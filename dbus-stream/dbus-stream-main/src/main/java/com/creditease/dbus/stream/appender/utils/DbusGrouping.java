@@ -17,7 +17,6 @@
  * limitations under the License.
  * >>
  */
-
 package com.creditease.dbus.stream.appender.utils;
 
 import com.creditease.dbus.stream.common.Constants;
@@ -33,19 +32,49 @@ import java.util.List;
 
 /**
  * 1.判断emit数据的最后一个字段是否为0, 如果为0则发给所有的task
- * 2.不满足条件1的情况,按照第一个字段hash code与task数取余选择task
+ * 2.不满足条件1的情况,按照第一个字段(schema.table)通过TableRouter选择task,同一张表在同一时刻只会发给一个task
+ * 3.下游task全部在当前worker中时,TableRouter会在表的在途tuple全部ack后按负载迁移表,否则使用固定的一致性hash路由
  * Created by Shrimp on 16/8/2.
  */
 public class DbusGrouping implements CustomStreamGrouping {
     private Logger logger = LoggerFactory.getLogger(getClass());
+
+    /** 负载统计和再平衡的周期 */
+    private static final long DEFAULT_REBALANCE_INTERVAL = 10000L;
+    /** 最高负载超过平均负载的倍数时触发再平衡 */
+    private static final double DEFAULT_IMBALANCE_RATIO = 1.25;
+
+    private final long rebalanceInterval;
+    private final double imbalanceRatio;
+
     private List<List<Integer>> choices;
     private List<Integer> allTasks;
+    private TableRouter router;
 
     public DbusGrouping() {
+        this(DEFAULT_REBALANCE_INTERVAL, DEFAULT_IMBALANCE_RATIO);
+    }
+
+    public DbusGrouping(long rebalanceInterval, double imbalanceRatio) {
+        this.rebalanceInterval = rebalanceInterval;
+        this.imbalanceRatio = imbalanceRatio;
     }
 
     @Override
     public void prepare(WorkerTopologyContext context, GlobalStreamId stream, List<Integer> targetTasks) {
+        initChoices(targetTasks);
+        if (context.getThisWorkerTasks().containsAll(targetTasks)) {
+            String component = context.getComponentId(targetTasks.get(0));
+            router = TableRouter.shared(context.getStormId(), component, allTasks, rebalanceInterval, imbalanceRatio);
+        } else {
+            // 下游task分布在多个worker时无法感知ack,热点表只能停留在hash环分配的task上
+            logger.warn("Target tasks {} of {} are not all in this worker {}, table rebalancing disabled, hot tables stay on their hashed task.",
+                    targetTasks, stream, context.getThisWorkerTasks());
+            router = TableRouter.fixed(allTasks);
+        }
+    }
+
+    private void initChoices(List<Integer> targetTasks) {
         choices = new ArrayList<>(targetTasks.size());
         allTasks = new ArrayList<>(targetTasks.size());
         for (Integer i : targetTasks) {
@@ -61,12 +90,7 @@ public class DbusGrouping implements CustomStreamGrouping {
             return allTasks;
         }
 
-        String groupField = (String) values.get(0);
-        // 为了保证能够将DispatcherDefaultHandler能将schema.table.heartbeat和schema.table,分到相同的task上,这里讲heartbeat后缀截掉
-        if (last.equals(Constants.EmitFields.EMIT_HEARTBEAT)) {
-            groupField = groupField.substring(0, groupField.length() - Constants.EmitFields.HEARTBEAT_FIELD_SUFFIX.length());
-        }
-        List<Integer> result = choices.get(Math.abs(groupField.hashCode()) % choices.size());
-        return result;
+        String groupField = TableRouter.groupKey((String) values.get(0), last);
+        return choices.get(router.route(groupField, values));
     }
 }
@@ -0,0 +1,268 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.stream.appender.utils;
+
+import com.creditease.dbus.stream.common.Constants;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.apache.storm.tuple.Tuple;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 表到下游task的路由表,同一个worker中同一个拓扑发往同一个component的所有DbusGrouping共享一个TableRouter,
+ * 保证不同上游task对同一张表做出相同的路由决定.
+ * 1.新出现的表按照一致性hash环选择task
+ * 2.定期按每张表的tuple数(指数平滑)统计各个task的负载,负载不均衡时把热点task上处于安全点的表迁移到负载最低的task
+ * 3.安全点是指该表已经发出的tuple全部被下游ack或者fail(由TrackingOutputCollector上报),迁移不会破坏表内顺序.
+ *   在途tuple按emit的values对象逐条登记:worker内传递的tuple与grouping看到的是同一个values对象,
+ *   其他上游或者其他分组方式发来的tuple不会被误认为是本表的在途数据
+ */
+public class TableRouter {
+    private static Logger logger = LoggerFactory.getLogger(TableRouter.class);
+
+    /** 每个task在hash环上的虚拟节点数 */
+    private static final int VIRTUAL_NODES = 64;
+    /** 每张表负载的指数平滑系数 */
+    private static final double SMOOTHING = 0.2;
+
+    private static final HashFunction HASH = Hashing.murmur3_32();
+
+    private static final ConcurrentMap<String, TableRouter> routers = new ConcurrentHashMap<>();
+
+    private final List<Integer> tasks;
+    private final TreeMap<Integer, Integer> ring;
+    private final Map<String, Route> routes;
+    /** 已经路由但尚未ack/fail的tuple,按values对象的引用登记 */
+    private final Map<Object, Pending> pending;
+    private final boolean rebalanceEnabled;
+    private final long rebalanceInterval;
+    private final double imbalanceRatio;
+    private long windowStart;
+
+    /**
+     * 单张表的路由状态
+     */
+    private static class Route {
+        volatile int choice;
+        long count;
+        double load;
+        final AtomicLong inFlight = new AtomicLong();
+
+        Route(int choice) {
+            this.choice = choice;
+        }
+    }
+
+    /**
+     * 单条在途tuple,同一个values对象可能被多个stream各路由一次
+     */
+    private static class Pending {
+        final Route route;
+        int emits;
+
+        Pending(Route route) {
+            this.route = route;
+        }
+    }
+
+    TableRouter(List<Integer> tasks, boolean rebalanceEnabled, long rebalanceInterval, double imbalanceRatio) {
+        this.tasks = tasks;
+        this.rebalanceEnabled = rebalanceEnabled;
+        this.rebalanceInterval = rebalanceInterval;
+        this.imbalanceRatio = imbalanceRatio;
+        this.ring = new TreeMap<>();
+        this.routes = new ConcurrentHashMap<>();
+        this.pending = new IdentityHashMap<>();
+        for (int idx = 0; idx < tasks.size(); idx++) {
+            for (int v = 0; v < VIRTUAL_NODES; v++) {
+                ring.put(hash("task-" + tasks.get(idx) + "#" + v), idx);
+            }
+        }
+    }
+
+    /**
+     * 获取指定拓扑中发往指定component的共享路由表,不存在时创建
+     */
+    public static TableRouter shared(String stormId, String component, List<Integer> tasks, long rebalanceInterval, double imbalanceRatio) {
+        return routers.computeIfAbsent(routerKey(stormId, component), c -> new TableRouter(tasks, true, rebalanceInterval, imbalanceRatio));
+    }
+
+    /**
+     * 创建不共享、不做再平衡的路由表,用于下游task不全在当前worker中的情况,
+     * 此时无法感知下游的ack,只能使用固定的一致性hash路由
+     */
+    public static TableRouter fixed(List<Integer> tasks) {
+        return new TableRouter(tasks, false, 0, 0);
+    }
+
+    /**
+     * 下游bolt ack或者fail一个tuple时调用,只有经过该路由表路由的tuple才会减少对应表的在途计数
+     */
+    public static void completed(String stormId, String component, Tuple input) {
+        TableRouter router = routers.get(routerKey(stormId, component));
+        if (router != null) {
+            router.ack(input.getValues());
+        }
+    }
+
+    private static String routerKey(String stormId, String component) {
+        return stormId + "/" + component;
+    }
+
+    /**
+     * 为了保证能够将schema.table.heartbeat和schema.table分到相同的task上,这里将heartbeat后缀截掉
+     */
+    public static String groupKey(String groupField, Object emitType) {
+        if (emitType.equals(Constants.EmitFields.EMIT_HEARTBEAT)) {
+            return groupField.substring(0, groupField.length() - Constants.EmitFields.HEARTBEAT_FIELD_SUFFIX.length());
+        }
+        return groupField;
+    }
+
+    /**
+     * 返回表对应的task在tasks列表中的下标,values为emit的tuple,用于跟踪该tuple的ack
+     */
+    public int route(String key, Object values) {
+        return route(key, values, System.currentTimeMillis());
+    }
+
+    synchronized int route(String key, Object values, long now) {
+        if (windowStart == 0) {
+            windowStart = now;
+        } else if (rebalanceEnabled && now - windowStart >= rebalanceInterval) {
+            rebalance();
+            windowStart = now;
+        }
+        Route route = routes.get(key);
+        if (route == null) {
+            route = new Route(ringChoice(key));
+            routes.put(key, route);
+        }
+        route.count++;
+        if (rebalanceEnabled) {
+            Pending p = pending.get(values);
+            if (p == null) {
+                p = new Pending(route);
+                pending.put(values, p);
+            }
+            p.emits++;
+            p.route.inFlight.incrementAndGet();
+        }
+        return route.choice;
+    }
+
+    synchronized void ack(Object values) {
+        Pending p = pending.get(values);
+        if (p == null) {
+            return;
+        }
+        if (--p.emits == 0) {
+            pending.remove(values);
+        }
+        p.route.inFlight.decrementAndGet();
+    }
+
+    boolean isRebalanceEnabled() {
+        return rebalanceEnabled;
+    }
+
+    /**
+     * 按平滑后的tuple数计算各个task的负载,把最热task上处于安全点的表依次迁移到最冷的task,
+     * 直到负载比例回到阈值以内或者没有可迁移的表
+     */
+    private void rebalance() {
+        int size = tasks.size();
+        double[] load = new double[size];
+        double total = 0;
+        Iterator<Route> it = routes.values().iterator();
+        while (it.hasNext()) {
+            Route route = it.next();
+            route.load = route.load * (1 - SMOOTHING) + route.count * SMOOTHING;
+            route.count = 0;
+            // 长时间没有数据的表不再保留路由状态,再次出现时重新按hash环分配
+            if (route.load < 1 && route.inFlight.get() == 0) {
+                it.remove();
+                continue;
+            }
+            load[route.choice] += route.load;
+            total += route.load;
+        }
+        if (size < 2 || total == 0) {
+            return;
+        }
+        double mean = total / size;
+
+        while (true) {
+            int hot = 0, cold = 0;
+            for (int i = 1; i < size; i++) {
+                if (load[i] > load[hot]) hot = i;
+                if (load[i] < load[cold]) cold = i;
+            }
+            if (load[hot] <= mean * imbalanceRatio) {
+                break;
+            }
+            // 只迁移能够降低最大负载的表,优先迁移负载最大的表
+            String candidate = null;
+            double candidateLoad = 0;
+            for (Map.Entry<String, Route> entry : routes.entrySet()) {
+                Route route = entry.getValue();
+                if (route.choice != hot || route.inFlight.get() != 0) {
+                    continue;
+                }
+                if (route.load > candidateLoad && load[cold] + route.load < load[hot]) {
+                    candidate = entry.getKey();
+                    candidateLoad = route.load;
+                }
+            }
+            if (candidate == null) {
+                break;
+            }
+            routes.get(candidate).choice = cold;
+            load[hot] -= candidateLoad;
+            load[cold] += candidateLoad;
+            logger.info("Table {} moved from task {} to task {}, load:{}", candidate, tasks.get(hot), tasks.get(cold), Arrays.toString(load));
+        }
+    }
+
+    int ringChoice(String key) {
+        Map.Entry<Integer, Integer> entry = ring.ceilingEntry(hash(key));
+        if (entry == null) {
+            entry = ring.firstEntry();
+        }
+        return entry.getValue();
+    }
+
+    private static int hash(String key) {
+        return HASH.hashString(key, StandardCharsets.UTF_8).asInt();
+    }
+}
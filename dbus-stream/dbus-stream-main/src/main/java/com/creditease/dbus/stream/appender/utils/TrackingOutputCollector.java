@@ -0,0 +1,52 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.stream.appender.utils;
+
+import org.apache.storm.task.IOutputCollector;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.task.TopologyContext;
+import org.apache.storm.tuple.Tuple;
+
+/**
+ * 在ack和fail时通知TableRouter,用于判断表的在途tuple是否已经全部处理完成
+ */
+public class TrackingOutputCollector extends OutputCollector {
+    private final String stormId;
+    private final String component;
+
+    public TrackingOutputCollector(TopologyContext context, IOutputCollector delegate) {
+        super(delegate);
+        this.stormId = context.getStormId();
+        this.component = context.getThisComponentId();
+    }
+
+    @Override
+    public void ack(Tuple input) {
+        super.ack(input);
+        TableRouter.completed(stormId, component, input);
+    }
+
+    @Override
+    public void fail(Tuple input) {
+        super.fail(input);
+        TableRouter.completed(stormId, component, input);
+    }
+}
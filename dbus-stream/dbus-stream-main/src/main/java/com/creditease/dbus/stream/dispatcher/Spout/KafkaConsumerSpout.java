@@ -22,6 +22,7 @@ package com.creditease.dbus.stream.dispatcher.Spout;
 
 import avro.shaded.com.google.common.collect.Lists;
 import com.creditease.dbus.stream.common.DataSourceInfo;
+import com.creditease.dbus.stream.common.tools.PollScheduler;
 import com.creditease.dbus.stream.dispatcher.helper.DBHelper;
 import com.creditease.dbus.commons.Constants;
 import com.creditease.dbus.commons.ControlType;
@@ -59,7 +60,9 @@ public class KafkaConsumerSpout extends BaseRichSpout {
 
     private Map conf = null;
     private SpoutOutputCollector collector = null;
+    private static final int MAX_EXECUTING_COUNT = 30;
     private int executingCount = 0;
+    private PollScheduler pollScheduler = new PollScheduler();
 
     private int suppressLoggingCount = 0;
     private ConsumerRecord<String, byte[]> reloadRecord = null;
@@ -204,7 +207,8 @@ public class KafkaConsumerSpout extends BaseRichSpout {
         try {
             //流量控制, 防止内存溢出
             // 目前采用条来控制，其实应该用大小控制更好
-            if (executingCount >= 30) {
+            long timeout = pollScheduler.timeout(executingCount, MAX_EXECUTING_COUNT);
+            if (timeout == PollScheduler.SKIP) {
                 if (canPrintNow()) {
                     logger.warn(String.format("Flow Control: Spout executing %d records(offset=%d)!!!",
                             executingCount, consumer.position(dataTopicPartition)));
@@ -223,7 +227,9 @@ public class KafkaConsumerSpout extends BaseRichSpout {
             }
 
             long before = System.currentTimeMillis();
-            ConsumerRecords<String, byte[]> records = consumer.poll(0);     // 快速取，如果没有就立刻返回
+            // 没有在途数据时阻塞等待新消息，有在途数据时尽快返回以便处理ack
+            ConsumerRecords<String, byte[]> records = consumer.poll(timeout);
+            pollScheduler.polled(records.count());
             if (records.count() == 0) {
                 if (canPrintNow()) {
                     logger.info(String.format("Spout running.  executingCount = %d, offset=%d",
@@ -232,7 +238,7 @@ public class KafkaConsumerSpout extends BaseRichSpout {
                 return;
             }
             long after = System.currentTimeMillis();
-            logger.info(String.format("Spout got %d records......, poll() used_time: %d ms",  records.count(), after - before));
+            logger.info(String.format("Spout got %d records......, poll(%d) used_time: %d ms",  records.count(), timeout, after - before));
 
             for (ConsumerRecord<String, byte[]> record : records) {
                 if (record.topic().equals(dsInfo.getCtrlTopic())) {
@@ -0,0 +1,102 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.stream.plan;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 拓扑提交时使用的并行度方案
+ */
+public class ParallelismPlan {
+    private int workers;
+    private int maxSpoutPending;
+    private long rebalanceInterval;
+    private double imbalanceRatio;
+    private boolean localShuffle;
+    private Map<String, Integer> parallelism = new LinkedHashMap<>();
+
+    /**
+     * 获取组件的executor数,未规划的组件返回1
+     */
+    public int parallelism(String component) {
+        Integer n = parallelism.get(component);
+        return n == null ? 1 : n;
+    }
+
+    public void setParallelism(String component, int n) {
+        parallelism.put(component, n);
+    }
+
+    public int totalExecutors() {
+        int total = 0;
+        for (Integer n : parallelism.values()) {
+            total += n;
+        }
+        return total;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    public int getMaxSpoutPending() {
+        return maxSpoutPending;
+    }
+
+    public void setMaxSpoutPending(int maxSpoutPending) {
+        this.maxSpoutPending = maxSpoutPending;
+    }
+
+    public long getRebalanceInterval() {
+        return rebalanceInterval;
+    }
+
+    public void setRebalanceInterval(long rebalanceInterval) {
+        this.rebalanceInterval = rebalanceInterval;
+    }
+
+    public double getImbalanceRatio() {
+        return imbalanceRatio;
+    }
+
+    public void setImbalanceRatio(double imbalanceRatio) {
+        this.imbalanceRatio = imbalanceRatio;
+    }
+
+    public boolean isLocalShuffle() {
+        return localShuffle;
+    }
+
+    public void setLocalShuffle(boolean localShuffle) {
+        this.localShuffle = localShuffle;
+    }
+
+    @Override
+    public String toString() {
+        return "{workers:" + workers + ", maxSpoutPending:" + maxSpoutPending + ", rebalanceInterval:" + rebalanceInterval
+                + ", imbalanceRatio:" + imbalanceRatio + ", localShuffle:" + localShuffle + ", parallelism:" + parallelism + "}";
+    }
+}
@@ -0,0 +1,217 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.stream.plan;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * 根据zookeeper中的parallelism配置规划拓扑的worker数、各组件executor数、maxSpoutPending以及分组参数。
+ * parallelism配置可以手工维护,也可以通过StormStageProfiler从运行中的拓扑采集,配置项如下:
+ * <pre>
+ * input.rate                    数据源的峰值输入速率(tuple/s)
+ * stage.[component].input.rate  组件的实际输入速率,未配置时使用input.rate
+ * stage.[component].rate        单个executor满负荷时的处理速率(tuple/s)
+ * stage.[component].latency.ms  单个tuple在组件中的平均处理时间
+ * stage.[component].parallelism 直接指定组件的executor数
+ * complete.latency.ms           spout发出的tuple完整处理的平均时间
+ * headroom                      容量冗余系数,默认1.5
+ * max.parallelism               单个组件最大executor数,默认16
+ * executors.per.worker          每个worker承载的executor数,默认16
+ * max.workers                   最大worker数,默认4
+ * workers / max.spout.pending   直接指定worker数和maxSpoutPending
+ * grouping.rebalance.interval.ms / grouping.imbalance.ratio / grouping.local.shuffle  DbusGrouping及shuffle分组参数
+ * </pre>
+ * 没有parallelism配置时使用原有的固定设置
+ */
+public class ParallelismPlanner {
+    private static Logger logger = LoggerFactory.getLogger(ParallelismPlanner.class);
+
+    public static final String DISPATCHER_SPOUT = "dispatcher-kafkaConsumerSpout";
+    public static final String DISPATCHER_BOUT = "dispatcher-DispatcherBout";
+    public static final String DISPATCHER_PRODUCER = "dispatcher-kafkaProducerBout";
+    public static final String APPENDER_SPOUT = "appender-spout";
+    public static final String APPENDER_DISPATCHER = "appender-dispatcher";
+    public static final String APPENDER_META_FETCHER = "appender-meta-fetcher";
+    public static final String APPENDER_WRAPPER = "appender-wrapper";
+    public static final String APPENDER_KAFKA_WRITER = "appender-kafka-writer";
+    public static final String APPENDER_HEART_BEAT = "appender-heart-beat";
+
+    /**
+     * spout以及使用shuffle分组、需要保证消息顺序的组件只能有一个executor
+     */
+    private static final Set<String> PINNED = new HashSet<>(Arrays.asList(DISPATCHER_SPOUT, DISPATCHER_BOUT,
+            DISPATCHER_PRODUCER, APPENDER_SPOUT, APPENDER_DISPATCHER, APPENDER_HEART_BEAT));
+
+    private static final Map<String, Integer> DEFAULT_PARALLELISM = new HashMap<>();
+
+    static {
+        DEFAULT_PARALLELISM.put(APPENDER_META_FETCHER, 3);
+        DEFAULT_PARALLELISM.put(APPENDER_WRAPPER, 3);
+        DEFAULT_PARALLELISM.put(APPENDER_KAFKA_WRITER, 3);
+    }
+
+    private static final int DEFAULT_WORKERS = 1;
+    private static final int DEFAULT_MAX_SPOUT_PENDING = 100;
+    private static final int MAX_SPOUT_PENDING_LIMIT = 20000;
+    private static final long DEFAULT_REBALANCE_INTERVAL = 10000L;
+    private static final double DEFAULT_IMBALANCE_RATIO = 1.25;
+    /** 利用率超过该值时输出扩容提示 */
+    private static final double BUSY_THRESHOLD = 0.8;
+
+    private Properties profile;
+
+    public ParallelismPlanner(Properties profile) {
+        this.profile = profile == null ? new Properties() : profile;
+    }
+
+    /**
+     * 为拓扑中的组件生成并行度方案
+     *
+     * @param components 拓扑中包含的组件
+     */
+    public ParallelismPlan plan(Collection<String> components) {
+        ParallelismPlan plan = new ParallelismPlan();
+        double headroom = getDouble("headroom", 1.5);
+        int maxParallelism = getInt("max.parallelism", 16);
+
+        for (String component : components) {
+            plan.setParallelism(component, parallelism(component, headroom, maxParallelism));
+        }
+
+        int workers = getInt("workers", 0);
+        if (workers <= 0) {
+            if (profile.isEmpty()) {
+                workers = DEFAULT_WORKERS;
+            } else {
+                int perWorker = Math.max(1, getInt("executors.per.worker", 16));
+                workers = clamp((plan.totalExecutors() + perWorker - 1) / perWorker, 1, getInt("max.workers", 4));
+            }
+        }
+        plan.setWorkers(workers);
+        plan.setMaxSpoutPending(maxSpoutPending(components, headroom));
+        plan.setRebalanceInterval(getLong("grouping.rebalance.interval.ms", DEFAULT_REBALANCE_INTERVAL));
+        plan.setImbalanceRatio(getDouble("grouping.imbalance.ratio", DEFAULT_IMBALANCE_RATIO));
+        // 多个worker时shuffle分组优先选择同一worker内的task,减少跨进程传输
+        String localShuffle = profile.getProperty("grouping.local.shuffle");
+        plan.setLocalShuffle(localShuffle == null ? workers > 1 : Boolean.parseBoolean(localShuffle.trim()));
+
+        hint(plan, components);
+        return plan;
+    }
+
+    private int parallelism(String component, double headroom, int maxParallelism) {
+        int fixed = getInt(stageKey(component, "parallelism"), 0);
+        if (PINNED.contains(component)) {
+            if (fixed > 1) {
+                logger.warn("Component {} must keep message order, parallelism {} ignored.", component, fixed);
+            }
+            return 1;
+        }
+        if (fixed > 0) {
+            return fixed;
+        }
+        double input = inputRate(component);
+        double rate = getDouble(stageKey(component, "rate"), 0);
+        if (input > 0 && rate > 0) {
+            return clamp((int) Math.ceil(input * headroom / rate), 1, maxParallelism);
+        }
+        Integer n = DEFAULT_PARALLELISM.get(component);
+        return n == null ? 1 : n;
+    }
+
+    /**
+     * 按Little定律估算在途tuple数: 输入速率 * 完整处理时间 * 冗余系数
+     */
+    private int maxSpoutPending(Collection<String> components, double headroom) {
+        int fixed = getInt("max.spout.pending", 0);
+        if (fixed > 0) {
+            return fixed;
+        }
+        double input = getDouble("input.rate", 0);
+        double latency = getDouble("complete.latency.ms", 0);
+        if (latency <= 0) {
+            for (String component : components) {
+                latency += getDouble(stageKey(component, "latency.ms"), 0);
+            }
+        }
+        if (input <= 0 || latency <= 0) {
+            return DEFAULT_MAX_SPOUT_PENDING;
+        }
+        return clamp((int) Math.ceil(input * latency / 1000 * headroom), DEFAULT_MAX_SPOUT_PENDING, MAX_SPOUT_PENDING_LIMIT);
+    }
+
+    private void hint(ParallelismPlan plan, Collection<String> components) {
+        for (String component : components) {
+            double input = inputRate(component);
+            double rate = getDouble(stageKey(component, "rate"), 0);
+            if (input <= 0 || rate <= 0) continue;
+            int n = plan.parallelism(component);
+            double utilization = input / (rate * n);
+            if (utilization > BUSY_THRESHOLD) {
+                if (PINNED.contains(component)) {
+                    logger.warn("Component {} is pinned to 1 executor and its utilization is {}, it limits the topology throughput.",
+                            component, String.format("%.2f", utilization));
+                } else {
+                    logger.warn("Component {} utilization is {} with {} executors, consider raising max.parallelism or {}.",
+                            component, String.format("%.2f", utilization), n, stageKey(component, "parallelism"));
+                }
+            }
+        }
+    }
+
+    private double inputRate(String component) {
+        double input = getDouble(stageKey(component, "input.rate"), 0);
+        return input > 0 ? input : getDouble("input.rate", 0);
+    }
+
+    public static String stageKey(String component, String key) {
+        return "stage." + component + "." + key;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private int getInt(String key, int defaultValue) {
+        String value = profile.getProperty(key);
+        return StringUtils.isBlank(value) ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private long getLong(String key, long defaultValue) {
+        String value = profile.getProperty(key);
+        return StringUtils.isBlank(value) ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    private double getDouble(String key, double defaultValue) {
+        String value = profile.getProperty(key);
+        return StringUtils.isBlank(value) ? defaultValue : Double.parseDouble(value.trim());
+    }
+}
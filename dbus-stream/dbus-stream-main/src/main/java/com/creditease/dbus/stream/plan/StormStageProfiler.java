@@ -0,0 +1,195 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.stream.plan;
+
+import org.apache.storm.generated.BoltStats;
+import org.apache.storm.generated.ClusterSummary;
+import org.apache.storm.generated.ExecutorStats;
+import org.apache.storm.generated.ExecutorSummary;
+import org.apache.storm.generated.GlobalStreamId;
+import org.apache.storm.generated.Nimbus;
+import org.apache.storm.generated.SpoutStats;
+import org.apache.storm.generated.TopologyInfo;
+import org.apache.storm.generated.TopologySummary;
+import org.apache.storm.utils.NimbusClient;
+import org.apache.storm.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * 从nimbus读取运行中拓扑最近10分钟的executor统计,生成ParallelismPlanner使用的parallelism配置
+ */
+public class StormStageProfiler {
+    private static Logger logger = LoggerFactory.getLogger(StormStageProfiler.class);
+
+    /** storm统计的时间窗口,单位秒 */
+    private static final String WINDOW = "600";
+    private static final String DEFAULT_STREAM = "default";
+
+    /**
+     * 采集拓扑的各组件统计
+     *
+     * @param topologyName 拓扑名称
+     * @return 拓扑未运行时返回null
+     */
+    public Properties profile(String topologyName) throws Exception {
+        NimbusClient client = NimbusClient.getConfiguredClient(Utils.readStormConfig());
+        try {
+            Nimbus.Client nimbus = client.getClient();
+            String topologyId = null;
+            ClusterSummary summary = nimbus.getClusterInfo();
+            for (TopologySummary topology : summary.get_topologies()) {
+                if (topology.get_name().equals(topologyName)) {
+                    topologyId = topology.get_id();
+                    break;
+                }
+            }
+            if (topologyId == null) {
+                logger.warn("Topology {} is not running, nothing to profile.", topologyName);
+                return null;
+            }
+            return profile(nimbus.getTopologyInfo(topologyId));
+        } finally {
+            client.close();
+        }
+    }
+
+    private Properties profile(TopologyInfo info) {
+        Map<String, Stage> stages = new HashMap<>();
+        Map<String, Double> spoutRates = new HashMap<>();
+        double completeLatency = 0;
+        long acked = 0;
+
+        for (ExecutorSummary executor : info.get_executors()) {
+            ExecutorStats stats = executor.get_stats();
+            String component = executor.get_component_id();
+            if (stats == null || component.startsWith("__")) continue;
+            double seconds = Math.max(1, Math.min(Integer.parseInt(WINDOW), executor.get_uptime_secs()));
+
+            if (stats.get_specific().is_set_spout()) {
+                long emitted = value(stats.get_emitted(), DEFAULT_STREAM);
+                spoutRates.merge(component, emitted / seconds, Double::sum);
+                SpoutStats spout = stats.get_specific().get_spout();
+                Map<String, Long> ackedMap = spout.get_acked().get(WINDOW);
+                Map<String, Double> latencyMap = spout.get_complete_ms_avg().get(WINDOW);
+                if (ackedMap != null && latencyMap != null) {
+                    for (Map.Entry<String, Long> entry : ackedMap.entrySet()) {
+                        Double latency = latencyMap.get(entry.getKey());
+                        if (latency != null) {
+                            completeLatency += latency * entry.getValue();
+                            acked += entry.getValue();
+                        }
+                    }
+                }
+            } else if (stats.get_specific().is_set_bolt()) {
+                BoltStats bolt = stats.get_specific().get_bolt();
+                Map<GlobalStreamId, Long> executed = bolt.get_executed().get(WINDOW);
+                Map<GlobalStreamId, Double> latency = bolt.get_execute_ms_avg().get(WINDOW);
+                if (executed == null || latency == null) continue;
+                Stage stage = stages.computeIfAbsent(component, k -> new Stage());
+                for (Map.Entry<GlobalStreamId, Long> entry : executed.entrySet()) {
+                    Double ms = latency.get(entry.getKey());
+                    if (ms == null) continue;
+                    stage.executed += entry.getValue();
+                    stage.busyMs += ms * entry.getValue();
+                }
+                stage.inputRate += executedOf(executed) / seconds;
+            }
+        }
+
+        Properties props = new Properties();
+        props.setProperty("input.rate", format(entryRate(spoutRates)));
+        if (acked > 0) {
+            props.setProperty("complete.latency.ms", format(completeLatency / acked));
+        }
+        for (Map.Entry<String, Stage> entry : stages.entrySet()) {
+            Stage stage = entry.getValue();
+            if (stage.executed == 0) continue;
+            double latency = stage.busyMs / stage.executed;
+            props.setProperty(ParallelismPlanner.stageKey(entry.getKey(), "input.rate"), format(stage.inputRate));
+            props.setProperty(ParallelismPlanner.stageKey(entry.getKey(), "latency.ms"), format(latency));
+            if (latency > 0) {
+                props.setProperty(ParallelismPlanner.stageKey(entry.getKey(), "rate"), format(1000 / latency));
+            }
+        }
+        logger.info("Profile of topology {}: {}", info.get_name(), props);
+        return props;
+    }
+
+    /**
+     * 拓扑的输入速率只统计入口spout:all类型的拓扑中appender spout消费的是dispatcher的输出,
+     * 累加所有spout会重复计算,因此有dispatcher spout时只统计dispatcher spout,否则统计appender spout
+     */
+    private static double entryRate(Map<String, Double> spoutRates) {
+        for (String component : spoutRates.keySet()) {
+            if (isComponent(component, ParallelismPlanner.DISPATCHER_SPOUT)) {
+                return rateOf(spoutRates, ParallelismPlanner.DISPATCHER_SPOUT);
+            }
+        }
+        return rateOf(spoutRates, ParallelismPlanner.APPENDER_SPOUT);
+    }
+
+    /**
+     * 多个数据源共用一个拓扑时组件id带有数据源前缀,各数据源的速率相加
+     */
+    private static double rateOf(Map<String, Double> spoutRates, String spout) {
+        double total = 0;
+        for (Map.Entry<String, Double> entry : spoutRates.entrySet()) {
+            if (isComponent(entry.getKey(), spout)) {
+                total += entry.getValue();
+            }
+        }
+        return total;
+    }
+
+    private static boolean isComponent(String id, String component) {
+        return id.equals(component) || id.endsWith("-" + component);
+    }
+
+    private static long executedOf(Map<GlobalStreamId, Long> executed) {
+        long total = 0;
+        for (Long n : executed.values()) {
+            total += n;
+        }
+        return total;
+    }
+
+    private static long value(Map<String, Map<String, Long>> windows, String stream) {
+        Map<String, Long> map = windows.get(WINDOW);
+        if (map == null) return 0;
+        Long n = map.get(stream);
+        return n == null ? 0 : n;
+    }
+
+    private static String format(double value) {
+        return String.valueOf(Math.round(value * 100) / 100.0);
+    }
+
+    private static class Stage {
+        long executed;
+        double busyMs;
+        double inputRate;
+    }
+}
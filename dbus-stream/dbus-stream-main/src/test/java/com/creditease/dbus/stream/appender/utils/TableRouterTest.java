@@ -0,0 +1,170 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.stream.appender.utils;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class TableRouterTest {
+    private static final List<Integer> TASKS = Arrays.asList(1, 2, 3);
+    private static final long INTERVAL = 1000L;
+
+    private TableRouter router;
+    private String hot1;
+    private String hot2;
+
+    @Before
+    public void setUp() {
+        router = new TableRouter(TASKS, true, INTERVAL, 1.25);
+        // 找到两张恰好hash到同一个task的表
+        hot1 = "schema.table_0";
+        int first = router.ringChoice(hot1);
+        for (int i = 1; hot2 == null; i++) {
+            if (router.ringChoice("schema.table_" + i) == first) {
+                hot2 = "schema.table_" + i;
+            }
+        }
+    }
+
+    @Test
+    public void hotTablesOnOneTaskAreSplit() {
+        List<Object> t1 = tuple(hot1);
+        List<Object> t2 = tuple(hot2);
+        assertEquals(router.route(hot1, t1, 1), router.route(hot2, t2, 1));
+        router.ack(t1);
+        router.ack(t2);
+
+        long now = drive(1, 3 * INTERVAL, true);
+        assertNotEquals(router.route(hot1, tuple(hot1), now), router.route(hot2, tuple(hot2), now));
+    }
+
+    @Test
+    public void tableWithInFlightTuplesIsNotMoved() {
+        int task = router.route(hot1, tuple(hot1), 1);
+        router.route(hot2, tuple(hot2), 1);
+
+        drive(1, 3 * INTERVAL, false);
+        assertEquals(task, router.route(hot1, tuple(hot1), 3 * INTERVAL + 2));
+        assertEquals(task, router.route(hot2, tuple(hot2), 3 * INTERVAL + 2));
+    }
+
+    @Test
+    public void ackOfUnroutedTupleDoesNotReleaseTable() {
+        int task = router.route(hot1, tuple(hot1), 1);
+        router.route(hot2, tuple(hot2), 1);
+
+        // 下游收到的其他tuple(例如其他分组方式发来的同名表数据)被ack,不能抵消在途计数
+        long now = 1;
+        for (; now < 3 * INTERVAL; now += 10) {
+            List<Object> t1 = tuple(hot1);
+            List<Object> t2 = tuple(hot2);
+            router.route(hot1, t1, now);
+            router.route(hot2, t2, now);
+            router.ack(t1);
+            router.ack(t2);
+            router.ack(tuple(hot1));
+            router.ack(tuple(hot2));
+        }
+        assertEquals(task, router.route(hot1, tuple(hot1), now));
+        assertEquals(task, router.route(hot2, tuple(hot2), now));
+    }
+
+    @Test
+    public void tupleRoutedTwiceNeedsTwoAcks() {
+        List<Object> t1 = tuple(hot1);
+        List<Object> t2 = tuple(hot2);
+        int task = router.route(hot1, t1, 1);
+        router.route(hot1, t1, 1);
+        router.route(hot2, t2, 1);
+        router.ack(t1);
+
+        long now = drive(1, 3 * INTERVAL, true);
+        assertEquals(task, routeAndAck(hot1, now));
+        assertEquals(task, routeAndAck(hot2, now));
+
+        router.ack(t1);
+        router.ack(t2);
+        now = drive(now, now + 3 * INTERVAL, true);
+        assertNotEquals(routeAndAck(hot1, now), routeAndAck(hot2, now));
+    }
+
+    @Test
+    public void routeIsStableWithinWindow() {
+        int task = router.route(hot1, tuple(hot1), 1);
+        for (long now = 2; now < INTERVAL; now += 10) {
+            List<Object> t1 = tuple(hot1);
+            assertEquals(task, router.route(hot1, t1, now));
+            router.ack(t1);
+        }
+    }
+
+    @Test
+    public void fixedRouterFollowsHashRing() {
+        TableRouter fixed = TableRouter.fixed(TASKS);
+        long now = 1;
+        for (int i = 0; i < 1000; i++, now += 10) {
+            assertEquals(fixed.ringChoice(hot1), fixed.route(hot1, tuple(hot1), now));
+            assertEquals(fixed.ringChoice(hot2), fixed.route(hot2, tuple(hot2), now));
+        }
+    }
+
+    /**
+     * 两张热点表每10ms各到达一条tuple,ack为true时下游立刻处理完成
+     */
+    private long drive(long from, long to, boolean ack) {
+        long now = from;
+        for (; now < to; now += 10) {
+            List<Object> t1 = tuple(hot1);
+            List<Object> t2 = tuple(hot2);
+            router.route(hot1, t1, now);
+            router.route(hot2, t2, now);
+            if (ack) {
+                router.ack(t1);
+                router.ack(t2);
+            }
+        }
+        return now;
+    }
+
+    private int routeAndAck(String table, long now) {
+        List<Object> values = tuple(table);
+        int task = router.route(table, values, now);
+        router.ack(values);
+        return task;
+    }
+
+    /**
+     * 每次emit都是新的values对象,内容相同也是不同的tuple
+     */
+    private static List<Object> tuple(String table) {
+        List<Object> values = new ArrayList<>();
+        values.add(table);
+        values.add("data");
+        return values;
+    }
+}
@@ -24,7 +24,6 @@ import com.alibaba.otter.canal.protocol.CanalEntry.Column;
 import com.alibaba.otter.canal.protocol.CanalEntry.RowData;
 import com.creditease.dbus.commons.DbusMessage;
 import com.creditease.dbus.commons.MetaWrapper;
-import com.creditease.dbus.commons.PropertiesHolder;
 import com.creditease.dbus.commons.meta.MetaComparator;
 import com.creditease.dbus.commons.meta.MetaCompareResult;
 import com.creditease.dbus.commons.meta.MysqlMetaComparator;
@@ -34,6 +33,8 @@ import com.creditease.dbus.stream.common.appender.bolt.processor.BoltCommandHand
 import com.creditease.dbus.stream.common.appender.bolt.processor.MetaEventWarningSender;
 import com.creditease.dbus.stream.common.appender.bolt.processor.MetaVerController;
 import com.creditease.dbus.stream.common.appender.bolt.processor.listener.CommandHandlerListener;
+import com.creditease.dbus.stream.common.appender.config.AppenderConfigHolder;
+import com.creditease.dbus.stream.common.appender.cache.MetaVersionTimeline;
 import com.creditease.dbus.stream.common.appender.cache.ThreadLocalCache;
 import com.creditease.dbus.stream.common.appender.enums.Command;
 import com.creditease.dbus.stream.common.appender.bean.DataTable;
@@ -113,7 +114,7 @@ public class MaDefaultHandler implements BoltCommandHandler {
         DataTable dataTable = ThreadLocalCache.get(Constants.CacheNames.DATA_TABLES, Utils.buildDataTableCacheKey(dbSchema, tableName));
         if (dataTable == null) {
             return false;
-        } else if ((dbSchema + "." + tableName).equalsIgnoreCase(PropertiesHolder.getProperties(Constants.Properties.CONFIGURE, Constants.ConfigureKey.HEARTBEAT_SRC))) {
+        } else if ((dbSchema + "." + tableName).equalsIgnoreCase(AppenderConfigHolder.get().getHeartbeatSrc())) {
             return true;
         } else {
             return !dataTable.isAbort();
@@ -173,7 +174,9 @@ public class MaDefaultHandler implements BoltCommandHandler {
             version.setMeta(meta);
             version.setOffset(offset);
             version.setTrailPos(Long.parseLong(msgEntry.getEntryHeader().getPos()));
-            DBFacadeManager.getDbFacade().saveMeta(version.getId(), meta);
+            // 位置和meta一起持久化,保证时间线与t_meta_version一致
+            DBFacadeManager.getDbFacade().saveMeta(version, meta);
+            MetaVersionTimeline.record(version);
 
             BoltCommandHandlerHelper.clearMetaChangeFlag(header.getSchemaName(), header.getTableName());
         }
@@ -22,10 +22,10 @@ package com.creditease.dbus.stream.mysql.appender.bolt.processor.dispatcher;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.otter.canal.protocol.CanalEntry.RowData;
-import com.creditease.dbus.commons.PropertiesHolder;
 import com.creditease.dbus.stream.common.Constants;
 import com.creditease.dbus.stream.common.appender.bolt.processor.BoltCommandHandler;
 import com.creditease.dbus.stream.common.appender.bolt.processor.listener.CommandHandlerListener;
+import com.creditease.dbus.stream.common.appender.config.AppenderConfigHolder;
 import com.creditease.dbus.stream.common.appender.enums.Command;
 import com.creditease.dbus.stream.common.appender.bean.EmitData;
 import com.creditease.dbus.stream.common.appender.utils.PairWrapper;
@@ -66,7 +66,7 @@ public class MdDefaultHandler implements BoltCommandHandler {
         this.emitData = emitData;
     	List<MessageEntry> datas = emitData.get(EmitData.GENERIC_DATA_LIST);
     	Command cmd = (Command) tuple.getValueByField(Constants.EmitFields.COMMAND);
-        String heartbeatNs = PropertiesHolder.getProperties(Constants.Properties.CONFIGURE, Constants.ConfigureKey.HEARTBEAT_SRC);
+        String heartbeatNs = AppenderConfigHolder.get().getHeartbeatSrc();
         groupSend(datas, heartbeatNs, cmd);
     }
     
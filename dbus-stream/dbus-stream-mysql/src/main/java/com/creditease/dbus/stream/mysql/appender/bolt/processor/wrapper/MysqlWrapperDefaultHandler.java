@@ -6,13 +6,14 @@ import com.alibaba.otter.canal.protocol.CanalEntry.RowData;
 import com.creditease.dbus.commons.DataType;
 import com.creditease.dbus.commons.DbusMessage;
 import com.creditease.dbus.commons.DbusMessageBuilder;
-import com.creditease.dbus.commons.PropertiesHolder;
 import com.creditease.dbus.commons.msgencoder.EncodeColumnProvider;
 import com.creditease.dbus.commons.msgencoder.MessageEncoder;
 import com.creditease.dbus.stream.common.Constants;
 import com.creditease.dbus.stream.common.appender.bolt.processor.BoltCommandHandler;
 import com.creditease.dbus.stream.common.appender.bolt.processor.CachedEncodeColumnProvider;
 import com.creditease.dbus.stream.common.appender.bolt.processor.listener.CommandHandlerListener;
+import com.creditease.dbus.stream.common.appender.config.AppenderConfig;
+import com.creditease.dbus.stream.common.appender.config.AppenderConfigHolder;
 import com.creditease.dbus.stream.common.appender.enums.Command;
 import com.creditease.dbus.stream.common.appender.bean.DataTable;
 import com.creditease.dbus.stream.common.appender.bean.EmitData;
@@ -64,8 +65,9 @@ public class MysqlWrapperDefaultHandler implements BoltCommandHandler {
 
         int payloadCount = 0;
         int payloadSize = 0;
-        int payloadMaxCount = getMaxCount();
-        int payloadMaxSize = getMaxSize();
+        AppenderConfig config = AppenderConfigHolder.get();
+        int payloadMaxCount = config.getUmsPayloadMaxCount();
+        int payloadMaxSize = config.getUmsPayloadMaxSize();
         DbusMessageBuilder builder = createBuilderWithSchema(version, dataList.get(0));
 
         EntryHeader header=null;
@@ -198,16 +200,6 @@ public class MysqlWrapperDefaultHandler implements BoltCommandHandler {
         this.emit(listener.getOutputCollector(), tuple, groupId, data, Command.UNKNOWN_CMD);
     }
 
-    private int getMaxCount() {
-        return PropertiesHolder.getIntegerValue(Constants.Properties.CONFIGURE,
-                Constants.ConfigureKey.UMS_PAYLOAD_MAX_COUNT);
-    }
-
-    private int getMaxSize() {
-        return PropertiesHolder.getIntegerValue(Constants.Properties.CONFIGURE,
-                Constants.ConfigureKey.UMS_PAYLOAD_MAX_SIZE);
-    }
-
     public static void main(String[] args) {
         // String type = "int(10)";
         String type = "int";
@@ -0,0 +1,24 @@
+#!/bin/bash
+
+#获取当前shell所在路径
+PWD=$(cd `dirname $0`; pwd)
+PWD=$PWD/../
+
+#检查主包是否存在
+if [ ! -e $PWD/lib/dbus-tools-2.0.0.jar ]; then
+	echo "please execute shell in its path!"
+	exit
+fi
+
+#导入jar和config进入classpath
+CLASS_PATH=""
+for i in $PWD/lib/*.jar;
+do
+        CLASS_PATH=$i:"$CLASS_PATH";
+done
+CLASS_PATH=.:$CLASS_PATH
+
+
+
+# 用法: offlineReplay.sh dump文件 [回放轮数]
+java -cp $CLASS_PATH com.creditease.dbus.tools.replay.OfflineReplay --file=$1 --warmup=1 --rounds=${2:-1}
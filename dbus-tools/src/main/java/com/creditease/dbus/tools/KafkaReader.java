@@ -22,15 +22,20 @@ package com.creditease.dbus.tools;
 
 import com.creditease.dbus.tools.common.AbstractSignalHandler;
 import com.creditease.dbus.tools.common.ConfUtils;
+import com.creditease.dbus.tools.common.TopicDump;
 import org.apache.commons.cli.*;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
@@ -43,7 +48,8 @@ public class KafkaReader extends AbstractSignalHandler {
     private String topicName = "";
     private long offset = -1;
     private long maxLength = 1;
-    private Consumer<String, String> consumer;
+    private String dumpFile = null;
+    private Consumer<byte[], byte[]> consumer;
 
     /**
      * run
@@ -52,26 +58,35 @@ public class KafkaReader extends AbstractSignalHandler {
      */
     public void run() throws Exception {
         int readCount = 0;
+        TopicDump.Writer writer = null;
         try {
             this.consumer = createConsumer();
+            if (dumpFile != null) {
+                writer = new TopicDump.Writer(new File(dumpFile));
+            }
             // Fetch data from the consumer
             while (running) {
                 // Wait for 100ms
-                ConsumerRecords<String, String> records = consumer.poll(1000);
+                ConsumerRecords<byte[], byte[]> records = consumer.poll(1000);
                 if (records.count() == 0) {
                     System.out.print(".");
                     continue;
                 }
-                for (ConsumerRecord<String, String> record : records) {
+                for (ConsumerRecord<byte[], byte[]> record : records) {
                     if (readCount >= maxLength) {
                         running = false;
                         break;
                     }
                     readCount++;
 
+                    if (writer != null) {
+                        // 转储文件保留原始字节,供离线回放工具使用
+                        writer.write(record);
+                        continue;
+                    }
                     System.out.println("");
-                    System.out.println("offset: " + record.offset() + ", key:" + record.key());
-                    System.out.println(record.value());
+                    System.out.println("offset: " + record.offset() + ", key:" + toString(record.key()));
+                    System.out.println(toString(record.value()));
                 }
             }
 
@@ -81,6 +96,10 @@ public class KafkaReader extends AbstractSignalHandler {
         } finally {
             System.out.println("");
 
+            if (writer != null) {
+                writer.close();
+                logger.info("{} records were dumped to {}", writer.getCount(), dumpFile);
+            }
             consumer.close();
             logger.info("Finished read kafka");
         }
@@ -91,14 +110,17 @@ public class KafkaReader extends AbstractSignalHandler {
      * @return
      * @throws Exception
      */
-    private Consumer<String, String> createConsumer() throws Exception {
+    private Consumer<byte[], byte[]> createConsumer() throws Exception {
 
         // Seek to end automatically
         TopicPartition dataTopicPartition = new TopicPartition(topicName, 0);
         List<TopicPartition> topics = Arrays.asList(dataTopicPartition);
 
         Properties props = ConfUtils.getProps(CONSUMER_PROPS);
-        Consumer<String, String> consumer = new KafkaConsumer<>(props);
+        // 统一按字节读取,输出到控制台时再转换为字符串
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+        Consumer<byte[], byte[]> consumer = new KafkaConsumer<>(props);
         consumer.assign(topics);
 
         if(offset == -1){
@@ -111,12 +133,17 @@ public class KafkaReader extends AbstractSignalHandler {
         return consumer;
     }
 
+    private static String toString(byte[] bytes) {
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
     private int parseCommandArgs(String[] args) {
         Options options = new Options();
 
         options.addOption("t", "topic", true, "the topic you want to read");
         options.addOption("o", "offset", true, "the offset you want to read");
         options.addOption("m", "maxlength", true, "target topic of kafka");
+        options.addOption("f", "file", true, "dump the records to a binary file instead of printing them");
 
         CommandLineParser parser = new DefaultParser();
         try {
@@ -147,6 +174,11 @@ public class KafkaReader extends AbstractSignalHandler {
                     this.maxLength = Long.parseLong(line.getOptionValue("maxlength"));
                     logger.info("read maxlength : {}", this.maxLength);
                 }
+
+                if (line.hasOption("file")) {
+                    this.dumpFile = line.getOptionValue("file");
+                    logger.info("dump file : {}", this.dumpFile);
+                }
             }
             return 0;
         } catch (ParseException exp) {
@@ -0,0 +1,118 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.tools.common;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * kafka topic的本地二进制转储文件,由KafkaReader写入,供离线回放工具读取.
+ * 文件以魔数开头,之后每条记录依次为: topic(UTF), partition(int), offset(long),
+ * key长度(int)+key, value长度(int)+value, 长度为-1表示null
+ */
+public class TopicDump {
+    private static final int MAGIC = 0x44425544; // "DBUD"
+
+    public static class Writer implements Closeable {
+        private DataOutputStream out;
+        private long count;
+
+        public Writer(File file) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+            out.writeInt(MAGIC);
+        }
+
+        public void write(ConsumerRecord<byte[], byte[]> record) throws IOException {
+            out.writeUTF(record.topic());
+            out.writeInt(record.partition());
+            out.writeLong(record.offset());
+            writeBytes(record.key());
+            writeBytes(record.value());
+            count++;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        private void writeBytes(byte[] bytes) throws IOException {
+            if (bytes == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    /**
+     * 读取转储文件中的全部记录
+     */
+    public static List<ConsumerRecord<byte[], byte[]>> read(File file) throws IOException {
+        List<ConsumerRecord<byte[], byte[]>> records = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file.getPath() + " is not a topic dump file");
+            }
+            while (true) {
+                String topic;
+                try {
+                    topic = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                int partition = in.readInt();
+                long offset = in.readLong();
+                byte[] key = readBytes(in);
+                byte[] value = readBytes(in);
+                records.add(new ConsumerRecord<>(topic, partition, offset, key, value));
+            }
+        }
+        return records;
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,62 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.tools.replay;
+
+import org.apache.zookeeper.server.ServerCnxnFactory;
+import org.apache.zookeeper.server.ZooKeeperServer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * 进程内的单节点zookeeper,回放时wrapper生成ums_uid需要使用zookeeper序列
+ */
+public class LocalZookeeper implements Closeable {
+    private File dataDir;
+    private ZooKeeperServer server;
+    private ServerCnxnFactory factory;
+
+    public LocalZookeeper() throws Exception {
+        dataDir = Files.createTempDirectory("dbus-replay-zk").toFile();
+        server = new ZooKeeperServer(dataDir, dataDir, 2000);
+        factory = ServerCnxnFactory.createFactory(new InetSocketAddress("127.0.0.1", 0), 60);
+        factory.startup(server);
+    }
+
+    public String getConnectString() {
+        return "127.0.0.1:" + factory.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        factory.shutdown();
+        server.shutdown();
+        try (Stream<Path> paths = Files.walk(dataDir.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
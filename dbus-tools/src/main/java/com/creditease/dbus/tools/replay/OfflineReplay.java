@@ -0,0 +1,365 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.tools.replay;
+
+import com.creditease.dbus.commons.DbusMessage;
+import com.creditease.dbus.commons.FilePropertiesProvider;
+import com.creditease.dbus.commons.PropertiesHolder;
+import com.creditease.dbus.commons.ZkService;
+import com.creditease.dbus.stream.common.Constants;
+import com.creditease.dbus.stream.common.appender.bean.EmitData;
+import com.creditease.dbus.stream.common.appender.bolt.processor.BoltCommandHandler;
+import com.creditease.dbus.stream.common.appender.bolt.processor.kafkawriter.KafkaBoltDefaultHandler;
+import com.creditease.dbus.stream.common.appender.bolt.processor.listener.KafkaBoltHandlerListener;
+import com.creditease.dbus.stream.common.appender.bolt.processor.stat.TableMessageStatReporter;
+import com.creditease.dbus.stream.common.appender.cache.GlobalCache;
+import com.creditease.dbus.stream.common.appender.cache.ThreadLocalCache;
+import com.creditease.dbus.stream.common.appender.config.AppenderConfigHolder;
+import com.creditease.dbus.stream.common.appender.enums.Command;
+import com.creditease.dbus.stream.common.appender.utils.Utils;
+import com.creditease.dbus.stream.mysql.appender.bolt.processor.appender.MaDefaultHandler;
+import com.creditease.dbus.stream.mysql.appender.bolt.processor.dispatcher.MdDefaultHandler;
+import com.creditease.dbus.stream.mysql.appender.bolt.processor.wrapper.MysqlWrapperDefaultHandler;
+import com.creditease.dbus.stream.mysql.appender.protobuf.parser.BinlogProtobufParser;
+import com.creditease.dbus.stream.mysql.appender.protobuf.protocol.EntryHeader;
+import com.creditease.dbus.stream.mysql.appender.protobuf.protocol.MessageEntry;
+import com.creditease.dbus.stream.plan.ParallelismPlanner;
+import com.creditease.dbus.tools.common.ConfUtils;
+import com.creditease.dbus.tools.common.TopicDump;
+import org.apache.commons.cli.*;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.storm.generated.StormTopology;
+import org.apache.storm.task.GeneralTopologyContext;
+import org.apache.storm.task.OutputCollector;
+import org.apache.storm.tuple.Fields;
+import org.apache.storm.tuple.Tuple;
+import org.apache.storm.tuple.TupleImpl;
+import org.apache.storm.tuple.Values;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 离线回放工具: 不启动storm,在当前进程中将KafkaReader转储的mysql增量topic依次交给
+ * MdDefaultHandler -> MaDefaultHandler -> MysqlWrapperDefaultHandler -> KafkaBoltDefaultHandler 处理,
+ * 统计每个handler的CPU时间、内存分配量以及吞吐量.
+ *
+ * 配置文件从本地目录(默认conf/OfflineReplay)读取,目录结构与zookeeper配置中心一致;
+ * 管理库使用内存中的H2,数据源/schema/表根据转储文件中出现的表自动生成;
+ * kafka writer只序列化消息,不会写入kafka.
+ */
+public class OfflineReplay {
+    private static Logger logger = LoggerFactory.getLogger(OfflineReplay.class);
+
+    private static final String STREAM_ID = "default";
+    /** bolt emit的数据格式为: groupField, data, command, emitType */
+    private static final int COMMAND_INDEX = 2;
+
+    private String dumpFile;
+    private String datasource = "replay";
+    private String topology = "replay-appender";
+    private String confDir = ConfUtils.toConfPath("OfflineReplay");
+    private String zkConnect;
+    private int warmupRounds = 0;
+    private int rounds = 1;
+
+    private GeneralTopologyContext context;
+    private StageMetrics parseMetrics;
+    private List<Stage> stages;
+    private Map<Command, Long> skipped = new TreeMap<>();
+
+    public void run() throws Exception {
+        StageMetrics.enable();
+        List<ConsumerRecord<byte[], byte[]>> records = TopicDump.read(new File(dumpFile));
+        logger.info("{} records were loaded from {}", records.size(), dumpFile);
+
+        LocalZookeeper localZk = null;
+        try (ReplayMetaStore metaStore = new ReplayMetaStore()) {
+            metaStore.seed(datasource, discoverTables(records));
+            if (zkConnect == null) {
+                localZk = new LocalZookeeper();
+                zkConnect = localZk.getConnectString();
+            }
+
+            PropertiesHolder.initialize(new FilePropertiesProvider(new File(confDir), Constants.ZKPath.ZK_TOPOLOGY_ROOT + "/" + topology));
+            AppenderConfigHolder.reload();
+            GlobalCache.initialize(datasource);
+
+            ZkService zkService = new ZkService(zkConnect);
+            try {
+                context = createContext();
+                parseMetrics = new StageMetrics("BinlogProtobufParser");
+                stages = createStages(zkService);
+
+                for (int i = 0; i < warmupRounds; i++) {
+                    replay(records);
+                }
+                if (warmupRounds > 0) {
+                    reset();
+                }
+                long start = System.nanoTime();
+                for (int i = 0; i < rounds; i++) {
+                    replay(records);
+                }
+                report((long) records.size() * rounds, System.nanoTime() - start);
+            } finally {
+                zkService.close();
+            }
+        } finally {
+            if (localZk != null) {
+                localZk.close();
+            }
+        }
+    }
+
+    /**
+     * 找出转储文件中出现的全部表,用于生成管理库中的表配置
+     */
+    private Map<String, Set<String>> discoverTables(List<ConsumerRecord<byte[], byte[]>> records) throws Exception {
+        BinlogProtobufParser parser = BinlogProtobufParser.getInstance();
+        Map<String, Set<String>> tables = new TreeMap<>();
+        for (ConsumerRecord<byte[], byte[]> record : records) {
+            for (MessageEntry entry : parser.getEntry(record.value())) {
+                EntryHeader header = entry.getEntryHeader();
+                tables.computeIfAbsent(header.getSchemaName(), k -> new TreeSet<>()).add(header.getTableName());
+            }
+        }
+        return tables;
+    }
+
+    private void replay(List<ConsumerRecord<byte[], byte[]>> records) {
+        BinlogProtobufParser parser = BinlogProtobufParser.getInstance();
+        for (ConsumerRecord<byte[], byte[]> record : records) {
+            // 与MysqlDefaultProcessor相同: 解析并过滤掉没有配置的表
+            List<MessageEntry> entries = null;
+            parseMetrics.begin();
+            try {
+                entries = parser.getEntry(record.value());
+                entries.removeIf(entry -> ThreadLocalCache.get(Constants.CacheNames.DATA_TABLES,
+                        Utils.buildDataTableCacheKey(entry.getEntryHeader().getSchemaName(), entry.getEntryHeader().getTableName())) == null);
+            } catch (Exception e) {
+                logger.error("Parse record error, offset:{}", record.offset(), e);
+            }
+            boolean emit = entries != null && !entries.isEmpty();
+            parseMetrics.end(emit ? 1 : 0, entries == null);
+            if (!emit) {
+                continue;
+            }
+
+            EmitData data = new EmitData();
+            data.add(EmitData.OFFSET, record.offset());
+            data.add(EmitData.GENERIC_DATA_LIST, entries);
+            List<List<Object>> inputs = Collections.singletonList(new Values(data, Command.UNKNOWN_CMD));
+
+            // 上一阶段产生的数据作为下一阶段的输入,第i个阶段输入的task id为i+1,与createContext中的组件顺序对应
+            for (int i = 0; i < stages.size() && !inputs.isEmpty(); i++) {
+                Stage stage = stages.get(i);
+                List<List<Object>> outputs = new ArrayList<>();
+                for (List<Object> values : inputs) {
+                    Tuple tuple = new TupleImpl(context, values, i + 1, STREAM_ID);
+                    boolean failed = false;
+                    stage.metrics.begin();
+                    try {
+                        stage.handler.handle(tuple);
+                    } catch (Exception e) {
+                        failed = true;
+                        logger.error("{} error, offset:{}", stage.metrics.getName(), record.offset(), e);
+                    }
+                    stage.metrics.end(stage.collector.size(), failed);
+
+                    for (List<Object> output : stage.collector.drain()) {
+                        Command cmd = (Command) output.get(COMMAND_INDEX);
+                        // 只回放默认handler的处理路径,心跳、meta同步等命令仅做计数
+                        if (cmd == Command.UNKNOWN_CMD) {
+                            outputs.add(output);
+                        } else {
+                            skipped.merge(cmd, 1L, Long::sum);
+                        }
+                    }
+                }
+                inputs = outputs;
+            }
+        }
+    }
+
+    private void reset() {
+        parseMetrics.reset();
+        for (Stage stage : stages) {
+            stage.metrics.reset();
+            stage.bytesWritten = 0;
+        }
+        skipped.clear();
+    }
+
+    private void report(long records, long elapsedNanos) {
+        System.out.println();
+        System.out.println(StageMetrics.header());
+        System.out.println(parseMetrics);
+        long cpuNanos = parseMetrics.getCpuNanos();
+        long bytesWritten = 0;
+        for (Stage stage : stages) {
+            System.out.println(stage.metrics);
+            cpuNanos += stage.metrics.getCpuNanos();
+            bytesWritten += stage.bytesWritten;
+        }
+        System.out.println();
+        System.out.println(String.format("records: %d, elapsed: %.1f ms, throughput: %.0f records/s, cpu: %.1f ms, ums bytes: %d",
+                records, elapsedNanos / 1e6, records * 1e9 / elapsedNanos, cpuNanos / 1e6, bytesWritten));
+        if (!skipped.isEmpty()) {
+            System.out.println("not replayed commands: " + skipped);
+        }
+    }
+
+    private List<Stage> createStages(ZkService zkService) {
+        List<Stage> list = new ArrayList<>();
+        Stage dispatcher = new Stage(zkService);
+        dispatcher.init(new MdDefaultHandler(dispatcher));
+        list.add(dispatcher);
+
+        Stage appender = new Stage(zkService);
+        appender.init(new MaDefaultHandler(appender));
+        list.add(appender);
+
+        Stage wrapper = new Stage(zkService);
+        wrapper.init(new MysqlWrapperDefaultHandler(wrapper));
+        list.add(wrapper);
+
+        Stage writer = new Stage(zkService);
+        writer.init(new KafkaBoltDefaultHandler(writer, new TableMessageStatReporter((message, args) -> { })));
+        list.add(writer);
+        return list;
+    }
+
+    /**
+     * 构造TupleImpl所需的topology上下文,组件和输出字段与DispatcherAppenderTopology中的appender部分一致
+     */
+    private GeneralTopologyContext createContext() {
+        String[] components = {ParallelismPlanner.APPENDER_SPOUT, ParallelismPlanner.APPENDER_DISPATCHER,
+                ParallelismPlanner.APPENDER_META_FETCHER, ParallelismPlanner.APPENDER_WRAPPER, ParallelismPlanner.APPENDER_KAFKA_WRITER};
+        Fields spoutFields = new Fields(Constants.EmitFields.DATA, Constants.EmitFields.COMMAND);
+        Fields boltFields = new Fields(Constants.EmitFields.GROUP_FIELD, Constants.EmitFields.DATA,
+                Constants.EmitFields.COMMAND, Constants.EmitFields.EMIT_TYPE);
+
+        Map<Integer, String> taskToComponent = new HashMap<>();
+        Map<String, List<Integer>> componentToSortedTasks = new HashMap<>();
+        Map<String, Map<String, Fields>> componentToStreamToFields = new HashMap<>();
+        for (int i = 0; i < components.length; i++) {
+            taskToComponent.put(i + 1, components[i]);
+            componentToSortedTasks.put(components[i], Collections.singletonList(i + 1));
+            componentToStreamToFields.put(components[i], Collections.singletonMap(STREAM_ID, i == 0 ? spoutFields : boltFields));
+        }
+        StormTopology topology = new StormTopology(new HashMap<>(), new HashMap<>(), new HashMap<>());
+        return new GeneralTopologyContext(topology, new HashMap<>(), taskToComponent, componentToSortedTasks,
+                componentToStreamToFields, "offline-replay");
+    }
+
+    /**
+     * 一个bolt的替身,作为handler的listener提供collector和zookeeper
+     */
+    private static class Stage implements KafkaBoltHandlerListener {
+        private ZkService zkService;
+        private ReplayCollector collector = new ReplayCollector();
+        private OutputCollector outputCollector = new OutputCollector(collector);
+        private BoltCommandHandler handler;
+        private StageMetrics metrics;
+        private long bytesWritten;
+
+        public Stage(ZkService zkService) {
+            this.zkService = zkService;
+        }
+
+        public void init(BoltCommandHandler handler) {
+            this.handler = handler;
+            this.metrics = new StageMetrics(handler.getClass().getSimpleName());
+        }
+
+        @Override
+        public OutputCollector getOutputCollector() {
+            return outputCollector;
+        }
+
+        @Override
+        public void reloadBolt(Tuple tuple) {
+        }
+
+        @Override
+        public ZkService getZkService() {
+            return zkService;
+        }
+
+        /**
+         * 与DbusKafkaWriterBolt相同的序列化方式,只统计字节数不写kafka
+         */
+        @Override
+        public void writeData(String dbSchema, String table, DbusMessage message, Tuple input) {
+            bytesWritten += message.toString().getBytes(StandardCharsets.UTF_8).length;
+            outputCollector.ack(input);
+        }
+    }
+
+    private int parseCommandArgs(String[] args) {
+        Options options = new Options();
+
+        options.addOption("f", "file", true, "dump file written by KafkaReader --file");
+        options.addOption("d", "datasource", true, "datasource name, default: replay");
+        options.addOption("t", "topology", true, "topology node under /DBus/Topology in the conf directory, default: replay-appender");
+        options.addOption("c", "conf", true, "local conf directory laid out like zookeeper, default: conf/OfflineReplay");
+        options.addOption("z", "zookeeper", true, "zookeeper used for ums_uid, an in-process one is started if absent");
+        options.addOption("w", "warmup", true, "warm up rounds excluded from the report, default: 0");
+        options.addOption("r", "rounds", true, "measured rounds, default: 1");
+        options.addOption("h", "help", false, "print help");
+
+        CommandLineParser parser = new DefaultParser();
+        try {
+            CommandLine line = parser.parse(options, args);
+            if (line.hasOption("help") || !line.hasOption("file")) {
+                HelpFormatter formatter = new HelpFormatter();
+                formatter.printHelp("dbus-tools.jar com.creditease.dbus.tools.replay.OfflineReplay", options);
+                return -1;
+            }
+
+            this.dumpFile = line.getOptionValue("file");
+            this.datasource = line.getOptionValue("datasource", datasource);
+            this.topology = line.getOptionValue("topology", topology);
+            this.confDir = line.getOptionValue("conf", confDir);
+            this.zkConnect = line.getOptionValue("zookeeper");
+            this.warmupRounds = Integer.parseInt(line.getOptionValue("warmup", String.valueOf(warmupRounds)));
+            this.rounds = Integer.parseInt(line.getOptionValue("rounds", String.valueOf(rounds)));
+            return 0;
+        } catch (ParseException exp) {
+            logger.error("Parsing failed.  Reason: " + exp.getMessage());
+            exp.printStackTrace();
+            return -2;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        OfflineReplay replay = new OfflineReplay();
+        if (replay.parseCommandArgs(args) != 0) {
+            return;
+        }
+        replay.run();
+        System.exit(0);
+    }
+}
@@ -0,0 +1,96 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.tools.replay;
+
+import org.apache.storm.task.IOutputCollector;
+import org.apache.storm.tuple.Tuple;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 替代storm的collector,收集handler发出的数据供下一个阶段使用
+ */
+public class ReplayCollector implements IOutputCollector {
+    private List<List<Object>> emitted = new ArrayList<>();
+    private long acked;
+    private long failed;
+    private long errors;
+
+    @Override
+    public List<Integer> emit(String streamId, Collection<Tuple> anchors, List<Object> tuple) {
+        emitted.add(tuple);
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void emitDirect(int taskId, String streamId, Collection<Tuple> anchors, List<Object> tuple) {
+        emitted.add(tuple);
+    }
+
+    @Override
+    public void ack(Tuple input) {
+        acked++;
+    }
+
+    @Override
+    public void fail(Tuple input) {
+        failed++;
+    }
+
+    public void resetTimeout(Tuple input) {
+    }
+
+    @Override
+    public void reportError(Throwable error) {
+        errors++;
+    }
+
+    public int size() {
+        return emitted.size();
+    }
+
+    /**
+     * 取出并清空已收集的数据
+     */
+    public List<List<Object>> drain() {
+        if (emitted.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<List<Object>> list = emitted;
+        emitted = new ArrayList<>();
+        return list;
+    }
+
+    public long getAcked() {
+        return acked;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+}
@@ -0,0 +1,157 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.tools.replay;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 回放使用的内存管理库(H2, MySQL模式),表结构取自initScript/dbusmgr.sql,
+ * 数据源、schema和表根据转储文件中出现的表生成,meta版本由appender在回放时自动创建
+ */
+public class ReplayMetaStore implements Closeable {
+    private static Logger logger = LoggerFactory.getLogger(ReplayMetaStore.class);
+
+    /** 与conf/OfflineReplay/DBus/Commons/mysql.properties中的url保持一致 */
+    public static final String URL = "jdbc:h2:mem:dbusmgr;MODE=MySQL;DB_CLOSE_DELAY=-1";
+    private static final String USER = "dbusmgr";
+    private static final String SCHEMA_SCRIPT = "initScript/dbusmgr.sql";
+
+    /** 保持一个连接,内存库在连接全部关闭前不会被销毁 */
+    private Connection conn;
+
+    public ReplayMetaStore() throws Exception {
+        Class.forName("org.h2.Driver");
+        conn = DriverManager.getConnection(URL, USER, "");
+        try (Statement stmt = conn.createStatement()) {
+            for (String sql : loadSchema()) {
+                stmt.execute(sql);
+            }
+        }
+        logger.info("Replay meta store created: {}", URL);
+    }
+
+    /**
+     * 写入数据源、schema以及表
+     * @param dsName 数据源名称
+     * @param tables schema名称到表名集合的映射
+     */
+    public void seed(String dsName, Map<String, Set<String>> tables) throws SQLException {
+        long dsId = insert("insert into t_dbus_datasource(ds_name, ds_type, status, ds_desc, topic, ctrl_topic, schema_topic, split_topic, " +
+                        "master_url, slave_url, dbus_user, dbus_pwd) values(?, 'mysql', 'active', 'offline replay', ?, ?, ?, ?, '', '', 'dbus', '')",
+                dsName, dsName, dsName + "_ctrl", dsName + "_schema", dsName + "_split");
+        for (Map.Entry<String, Set<String>> entry : tables.entrySet()) {
+            String schema = entry.getKey();
+            String topic = dsName + "." + schema;
+            long schemaId = insert("insert into t_data_schema(ds_id, schema_name, status, src_topic, target_topic) values(?, ?, 'active', ?, ?)",
+                    dsId, schema, topic, topic + ".result");
+            for (String table : entry.getValue()) {
+                insert("insert into t_data_tables(ds_id, schema_id, schema_name, table_name, physical_table_regex, output_topic, status, batch_id) " +
+                        "values(?, ?, ?, ?, ?, ?, 'ok', 0)", dsId, schemaId, schema, table, table, topic + ".result");
+            }
+            logger.info("Meta store seeded with {} tables of {}.{}", entry.getValue().size(), dsName, schema);
+        }
+    }
+
+    private long insert(String sql, Object... params) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            for (int i = 0; i < params.length; i++) {
+                ps.setObject(i + 1, params[i]);
+            }
+            ps.executeUpdate();
+            try (ResultSet rs = ps.getGeneratedKeys()) {
+                return rs.next() ? rs.getLong(1) : -1;
+            }
+        }
+    }
+
+    /**
+     * 读取mysql建表脚本并去掉H2不支持的语法: 注释、存储引擎、字符集、ON UPDATE、普通索引等
+     */
+    private static List<String> loadSchema() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (InputStream is = ReplayMetaStore.class.getClassLoader().getResourceAsStream(SCHEMA_SCRIPT)) {
+            if (is == null) {
+                throw new IOException(SCHEMA_SCRIPT + " not found in classpath");
+            }
+            byte[] buf = new byte[8192];
+            int len;
+            while ((len = is.read(buf)) != -1) {
+                bos.write(buf, 0, len);
+            }
+        }
+        // 脚本中的中文注释为GBK编码
+        String script = bos.toString("GBK");
+
+        StringBuilder sb = new StringBuilder();
+        for (String line : script.split("\r?\n")) {
+            if (!line.trim().startsWith("--")) {
+                sb.append(line).append('\n');
+            }
+        }
+
+        List<String> statements = new ArrayList<>();
+        for (String sql : sb.toString().split(";")) {
+            String stmt = sql.trim();
+            String upper = stmt.toUpperCase();
+            if (!upper.startsWith("CREATE TABLE") && !upper.startsWith("DROP TABLE")) {
+                continue;
+            }
+            stmt = stmt.replaceAll("(?i)\\s+COMMENT\\s*=?\\s*'(?:[^'\\\\]|\\\\.|'')*'", "")
+                    .replaceAll("(?i)\\s+ENGINE\\s*=\\s*\\w+", "")
+                    .replaceAll("(?i)\\s+DEFAULT\\s+CHARSET\\s*=\\s*\\w+", "")
+                    .replaceAll("(?i)\\s+CHARACTER\\s+SET\\s+\\w+", "")
+                    .replaceAll("(?i)\\s+COLLATE\\s+\\w+", "")
+                    .replaceAll("(?i)\\s+ON\\s+UPDATE\\s+CURRENT_TIMESTAMP", "")
+                    .replaceAll("(?i)\\s+USING\\s+BTREE", "")
+                    .replaceAll("(?i)\\s+unsigned", "")
+                    .replaceAll("(?i),\\s*KEY\\s+`[^`]+`\\s*\\([^)]*\\)", "")
+                    .replaceAll("(?i)UNIQUE\\s+KEY\\s+`[^`]+`\\s*\\(", "UNIQUE (")
+                    .replace("`", "");
+            statements.add(stmt);
+        }
+        return statements;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*-
+ * <<
+ * DBus
+ * ==
+ * Copyright (C) 2016 - 2017 Bridata
+ * ==
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * >>
+ */
+
+package com.creditease.dbus.tools.replay;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * 单个处理阶段的统计: 处理的tuple数、产生的tuple数、CPU时间、内存分配量以及耗时.
+ * CPU时间和分配量通过ThreadMXBean按当前线程统计,回放在单线程中执行因此即为该阶段的开销
+ */
+public class StageMetrics {
+    private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+    private static final com.sun.management.ThreadMXBean SUN_THREAD_BEAN =
+            THREAD_BEAN instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) THREAD_BEAN : null;
+
+    private String name;
+    private long tuplesIn;
+    private long tuplesOut;
+    private long errors;
+    private long cpuNanos;
+    private long allocatedBytes;
+    private long wallNanos;
+
+    private long cpuStart;
+    private long allocStart;
+    private long wallStart;
+
+    public StageMetrics(String name) {
+        this.name = name;
+    }
+
+    public void begin() {
+        wallStart = System.nanoTime();
+        cpuStart = THREAD_BEAN.getCurrentThreadCpuTime();
+        allocStart = allocatedBytes();
+    }
+
+    public void end(int emitted, boolean failed) {
+        long alloc = allocatedBytes();
+        long cpu = THREAD_BEAN.getCurrentThreadCpuTime();
+        wallNanos += System.nanoTime() - wallStart;
+        cpuNanos += cpu - cpuStart;
+        allocatedBytes += alloc - allocStart;
+        tuplesIn++;
+        tuplesOut += emitted;
+        if (failed) {
+            errors++;
+        }
+    }
+
+    public void reset() {
+        tuplesIn = tuplesOut = errors = 0;
+        cpuNanos = allocatedBytes = wallNanos = 0;
+    }
+
+    private static long allocatedBytes() {
+        return SUN_THREAD_BEAN != null ? SUN_THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+    }
+
+    /**
+     * 启用线程CPU时间和内存分配统计,JVM不支持时相应的值为0
+     */
+    public static void enable() {
+        if (THREAD_BEAN.isThreadCpuTimeSupported()) {
+            THREAD_BEAN.setThreadCpuTimeEnabled(true);
+        }
+        if (SUN_THREAD_BEAN != null && SUN_THREAD_BEAN.isThreadAllocatedMemorySupported()) {
+            SUN_THREAD_BEAN.setThreadAllocatedMemoryEnabled(true);
+        }
+    }
+
+    public static String header() {
+        return String.format("%-24s %10s %10s %8s %12s %14s %14s %12s", "stage", "in", "out", "errors",
+                "cpu(ms)", "cpu/tuple(us)", "alloc/tuple(B)", "tuples/s");
+    }
+
+    @Override
+    public String toString() {
+        double cpuMs = cpuNanos / 1e6;
+        double cpuPerTuple = tuplesIn == 0 ? 0 : cpuNanos / 1e3 / tuplesIn;
+        long allocPerTuple = tuplesIn == 0 ? 0 : allocatedBytes / tuplesIn;
+        double throughput = wallNanos == 0 ? 0 : tuplesIn * 1e9 / wallNanos;
+        return String.format("%-24s %10d %10d %8d %12.1f %14.2f %14d %12.0f", name, tuplesIn, tuplesOut, errors,
+                cpuMs, cpuPerTuple, allocPerTuple, throughput);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getTuplesIn() {
+        return tuplesIn;
+    }
+
+    public long getCpuNanos() {
+        return cpuNanos;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+}